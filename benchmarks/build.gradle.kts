@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+plugins {
+  java
+  id("me.champeau.gradle.jmh") version "0.5.0"
+}
+
+java {
+  sourceCompatibility = JavaVersion.VERSION_1_8
+  targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// Benchmarks run on a plain JVM, against the classes of the debug variant of the SDK. The few
+// Android types met on the measured paths are stubbed in the jmh sources, and collaborators
+// needing a real Android context are replaced by stubs.
+dependencies {
+  jmh(project(path = ":publisher-sdk", configuration = "debugClasses"))
+  jmh(Deps.Jmh.Core)
+  jmh(Deps.Jmh.GeneratorBytecode)
+  jmh(Deps.AndroidX.Annotations)
+  jmh(Deps.AutoValue.GsonRuntime)
+  jmh(Deps.Json.Json)
+  jmh(Deps.Kotlin.Stdlib)
+  jmh(Deps.Square.Tape.Tape)
+}
+
+// The plugin adds its own default version of JMH: the declared one is the one used
+configurations.all {
+  resolutionStrategy.force(Deps.Jmh.Core, Deps.Jmh.GeneratorBytecode)
+}
+
+jmh {
+  // Allocation rate (see gc.alloc.rate.norm) matters as much as the timing on mobile devices
+  profilers = listOf("gc")
+  fork = 1
+  warmupIterations = 5
+  iterations = 5
+
+  val includePattern: String? by project
+  include = listOf(includePattern ?: ".*")
+}
@@ -0,0 +1,30 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.content.res;
+
+/**
+ * Minimal stub of the Android configuration, only providing the orientation constants.
+ */
+public final class Configuration {
+
+  public static final int ORIENTATION_PORTRAIT = 1;
+  public static final int ORIENTATION_LANDSCAPE = 2;
+
+  private Configuration() {
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.view;
+
+import android.content.Context;
+import android.graphics.Rect;
+
+/**
+ * Minimal stub of the Android view, with a fixed geometry. Posted actions are dropped, as if the
+ * view had no attached handler. Views created from a context, as by an inflater, are not laid out.
+ */
+public class View {
+
+  public static final int VISIBLE = 0x00000000;
+
+  private final ViewTreeObserver viewTreeObserver;
+
+  private final int width;
+
+  private final int height;
+
+  private final boolean isOnScreen;
+
+  public View(Context context) {
+    this(new ViewTreeObserver(), 0, 0, false);
+  }
+
+  public View(ViewTreeObserver viewTreeObserver, int width, int height, boolean isOnScreen) {
+    this.viewTreeObserver = viewTreeObserver;
+    this.width = width;
+    this.height = height;
+    this.isOnScreen = isOnScreen;
+  }
+
+  public ViewTreeObserver getViewTreeObserver() {
+    return viewTreeObserver;
+  }
+
+  public boolean isShown() {
+    return true;
+  }
+
+  public int getWindowVisibility() {
+    return VISIBLE;
+  }
+
+  public final int getWidth() {
+    return width;
+  }
+
+  public final int getHeight() {
+    return height;
+  }
+
+  public final boolean getGlobalVisibleRect(Rect r) {
+    if (!isOnScreen) {
+      return false;
+    }
+    r.left = 0;
+    r.top = 0;
+    r.right = width;
+    r.bottom = height;
+    return true;
+  }
+
+  public boolean postDelayed(Runnable action, long delayMillis) {
+    return false;
+  }
+
+  public boolean removeCallbacks(Runnable action) {
+    return false;
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.view;
+
+import android.content.Context;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal stub of the Android view group, only keeping its children.
+ */
+public class ViewGroup extends View {
+
+  private final List<View> children = new ArrayList<>();
+
+  public ViewGroup(Context context) {
+    super(context);
+  }
+
+  public void addView(View child) {
+    children.add(child);
+  }
+
+  public int getChildCount() {
+    return children.size();
+  }
+
+}
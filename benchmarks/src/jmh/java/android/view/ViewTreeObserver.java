@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.view;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Minimal stub of the Android view tree observer, only dispatching pre-draws. As on Android,
+ * listeners may be removed while a pre-draw is dispatched.
+ */
+public final class ViewTreeObserver {
+
+  private final List<OnPreDrawListener> onPreDrawListeners = new CopyOnWriteArrayList<>();
+
+  public interface OnPreDrawListener {
+
+    boolean onPreDraw();
+  }
+
+  public boolean isAlive() {
+    return true;
+  }
+
+  public void addOnPreDrawListener(OnPreDrawListener listener) {
+    onPreDrawListeners.add(listener);
+  }
+
+  public void removeOnPreDrawListener(OnPreDrawListener victim) {
+    onPreDrawListeners.remove(victim);
+  }
+
+  public final boolean dispatchOnPreDraw() {
+    boolean cancelDraw = false;
+    for (OnPreDrawListener listener : onPreDrawListeners) {
+      cancelDraw |= !listener.onPreDraw();
+    }
+    return cancelDraw;
+  }
+
+}
@@ -0,0 +1,216 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.cache.SdkCache;
+import com.criteo.publisher.model.AdSize;
+import com.criteo.publisher.model.AdUnit;
+import com.criteo.publisher.model.AdUnitMapper;
+import com.criteo.publisher.model.BannerAdUnit;
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.model.CacheAdUnit;
+import com.criteo.publisher.model.CdbRequest;
+import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.Config;
+import com.criteo.publisher.model.Slot;
+import com.criteo.publisher.network.BidRequestSender;
+import com.criteo.publisher.util.CdbCallListener;
+import com.criteo.publisher.util.StubAndroidUtil;
+import com.criteo.publisher.util.StubDeviceUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Consumption of bids by concurrent publisher threads.
+ * <p>
+ * CDB is replaced by a sender answering synchronously, so each consumed bid is immediately
+ * replaced in cache and every call goes through the whole consume-then-prefetch path. With a
+ * single ad unit, all threads compete on the same cache entry.
+ * <p>
+ * The same call is measured from 1 to 16 threads, so the throughput shows how the cache scales
+ * with contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BidManagerBenchmark {
+
+  @Param({"1", "16"})
+  public int adUnitCount;
+
+  private List<AdUnit> adUnits;
+
+  private ScheduledExecutorService refreshExecutor;
+
+  private BidManager bidManager;
+
+  @Setup
+  public void setUp() {
+    StubDeviceUtil deviceUtil = new StubDeviceUtil();
+    refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    bidManager = new BidManager(
+        new SdkCache(deviceUtil, 3),
+        new Config(),
+        new EpochClock(),
+        new AdUnitMapper(new StubAndroidUtil(), deviceUtil),
+        new ImmediateBidRequestSender(),
+        new NoOpBidLifecycleListener(),
+        refreshExecutor
+    );
+
+    adUnits = new ArrayList<>();
+    for (int i = 0; i < adUnitCount; i++) {
+      adUnits.add(new BannerAdUnit("/140800857/banner" + i, new AdSize(320, 50)));
+    }
+    bidManager.prefetch(adUnits);
+  }
+
+  @TearDown
+  public void tearDown() {
+    refreshExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Slot getBidForAdUnitAndPrefetch_01Thread(ThreadState threadState) {
+    return getBidForAdUnitAndPrefetch(threadState);
+  }
+
+  @Benchmark
+  @Threads(2)
+  public Slot getBidForAdUnitAndPrefetch_02Threads(ThreadState threadState) {
+    return getBidForAdUnitAndPrefetch(threadState);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Slot getBidForAdUnitAndPrefetch_04Threads(ThreadState threadState) {
+    return getBidForAdUnitAndPrefetch(threadState);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Slot getBidForAdUnitAndPrefetch_08Threads(ThreadState threadState) {
+    return getBidForAdUnitAndPrefetch(threadState);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Slot getBidForAdUnitAndPrefetch_16Threads(ThreadState threadState) {
+    return getBidForAdUnitAndPrefetch(threadState);
+  }
+
+  private Slot getBidForAdUnitAndPrefetch(ThreadState threadState) {
+    AdUnit adUnit = adUnits.get(threadState.nextIndex(adUnitCount));
+    return bidManager.getBidForAdUnitAndPrefetch(adUnit);
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+
+    private int index;
+
+    int nextIndex(int size) {
+      index = (index + 1) % size;
+      return index;
+    }
+  }
+
+  /**
+   * Answer each bid request immediately with a bid for each requested ad unit.
+   * <p>
+   * Bids have a short TTL so the refresh scheduler of the {@link BidManager} also runs during the
+   * benchmark.
+   */
+  private static class ImmediateBidRequestSender extends BidRequestSender {
+
+    private static final int TTL_IN_SECONDS = 1;
+
+    ImmediateBidRequestSender() {
+      super(null, null, null, null, null, null, null);
+    }
+
+    @Override
+    public void sendRemoteConfigRequest(@NonNull Config configToUpdate) {
+      // Config is not refreshed in benchmarks
+    }
+
+    @Override
+    public void sendBidRequest(
+        @NonNull List<CacheAdUnit> adUnits,
+        @NonNull CdbCallListener listener
+    ) {
+      List<Slot> slots = new ArrayList<>(adUnits.size());
+      for (CacheAdUnit adUnit : adUnits) {
+        slots.add(BenchmarkFixtures.newBannerSlot(
+            adUnit.getPlacementId(),
+            adUnit.getSize().getWidth(),
+            adUnit.getSize().getHeight(),
+            TTL_IN_SECONDS
+        ));
+      }
+
+      // The request is only forwarded to the lifecycle listener, which ignores it
+      listener.onCdbResponse(null, new CdbResponse(slots, 0));
+    }
+
+    @Override
+    public void cancelAllPendingTasks() {
+      // Nothing is pending
+    }
+  }
+
+  private static class NoOpBidLifecycleListener implements BidLifecycleListener {
+
+    @Override
+    public void onSdkInitialized() {
+    }
+
+    @Override
+    public void onCdbCallStarted(@NonNull CdbRequest request, @NonNull String callId) {
+    }
+
+    @Override
+    public void onCdbCallFinished(@NonNull CdbRequest request, @NonNull CdbResponse response) {
+    }
+
+    @Override
+    public void onCdbCallFailed(@NonNull CdbRequest request, @NonNull Exception exception) {
+    }
+
+    @Override
+    public void onBidConsumed(@NonNull CacheAdUnit adUnit, @NonNull Slot consumedBid) {
+    }
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost added to a frame of a scrolling feed when a new empty native view is created.
+ * <p>
+ * Each invocation is a frame binding a new native ad. The former loader inflated the view and its
+ * AdChoice overlay during the frame. With the pool, the view was inflated while the UI thread was
+ * idle between two frames, so the frame only takes it from the pool.
+ * <p>
+ * The inflater does the per-tag work of the Android one: parsing the layout and instantiating
+ * each view by reflection. Resources and styles are not resolved, so the measured inflation is a
+ * lower bound of the one on devices.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class NativeViewPoolBenchmark {
+
+  /**
+   * Typical native ad layout, wrapped in the AdChoice overlay.
+   */
+  private static final String LAYOUT = ""
+      + "<android.view.ViewGroup id='adChoiceOverlay' layout_width='match_parent'>"
+      + "  <android.view.ViewGroup id='nativeAd' orientation='vertical'>"
+      + "    <android.view.View id='productImage' layout_width='match_parent' scaleType='crop'/>"
+      + "    <android.view.View id='title' layout_width='match_parent' textSize='16sp'/>"
+      + "    <android.view.View id='description' layout_width='match_parent' maxLines='2'/>"
+      + "    <android.view.View id='price' layout_width='wrap_content' textStyle='bold'/>"
+      + "    <android.view.ViewGroup id='advertiser' layout_width='match_parent'>"
+      + "      <android.view.View id='advertiserLogo' layout_width='24dp' layout_height='24dp'/>"
+      + "      <android.view.View id='advertiserDomain' layout_width='wrap_content'/>"
+      + "    </android.view.ViewGroup>"
+      + "    <android.view.View id='callToAction' layout_width='wrap_content' gravity='end'/>"
+      + "  </android.view.ViewGroup>"
+      + "  <android.view.View id='adChoice' layout_width='19dp' layout_height='15dp'/>"
+      + "</android.view.ViewGroup>";
+
+  private final Context context = new Context() {
+  };
+
+  private final ViewGroup parent = new ViewGroup(context);
+
+  private NativeViewPool onDemandPool;
+
+  private NativeViewPool warmedUpPool;
+
+  @Setup
+  public void setUp() {
+    CriteoNativeRenderer renderer = new InflatingRenderer();
+    onDemandPool = new NativeViewPool(renderer, 0);
+    warmedUpPool = new NativeViewPool(renderer, 1);
+
+    // Register the context and parent of the feed
+    warmedUpPool.acquire(context, parent);
+  }
+
+  /**
+   * Idle time of the UI thread before the frame.
+   */
+  @Setup(Level.Invocation)
+  public void idle() {
+    warmedUpPool.warmUpOne();
+  }
+
+  @Benchmark
+  public View inflateOnFrame() {
+    return onDemandPool.acquire(context, parent);
+  }
+
+  @Benchmark
+  public View pooledViewOnFrame() {
+    return warmedUpPool.acquire(context, parent);
+  }
+
+  private static class InflatingRenderer implements CriteoNativeRenderer {
+
+    private final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    /**
+     * Constructors are cached as by the Android inflater.
+     */
+    private final Map<String, Constructor<? extends View>> constructors = new HashMap<>();
+
+    @NonNull
+    @Override
+    public View createNativeView(@NonNull Context context, @Nullable ViewGroup parent) {
+      try {
+        return inflate(context);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @NonNull
+    private View inflate(@NonNull Context context) throws Exception {
+      XMLStreamReader parser = xmlInputFactory.createXMLStreamReader(new StringReader(LAYOUT));
+      Deque<ViewGroup> ancestors = new ArrayDeque<>();
+      View root = null;
+
+      while (parser.hasNext()) {
+        int event = parser.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          for (int i = 0; i < parser.getAttributeCount(); i++) {
+            parser.getAttributeLocalName(i);
+            parser.getAttributeValue(i);
+          }
+
+          View view = getConstructor(parser.getLocalName()).newInstance(context);
+          if (root == null) {
+            root = view;
+          } else {
+            ancestors.peek().addView(view);
+          }
+          if (view instanceof ViewGroup) {
+            ancestors.push((ViewGroup) view);
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT
+            && ViewGroup.class.getName().equals(parser.getLocalName())) {
+          ancestors.pop();
+        }
+      }
+
+      parser.close();
+      return root;
+    }
+
+    @NonNull
+    private Constructor<? extends View> getConstructor(@NonNull String name) throws Exception {
+      Constructor<? extends View> constructor = constructors.get(name);
+      if (constructor == null) {
+        constructor = Class.forName(name).asSubclass(View.class).getConstructor(Context.class);
+        constructors.put(name, constructor);
+      }
+      return constructor;
+    }
+
+    @Override
+    public void renderNativeView(
+        @NonNull RendererHelper helper,
+        @NonNull View nativeView,
+        @NonNull CriteoNativeAd nativeAd
+    ) {
+      // Rendering is the same whether the view is pooled or not
+    }
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnPreDrawListener;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost added to each frame of a scrolling list by the native ads waiting for their impression.
+ * <p>
+ * The given number of native views share the view tree of a list, and are all laid out but off
+ * screen, so they stay tracked. Each invocation is a frame: the clock moves of 16ms and the
+ * pre-draw is dispatched. The former tracker registered one pre-draw listener per view, it is
+ * compared to the shared listener of the current tracker, with and without throttling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class VisibilityTrackerBenchmark {
+
+  private static final long FRAME_DURATION_IN_MILLIS = 16;
+
+  @Param({"50"})
+  public int trackedViews;
+
+  private ViewTreeObserver observer;
+
+  private FakeClock clock;
+
+  private ViewTreeObserver perViewObserver;
+
+  private ViewTreeObserver throttledObserver;
+
+  /**
+   * Views are only weakly referenced by the trackers, they are kept as by a view hierarchy.
+   */
+  private final List<View> views = new ArrayList<>();
+
+  @Setup
+  public void setUp() {
+    VisibilityChecker visibilityChecker = new VisibilityChecker();
+    clock = new FakeClock();
+
+    observer = new ViewTreeObserver();
+    VisibilityTracker tracker = new VisibilityTracker(visibilityChecker, clock, interval(0));
+    watchViews(tracker, observer);
+
+    throttledObserver = new ViewTreeObserver();
+    VisibilityTracker throttledTracker = new VisibilityTracker(
+        visibilityChecker,
+        clock,
+        interval(100)
+    );
+    watchViews(throttledTracker, throttledObserver);
+
+    perViewObserver = new ViewTreeObserver();
+    for (int i = 0; i < trackedViews; i++) {
+      View view = new View(perViewObserver, 300, 250, false);
+      views.add(view);
+      perViewObserver.addOnPreDrawListener(new PerViewPreDrawListener(view, visibilityChecker));
+    }
+  }
+
+  private void watchViews(@NonNull VisibilityTracker tracker, @NonNull ViewTreeObserver observer) {
+    for (int i = 0; i < trackedViews; i++) {
+      View view = new View(observer, 300, 250, false);
+      views.add(view);
+      tracker.watch(view, ViewabilityCriteria.create(50, 1000), new VisibilityListener() {
+        @Override
+        public void onVisible() {
+        }
+      });
+    }
+  }
+
+  @Benchmark
+  public boolean perViewListeners() {
+    clock.now += FRAME_DURATION_IN_MILLIS;
+    return perViewObserver.dispatchOnPreDraw();
+  }
+
+  @Benchmark
+  public boolean sharedListener() {
+    clock.now += FRAME_DURATION_IN_MILLIS;
+    return observer.dispatchOnPreDraw();
+  }
+
+  @Benchmark
+  public boolean sharedThrottledListener() {
+    clock.now += FRAME_DURATION_IN_MILLIS;
+    return throttledObserver.dispatchOnPreDraw();
+  }
+
+  @NonNull
+  private static BuildConfigWrapper interval(final int intervalInMillis) {
+    return new BuildConfigWrapper() {
+      @Override
+      public int getVisibilityCheckIntervalInMillis() {
+        return intervalInMillis;
+      }
+    };
+  }
+
+  private static class FakeClock implements Clock {
+
+    private long now = 0;
+
+    @Override
+    public long getCurrentTimeInMillis() {
+      return now;
+    }
+  }
+
+  /**
+   * Listener of the former tracker, checking its own view on every frame.
+   */
+  private static class PerViewPreDrawListener implements OnPreDrawListener {
+
+    @NonNull
+    private final Reference<View> trackedViewRef;
+
+    @NonNull
+    private final VisibilityChecker visibilityChecker;
+
+    @Nullable
+    private volatile VisibilityListener listener = new VisibilityListener() {
+      @Override
+      public void onVisible() {
+      }
+    };
+
+    private PerViewPreDrawListener(
+        @NonNull View view,
+        @NonNull VisibilityChecker visibilityChecker
+    ) {
+      this.trackedViewRef = new WeakReference<>(view);
+      this.visibilityChecker = visibilityChecker;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+      View trackedView = trackedViewRef.get();
+      if (trackedView != null && visibilityChecker.isVisible(trackedView)) {
+        VisibilityListener listener = this.listener;
+        if (listener != null) {
+          listener.onVisible();
+        }
+      }
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.bid;
+
+import com.criteo.publisher.EpochClock;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Number of impression IDs generated per second, an ID being generated for each requested slot.
+ * The contended variants reproduce several ad units being requested at the same time.
+ * <p>
+ * The <code>uuidFormat</code> benchmarks reproduce the former implementation based on
+ * {@link UUID#randomUUID()} and {@link String#format(String, Object...)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class UniqueIdGeneratorBenchmark {
+
+  private final UniqueIdGenerator generator = new UniqueIdGenerator(new EpochClock());
+
+  @Benchmark
+  public String generateId() {
+    return generator.generateId();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String generateIdContended() {
+    return generator.generateId();
+  }
+
+  @Benchmark
+  public String uuidFormat() {
+    return generateUuidBasedId();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String uuidFormatContended() {
+    return generateUuidBasedId();
+  }
+
+  private static String generateUuidBasedId() {
+    UUID uuid = UUID.randomUUID();
+    long timeInSecond = System.currentTimeMillis() / 1000;
+    long msb = (timeInSecond << 32) | (uuid.getMostSignificantBits() & 0xFFFFFFFFL);
+    return String.format("%016x%016x", msb, uuid.getLeastSignificantBits());
+  }
+
+}
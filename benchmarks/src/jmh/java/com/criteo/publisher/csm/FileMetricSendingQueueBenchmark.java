@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Operations on the file backed queue of metrics waiting to be sent to CSM.
+ * <p>
+ * The queue is filled with the given number of metrics beforehand. Offering and then polling a
+ * metric keeps this size stable across invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class FileMetricSendingQueueBenchmark {
+
+  /**
+   * Number of metrics sent to CSM in one request.
+   */
+  private static final int BATCH_SIZE = 24;
+
+  @Param({"10", "500"})
+  public int queueSize;
+
+  private File queueFile;
+
+  private FileMetricSendingQueue queue;
+
+  private Metric metric;
+
+  @Setup
+  public void setUp() throws IOException {
+    queueFile = File.createTempFile("csm-queue", ".queue");
+    if (!queueFile.delete()) {
+      throw new IOException("Could not prepare queue file " + queueFile);
+    }
+
+    MetricParser parser = new MetricParser(new JsonSerializer(BenchmarkFixtures.createGson()));
+    queue = new FileMetricSendingQueue(new TempFileQueueFactory(queueFile), parser);
+    metric = MetricParserBenchmark.newMetric("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c");
+
+    for (int i = 0; i < queueSize; i++) {
+      queue.offer(metric);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    queueFile.delete();
+  }
+
+  @Benchmark
+  public List<Metric> offerThenPoll() {
+    queue.offer(metric);
+    return queue.poll(1);
+  }
+
+  @Benchmark
+  public List<Metric> offerThenPollBatch() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      queue.offer(metric);
+    }
+    return queue.poll(BATCH_SIZE);
+  }
+
+  @Benchmark
+  public List<Metric> offerThenPeekAndCommitBatch() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      queue.offer(metric);
+    }
+    List<Metric> metrics = queue.peek(BATCH_SIZE);
+    queue.commit();
+    return metrics;
+  }
+
+  @Benchmark
+  public int getTotalSize() {
+    return queue.getTotalSize();
+  }
+
+  private static class TempFileQueueFactory extends MetricQueueFileFactory {
+
+    @NonNull
+    private final File file;
+
+    TempFileQueueFactory(@NonNull File file) {
+      super(null, new BuildConfigWrapper());
+      this.file = file;
+    }
+
+    @Override
+    File getQueueFile() {
+      return file;
+    }
+  }
+
+}
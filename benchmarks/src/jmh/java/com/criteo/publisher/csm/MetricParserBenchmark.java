@@ -0,0 +1,121 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Encoding and decoding of a CSM metric, done each time a metric is updated or moved to the
+ * sending queue.
+ * <p>
+ * The <code>binary</code> format is the one written by the {@link MetricParser}, while the
+ * <code>json</code> one is the legacy format, still read for migration. The size in bytes of an
+ * encoded metric is reported, for each iteration, by the <code>encodedBytes</code> counter of the
+ * write benchmark (its aggregated score is the sum over all iterations).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MetricParserBenchmark {
+
+  @Param({"binary", "json"})
+  public String format;
+
+  private MetricParser parser;
+
+  private JsonSerializer serializer;
+
+  private Metric metric;
+
+  private ByteArrayOutputStream outputStream;
+
+  private byte[] metricBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    serializer = new JsonSerializer(BenchmarkFixtures.createGson());
+    parser = new MetricParser(serializer);
+    metric = newMetric("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c");
+    outputStream = new ByteArrayOutputStream(1024);
+
+    encode(metric, outputStream);
+    metricBytes = outputStream.toByteArray();
+  }
+
+  @Benchmark
+  public int write(EncodedSize encodedSize) throws IOException {
+    outputStream.reset();
+    encode(metric, outputStream);
+    encodedSize.encodedBytes = outputStream.size();
+    return outputStream.size();
+  }
+
+  @Benchmark
+  public Metric read() throws IOException {
+    return parser.read(new ByteArrayInputStream(metricBytes));
+  }
+
+  private void encode(Metric metric, ByteArrayOutputStream outputStream) throws IOException {
+    if ("json".equals(format)) {
+      serializer.write(metric, outputStream);
+    } else {
+      parser.write(metric, outputStream);
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class EncodedSize {
+
+    public long encodedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      encodedBytes = 0;
+    }
+  }
+
+  /**
+   * Metric of a bid that was consumed and is ready to be sent.
+   */
+  static Metric newMetric(String impressionId) {
+    return Metric.builder(impressionId)
+        .setRequestGroupId("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1d")
+        .setProfileId(235)
+        .setCdbCallStartTimestamp(1594800000000L)
+        .setCdbCallEndTimestamp(1594800000120L)
+        .setElapsedTimestamp(1594800004200L)
+        .setReadyToSend(true)
+        .build();
+  }
+
+}
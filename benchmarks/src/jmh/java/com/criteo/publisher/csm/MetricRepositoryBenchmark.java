@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Operations of the bounded metric repository, as done on each bid lifecycle event.
+ * <p>
+ * The repository is filled beforehand with the given number of stored metrics, which is above the
+ * bound of the repository for the biggest values: updates of unknown metrics are then skipped.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MetricRepositoryBenchmark {
+
+  @Param({"100", "10000"})
+  public int storedMetrics;
+
+  private File directory;
+
+  private MetricRepository repository;
+
+  private int nextId = 0;
+
+  private long nextTimestamp = 0;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("csm-repository").toFile();
+
+    MetricParser parser = new MetricParser(new JsonSerializer(BenchmarkFixtures.createGson()));
+    MetricRepository logRepository = new LogMetricRepository(directory, parser);
+    for (int i = 0; i < storedMetrics; i++) {
+      logRepository.addOrUpdateById(storedId(i), new MetricUpdater() {
+        @Override
+        public void update(@NonNull Metric.Builder metricBuilder) {
+          metricBuilder.setCdbCallStartTimestamp(0L);
+        }
+      });
+    }
+
+    repository = new BoundedMetricRepository(logRepository, new BuildConfigWrapper());
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  public void updateStoredMetric() {
+    final long timestamp = nextTimestamp++;
+    repository.addOrUpdateById(storedId(nextId++ % storedMetrics), new MetricUpdater() {
+      @Override
+      public void update(@NonNull Metric.Builder metricBuilder) {
+        metricBuilder.setCdbCallEndTimestamp(timestamp);
+      }
+    });
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return repository.contains(storedId(nextId++ % storedMetrics));
+  }
+
+  @Benchmark
+  public int getTotalSize() {
+    return repository.getTotalSize();
+  }
+
+  @NonNull
+  private static String storedId(int index) {
+    return "5f0e3c2a9b1d4e7f8a6c0b2d" + (10000000 + index);
+  }
+
+}
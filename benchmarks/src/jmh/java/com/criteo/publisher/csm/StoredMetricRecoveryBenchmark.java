@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Work done at SDK startup to recover the metrics stored by previous sessions, before any of them
+ * is moved in the sending queue.
+ * <p>
+ * Each invocation opens the repository as a fresh process would, and then either reads all the
+ * stored metrics, as the former recovery did, or only lists their IDs, as the paged recovery does.
+ * The difference of time is the startup time saved for the given backlog. Run with
+ * <code>-prof gc</code> to compare the allocated memory (<code>gc.alloc.rate.norm</code>): the
+ * former recovery also holds all the read metrics at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class StoredMetricRecoveryBenchmark {
+
+  /**
+   * Same segment size as the repository of the SDK.
+   */
+  private static final int MAX_SEGMENT_SIZE = 32 * 1024;
+
+  @Param({"100", "2000"})
+  public int storedMetrics;
+
+  private File directory;
+
+  private MetricParser parser;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("csm-recovery").toFile();
+    parser = new MetricParser(new JsonSerializer(BenchmarkFixtures.createGson()));
+
+    MetricRepository repository = new LogMetricRepository(directory, parser);
+    for (int i = 0; i < storedMetrics; i++) {
+      final long timestamp = i;
+      repository.addOrUpdateById("5f0e3c2a9b1d4e7f8a6c0b2d" + (10000000 + i), new MetricUpdater() {
+        @Override
+        public void update(@NonNull Metric.Builder metricBuilder) {
+          metricBuilder.setCdbCallStartTimestamp(timestamp);
+          metricBuilder.setCdbCallEndTimestamp(timestamp + 100L);
+          metricBuilder.setProfileId(235);
+        }
+      });
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  public Collection<Metric> readAllStoredMetrics() {
+    MetricLog log = new MetricLog(directory, MAX_SEGMENT_SIZE);
+    try {
+      return new LogMetricRepository(log, parser, 0, null, null).getAllStoredMetrics();
+    } finally {
+      log.close();
+    }
+  }
+
+  @Benchmark
+  public Collection<String> listAllStoredIds() {
+    MetricLog log = new MetricLog(directory, MAX_SEGMENT_SIZE);
+    try {
+      return new LogMetricRepository(log, parser, 0, null, null).getAllStoredIds();
+    } finally {
+      log.close();
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.headerbidding;
+
+import com.criteo.publisher.model.AdSize;
+import com.criteo.publisher.model.AdUnit;
+import com.criteo.publisher.model.BannerAdUnit;
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.NativeAdUnit;
+import com.criteo.publisher.model.Slot;
+import com.criteo.publisher.util.JsonSerializer;
+import com.criteo.publisher.util.StubAndroidUtil;
+import com.criteo.publisher.util.StubDeviceUtil;
+import com.google.android.gms.ads.doubleclick.PublisherAdRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Enrichment of a Google Ad Manager request with a banner or a native bid. Native bids are the
+ * most expensive as each of their assets is encoded in the custom targeting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class DfpHeaderBiddingBenchmark {
+
+  @Param({"banner", "native"})
+  public String bidType;
+
+  private DfpHeaderBidding headerBidding;
+
+  private AdUnit adUnit;
+
+  private Slot slot;
+
+  @Setup
+  public void setUp() throws IOException {
+    headerBidding = new DfpHeaderBidding(new StubAndroidUtil(), new StubDeviceUtil());
+
+    // First slot of the fixture is a banner, the second one is a native
+    JsonSerializer serializer = new JsonSerializer(BenchmarkFixtures.createGson());
+    byte[] json = BenchmarkFixtures.cdbResponseJson(2).getBytes(Charset.forName("UTF-8"));
+    CdbResponse response = serializer.read(CdbResponse.class, new ByteArrayInputStream(json));
+
+    switch (bidType) {
+      case "banner":
+        slot = response.getSlots().get(0);
+        adUnit = new BannerAdUnit(slot.getPlacementId(), new AdSize(320, 50));
+        break;
+      case "native":
+        slot = response.getSlots().get(1);
+        adUnit = new NativeAdUnit(slot.getPlacementId());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown bid type: " + bidType);
+    }
+  }
+
+  @Benchmark
+  public PublisherAdRequest.Builder enrichBid() {
+    PublisherAdRequest.Builder builder = new PublisherAdRequest.Builder();
+    headerBidding.enrichBid(builder, adUnit, slot);
+    return builder;
+  }
+
+}
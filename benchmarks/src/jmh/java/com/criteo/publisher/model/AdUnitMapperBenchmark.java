@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model;
+
+import com.criteo.publisher.util.StubAndroidUtil;
+import com.criteo.publisher.util.StubDeviceUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Mapping of the ad units given by the publisher at prefetch, mixing banners, interstitials and
+ * natives.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AdUnitMapperBenchmark {
+
+  @Param({"1", "8", "64"})
+  public int adUnitCount;
+
+  private AdUnitMapper adUnitMapper;
+
+  private List<AdUnit> adUnits;
+
+  @Setup
+  public void setUp() {
+    adUnitMapper = new AdUnitMapper(new StubAndroidUtil(), new StubDeviceUtil());
+
+    adUnits = new ArrayList<>();
+    for (int i = 0; i < adUnitCount; i++) {
+      switch (i % 3) {
+        case 0:
+          adUnits.add(new BannerAdUnit("/140800857/banner" + i, new AdSize(320, 50)));
+          break;
+        case 1:
+          adUnits.add(new InterstitialAdUnit("/140800857/interstitial" + i));
+          break;
+        default:
+          adUnits.add(new NativeAdUnit("/140800857/native" + i));
+      }
+    }
+  }
+
+  @Benchmark
+  public List<List<CacheAdUnit>> mapToChunks() {
+    return adUnitMapper.mapToChunks(adUnits);
+  }
+
+}
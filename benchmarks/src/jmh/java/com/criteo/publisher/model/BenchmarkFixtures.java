@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.util.CustomAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Payloads shared by benchmarks, shaped like the ones exchanged with CDB.
+ */
+public final class BenchmarkFixtures {
+
+  private static final String DISPLAY_URL = "https://rdi.eu.criteo.com/delivery/r/ajs.php?did="
+      + "5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c&u=%7Cx0SNq8nTBgjNcKvXGJsmQr8vgEmPvWJOhKkqPfx7vNs%3D%7C"
+      + "&c1=ZDGw4l7wNkXgCaBLmkQhFq6rNuX0m1R2Jtpl4yP9y2c";
+
+  private static final String NATIVE_JSON = "{"
+      + "\"products\":[{"
+      + "\"title\":\"Sneakers\",\"description\":\"Running shoes\",\"price\":\"89.99 €\","
+      + "\"clickUrl\":\"https://cat.eu.criteo.com/delivery/ckn.php?cppv=3&cpp=product\","
+      + "\"callToAction\":\"Buy now\","
+      + "\"image\":{\"url\":\"https://pix.eu.criteo.net/img/img?c=3&cq=256&h=300&w=300\"}"
+      + "}],"
+      + "\"advertiser\":{\"domain\":\"example.com\",\"description\":\"Example\","
+      + "\"logoClickUrl\":\"https://www.example.com\","
+      + "\"logo\":{\"url\":\"https://static.criteo.net/design/logo.png\"}},"
+      + "\"privacy\":{\"optoutClickUrl\":\"https://privacy.us.criteo.com/adcenter\","
+      + "\"optoutImageUrl\":\"https://static.criteo.net/flash/icon/nai_small.png\","
+      + "\"longLegalText\":\"\"},"
+      + "\"impressionPixels\":["
+      + "{\"url\":\"https://cat.eu.criteo.com/delivery/lgn.php?cppv=3&cpp=pixel1\"},"
+      + "{\"url\":\"https://cat.eu.criteo.com/delivery/lgn.php?cppv=3&cpp=pixel2\"}"
+      + "]"
+      + "}";
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * Gson configured like the one of the SDK.
+   */
+  @NonNull
+  public static Gson createGson() {
+    return new GsonBuilder()
+        .registerTypeAdapterFactory(CustomAdapterFactory.create())
+        .create();
+  }
+
+  /**
+   * New banner bid, as it would be read from a CDB response.
+   */
+  @NonNull
+  public static Slot newBannerSlot(
+      @NonNull String placementId,
+      int width,
+      int height,
+      int ttlInSeconds
+  ) {
+    return new Slot(
+        "5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c",
+        placementId,
+        "1.25",
+        "EUR",
+        width,
+        height,
+        DISPLAY_URL,
+        ttlInSeconds,
+        null
+    );
+  }
+
+  /**
+   * JSON of a CDB response with the given number of slots. Every other slot is a native one.
+   */
+  @NonNull
+  public static String cdbResponseJson(int slotCount) {
+    StringBuilder json = new StringBuilder("{\"slots\":[");
+    for (int i = 0; i < slotCount; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+
+      json.append("{\"impId\":\"5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a").append(10 + i).append("\",")
+          .append("\"cpm\":\"1.25\",\"currency\":\"EUR\",\"ttl\":3600,");
+
+      if (i % 2 == 0) {
+        json.append("\"placementId\":\"/140800857/banner").append(i).append("\",")
+            .append("\"width\":320,\"height\":50,")
+            .append("\"displayUrl\":\"").append(DISPLAY_URL).append("\"}");
+      } else {
+        json.append("\"placementId\":\"/140800857/native").append(i).append("\",")
+            .append("\"width\":2,\"height\":2,")
+            .append("\"native\":").append(NATIVE_JSON).append('}');
+      }
+    }
+    return json.append("],\"timeToNextCall\":0}").toString();
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model;
+
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding of CDB responses, half of their slots being native ones.
+ * <p>
+ * <code>fromJson</code> decodes an already parsed {@link JSONObject}, while
+ * <code>readFromStream</code> decodes the raw response as done by the network layer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class CdbResponseBenchmark {
+
+  @Param({"1", "8"})
+  public int slotCount;
+
+  private JsonSerializer serializer;
+
+  private JSONObject json;
+
+  private byte[] jsonBytes;
+
+  @Setup
+  public void setUp() throws JSONException {
+    serializer = new JsonSerializer(BenchmarkFixtures.createGson());
+
+    String jsonString = BenchmarkFixtures.cdbResponseJson(slotCount);
+    json = new JSONObject(jsonString);
+    jsonBytes = jsonString.getBytes(Charset.forName("UTF-8"));
+  }
+
+  @Benchmark
+  public CdbResponse fromJson() {
+    return CdbResponse.fromJson(json);
+  }
+
+  @Benchmark
+  public CdbResponse readFromStream() throws IOException {
+    return serializer.read(CdbResponse.class, new ByteArrayInputStream(jsonBytes));
+  }
+
+}
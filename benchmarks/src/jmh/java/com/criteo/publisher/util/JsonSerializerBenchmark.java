@@ -0,0 +1,174 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util;
+
+import com.criteo.publisher.csm.Metric;
+import com.criteo.publisher.model.BenchmarkFixtures;
+import com.criteo.publisher.model.CdbRequest;
+import com.criteo.publisher.model.RemoteConfigResponse;
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Round trips (write then read) of the payloads serialized on hot paths of the SDK.
+ * <p>
+ * The <code>streamReaderWriter</code> benchmark reproduces the former implementation of
+ * {@link JsonSerializer} that allocated a new {@link OutputStreamWriter} or
+ * {@link InputStreamReader} on each call. Run with the <code>gc</code> profiler and compare their
+ * <code>gc.alloc.rate.norm</code> to get the number of bytes allocated per round trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class JsonSerializerBenchmark {
+
+  private static final String METRIC_JSON = "{"
+      + "\"cdbCallStartTimestamp\":1594800000000,"
+      + "\"cdbCallEndTimestamp\":1594800000120,"
+      + "\"cdbCallTimeout\":false,"
+      + "\"cachedBidUsed\":true,"
+      + "\"elapsedTimestamp\":1594800004200,"
+      + "\"impressionId\":\"5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c\","
+      + "\"requestGroupId\":\"5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1d\","
+      + "\"profileId\":235,"
+      + "\"readyToSend\":true"
+      + "}";
+
+  private static final String CDB_REQUEST_JSON = "{"
+      + "\"publisher\":{\"bundleId\":\"com.example.app\",\"cpId\":\"B-056946\"},"
+      + "\"user\":{"
+      + "\"deviceId\":\"38400000-8cf0-11bd-b23e-10b96e40000d\","
+      + "\"deviceIdType\":\"gaid\","
+      + "\"deviceOs\":\"android\","
+      + "\"uspIab\":\"1YNN\""
+      + "},"
+      + "\"sdkVersion\":\"3.10.0\","
+      + "\"profileId\":235,"
+      + "\"gdprConsent\":{\"consentData\":\"BOnz82JOnz82JABABBFRCPgAAAAFuABABAA\","
+      + "\"gdprApplies\":true,\"version\":2},"
+      + "\"slots\":["
+      + "{\"impId\":\"5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c\",\"placementId\":\"/140800857/banner\","
+      + "\"sizes\":[\"320x50\"]},"
+      + "{\"impId\":\"5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1e\",\"placementId\":\"/140800857/inter\","
+      + "\"interstitial\":true,\"sizes\":[\"360x640\"]},"
+      + "{\"impId\":\"5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1f\",\"placementId\":\"/140800857/native\","
+      + "\"isNative\":true,\"sizes\":[\"2x2\"]}"
+      + "]"
+      + "}";
+
+  private static final String REMOTE_CONFIG_JSON = "{"
+      + "\"killSwitch\":false,"
+      + "\"AndroidDisplayUrlMacro\":\"%%displayUrl%%\","
+      + "\"AndroidAdTagUrlMode\":\"<html><body style='text-align:center; margin:0px; "
+      + "padding:0px; horizontal-align:center;'><script src='%%displayUrl%%'></script>"
+      + "</body></html>\","
+      + "\"AndroidAdTagDataMacro\":\"%%adTagData%%\","
+      + "\"AndroidAdTagDataMode\":\"<html><body style='text-align:center; margin:0px; "
+      + "padding:0px; horizontal-align:center;'><script>%%adTagData%%</script></body></html>\","
+      + "\"csmEnabled\":true,"
+      + "\"requestCompressionEnabled\":true"
+      + "}";
+
+  @Param({"metric", "cdbRequest", "remoteConfig"})
+  public String payload;
+
+  private Gson gson;
+
+  private JsonSerializer serializer;
+
+  private Class<?> payloadClass;
+
+  private Object value;
+
+  private ReusableByteArrayOutputStream outputStream;
+
+  @Setup
+  public void setUp() throws IOException {
+    gson = BenchmarkFixtures.createGson();
+    serializer = new JsonSerializer(gson);
+    outputStream = new ReusableByteArrayOutputStream();
+
+    String json;
+    switch (payload) {
+      case "metric":
+        payloadClass = Metric.class;
+        json = METRIC_JSON;
+        break;
+      case "cdbRequest":
+        payloadClass = CdbRequest.class;
+        json = CDB_REQUEST_JSON;
+        break;
+      case "remoteConfig":
+        payloadClass = RemoteConfigResponse.class;
+        json = REMOTE_CONFIG_JSON;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown payload: " + payload);
+    }
+
+    InputStream inputStream = new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")));
+    value = serializer.read(payloadClass, inputStream);
+  }
+
+  @Benchmark
+  public Object jsonSerializer() throws IOException {
+    outputStream.reset();
+    serializer.write(value, outputStream);
+    return serializer.read(payloadClass, outputStream.toInputStream());
+  }
+
+  @Benchmark
+  public Object streamReaderWriter() throws IOException {
+    outputStream.reset();
+    OutputStreamWriter writer = new OutputStreamWriter(outputStream);
+    gson.toJson(value, writer);
+    writer.flush();
+
+    return gson.fromJson(new InputStreamReader(outputStream.toInputStream()), payloadClass);
+  }
+
+  /**
+   * Output stream whose content can be read back without copying it, so the round trip does not
+   * allocate more than the serializer itself.
+   */
+  private static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+    ReusableByteArrayOutputStream() {
+      super(4096);
+    }
+
+    InputStream toInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util;
+
+import android.content.res.Configuration;
+
+/**
+ * {@link AndroidUtil} of a device in portrait, without any Android context.
+ */
+public class StubAndroidUtil extends AndroidUtil {
+
+  public StubAndroidUtil() {
+    super(null);
+  }
+
+  @Override
+  public int getOrientation() {
+    return Configuration.ORIENTATION_PORTRAIT;
+  }
+
+  @Override
+  public int dpToPixel(int dp) {
+    return dp * 3;
+  }
+
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util;
+
+/**
+ * {@link DeviceUtil} of a 360x640 phone, without any Android context.
+ */
+public class StubDeviceUtil extends DeviceUtil {
+
+  public StubDeviceUtil() {
+    super(null);
+    setScreenSize(360, 640);
+  }
+
+  @Override
+  public boolean isTablet() {
+    return false;
+  }
+
+}
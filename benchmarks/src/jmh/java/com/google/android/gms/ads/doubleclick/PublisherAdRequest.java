@@ -0,0 +1,41 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.google.android.gms.ads.doubleclick;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal stub of the Google Ad Manager request, only providing what the SDK uses for header
+ * bidding.
+ */
+public final class PublisherAdRequest {
+
+  private PublisherAdRequest() {
+  }
+
+  public static final class Builder {
+
+    private final Map<String, String> customTargeting = new HashMap<>();
+
+    public Builder addCustomTargeting(String key, String value) {
+      customTargeting.put(key, value);
+      return this;
+    }
+  }
+
+}
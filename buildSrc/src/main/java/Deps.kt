@@ -121,6 +121,13 @@ object Deps {
     const val JUnit = "junit:junit:$version"
   }
 
+  object Jmh {
+    private const val version = "1.23"
+
+    const val Core = "org.openjdk.jmh:jmh-core:$version"
+    const val GeneratorBytecode = "org.openjdk.jmh:jmh-generator-bytecode:$version"
+  }
+
   object Json {
     private const val version = "20200518"
 
@@ -42,7 +42,6 @@ import static org.mockito.Mockito.when;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.cache.SdkCache;
-import com.criteo.publisher.csm.MetricSendingQueueConsumer;
 import com.criteo.publisher.integration.IntegrationRegistry;
 import com.criteo.publisher.mock.MockBean;
 import com.criteo.publisher.mock.MockedDependenciesRule;
@@ -72,6 +71,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import javax.inject.Inject;
 import org.junit.Before;
@@ -99,6 +99,9 @@ public class BidManagerFunctionalTest {
   @Mock
   private SdkCache cache;
 
+  @Mock
+  private ScheduledExecutorService refreshExecutor;
+
   @MockBean
   private Config config;
 
@@ -117,9 +120,6 @@ public class BidManagerFunctionalTest {
   @SpyBean
   private IntegrationRegistry integrationRegistry;
 
-  @MockBean
-  private MetricSendingQueueConsumer metricSendingQueueConsumer;
-
   @Inject
   private AdvertisingInfo advertisingInfo;
 
@@ -405,7 +405,7 @@ public class BidManagerFunctionalTest {
     Slot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit);
 
     assertEquals(slot, bid);
-    verify(cache).remove(cacheAdUnit);
+    verify(cache).remove(cacheAdUnit, slot);
     assertListenerIsNotifyForBidConsumed(cacheAdUnit, bid);
   }
 
@@ -544,7 +544,7 @@ public class BidManagerFunctionalTest {
     bidManager.getBidForAdUnitAndPrefetch(adUnit);
     waitForIdleState();
 
-    verify(bidLifecycleListener).onCdbCallStarted(any());
+    verify(bidLifecycleListener).onCdbCallStarted(any(), any());
     verify(bidLifecycleListener).onCdbCallFailed(any(), any());
   }
 
@@ -632,7 +632,7 @@ public class BidManagerFunctionalTest {
     Slot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit);
 
     assertNull(bid);
-    verify(cache, never()).remove(cacheAdUnit);
+    verify(cache, never()).remove(eq(cacheAdUnit), any());
     assertListenerIsNotNotifyForBidConsumed();
   }
 
@@ -745,7 +745,6 @@ public class BidManagerFunctionalTest {
     clearInvocations(cache);
     clearInvocations(api);
     clearInvocations(bidLifecycleListener);
-    clearInvocations(metricSendingQueueConsumer);
 
     // Given a second fetch, without any clock change
     Slot slot = givenMockedCdbRespondingSlot();
@@ -811,15 +810,14 @@ public class BidManagerFunctionalTest {
       assertEquals(requestedAdUnits, getRequestedAdUnits(cdb));
       return true;
     }), any());
-    verify(bidLifecycleListener).onCdbCallStarted(any());
+    verify(bidLifecycleListener).onCdbCallStarted(any(), any());
     verify(bidLifecycleListener).onCdbCallFinished(any(), any());
-    verify(metricSendingQueueConsumer).sendMetricBatch();
   }
 
   private void assertShouldNotCallCdbAndNotPopulateCache() throws Exception {
     verify(cache, never()).add(any());
     verify(api, never()).loadCdb(any(), any());
-    verify(bidLifecycleListener, never()).onCdbCallStarted(any());
+    verify(bidLifecycleListener, never()).onCdbCallStarted(any(), any());
     verify(bidLifecycleListener, never()).onCdbCallFinished(any(), any());
     verify(bidLifecycleListener, never()).onCdbCallFailed(any(), any());
   }
@@ -844,6 +842,7 @@ public class BidManagerFunctionalTest {
     when(slot.getTtl()).thenReturn(60);
 
     when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot);
+    when(cache.remove(cacheAdUnit, slot)).thenReturn(true);
     return slot;
   }
 
@@ -854,7 +853,9 @@ public class BidManagerFunctionalTest {
     when(slot.getTtl()).thenReturn(60);
     when(slot.isExpired(clock)).thenReturn(true);
 
-    when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot);
+    // Expired bids are evicted, so the next peek finds the next queued bid
+    when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot, (Slot) null);
+    when(cache.remove(cacheAdUnit, slot)).thenReturn(true);
 
     return slot;
   }
@@ -867,6 +868,7 @@ public class BidManagerFunctionalTest {
     when(slot.isExpired(clock)).thenReturn(false);
 
     when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot);
+    when(cache.remove(cacheAdUnit, slot)).thenReturn(true);
 
     return slot;
   }
@@ -882,6 +884,7 @@ public class BidManagerFunctionalTest {
     when(slot.isExpired(clock)).thenReturn(false);
 
     when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot);
+    when(cache.remove(cacheAdUnit, slot)).thenReturn(true);
   }
 
   @NonNull
@@ -891,7 +894,9 @@ public class BidManagerFunctionalTest {
     when(slot.getTtl()).thenReturn(60);
     when(slot.isExpired(clock)).thenReturn(true);
 
-    when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot);
+    // Expired bids are evicted, so the next peek finds the next queued bid
+    when(cache.peekAdUnit(cacheAdUnit)).thenReturn(slot, (Slot) null);
+    when(cache.remove(cacheAdUnit, slot)).thenReturn(true);
 
     return slot;
   }
@@ -1002,7 +1007,7 @@ public class BidManagerFunctionalTest {
         dependencyProvider.provideAdUnitMapper(),
         dependencyProvider.provideBidRequestSender(),
         dependencyProvider.provideBidLifecycleListener(),
-        dependencyProvider.provideMetricSendingQueueConsumer()
+        refreshExecutor
     );
   }
 
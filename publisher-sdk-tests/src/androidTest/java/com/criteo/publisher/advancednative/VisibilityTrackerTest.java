@@ -25,7 +25,9 @@ import static org.mockito.Mockito.when;
 
 import android.view.View;
 import androidx.test.rule.ActivityTestRule;
+import com.criteo.publisher.Clock;
 import com.criteo.publisher.test.activity.DummyActivity;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -42,14 +44,26 @@ public class VisibilityTrackerTest {
   @Mock
   private VisibilityChecker visibilityChecker;
 
+  @Mock
+  private Clock clock;
+
+  @Mock
+  private BuildConfigWrapper buildConfigWrapper;
+
   private VisibilityTracker tracker;
 
+  private final ViewabilityCriteria criteria = ViewabilityCriteria.create(0, 0);
+
   @Before
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
 
     uiHelper = new UiHelper(activityRule);
-    tracker = new VisibilityTracker(visibilityChecker);
+
+    // Without throttling, all drawn frames are checked
+    when(buildConfigWrapper.getVisibilityCheckIntervalInMillis()).thenReturn(0);
+
+    tracker = new VisibilityTracker(visibilityChecker, clock, buildConfigWrapper);
   }
 
   @Test
@@ -57,9 +71,9 @@ public class VisibilityTrackerTest {
     View view = uiHelper.createView();
     VisibilityListener listener = mock(VisibilityListener.class);
 
-    when(visibilityChecker.isVisible(view)).thenReturn(true);
+    when(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f);
 
-    tracker.watch(view, listener);
+    tracker.watch(view, criteria, listener);
     uiHelper.drawViews(view);
 
     verify(listener, atLeastOnce()).onVisible();
@@ -70,9 +84,9 @@ public class VisibilityTrackerTest {
     View view = uiHelper.createView();
     VisibilityListener listener = mock(VisibilityListener.class);
 
-    when(visibilityChecker.isVisible(view)).thenReturn(false);
+    when(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(0f);
 
-    tracker.watch(view, listener);
+    tracker.watch(view, criteria, listener);
     uiHelper.drawViews(view);
 
     verify(listener, never()).onVisible();
@@ -83,7 +97,7 @@ public class VisibilityTrackerTest {
     View view = uiHelper.createView();
     VisibilityListener listener = mock(VisibilityListener.class);
 
-    tracker.watch(view, listener);
+    tracker.watch(view, criteria, listener);
 
     verify(listener, never()).onVisible();
     verifyZeroInteractions(visibilityChecker);
@@ -96,11 +110,11 @@ public class VisibilityTrackerTest {
     VisibilityListener listener1 = mock(VisibilityListener.class);
     VisibilityListener listener2 = mock(VisibilityListener.class);
 
-    when(visibilityChecker.isVisible(view1)).thenReturn(true);
-    when(visibilityChecker.isVisible(view2)).thenReturn(true);
+    when(visibilityChecker.getVisibleAreaRatio(view1)).thenReturn(1f);
+    when(visibilityChecker.getVisibleAreaRatio(view2)).thenReturn(1f);
 
-    tracker.watch(view1, listener1);
-    tracker.watch(view2, listener2);
+    tracker.watch(view1, criteria, listener1);
+    tracker.watch(view2, criteria, listener2);
     uiHelper.drawViews(view1, view2);
 
     verify(listener1, atLeastOnce()).onVisible();
@@ -114,11 +128,11 @@ public class VisibilityTrackerTest {
     VisibilityListener listener1 = mock(VisibilityListener.class);
     VisibilityListener listener2 = mock(VisibilityListener.class);
 
-    when(visibilityChecker.isVisible(visibleView)).thenReturn(true);
-    when(visibilityChecker.isVisible(notVisibleView)).thenReturn(false);
+    when(visibilityChecker.getVisibleAreaRatio(visibleView)).thenReturn(1f);
+    when(visibilityChecker.getVisibleAreaRatio(notVisibleView)).thenReturn(0f);
 
-    tracker.watch(visibleView, listener1);
-    tracker.watch(notVisibleView, listener2);
+    tracker.watch(visibleView, criteria, listener1);
+    tracker.watch(notVisibleView, criteria, listener2);
     uiHelper.drawViews(visibleView, notVisibleView);
 
     verify(listener1, atLeastOnce()).onVisible();
@@ -131,10 +145,10 @@ public class VisibilityTrackerTest {
     VisibilityListener listener1 = mock(VisibilityListener.class);
     VisibilityListener listener2 = mock(VisibilityListener.class);
 
-    when(visibilityChecker.isVisible(view)).thenReturn(true);
+    when(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f);
 
-    tracker.watch(view, listener1);
-    tracker.watch(view, listener2);
+    tracker.watch(view, criteria, listener1);
+    tracker.watch(view, criteria, listener2);
     uiHelper.drawViews(view);
 
     verify(listener1, never()).onVisible();
@@ -69,6 +69,9 @@ public class CsmFunctionalTest {
   @Inject
   private IntegrationRegistry integrationRegistry;
 
+  @Inject
+  private MetricUploadScheduler metricUploadScheduler;
+
   @SpyBean
   private BuildConfigWrapper buildConfigWrapper;
 
@@ -97,18 +100,12 @@ public class CsmFunctionalTest {
     AtomicReference<String> firstImpressionId = new AtomicReference<>();
     AtomicReference<String> firstRequestGroupId = new AtomicReference<>();
 
-    // A third call is needed to trigger the sending of metrics to CSM. This is because,
-    // the execution of onBidConsumed() callback happens after the second call to CDB.
-    // An INTERSTITIAL AdUnit is set here on purpose to verify that the metric that is sent
-    // to CSM relates to BANNER_320_50, which is the one that was consumed and whose metric
-    // was pushed to the sending queue.
-    Criteo.getInstance().getBidResponse(TestAdUnits.INTERSTITIAL);
-    waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
 
-      // There is only one expected because the second one was not ready when sending was triggered.
+      // The bid of INTERSTITIAL is not consumed, so its metric is not ready to be sent.
       assertEquals(1, request.getFeedbacks().size());
       MetricRequestFeedback feedback = request.getFeedbacks().get(0);
       assertItRepresentsConsumedBid(feedback);
@@ -121,6 +118,7 @@ public class CsmFunctionalTest {
     clearInvocations(api);
     Criteo.getInstance().getBidResponse(TestAdUnits.BANNER_320_50);
     waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
@@ -148,13 +146,7 @@ public class CsmFunctionalTest {
     Criteo.getInstance().getBidResponse(TestAdUnits.INTERSTITIAL);
     waitForIdleState();
 
-    // A third call is needed to trigger the sending of metrics to CSM. This is because,
-    // the execution of onBidConsumed() callback happens after the second call to CDB.
-    // An BANNER_320_50 AdUnit is set here on purpose to verify that the metric that is sent
-    // to CSM relates to INTERSTITIAL, which is the one that was consumed and whose metric
-    // was pushed to the sending queue.
-    Criteo.getInstance().getBidResponse(TestAdUnits.BANNER_320_50);
-    waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
@@ -173,8 +165,7 @@ public class CsmFunctionalTest {
     givenInitializedCriteo(TestAdUnits.BANNER_320_50, TestAdUnits.INTERSTITIAL_UNKNOWN);
     waitForIdleState();
 
-    Criteo.getInstance().getBidResponse(TestAdUnits.INTERSTITIAL_UNKNOWN);
-    waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
@@ -195,8 +186,7 @@ public class CsmFunctionalTest {
     givenInitializedCriteo(TestAdUnits.BANNER_320_50, TestAdUnits.INTERSTITIAL);
     waitForIdleState();
 
-    Criteo.getInstance().getBidResponse(TestAdUnits.INTERSTITIAL_UNKNOWN);
-    waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
@@ -228,8 +218,7 @@ public class CsmFunctionalTest {
 
     when(buildConfigWrapper.getNetworkTimeoutInMillis()).thenCallRealMethod();
 
-    Criteo.getInstance().getBidResponse(TestAdUnits.INTERSTITIAL_UNKNOWN);
-    waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
@@ -260,6 +249,7 @@ public class CsmFunctionalTest {
     when(clock.getCurrentTimeInMillis()).thenReturn(0L);
     Criteo criteo = givenInitializedCriteo(TestAdUnits.BANNER_320_50, TestAdUnits.INTERSTITIAL);
     waitForIdleState();
+    triggerMetricUpload();
 
     // Consumed and not expired
     criteo.getBidResponse(TestAdUnits.INTERSTITIAL);
@@ -288,11 +278,11 @@ public class CsmFunctionalTest {
     waitForIdleState();
     doCallRealMethod().when(api).loadCdb(any(), any());
 
-    // CSM endpoint works again: on next bid request, there should metrics for all previous bids.
+    // CSM endpoint works again: on next upload, there should metrics for all previous bids, even if
+    // the upload is still backing off after the previous failures.
     clearInvocations(api);
     doCallRealMethod().when(api).postCsm(any());
-    criteo.getBidResponse(TestAdUnits.BANNER_UNKNOWN);
-    waitForIdleState();
+    triggerMetricUpload();
 
     verify(api).postCsm(argThat(request -> {
       assertRequestHeaderIsExpected(request);
@@ -395,6 +385,12 @@ public class CsmFunctionalTest {
     assertFalse(feedback.getSlots().get(0).getCachedBidUsed());
   }
 
+  private void triggerMetricUpload() {
+    // Pending metrics are uploaded right away when the application goes in background
+    metricUploadScheduler.onApplicationStopped();
+    waitForIdleState();
+  }
+
   private void waitForIdleState() {
     mockedDependenciesRule.waitForIdleState();
   }
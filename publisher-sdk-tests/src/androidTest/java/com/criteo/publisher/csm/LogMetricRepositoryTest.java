@@ -34,6 +34,7 @@ import android.content.Context;
 import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
 import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -50,7 +51,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
-public class FileMetricRepositoryTest {
+public class LogMetricRepositoryTest {
 
   @Rule
   public MockedDependenciesRule mockedDependenciesRule = new MockedDependenciesRule();
@@ -58,7 +59,7 @@ public class FileMetricRepositoryTest {
   @Inject
   private Context context;
 
-  private MetricDirectory directory;
+  private File directory;
 
   @Inject
   private BuildConfigWrapper buildConfigWrapper;
@@ -66,7 +67,7 @@ public class FileMetricRepositoryTest {
   @Inject
   private MetricParser parser;
 
-  private FileMetricRepository repository;
+  private LogMetricRepository repository;
 
   @Before
   public void setUp() throws Exception {
@@ -644,8 +645,8 @@ public class FileMetricRepositoryTest {
   }
 
   private void givenNewRepository() {
-    directory = new MetricDirectory(context, buildConfigWrapper, parser);
-    repository = new FileMetricRepository(directory);
+    directory = context.getDir(buildConfigWrapper.getCsmDirectoryName(), Context.MODE_PRIVATE);
+    repository = new LogMetricRepository(directory, parser);
   }
 
 }
\ No newline at end of file
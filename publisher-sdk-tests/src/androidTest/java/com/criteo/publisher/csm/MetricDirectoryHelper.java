@@ -22,8 +22,7 @@ import java.io.File;
 
 public class MetricDirectoryHelper {
 
-  static void clear(MetricDirectory directory) {
-    File repositoryDirectory = directory.getDirectoryFile();
+  static void clear(File repositoryDirectory) {
     File[] files = repositoryDirectory.listFiles();
 
     assertNotNull(files);
@@ -17,7 +17,7 @@
 package com.criteo.publisher.csm;
 
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
@@ -27,19 +27,20 @@ import android.content.Context;
 import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.mock.SpyBean;
 import com.criteo.publisher.util.BuildConfigWrapper;
-import com.squareup.tape.ObjectQueue;
 import com.squareup.tape.QueueFile;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.List;
 import javax.inject.Inject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
-public class MetricObjectQueueFactoryTest {
+public class MetricQueueFileFactoryTest {
 
   @Rule
   public MockedDependenciesRule mockedDependenciesRule = new MockedDependenciesRule();
@@ -55,7 +56,7 @@ public class MetricObjectQueueFactoryTest {
   @SpyBean
   private BuildConfigWrapper buildConfigWrapper;
 
-  private MetricObjectQueueFactory factory;
+  private MetricQueueFileFactory factory;
 
   @Before
   public void setUp() throws Exception {
@@ -63,11 +64,7 @@ public class MetricObjectQueueFactoryTest {
 
     queueFile = new File(context.getFilesDir(), "queueFile");
 
-    factory = spy(new MetricObjectQueueFactory(
-        context,
-        metricParser,
-        buildConfigWrapper
-    ));
+    factory = spy(new MetricQueueFileFactory(context, buildConfigWrapper));
 
     doReturn(queueFile).when(factory).getQueueFile();
   }
@@ -91,10 +88,10 @@ public class MetricObjectQueueFactoryTest {
   public void create_GivenNotExistingQueueFile_CreateFileAndQueueIsWorking() throws Exception {
     queueFile.delete();
 
-    ObjectQueue<Metric> queue = factory.create();
+    MetricQueueFile queue = factory.create();
 
     assertTrue(queueFile.exists());
-    assertNull(queue.peek());
+    assertEquals(0, queue.size());
   }
 
 
@@ -107,29 +104,46 @@ public class MetricObjectQueueFactoryTest {
       fos.write(garbage);
     }
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    MetricQueueFile metricQueueFile = factory.create();
 
     byte[] fileContent = Files.readAllBytes(queueFile.toPath());
     assertTrue(queueFile.exists());
     assertFalse(Arrays.equals(fileContent, garbage));
-    assertNull(metricObjectQueue.peek());
+    assertEquals(0, metricQueueFile.size());
   }
 
   /**
-   * This scenario seems to happen randomly: the queue seems to get stale, maybe when writing
-   * during a crash.
+   * This scenario seems to happen randomly with the legacy Tape queue: the queue seems to get stale,
+   * maybe when writing during a crash.
    */
   @Test
-  public void create_GivenCorruptedQueueFileWithEmptyElements_RecreateFileAndQueueIsWorking() throws Exception {
-    givenDeactivatedPreconditionUtils();
-
+  public void create_GivenLegacyQueueFileWithEmptyElements_MigrateFileAndSkipEmptyElements() throws Exception {
     QueueFile rawQueueFile = new QueueFile(queueFile);
     rawQueueFile.add(new byte[0]);
+    rawQueueFile.close();
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    MetricQueueFile metricQueueFile = factory.create();
 
     assertTrue(queueFile.exists());
-    assertNull(metricObjectQueue.peek());
+    assertTrue(MetricQueueFile.isEmptyOrQueueFile(queueFile));
+    assertEquals(0, metricQueueFile.size());
+  }
+
+  @Test
+  public void create_GivenLegacyQueueFile_MigrateItsElementsInOrder() throws Exception {
+    Charset charset = Charset.forName("UTF-8");
+    QueueFile rawQueueFile = new QueueFile(queueFile);
+    rawQueueFile.add("first".getBytes(charset));
+    rawQueueFile.add("second".getBytes(charset));
+    rawQueueFile.close();
+
+    MetricQueueFile metricQueueFile = factory.create();
+    List<byte[]> elements = metricQueueFile.peek(10);
+
+    assertTrue(MetricQueueFile.isEmptyOrQueueFile(queueFile));
+    assertEquals(2, elements.size());
+    assertEquals("first", new String(elements.get(0), charset));
+    assertEquals("second", new String(elements.get(1), charset));
   }
 
   @Test
@@ -138,11 +152,11 @@ public class MetricObjectQueueFactoryTest {
 
     queueFile.mkdirs();
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    MetricQueueFile metricQueueFile = factory.create();
 
     assertTrue(queueFile.exists());
     assertFalse(queueFile.isDirectory());
-    assertNull(metricObjectQueue.peek());
+    assertEquals(0, metricQueueFile.size());
   }
 
   @Test
@@ -152,22 +166,22 @@ public class MetricObjectQueueFactoryTest {
     queueFile.mkdirs();
     new File(queueFile, "dummyContent").createNewFile();
 
-    ObjectQueue<Metric> metricObjectQueue = factory.create();
+    MetricQueueFile metricQueueFile = factory.create();
 
     assertTrue(queueFile.exists());
     assertFalse(queueFile.isDirectory());
-    assertNull(metricObjectQueue.peek());
+    assertEquals(0, metricQueueFile.size());
   }
 
   @Test
   public void offer_GivenATonsOfMetrics_AcceptAllOfThemButEvictOlderOnesToStayAroundMemoryLimit() throws Exception {
-    int smallSizeEstimationPerMetrics = 150;
+    int smallSizeEstimationPerMetrics = 15;
     int maxSize = buildConfigWrapper.getMaxSizeOfCsmMetricSendingQueue();
     int requiredMetricsForOverflow = maxSize / smallSizeEstimationPerMetrics;
     int requiredMetricsForOverflowWithMargin = (int) (requiredMetricsForOverflow * 1.20);
 
-    MetricSendingQueue tapeQueue = new TapeMetricSendingQueue(factory);
-    BoundedMetricSendingQueue boundedMetricSendingQueue = new BoundedMetricSendingQueue(tapeQueue,
+    MetricSendingQueue fileQueue = new FileMetricSendingQueue(factory, metricParser);
+    BoundedMetricSendingQueue boundedMetricSendingQueue = new BoundedMetricSendingQueue(fileQueue,
         buildConfigWrapper);
 
     for (int i = 0; i < requiredMetricsForOverflowWithMargin; i++) {
@@ -183,9 +197,7 @@ public class MetricObjectQueueFactoryTest {
     // The last element can overflow the limit, so we are lenient (up to 1%) on the below condition.
     assertTrue(boundedMetricSendingQueue.getTotalSize() * 0.99 <= maxSize);
 
-    // The queue file grows in power of 2. So it can be, at most, twice larger than expected.
-    // To not waste this memory, the max size should be near a power of 2. We are lenient (up to
-    // 10%) on this condition.
+    // The queue file is preallocated with the max size as capacity, plus a small header.
     assertTrue(queueFile.length() <= maxSize * 1.10);
   }
 
@@ -57,13 +57,15 @@ public class MetricRepositoryFactoryTest {
     factory = new MetricRepositoryFactory(
         context,
         parser,
-        buildConfigWrapper
+        buildConfigWrapper,
+        mockedDependenciesRule.getDependencyProvider().provideThreadPoolExecutor(),
+        mockedDependenciesRule.getDependencyProvider().provideScheduledExecutorService()
     );
   }
 
   @After
   public void tearDown() throws Exception {
-    MetricDirectoryHelper.clear(new MetricDirectory(context, buildConfigWrapper, parser));
+    MetricDirectoryHelper.clear(context.getDir("directory", Context.MODE_PRIVATE));
   }
 
   @Test
@@ -14,6 +14,8 @@
  *    limitations under the License.
  */
 
+import org.jetbrains.kotlin.gradle.tasks.KotlinCompile
+
 plugins {
     id("com.android.library")
     `maven-publish`
@@ -34,6 +36,10 @@ androidLibModule() {
     addBuildConfigField<String>("cdbUrl")
     addBuildConfigField<String>("eventUrl")
     addBuildConfigField<Int>("networkTimeoutInMillis")
+    addBuildConfigField<Int>("bidRequestBatchingWindowInMillis")
+
+    // Bid cache
+    addBuildConfigField<Int>("maxCachedBidsPerAdUnit")
 
     // Client side metrics
     addBuildConfigField<String>("csmQueueFilename")
@@ -41,10 +47,32 @@ androidLibModule() {
     addBuildConfigField<Int>("csmBatchSize")
     addBuildConfigField<Int>("maxSizeOfCsmMetricsFolder")
     addBuildConfigField<Int>("maxSizeOfCsmMetricSendingQueue")
+    addBuildConfigField<Int>("csmEventBatchingWindowInMillis")
+    addBuildConfigField<Int>("csmWriteBehindWindowInMillis")
+    addBuildConfigField<Int>("csmRecoveryPageSize")
+    addBuildConfigField<Int>("csmRecoveryMaxDelayInMillis")
+    addBuildConfigField<Int>("csmUploadQueueDepth")
+    addBuildConfigField<Int>("csmUploadMaxDelayInMillis")
+    addBuildConfigField<Int>("csmUploadMinBackoffInMillis")
+    addBuildConfigField<Int>("csmUploadMaxBackoffInMillis")
+    addBuildConfigField<Int>("csmMaxParallelRequests")
+
+    // Pixel dispatch
+    addBuildConfigField<String>("pixelQueueFilename")
+    addBuildConfigField<Int>("pixelQueueMaxCount")
+    addBuildConfigField<Int>("pixelDispatchMaxConcurrency")
+    addBuildConfigField<Int>("pixelMaxAttempts")
+    addBuildConfigField<Int>("pixelRetryMinBackoffInMillis")
+    addBuildConfigField<Int>("pixelRetryMaxBackoffInMillis")
 
     // Advanced Native
     addBuildConfigField<Int>("adChoiceIconWidthInDp")
     addBuildConfigField<Int>("adChoiceIconHeightInDp")
+    addBuildConfigField<Int>("visibilityCheckIntervalInMillis")
+    addBuildConfigField<Int>("nativeViewabilityMinVisibleAreaPercent")
+    addBuildConfigField<Int>("nativeViewabilityMinDurationInMillis")
+    addBuildConfigField<Int>("nativeImageCacheHeapPercent")
+    addBuildConfigField<Int>("nativeViewPoolSize")
 
     // Misc
     addBuildConfigField<String>("pubSdkSharedPreferences")
@@ -75,6 +103,27 @@ android.libraryVariants.all {
     }
 }
 
+// Compiled classes of the debug variant, packaged in a plain JAR for the JVM benchmarks. They are
+// exposed through the debugClasses configuration, so the build of the JAR is a task dependency.
+val debugClassesJar = tasks.register<Jar>("debugClassesJar") {
+    archiveClassifier.set("debug-classes")
+
+    val debugVariant = android.libraryVariants.first { it.name == "debug" }
+    val javaCompile = debugVariant.javaCompileProvider
+    val kotlinCompile = tasks.named<KotlinCompile>("compileDebugKotlin")
+
+    dependsOn(javaCompile, kotlinCompile)
+    from(javaCompile.map { it.destinationDir })
+    from(kotlinCompile.map { it.destinationDir })
+}
+
+configurations.create("debugClasses") {
+    isCanBeConsumed = true
+    isCanBeResolved = false
+}
+
+artifacts.add("debugClasses", debugClassesJar)
+
 addBintrayRepository()
 addSlackDeploymentMessages()
 
@@ -44,6 +44,10 @@ preconditionThrowsOnException = false
 // Duration in milliseconds for the network layer to drop a call and consider it timeouted.
 networkTimeoutInMillis = 60 * 1000
 
+// Duration in milliseconds during which concurrent bid requests are merged into a single CDB call.
+// This should stay small as it delays all bid requests. Set to 0 to disable the batching.
+bidRequestBatchingWindowInMillis = 5
+
 /**
  * Client-Side Metrics configuration
  */
@@ -69,12 +73,109 @@ maxSizeOfCsmMetricsFolder = 48 * 1024
 // 60KB represents ~360 metrics (with ~170 bytes/metric) which already represent an extreme case.
 maxSizeOfCsmMetricSendingQueue = 60 * 1024
 
+// Duration in milliseconds during which bid lifecycle events are accumulated before updating the
+// stored metrics. All updates of a same metric during this window are merged into a single write.
+// This should stay small as a thread of the pool waits during this window. Events are only delayed,
+// not lost, unless the application is killed meanwhile. Set to 0 to disable the batching.
+csmEventBatchingWindowInMillis = 100
+
+// Maximum duration in milliseconds during which updates of a stored metric are only kept in memory
+// before being written on disk. All updates of a same metric during this window cost a single
+// write. Metrics ready to send are written right away. If the application is killed, the updates
+// of the last window are lost. Set to 0 to write each update right away.
+csmWriteBehindWindowInMillis = 5 * 1000
+
+// Number of metrics of previous sessions moved in the sending queue by each task of the startup
+// recovery. The recovery yields the thread pool between pages so it does not delay bid requests.
+csmRecoveryPageSize = 24
+
+// Maximum duration in milliseconds the startup recovery of metrics waits for the first bids to be
+// served before starting anyway.
+csmRecoveryMaxDelayInMillis = 10 * 1000
+
+// Number of metrics waiting in the sending queue above which they are uploaded right away.
+// Metrics are uploaded in batches of csmBatchSize, so this sends a few batches in a row instead of
+// a small request per bid request.
+csmUploadQueueDepth = 4 * 24
+
+// Maximum duration in milliseconds a metric waits in the sending queue before being uploaded while
+// the application is in foreground. In background, pending metrics are uploaded right away as the
+// application may be killed at any time.
+csmUploadMaxDelayInMillis = 60 * 1000
+
+// Delay in milliseconds before retrying to upload metrics after a first failure. This delay is
+// doubled after each new consecutive failure, up to csmUploadMaxBackoffInMillis.
+csmUploadMinBackoffInMillis = 10 * 1000
+
+// Maximum delay in milliseconds before retrying to upload metrics after consecutive failures.
+csmUploadMaxBackoffInMillis = 10 * 60 * 1000
+
+// Maximum number of CSM requests sent concurrently for a batch of metrics. A batch is split into
+// one request per profile, which are mostly met when the SDK is used by several integrations.
+csmMaxParallelRequests = 3
+
+/**
+ * Pixel dispatch configuration
+ */
+
+// The relative path in application folder of the file storing the pixels not delivered yet
+pixelQueueFilename = 'criteo_pixel_queue'
+
+// Maximum number of pixels waiting to be delivered. Oldest pixels are given up beyond this count.
+pixelQueueMaxCount = 100
+
+// Maximum number of hosts to which pixels are sent concurrently. Pixels of a same host are sent
+// one after the other, so they reuse the same connection.
+pixelDispatchMaxConcurrency = 2
+
+// Maximum number of attempts to deliver a pixel failing on a network or server error.
+pixelMaxAttempts = 5
+
+// Delay in milliseconds before sending again a pixel after a first failure. This delay is doubled
+// after each new failure of the pixel, up to pixelRetryMaxBackoffInMillis.
+pixelRetryMinBackoffInMillis = 30 * 1000
+
+// Maximum delay in milliseconds before sending again a pixel after consecutive failures.
+pixelRetryMaxBackoffInMillis = 10 * 60 * 1000
+
+// Maximum duration in milliseconds a pixel is kept since it was dispatched. Older pixels are given
+// up, even if they are read from a previous session.
+pixelMaxAgeInMillis = 24 * 60 * 60 * 1000
+
+/**
+ * Bid cache configuration
+ */
+
+// Maximum number of bids kept in cache for a single ad unit. The SDK tops up the cache to this
+// depth when a bid is consumed, so the next display can be served with the next best bid.
+maxCachedBidsPerAdUnit = 3
+
 /**
  * Width and height in dp of the injected AdChoice icon for advanced native.
  */
 adChoiceIconWidthInDp = 19
 adChoiceIconHeightInDp = 15
 
+// Minimum duration in milliseconds between two checks of the visibility of the native views
+// waiting for their impression. Checks are done before drawing frames, so this bounds the work
+// done on the UI thread when many native ads are displayed. Set to 0 to check on every frame.
+visibilityCheckIntervalInMillis = 100
+
+// Viewability criteria of native ads, following the IAB/MRC guidelines for display ads: the
+// impression is only counted once this percentage of the pixels of the native view was on screen
+// continuously during this duration.
+nativeViewabilityMinVisibleAreaPercent = 50
+nativeViewabilityMinDurationInMillis = 1000
+
+// Percentage of the maximum heap of the application used by the memory cache of native images.
+// Images are decoded at the size of their view, so this keeps the images of many ads.
+nativeImageCacheHeapPercent = 5
+
+// Number of empty native views inflated ahead, when the UI thread is idle, by each native loader.
+// Views are handed out by createEmptyNativeView, so feed scroll frames do not pay the inflation.
+// Set to 0 to inflate every view on demand.
+nativeViewPoolSize = 2
+
 environments {
     debug {
         eventUrl = 'https://an.url.that.does.not.exist'
@@ -25,7 +25,6 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.cache.SdkCache;
-import com.criteo.publisher.csm.MetricSendingQueueConsumer;
 import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.AdUnitMapper;
 import com.criteo.publisher.model.CacheAdUnit;
@@ -36,8 +35,15 @@ import com.criteo.publisher.model.Slot;
 import com.criteo.publisher.network.BidRequestSender;
 import com.criteo.publisher.util.ApplicationStoppedListener;
 import com.criteo.publisher.util.CdbCallListener;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class BidManager implements ApplicationStoppedListener {
@@ -47,10 +53,25 @@ public class BidManager implements ApplicationStoppedListener {
    */
   private static final int DEFAULT_TTL_IN_SECONDS = 15 * 60;
 
+  /**
+   * Duration before the expiry of a bid at which its ad unit is refreshed. For short TTL, half of
+   * the TTL is used instead.
+   */
+  private static final long REFRESH_LEAD_TIME_IN_MILLIS = 10_000;
+
+  /**
+   * Ad units expiring at most this duration after the one triggering a refresh are refreshed in
+   * the same bid request. This also limits the number of wake-ups of the refresh scheduler.
+   */
+  private static final long REFRESH_BATCH_WINDOW_IN_MILLIS = 5_000;
+
+  /**
+   * Bids are consumed with a compare-and-set on the slot of each ad unit. So callers working on
+   * different ad units never block each others, and concurrent callers on the same ad unit can not
+   * consume the same bid twice.
+   */
   @NonNull
-  @GuardedBy("cacheLock")
   private final SdkCache cache;
-  private final Object cacheLock = new Object();
 
   private final AtomicLong cdbTimeToNextCall = new AtomicLong(0);
 
@@ -70,7 +91,31 @@ public class BidManager implements ApplicationStoppedListener {
   private final BidLifecycleListener bidLifecycleListener;
 
   @NonNull
-  private final MetricSendingQueueConsumer metricSendingQueueConsumer;
+  private final ScheduledExecutorService refreshExecutor;
+
+  /**
+   * Ad units asked by the publisher since their last proactive refresh.
+   * <p>
+   * Only those ad units are refreshed before the expiry of their bids. Hence, each refresh is
+   * paid by, at least, one demand of the publisher and cold ad units are never refreshed.
+   */
+  private final Set<CacheAdUnit> hotAdUnits = Collections
+      .newSetFromMap(new ConcurrentHashMap<CacheAdUnit, Boolean>());
+
+  private final Object refreshLock = new Object();
+
+  /**
+   * Instants (in milliseconds) at which a cached bid should be refreshed.
+   */
+  @GuardedBy("refreshLock")
+  private final PriorityQueue<Long> refreshTimes = new PriorityQueue<>();
+
+  @GuardedBy("refreshLock")
+  @Nullable
+  private ScheduledFuture<?> nextRefresh;
+
+  @GuardedBy("refreshLock")
+  private long nextRefreshTime;
 
   BidManager(
       @NonNull SdkCache sdkCache,
@@ -79,7 +124,7 @@ public class BidManager implements ApplicationStoppedListener {
       @NonNull AdUnitMapper adUnitMapper,
       @NonNull BidRequestSender bidRequestSender,
       @NonNull BidLifecycleListener bidLifecycleListener,
-      @NonNull MetricSendingQueueConsumer metricSendingQueueConsumer
+      @NonNull ScheduledExecutorService refreshExecutor
   ) {
     this.cache = sdkCache;
     this.config = config;
@@ -87,15 +132,19 @@ public class BidManager implements ApplicationStoppedListener {
     this.adUnitMapper = adUnitMapper;
     this.bidRequestSender = bidRequestSender;
     this.bidLifecycleListener = bidLifecycleListener;
-    this.metricSendingQueueConsumer = metricSendingQueueConsumer;
+    this.refreshExecutor = refreshExecutor;
   }
 
   /**
    * load data for next time
+   * <p>
+   * As many bids as missing to fill the queue of the ad unit in cache are requested, and at least
+   * one.
    */
   private void fetch(CacheAdUnit cacheAdUnit) {
     if (cdbTimeToNextCall.get() <= clock.getCurrentTimeInMillis()) {
-      sendBidRequest(Collections.singletonList(cacheAdUnit));
+      int missingBids = Math.max(1, cache.getRemainingCapacity(cacheAdUnit));
+      sendBidRequest(Collections.nCopies(missingBids, cacheAdUnit));
     }
   }
 
@@ -105,11 +154,13 @@ public class BidManager implements ApplicationStoppedListener {
     }
 
     bidRequestSender.sendBidRequest(prefetchCacheAdUnits, new CdbListener());
-    metricSendingQueueConsumer.sendMetricBatch();
   }
 
   /**
-   * Returns the last fetched bid a fetch a new one for the next invocation.
+   * Returns the best fetched bid a fetch a new one for the next invocation.
+   * <p>
+   * Up to {@link SdkCache#getMaxBidsPerAdUnit()} bids are kept for each ad unit. The one with the
+   * highest CPM is returned first. Expired bids met on the way are evicted.
    * <p>
    * A <code>null</code> value could be returned. This means that there is no valid bid for the
    * given {@link AdUnit}. And caller should not try to display anything.
@@ -148,7 +199,9 @@ public class BidManager implements ApplicationStoppedListener {
       return null;
     }
 
-    synchronized (cacheLock) {
+    hotAdUnits.add(cacheAdUnit);
+
+    while (true) {
       Slot peekSlot = cache.peekAdUnit(cacheAdUnit);
       if (peekSlot == null) {
         // If no matching bid response is found
@@ -167,11 +220,21 @@ public class BidManager implements ApplicationStoppedListener {
         return null;
       }
 
+      if (!cache.remove(cacheAdUnit, peekSlot)) {
+        // Another caller consumed or replaced this slot in the meantime: look at the new state.
+        continue;
+      }
+
       bidLifecycleListener.onBidConsumed(cacheAdUnit, peekSlot);
-      cache.remove(cacheAdUnit);
+
+      if (!isNotExpired) {
+        // Expired bids are evicted lazily: the next queued bid may still be displayed.
+        continue;
+      }
+
       fetch(cacheAdUnit);
 
-      if (isValidBid && isNotExpired) {
+      if (isValidBid) {
         return peekSlot;
       }
 
@@ -179,26 +242,106 @@ public class BidManager implements ApplicationStoppedListener {
     }
   }
 
-
   @VisibleForTesting
   void setCacheAdUnits(@NonNull List<Slot> slots) {
     long instant = clock.getCurrentTimeInMillis();
 
-    synchronized (cacheLock) {
-      for (Slot slot : slots) {
-        if (slot.isValid()) {
-          boolean isImmediateBid = slot.getCpmAsNumber() > 0 && slot.getTtl() == 0;
-          if (isImmediateBid) {
-            slot.setTtl(DEFAULT_TTL_IN_SECONDS);
-          }
+    for (Slot slot : slots) {
+      if (slot.isValid()) {
+        boolean isImmediateBid = slot.getCpmAsNumber() > 0 && slot.getTtl() == 0;
+        if (isImmediateBid) {
+          slot.setTtl(DEFAULT_TTL_IN_SECONDS);
+        }
+
+        slot.setTimeOfDownload(instant);
+        cache.add(slot);
 
-          slot.setTimeOfDownload(instant);
-          cache.add(slot);
+        if (slot.getCpmAsNumber() > 0 && slot.getTtl() > 0) {
+          scheduleRefresh(slot);
         }
       }
     }
   }
 
+  /**
+   * Schedule a refresh of the ad unit of the given bid shortly before its expiry.
+   * <p>
+   * Refreshes are coalesced: only the earliest one is scheduled, and the other ones that are due in
+   * the batch window are handled by the same wake-up.
+   */
+  private void scheduleRefresh(@NonNull Slot slot) {
+    long ttlInMillis = slot.getTtl() * 1000L;
+    long leadTime = Math.min(REFRESH_LEAD_TIME_IN_MILLIS, ttlInMillis / 2);
+    long refreshTime = slot.getExpiryTimeInMillis() - leadTime;
+
+    synchronized (refreshLock) {
+      refreshTimes.add(refreshTime);
+      scheduleNextRefresh();
+    }
+  }
+
+  @GuardedBy("refreshLock")
+  private void scheduleNextRefresh() {
+    Long refreshTime = refreshTimes.peek();
+    if (refreshTime == null) {
+      return;
+    }
+
+    if (nextRefresh != null) {
+      if (nextRefreshTime - REFRESH_BATCH_WINDOW_IN_MILLIS <= refreshTime) {
+        // The scheduled wake-up is early enough to handle this refresh too
+        return;
+      }
+      nextRefresh.cancel(false);
+    }
+
+    long delay = Math.max(0, refreshTime - clock.getCurrentTimeInMillis());
+    nextRefreshTime = refreshTime;
+    nextRefresh = refreshExecutor.schedule(new RefreshTask(), delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Send a single bid request, split into chunks if needed, for all hot ad units whose cached bids
+   * are all expiring before the given instant.
+   * <p>
+   * Ad units without any cached bid are ignored: their last bid was consumed and this already
+   * triggered a new bid request. Ad units in silent mode are also ignored.
+   */
+  @VisibleForTesting
+  void refreshExpiringAdUnits(long expiryHorizonInMillis) {
+    if (killSwitchEngaged() || cdbTimeToNextCall.get() > clock.getCurrentTimeInMillis()) {
+      return;
+    }
+
+    List<CacheAdUnit> expiringAdUnits = new ArrayList<>();
+    for (CacheAdUnit cacheAdUnit : hotAdUnits) {
+      Slot peekSlot = cache.peekAdUnit(cacheAdUnit);
+      if (peekSlot == null) {
+        continue;
+      }
+
+      double cpm = (peekSlot.getCpmAsNumber() == null ? 0.0 : peekSlot.getCpmAsNumber());
+      boolean isSilentBid = (cpm == 0) && (peekSlot.getTtl() > 0);
+      if (isSilentBid && !peekSlot.isExpired(clock)) {
+        continue;
+      }
+
+      if (cache.getLatestExpiryTimeInMillis(cacheAdUnit) <= expiryHorizonInMillis) {
+        expiringAdUnits.add(cacheAdUnit);
+      }
+    }
+
+    if (expiringAdUnits.isEmpty()) {
+      return;
+    }
+
+    hotAdUnits.removeAll(expiringAdUnits);
+
+    for (List<CacheAdUnit> chunk : adUnitMapper.toChunks(expiringAdUnits)) {
+      sendBidRequest(chunk);
+    }
+  }
+
   @VisibleForTesting
   void setTimeToNextCall(int seconds) {
     if (seconds > 0) {
@@ -209,6 +352,9 @@ public class BidManager implements ApplicationStoppedListener {
   @Override
   public void onApplicationStopped() {
     bidRequestSender.cancelAllPendingTasks();
+
+    // Bids are not refreshed in background: ad units should be asked again to be considered hot.
+    hotAdUnits.clear();
   }
 
   /**
@@ -230,11 +376,33 @@ public class BidManager implements ApplicationStoppedListener {
     return config.isKillSwitchEnabled();
   }
 
+  private class RefreshTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      long now = clock.getCurrentTimeInMillis();
+
+      synchronized (refreshLock) {
+        nextRefresh = null;
+
+        Long refreshTime = refreshTimes.peek();
+        while (refreshTime != null && refreshTime <= now + REFRESH_BATCH_WINDOW_IN_MILLIS) {
+          refreshTimes.poll();
+          refreshTime = refreshTimes.peek();
+        }
+
+        scheduleNextRefresh();
+      }
+
+      refreshExpiringAdUnits(now + REFRESH_LEAD_TIME_IN_MILLIS + REFRESH_BATCH_WINDOW_IN_MILLIS);
+    }
+  }
+
   private class CdbListener implements CdbCallListener {
 
     @Override
-    public void onCdbRequest(@NonNull CdbRequest request) {
-      bidLifecycleListener.onCdbCallStarted(request);
+    public void onCdbRequest(@NonNull CdbRequest request, @NonNull String callId) {
+      bidLifecycleListener.onCdbCallStarted(request, callId);
     }
 
     @Override
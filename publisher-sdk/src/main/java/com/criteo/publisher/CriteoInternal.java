@@ -22,6 +22,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.criteo.publisher.AppEvents.AppEvents;
 import com.criteo.publisher.bid.BidLifecycleListener;
+import com.criteo.publisher.csm.MetricRepository;
 import com.criteo.publisher.headerbidding.HeaderBidding;
 import com.criteo.publisher.interstitial.InterstitialActivityHelper;
 import com.criteo.publisher.model.AdUnit;
@@ -104,7 +105,19 @@ final class CriteoInternal extends Criteo {
     }
 
     AppEvents appEvents = dependencyProvider.provideAppEvents();
-    AppLifecycleUtil lifecycleCallback = new AppLifecycleUtil(appEvents, bidManager);
+
+    // Metrics are only stored on the versions supporting CSM
+    MetricRepository metricRepository = null;
+    if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      metricRepository = dependencyProvider.provideMetricRepository();
+    }
+
+    AppLifecycleUtil lifecycleCallback = new AppLifecycleUtil(
+        appEvents,
+        bidManager,
+        dependencyProvider.provideMetricUploadScheduler(),
+        metricRepository
+    );
     application.registerActivityLifecycleCallbacks(lifecycleCallback);
 
     dependencyProvider.provideTopActivityFinder().registerActivityLifecycleFor(application);
@@ -112,6 +125,8 @@ final class CriteoInternal extends Criteo {
     BidLifecycleListener bidLifecycleListener = dependencyProvider.provideBidLifecycleListener();
     bidLifecycleListener.onSdkInitialized();
 
+    dependencyProvider.providePixelDispatcher().resumePendingPixels();
+
     prefetchAdUnits(dependencyProvider.provideRunOnUiThreadExecutor(), adUnits);
   }
 
@@ -49,14 +49,15 @@ import com.criteo.publisher.concurrent.NoOpAsyncResources;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
 import com.criteo.publisher.concurrent.ThreadPoolExecutorFactory;
 import com.criteo.publisher.csm.CsmBidLifecycleListener;
-import com.criteo.publisher.csm.MetricObjectQueueFactory;
 import com.criteo.publisher.csm.MetricParser;
+import com.criteo.publisher.csm.MetricQueueFileFactory;
 import com.criteo.publisher.csm.MetricRepository;
 import com.criteo.publisher.csm.MetricRepositoryFactory;
 import com.criteo.publisher.csm.MetricSendingQueue;
 import com.criteo.publisher.csm.MetricSendingQueueConsumer;
 import com.criteo.publisher.csm.MetricSendingQueueFactory;
 import com.criteo.publisher.csm.MetricSendingQueueProducer;
+import com.criteo.publisher.csm.MetricUploadScheduler;
 import com.criteo.publisher.headerbidding.DfpHeaderBidding;
 import com.criteo.publisher.headerbidding.HeaderBidding;
 import com.criteo.publisher.headerbidding.MoPubHeaderBidding;
@@ -72,6 +73,10 @@ import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.Publisher;
 import com.criteo.publisher.model.RemoteConfigRequestFactory;
 import com.criteo.publisher.network.BidRequestSender;
+import com.criteo.publisher.network.HttpTransport;
+import com.criteo.publisher.network.KeepAliveHttpTransport;
+import com.criteo.publisher.network.PixelDispatcher;
+import com.criteo.publisher.network.PixelQueueFile;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import com.criteo.publisher.util.AdvertisingInfo;
@@ -83,11 +88,16 @@ import com.criteo.publisher.util.JsonSerializer;
 import com.criteo.publisher.util.TextUtils;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.squareup.picasso.LruCache;
 import com.squareup.picasso.Picasso;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides global dependencies to the rest of the codebase
@@ -167,7 +177,23 @@ public class DependencyProvider {
       public PubSdkApi create() {
         return new PubSdkApi(
             provideBuildConfigWrapper(),
-            provideJsonSerializer()
+            provideJsonSerializer(),
+            provideHttpTransport(),
+            provideConfig()
+        );
+      }
+    });
+  }
+
+  @NonNull
+  public HttpTransport provideHttpTransport() {
+    return getOrCreate(HttpTransport.class, new Factory<HttpTransport>() {
+      @NonNull
+      @Override
+      public HttpTransport create() {
+        return new KeepAliveHttpTransport(
+            provideBuildConfigWrapper(),
+            provideClock()
         );
       }
     });
@@ -211,6 +237,23 @@ public class DependencyProvider {
     return getOrCreate(ThreadPoolExecutor.class, new ThreadPoolExecutorFactory());
   }
 
+  /**
+   * Executor dedicated to delayed tasks, such as the proactive refresh of cached bids.
+   * <p>
+   * Tasks run there should be short and should delegate any IO to the {@linkplain
+   * #provideThreadPoolExecutor() thread pool executor}.
+   */
+  @NonNull
+  public ScheduledExecutorService provideScheduledExecutorService() {
+    return getOrCreate(ScheduledExecutorService.class, new Factory<ScheduledExecutorService>() {
+      @NonNull
+      @Override
+      public ScheduledExecutorService create() {
+        return Executors.newSingleThreadScheduledExecutor();
+      }
+    });
+  }
+
   @NonNull
   public RunOnUiThreadExecutor provideRunOnUiThreadExecutor() {
     return getOrCreate(RunOnUiThreadExecutor.class, new Factory<RunOnUiThreadExecutor>() {
@@ -265,13 +308,16 @@ public class DependencyProvider {
       @Override
       public BidManager create() {
         return new BidManager(
-            new SdkCache(provideDeviceUtil()),
+            new SdkCache(
+                provideDeviceUtil(),
+                provideBuildConfigWrapper().getMaxCachedBidsPerAdUnit()
+            ),
             provideConfig(),
             provideClock(),
             provideAdUnitMapper(),
             provideBidRequestSender(),
             provideBidLifecycleListener(),
-            provideMetricSendingQueueConsumer()
+            provideScheduledExecutorService()
         );
       }
     });
@@ -398,7 +444,10 @@ public class DependencyProvider {
             provideCdbRequestFactory(),
             provideRemoteConfigRequestFactory(),
             providePubSdkApi(),
-            provideThreadPoolExecutor()
+            provideUniqueIdGenerator(),
+            provideThreadPoolExecutor(),
+            provideScheduledExecutorService(),
+            provideBuildConfigWrapper()
         );
       }
     });
@@ -416,11 +465,15 @@ public class DependencyProvider {
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR1) {
           listener.add(new CsmBidLifecycleListener(
               provideMetricRepository(),
-              new MetricSendingQueueProducer(provideMetricSendingQueue()),
+              new MetricSendingQueueProducer(
+                  provideMetricSendingQueue(),
+                  provideMetricUploadScheduler()
+              ),
               provideClock(),
-              provideUniqueIdGenerator(),
               provideConfig(),
-              provideThreadPoolExecutor()
+              provideThreadPoolExecutor(),
+              provideScheduledExecutorService(),
+              provideBuildConfigWrapper()
           ));
         }
 
@@ -429,6 +482,37 @@ public class DependencyProvider {
     });
   }
 
+  @NonNull
+  public PixelDispatcher providePixelDispatcher() {
+    return getOrCreate(PixelDispatcher.class, new Factory<PixelDispatcher>() {
+      @NonNull
+      @Override
+      public PixelDispatcher create() {
+        // Pixels are sent with blocking IO: this bounds the threads they hold, out of the shared
+        // pool. Idle threads are released between rounds.
+        int maxConcurrency = provideBuildConfigWrapper().getPixelDispatchMaxConcurrency();
+        ThreadPoolExecutor sendingExecutor = new ThreadPoolExecutor(
+            maxConcurrency,
+            maxConcurrency,
+            3, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            Executors.defaultThreadFactory()
+        );
+        sendingExecutor.allowCoreThreadTimeOut(true);
+
+        return new PixelDispatcher(
+            providePubSdkApi(),
+            new PixelQueueFile(provideContext(), provideClock(), provideBuildConfigWrapper()),
+            provideClock(),
+            provideBuildConfigWrapper(),
+            provideThreadPoolExecutor(),
+            sendingExecutor,
+            provideScheduledExecutorService()
+        );
+      }
+    });
+  }
+
   @NonNull
   public NativeAdMapper provideNativeAdMapper() {
     return getOrCreate(NativeAdMapper.class, new Factory<NativeAdMapper>() {
@@ -437,9 +521,9 @@ public class DependencyProvider {
       public NativeAdMapper create() {
         return new NativeAdMapper(
             provideVisibilityTracker(),
+            provideBuildConfigWrapper(),
             new ImpressionHelper(
-                providePubSdkApi(),
-                provideThreadPoolExecutor(),
+                providePixelDispatcher(),
                 provideRunOnUiThreadExecutor()
             ),
             provideClickDetection(),
@@ -461,7 +545,11 @@ public class DependencyProvider {
       @NonNull
       @Override
       public VisibilityTracker create() {
-        return new VisibilityTracker(new VisibilityChecker());
+        return new VisibilityTracker(
+            new VisibilityChecker(),
+            provideClock(),
+            provideBuildConfigWrapper()
+        );
       }
     });
   }
@@ -508,7 +596,11 @@ public class DependencyProvider {
       @NonNull
       @Override
       public Picasso create() {
-        return new Picasso.Builder(provideContext()).build();
+        long maxHeapSize = Runtime.getRuntime().maxMemory();
+        int percent = provideBuildConfigWrapper().getNativeImageCacheHeapPercent();
+        return new Picasso.Builder(provideContext())
+            .memoryCache(new LruCache((int) (maxHeapSize * percent / 100)))
+            .build();
       }
     });
   }
@@ -684,6 +776,7 @@ public class DependencyProvider {
             providePubSdkApi(),
             provideBuildConfigWrapper(),
             provideConfig(),
+            provideClock(),
             provideThreadPoolExecutor()
         );
       }
@@ -691,14 +784,32 @@ public class DependencyProvider {
   }
 
   @NonNull
-  public MetricObjectQueueFactory provideObjectQueueFactory() {
-    return getOrCreate(MetricObjectQueueFactory.class, new Factory<MetricObjectQueueFactory>() {
+  public MetricUploadScheduler provideMetricUploadScheduler() {
+    return getOrCreate(MetricUploadScheduler.class, new Factory<MetricUploadScheduler>() {
       @NonNull
       @Override
-      public MetricObjectQueueFactory create() {
-        return new MetricObjectQueueFactory(
+      public MetricUploadScheduler create() {
+        return new MetricUploadScheduler(
+            provideMetricSendingQueue(),
+            provideMetricSendingQueueConsumer(),
+            provideConfig(),
+            provideClock(),
+            provideBuildConfigWrapper(),
+            provideThreadPoolExecutor(),
+            provideScheduledExecutorService()
+        );
+      }
+    });
+  }
+
+  @NonNull
+  public MetricQueueFileFactory provideMetricQueueFileFactory() {
+    return getOrCreate(MetricQueueFileFactory.class, new Factory<MetricQueueFileFactory>() {
+      @NonNull
+      @Override
+      public MetricQueueFileFactory create() {
+        return new MetricQueueFileFactory(
             provideContext(),
-            provideMetricParser(),
             provideBuildConfigWrapper()
         );
       }
@@ -708,7 +819,8 @@ public class DependencyProvider {
   @NonNull
   public MetricSendingQueue provideMetricSendingQueue() {
     return getOrCreate(MetricSendingQueue.class, new MetricSendingQueueFactory(
-        provideObjectQueueFactory(),
+        provideMetricQueueFileFactory(),
+        provideMetricParser(),
         provideBuildConfigWrapper()
     ));
   }
@@ -719,7 +831,9 @@ public class DependencyProvider {
     return getOrCreate(MetricRepository.class, new MetricRepositoryFactory(
         provideContext(),
         provideMetricParser(),
-        provideBuildConfigWrapper()
+        provideBuildConfigWrapper(),
+        provideThreadPoolExecutor(),
+        provideScheduledExecutorService()
     ));
   }
 
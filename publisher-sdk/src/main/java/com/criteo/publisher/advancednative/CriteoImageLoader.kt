@@ -18,19 +18,57 @@ package com.criteo.publisher.advancednative
 import android.graphics.drawable.Drawable
 import android.widget.ImageView
 import androidx.annotation.UiThread
+import com.criteo.publisher.annotation.OpenForTesting
 import com.criteo.publisher.concurrent.AsyncResources
 import com.squareup.picasso.Callback
 import com.squareup.picasso.Picasso
+import com.squareup.picasso.Picasso.Priority
 import com.squareup.picasso.RequestCreator
 import java.net.URL
 
+/**
+ * Default image loader of the SDK.
+ *
+ * Images rendered in a laid out view are decoded at the size of the view, instead of their original
+ * size, and they are requested before the prefetched ones.
+ */
+@OpenForTesting
 class CriteoImageLoader(
     private val picasso: Picasso,
     private val asyncResources: AsyncResources
 ) : ImageLoader {
 
   override fun preload(imageUrl: URL) {
-    picasso.load(imageUrl.toString()).fetch()
+    preload(imageUrl, Priority.NORMAL)
+  }
+
+  /**
+   * Preload the image at the given URL, at its original size.
+   */
+  fun preload(imageUrl: URL, priority: Priority) {
+    preload(imageUrl, null, priority)
+  }
+
+  /**
+   * Preload the image at the given URL, decoded at the given target size.
+   *
+   * Loading the image afterward in a view of the target size hits the memory cache.
+   */
+  fun preload(
+      imageUrl: URL,
+      targetWidth: Int,
+      targetHeight: Int,
+      isCropped: Boolean,
+      priority: Priority
+  ) {
+    preload(imageUrl, ImageSize.create(targetWidth, targetHeight, isCropped), priority)
+  }
+
+  private fun preload(imageUrl: URL, targetSize: ImageSize?, priority: Priority) {
+    picasso.load(imageUrl.toString())
+        .priority(priority)
+        .resizeTo(targetSize)
+        .fetch()
   }
 
   @UiThread
@@ -41,6 +79,8 @@ class CriteoImageLoader(
   ) {
     asyncResources.newResource {
       picasso.load(imageUrl.toString())
+          .priority(Priority.HIGH)
+          .resizeTo(ImageSize.of(imageView))
           .placeholder(placeholder)
           .into(imageView, object : Callback {
             override fun onSuccess() = release()
@@ -49,6 +89,15 @@ class CriteoImageLoader(
     }
   }
 
+  private fun RequestCreator.resizeTo(targetSize: ImageSize?): RequestCreator {
+    if (targetSize == null) {
+      return this
+    }
+
+    val resized = resize(targetSize.width, targetSize.height).onlyScaleDown()
+    return if (targetSize.isCropped) resized.centerCrop() else resized.centerInside()
+  }
+
   private fun RequestCreator.placeholder(placeholder: Drawable?): RequestCreator {
     if (placeholder != null) {
       return placeholder(placeholder)
@@ -28,12 +28,15 @@ import java.net.URL;
 @Keep
 public abstract class CriteoMedia {
 
-  static CriteoMedia create(@NonNull URL imageUrl) {
-    return new AutoValue_CriteoMedia(imageUrl);
+  static CriteoMedia create(@NonNull URL imageUrl, @NonNull MediaKind kind) {
+    return new AutoValue_CriteoMedia(imageUrl, kind);
   }
 
   @NonNull
   @Internal(ADMOB_ADAPTER)
   abstract URL getImageUrl();
 
+  @NonNull
+  abstract MediaKind getKind();
+
 }
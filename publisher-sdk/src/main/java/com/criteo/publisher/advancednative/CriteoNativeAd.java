@@ -39,6 +39,9 @@ public class CriteoNativeAd {
   @NonNull
   private final VisibilityTracker visibilityTracker;
 
+  @NonNull
+  private final ViewabilityCriteria viewabilityCriteria;
+
   @NonNull
   private final ImpressionTask impressionTask;
 
@@ -63,6 +66,7 @@ public class CriteoNativeAd {
   public CriteoNativeAd(
       @NonNull NativeAssets assets,
       @NonNull VisibilityTracker visibilityTracker,
+      @NonNull ViewabilityCriteria viewabilityCriteria,
       @NonNull ImpressionTask impressionTask,
       @NonNull ClickDetection clickDetection,
       @NonNull NativeViewClickHandler clickOnProductHandler,
@@ -73,6 +77,7 @@ public class CriteoNativeAd {
   ) {
     this.assets = assets;
     this.visibilityTracker = visibilityTracker;
+    this.viewabilityCriteria = viewabilityCriteria;
     this.impressionTask = impressionTask;
     this.clickDetection = clickDetection;
     this.clickOnProductHandler = clickOnProductHandler;
@@ -104,7 +109,7 @@ public class CriteoNativeAd {
 
   @NonNull
   public CriteoMedia getProductMedia() {
-    return CriteoMedia.create(assets.getProduct().getImageUrl());
+    return CriteoMedia.create(assets.getProduct().getImageUrl(), MediaKind.PRODUCT_IMAGE);
   }
 
   @NonNull
@@ -119,7 +124,7 @@ public class CriteoNativeAd {
 
   @NonNull
   public CriteoMedia getAdvertiserLogoMedia() {
-    return CriteoMedia.create(assets.getAdvertiserLogoUrl());
+    return CriteoMedia.create(assets.getAdvertiserLogoUrl(), MediaKind.ADVERTISER_LOGO);
   }
 
   @NonNull
@@ -172,7 +177,8 @@ public class CriteoNativeAd {
       rendererHelper.setMediaInView(
           assets.getPrivacyOptOutImageUrl(),
           adChoiceView,
-          /* placeholder */ null // No placeholder is expected for AdChoice
+          /* placeholder */ null, // No placeholder is expected for AdChoice
+          MediaKind.ADCHOICE_ICON
       );
     }
   }
@@ -196,7 +202,7 @@ public class CriteoNativeAd {
    */
   @VisibleForTesting
   void watchForImpression(@NonNull View nativeView) {
-    visibilityTracker.watch(nativeView, impressionTask);
+    visibilityTracker.watch(nativeView, viewabilityCriteria, impressionTask);
   }
 
   /**
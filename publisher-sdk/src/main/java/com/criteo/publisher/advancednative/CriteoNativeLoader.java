@@ -17,6 +17,7 @@
 package com.criteo.publisher.advancednative;
 
 import android.content.Context;
+import android.os.Looper;
 import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.Keep;
@@ -52,6 +53,9 @@ public class CriteoNativeLoader {
   @Nullable
   private CriteoNativeRenderer renderer;
 
+  @Nullable
+  private NativeViewPool viewPool;
+
   public CriteoNativeLoader(
       @NonNull NativeAdUnit adUnit,
       @NonNull CriteoNativeAdListener listener,
@@ -94,6 +98,9 @@ public class CriteoNativeLoader {
    * Note that parent is given so that inflated views are setup with the {@link
    * android.view.ViewGroup.LayoutParams} corresponding to their parent. See {@link
    * CriteoNativeRenderer} for more information.
+   * <p>
+   * Views may have been inflated ahead, when the UI thread was idle, with the same context and
+   * parent. So creating views while scrolling does not pay the inflation.
    *
    * @param context android context
    * @param parent optional parent to get layout params from
@@ -101,7 +108,10 @@ public class CriteoNativeLoader {
    */
   @NonNull
   public View createEmptyNativeView(@NonNull Context context, @Nullable ViewGroup parent) {
-    return getRenderer().createNativeView(context, parent);
+    NativeViewPool viewPool = getViewPool();
+    View nativeView = viewPool.acquire(context, parent);
+    viewPool.scheduleWarmUp(Looper.myLooper() == null ? null : Looper.myQueue());
+    return nativeView;
   }
 
   /**
@@ -184,6 +194,17 @@ public class CriteoNativeLoader {
     return renderer;
   }
 
+  @NonNull
+  private NativeViewPool getViewPool() {
+    if (viewPool == null) {
+      int maxSize = DependencyProvider.getInstance()
+          .provideBuildConfigWrapper()
+          .getNativeViewPoolSize();
+      viewPool = new NativeViewPool(getRenderer(), maxSize);
+    }
+    return viewPool;
+  }
+
   @NonNull
   private NativeAdMapper getNativeAdMapper() {
     return DependencyProvider.getInstance().provideNativeAdMapper();
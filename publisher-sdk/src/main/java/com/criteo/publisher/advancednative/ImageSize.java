@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative;
+
+import android.widget.ImageView;
+import android.widget.ImageView.ScaleType;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Size, in pixels, at which an image is decoded to be displayed in an image view.
+ */
+@AutoValue
+abstract class ImageSize {
+
+  /**
+   * @return size of the given view, or <code>null</code> if it is not laid out yet
+   */
+  @Nullable
+  static ImageSize of(@NonNull ImageView imageView) {
+    int width = imageView.getWidth();
+    int height = imageView.getHeight();
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+
+    return create(width, height, imageView.getScaleType() == ScaleType.CENTER_CROP);
+  }
+
+  @NonNull
+  static ImageSize create(int width, int height, boolean isCropped) {
+    return new AutoValue_ImageSize(width, height, isCropped);
+  }
+
+  abstract int getWidth();
+
+  abstract int getHeight();
+
+  /**
+   * Indicate that the image fills the view and is cropped, instead of fitting inside the view.
+   */
+  abstract boolean isCropped();
+
+}
@@ -17,46 +17,36 @@
 package com.criteo.publisher.advancednative;
 
 import androidx.annotation.NonNull;
-import com.criteo.publisher.SafeRunnable;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
-import com.criteo.publisher.network.PubSdkApi;
-import java.io.IOException;
-import java.io.InputStream;
+import com.criteo.publisher.network.PixelDispatcher;
 import java.net.URL;
-import java.util.concurrent.Executor;
 
 public class ImpressionHelper {
 
   @NonNull
-  private final PubSdkApi api;
-
-  @NonNull
-  private final Executor executor;
+  private final PixelDispatcher pixelDispatcher;
 
   @NonNull
   private final RunOnUiThreadExecutor runOnUiThreadExecutor;
 
   public ImpressionHelper(
-      @NonNull PubSdkApi api,
-      @NonNull Executor executor,
+      @NonNull PixelDispatcher pixelDispatcher,
       @NonNull RunOnUiThreadExecutor runOnUiThreadExecutor) {
-    this.api = api;
-    this.executor = executor;
+    this.pixelDispatcher = pixelDispatcher;
     this.runOnUiThreadExecutor = runOnUiThreadExecutor;
   }
 
   /**
    * Fire and forget the given pixels
    * <p>
-   * Each pixel are fired in asynchronously independently. This means that if one fail, it fails
-   * silently and other continues.
+   * Pixels are fired asynchronously and independently. This means that if one fails, it fails
+   * silently and others continue. Failing pixels are retried later by the
+   * {@link PixelDispatcher}, even on next sessions.
    *
    * @param pixels list of pixels to fire
    */
   void firePixels(@NonNull Iterable<URL> pixels) {
-    for (URL impressionPixel : pixels) {
-      executor.execute(new PixelTask(impressionPixel, api));
-    }
+    pixelDispatcher.dispatch(pixels);
   }
 
   /**
@@ -74,27 +64,4 @@ public class ImpressionHelper {
       }
     });
   }
-
-  private static class PixelTask extends SafeRunnable {
-
-    @NonNull
-    private final URL impressionPixel;
-
-    @NonNull
-    private final PubSdkApi api;
-
-    private PixelTask(
-        @NonNull URL impressionPixel,
-        @NonNull PubSdkApi api
-    ) {
-      this.impressionPixel = impressionPixel;
-      this.api = api;
-    }
-
-    public void runSafely() throws IOException {
-      try (InputStream ignored = api.executeRawGet(impressionPixel)) {
-        // ignore response
-      }
-    }
-  }
 }
@@ -0,0 +1,48 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative;
+
+import androidx.annotation.NonNull;
+import com.squareup.picasso.Picasso.Priority;
+
+/**
+ * Kind of the images of a native ad.
+ * <p>
+ * Images of a same kind are generally displayed in views of the same size. So the size of the last
+ * view of a kind is used to prefetch the next images of this kind.
+ */
+enum MediaKind {
+  PRODUCT_IMAGE(Priority.NORMAL),
+  ADVERTISER_LOGO(Priority.NORMAL),
+
+  /**
+   * The AdChoice icon is small and only displayed in a corner of the ad, so it is fetched last.
+   */
+  ADCHOICE_ICON(Priority.LOW);
+
+  @NonNull
+  private final Priority prefetchPriority;
+
+  MediaKind(@NonNull Priority prefetchPriority) {
+    this.prefetchPriority = prefetchPriority;
+  }
+
+  @NonNull
+  Priority getPrefetchPriority() {
+    return prefetchPriority;
+  }
+}
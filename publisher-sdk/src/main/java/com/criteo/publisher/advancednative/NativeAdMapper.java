@@ -18,6 +18,7 @@ package com.criteo.publisher.advancednative;
 
 import androidx.annotation.NonNull;
 import com.criteo.publisher.model.nativeads.NativeAssets;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import java.lang.ref.WeakReference;
 
 public class NativeAdMapper {
@@ -25,6 +26,9 @@ public class NativeAdMapper {
   @NonNull
   private final VisibilityTracker visibilityTracker;
 
+  @NonNull
+  private final ViewabilityCriteria viewabilityCriteria;
+
   @NonNull
   private final ImpressionHelper impressionHelper;
 
@@ -42,6 +46,7 @@ public class NativeAdMapper {
 
   public NativeAdMapper(
       @NonNull VisibilityTracker visibilityTracker,
+      @NonNull BuildConfigWrapper buildConfigWrapper,
       @NonNull ImpressionHelper impressionHelper,
       @NonNull ClickDetection clickDetection,
       @NonNull ClickHelper clickHelper,
@@ -49,6 +54,10 @@ public class NativeAdMapper {
       @NonNull RendererHelper rendererHelper
   ) {
     this.visibilityTracker = visibilityTracker;
+    this.viewabilityCriteria = ViewabilityCriteria.create(
+        buildConfigWrapper.getNativeViewabilityMinVisibleAreaPercent(),
+        buildConfigWrapper.getNativeViewabilityMinDurationInMillis()
+    );
     this.impressionHelper = impressionHelper;
     this.clickDetection = clickDetection;
     this.clickHelper = clickHelper;
@@ -79,13 +88,17 @@ public class NativeAdMapper {
         clickHelper
     );
 
-    rendererHelper.preloadMedia(nativeAssets.getProduct().getImageUrl());
-    rendererHelper.preloadMedia(nativeAssets.getAdvertiserLogoUrl());
-    rendererHelper.preloadMedia(nativeAssets.getPrivacyOptOutImageUrl());
+    rendererHelper.preloadMedia(nativeAssets.getProduct().getImageUrl(), MediaKind.PRODUCT_IMAGE);
+    rendererHelper.preloadMedia(nativeAssets.getAdvertiserLogoUrl(), MediaKind.ADVERTISER_LOGO);
+    rendererHelper.preloadMedia(
+        nativeAssets.getPrivacyOptOutImageUrl(),
+        MediaKind.ADCHOICE_ICON
+    );
 
     return new CriteoNativeAd(
         nativeAssets,
         visibilityTracker,
+        viewabilityCriteria,
         impressionTask,
         clickDetection,
         clickOnProductHandler,
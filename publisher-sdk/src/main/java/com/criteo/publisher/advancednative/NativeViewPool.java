@@ -0,0 +1,242 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.MessageQueue;
+import android.os.MessageQueue.IdleHandler;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.activity.NoOpActivityLifecycleCallbacks;
+import com.criteo.publisher.util.PreconditionsUtil;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of empty native views inflated ahead by a renderer.
+ * <p>
+ * Inflating a native view, with its AdChoice overlay, is expensive and is done on the UI thread,
+ * typically while a feed is scrolling. Instead, views are inflated when the UI thread is idle and
+ * are handed out when a new view is needed. The pool is refilled on the next idle time.
+ * <p>
+ * Views are inflated with the context and the parent of the last acquisition, so they get the
+ * expected theme and layout params. A view references its context, which is typically an activity,
+ * and the pool lives as long as its loader, which may outlive the activity. So the pool is cleared
+ * when the activity of its context is destroyed, and the activity can then be collected.
+ */
+class NativeViewPool {
+
+  @NonNull
+  private final CriteoNativeRenderer renderer;
+
+  private final int maxSize;
+
+  @NonNull
+  private final Deque<View> pooledViews = new ArrayDeque<>();
+
+  @NonNull
+  private WeakReference<Context> contextRef = new WeakReference<>(null);
+
+  @NonNull
+  private WeakReference<ViewGroup> parentRef = new WeakReference<>(null);
+
+  /**
+   * Tracker of the activity of the current context, or <code>null</code> if the context has no
+   * activity.
+   */
+  @Nullable
+  private ActivityDestroyedTracker activityTracker;
+
+  private boolean isWarmUpScheduled = false;
+
+  NativeViewPool(@NonNull CriteoNativeRenderer renderer, int maxSize) {
+    this.renderer = renderer;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Return an empty native view, taken from the pool if possible, else inflated on demand.
+   * <p>
+   * Pooled views that were inflated for another context or another parent are dropped.
+   *
+   * @param context android context
+   * @param parent optional parent to get layout params from
+   * @return empty native view
+   */
+  @NonNull
+  synchronized View acquire(@NonNull Context context, @Nullable ViewGroup parent) {
+    if (contextRef.get() != context || parentRef.get() != parent) {
+      if (contextRef.get() != context) {
+        trackActivityOf(context);
+      }
+      pooledViews.clear();
+      contextRef = new WeakReference<>(context);
+      parentRef = new WeakReference<>(parent);
+    }
+
+    View pooledView = pooledViews.poll();
+    if (pooledView != null) {
+      return pooledView;
+    }
+    return renderer.createNativeView(context, parent);
+  }
+
+  private void trackActivityOf(@NonNull Context context) {
+    stopTrackingActivity();
+
+    Activity activity = findActivity(context);
+    if (activity == null) {
+      return;
+    }
+
+    Application application = activity.getApplication();
+    if (application == null) {
+      return;
+    }
+
+    activityTracker = new ActivityDestroyedTracker(application, activity);
+    application.registerActivityLifecycleCallbacks(activityTracker);
+  }
+
+  private void stopTrackingActivity() {
+    ActivityDestroyedTracker tracker = activityTracker;
+    if (tracker != null) {
+      tracker.application.unregisterActivityLifecycleCallbacks(tracker);
+      activityTracker = null;
+    }
+  }
+
+  /**
+   * Drop the pooled views, and forget the context and the parent, so the destroyed activity is not
+   * retained by the pool.
+   */
+  private synchronized void onActivityDestroyed(@NonNull ActivityDestroyedTracker tracker) {
+    if (activityTracker != tracker) {
+      return;
+    }
+
+    stopTrackingActivity();
+    pooledViews.clear();
+    contextRef = new WeakReference<>(null);
+    parentRef = new WeakReference<>(null);
+  }
+
+  @Nullable
+  private static Activity findActivity(@NonNull Context context) {
+    Context current = context;
+    while (current instanceof ContextWrapper) {
+      if (current instanceof Activity) {
+        return (Activity) current;
+      }
+      current = ((ContextWrapper) current).getBaseContext();
+    }
+    return null;
+  }
+
+  /**
+   * Fill the pool, one view at a time, each time the given queue is idle.
+   * <p>
+   * Nothing is done if the pool is already full or is already being filled, or if there is no
+   * queue to wait on.
+   *
+   * @param queue message queue of the UI thread
+   */
+  synchronized void scheduleWarmUp(@Nullable MessageQueue queue) {
+    if (queue == null || isWarmUpScheduled || !needsWarmUp()) {
+      return;
+    }
+
+    isWarmUpScheduled = true;
+    queue.addIdleHandler(new IdleHandler() {
+      @Override
+      public boolean queueIdle() {
+        boolean keep = warmUpOne();
+        if (!keep) {
+          onWarmUpEnded();
+        }
+        return keep;
+      }
+    });
+  }
+
+  private synchronized void onWarmUpEnded() {
+    isWarmUpScheduled = false;
+  }
+
+  /**
+   * Inflate a single view into the pool.
+   *
+   * @return <code>true</code> if the pool is still not full after this inflation
+   */
+  synchronized boolean warmUpOne() {
+    Context context = contextRef.get();
+    if (context == null || !needsWarmUp()) {
+      return false;
+    }
+
+    try {
+      View view = renderer.createNativeView(context, parentRef.get());
+      pooledViews.offer(view);
+    } catch (RuntimeException e) {
+      // Stop warming up: the renderer fails again when the view is acquired on demand
+      PreconditionsUtil.throwOrLog(e);
+      return false;
+    }
+
+    return needsWarmUp();
+  }
+
+  synchronized int size() {
+    return pooledViews.size();
+  }
+
+  private boolean needsWarmUp() {
+    return pooledViews.size() < maxSize;
+  }
+
+  private class ActivityDestroyedTracker extends NoOpActivityLifecycleCallbacks {
+
+    @NonNull
+    private final Application application;
+
+    @NonNull
+    private final Activity trackedActivity;
+
+    private ActivityDestroyedTracker(
+        @NonNull Application application,
+        @NonNull Activity trackedActivity
+    ) {
+      this.application = application;
+      this.trackedActivity = trackedActivity;
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+      if (activity == trackedActivity) {
+        NativeViewPool.this.onActivityDestroyed(this);
+      }
+    }
+
+  }
+
+}
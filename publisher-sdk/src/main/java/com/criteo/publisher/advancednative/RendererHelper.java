@@ -24,6 +24,8 @@ import androidx.annotation.Nullable;
 import com.criteo.publisher.SafeRunnable;
 import com.criteo.publisher.concurrent.RunOnUiThreadExecutor;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Keep
 public class RendererHelper {
@@ -34,6 +36,13 @@ public class RendererHelper {
   @NonNull
   private final RunOnUiThreadExecutor uiExecutor;
 
+  /**
+   * Size of the last view in which an image of each kind was set. Next images of the same kind are
+   * prefetched at this size, so they are found in the memory cache when rendered.
+   */
+  @NonNull
+  private final Map<MediaKind, ImageSize> targetSizes = new ConcurrentHashMap<>();
+
   public RendererHelper(
       @NonNull ImageLoaderHolder imageLoaderHolder,
       @NonNull RunOnUiThreadExecutor uiExecutor
@@ -42,24 +51,57 @@ public class RendererHelper {
     this.uiExecutor = uiExecutor;
   }
 
-  void preloadMedia(@NonNull URL url) {
+  void preloadMedia(@NonNull URL url, @NonNull MediaKind kind) {
     new SafeRunnable() {
       @Override
       public void runSafely() throws Throwable {
-        imageLoaderHolder.get().preload(url);
+        ImageLoader imageLoader = imageLoaderHolder.get();
+        if (imageLoader instanceof CriteoImageLoader) {
+          // Only the SDK loader is able to decode at a given size: the ImageLoader API is public
+          CriteoImageLoader criteoImageLoader = (CriteoImageLoader) imageLoader;
+          ImageSize targetSize = targetSizes.get(kind);
+          if (targetSize == null) {
+            criteoImageLoader.preload(url, kind.getPrefetchPriority());
+          } else {
+            criteoImageLoader.preload(
+                url,
+                targetSize.getWidth(),
+                targetSize.getHeight(),
+                targetSize.isCropped(),
+                kind.getPrefetchPriority()
+            );
+          }
+        } else {
+          imageLoader.preload(url);
+        }
       }
     }.run();
   }
 
   public void setMediaInView(CriteoMedia mediaContent, CriteoMediaView mediaView) {
-    setMediaInView(mediaContent.getImageUrl(), mediaView.getImageView(), mediaView.getPlaceholder());
+    setMediaInView(
+        mediaContent.getImageUrl(),
+        mediaView.getImageView(),
+        mediaView.getPlaceholder(),
+        mediaContent.getKind()
+    );
   }
 
-  void setMediaInView(@NonNull URL url, @NonNull ImageView imageView, @Nullable Drawable placeholder) {
+  void setMediaInView(
+      @NonNull URL url,
+      @NonNull ImageView imageView,
+      @Nullable Drawable placeholder,
+      @NonNull MediaKind kind
+  ) {
     uiExecutor.execute(new SafeRunnable() {
       @Override
       public void runSafely() throws Throwable {
         imageLoaderHolder.get().loadImageInto(url, imageView, placeholder);
+
+        ImageSize targetSize = ImageSize.of(imageView);
+        if (targetSize != null) {
+          targetSizes.put(kind, targetSize);
+        }
       }
     });
   }
@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative;
+
+import androidx.annotation.NonNull;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Minimal exposure of a view before it is considered as viewed, following the IAB/MRC viewability
+ * guidelines: a part of the area of the view should stay on screen for a continuous duration.
+ * <p>
+ * For instance, the standard for display ads is 50% of the pixels during at least one second.
+ */
+@AutoValue
+abstract class ViewabilityCriteria {
+
+  /**
+   * @param minVisibleAreaPercent percentage of the area of the view, between 0 and 100, that should
+   *                              be on screen. If 0, at least one pixel should be.
+   * @param minDurationInMillis   duration during which the view should be continuously on screen.
+   *                              If 0, the view is viewed as soon as it is on screen.
+   */
+  @NonNull
+  static ViewabilityCriteria create(int minVisibleAreaPercent, long minDurationInMillis) {
+    return new AutoValue_ViewabilityCriteria(minVisibleAreaPercent, minDurationInMillis);
+  }
+
+  abstract int getMinVisibleAreaPercent();
+
+  abstract long getMinDurationInMillis();
+
+  /**
+   * @param visibleAreaRatio ratio of the area of a view that is on screen, between 0 and 1
+   * @return <code>true</code> if this ratio is enough for the view to be in view
+   */
+  boolean isInView(float visibleAreaRatio) {
+    return visibleAreaRatio > 0 && visibleAreaRatio * 100 >= getMinVisibleAreaPercent();
+  }
+
+}
@@ -31,17 +31,40 @@ public class VisibilityChecker {
    * @return true if visible, else false
    */
   boolean isVisible(@NonNull View view) {
-    if (!view.isShown()) {
-      return false;
+    return getVisibleAreaRatio(view) > 0;
+  }
+
+  /**
+   * Measure the part of the given view that is visible on screen.
+   * <p>
+   * The view is not visible if it, or one of its ancestors, is not shown, or if its window is not
+   * visible. Else this is the ratio of its area that is not clipped by its ancestors nor by the
+   * screen.
+   *
+   * @param view view to measure
+   * @return ratio of the area of the view visible on screen, between 0 and 1
+   */
+  float getVisibleAreaRatio(@NonNull View view) {
+    if (!view.isShown() || view.getWindowVisibility() != View.VISIBLE) {
+      return 0;
     }
 
-    boolean hasNoSize = view.getWidth() == 0 || view.getHeight() == 0;
+    int width = view.getWidth();
+    int height = view.getHeight();
+    boolean hasNoSize = width == 0 || height == 0;
     if (hasNoSize) {
-      return false;
+      return 0;
     }
 
     // FIXME EE-931 Handle when the given view is completely covered by other views.
 
-    return view.getGlobalVisibleRect(new Rect());
+    Rect visibleRect = new Rect();
+    if (!view.getGlobalVisibleRect(visibleRect)) {
+      return 0;
+    }
+
+    long visibleArea = (long) (visibleRect.right - visibleRect.left)
+        * (visibleRect.bottom - visibleRect.top);
+    return Math.min(1f, (float) visibleArea / ((long) width * height));
   }
 }
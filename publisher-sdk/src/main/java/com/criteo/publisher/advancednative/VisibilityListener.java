@@ -21,9 +21,8 @@ import android.view.View;
 interface VisibilityListener {
 
   /**
-   * Invoked callback in case a
-   * {@linkplain VisibilityTracker#watch(View, VisibilityListener) watched view} was detected as
-   * visible.
+   * Invoked callback in case a {@linkplain VisibilityTracker#watch(View, ViewabilityCriteria,
+   * VisibilityListener) watched view} was detected as viewed.
    */
   void onVisible();
 }
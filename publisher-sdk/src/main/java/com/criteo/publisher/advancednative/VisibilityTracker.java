@@ -23,32 +23,78 @@ import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Detect when watched views are viewed on the user screen, according to given {@linkplain
+ * ViewabilityCriteria viewability criteria}.
+ * <p>
+ * Watched views are grouped by {@link ViewTreeObserver}: a single {@link OnPreDrawListener} is
+ * registered per observer, and it checks all the views of its group in one pass. This pass is
+ * throttled (see {@link BuildConfigWrapper#getVisibilityCheckIntervalInMillis()}): pre-draws
+ * happening before the end of the interval are skipped, and a last check is posted at the end of
+ * the interval so a view becoming visible during a skipped frame is still detected. Once its
+ * listener is triggered, a view leaves its group, and a group without any view unregisters itself.
+ * <p>
+ * Each check samples the visible area of the views. A view is in view from the first sample
+ * meeting its criteria, until a sample does not meet them anymore. As pre-draws stop when the
+ * screen is static, a check is also posted for the time at which a view in view would have been
+ * viewed long enough.
+ * <p>
+ * The observer of a view not attached to a window is merged into the observer of the window when
+ * the view is attached. So a window observer may end up holding a few groups, each one still
+ * checking its own views.
+ */
 public class VisibilityTracker {
 
   @NonNull
   private final VisibilityChecker visibilityChecker;
 
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
   @NonNull
   @GuardedBy("lock")
   private final Map<View, VisibilityTrackingTask> trackedViews = new WeakHashMap<>();
 
+  @NonNull
+  @GuardedBy("lock")
+  private final Map<ViewTreeObserver, SharedPreDrawListener> preDrawListeners =
+      new WeakHashMap<>();
+
   private final Object lock = new Object();
 
-  public VisibilityTracker(@NonNull VisibilityChecker visibilityChecker) {
+  public VisibilityTracker(
+      @NonNull VisibilityChecker visibilityChecker,
+      @NonNull Clock clock,
+      @NonNull BuildConfigWrapper buildConfigWrapper
+  ) {
     this.visibilityChecker = visibilityChecker;
+    this.clock = clock;
+    this.buildConfigWrapper = buildConfigWrapper;
   }
 
   /**
    * Add the given {@link View} to the set of watched views.
    * <p>
-   * As long as this view live, if at one moment it is drawn and {@linkplain
-   * VisibilityChecker#isVisible(View) visible} on user screen, then the given listener will be
-   * invoked.
+   * As long as this view live, if it is drawn and its {@linkplain
+   * VisibilityChecker#getVisibleAreaRatio(View) visible area} meets the given criteria during the
+   * given duration, then the given listener will be invoked once. The view is then no more watched,
+   * until this method is called again.
    * <p>
    * It is safe to call again this method with the same view and listener, and it is also same to
    * call again with the same view and an other listener. For a given view, only the last registered
@@ -56,82 +102,353 @@ public class VisibilityTracker {
    * before.
    *
    * @param view     new or recycle view to watch for visibility
-   * @param listener listener to trigger once visibility is detected
+   * @param criteria criteria to meet for the view to be viewed
+   * @param listener listener to trigger once the view is viewed
    */
-  void watch(@NonNull View view, @NonNull VisibilityListener listener) {
-    VisibilityTrackingTask trackingTask;
-
+  void watch(
+      @NonNull View view,
+      @NonNull ViewabilityCriteria criteria,
+      @NonNull VisibilityListener listener
+  ) {
     synchronized (lock) {
-      trackingTask = trackedViews.get(view);
+      VisibilityTrackingTask trackingTask = trackedViews.get(view);
       if (trackingTask == null) {
-        trackingTask = startTrackingNewView(view);
+        trackingTask = new VisibilityTrackingTask(new WeakReference<>(view), visibilityChecker);
         trackedViews.put(view, trackingTask);
       }
+
+      trackingTask.setListener(criteria, listener);
+      startTracking(view, trackingTask);
+    }
+  }
+
+  @GuardedBy("lock")
+  private void startTracking(@NonNull View view, @NonNull VisibilityTrackingTask trackingTask) {
+    if (trackingTask.preDrawListener != null) {
+      return;
     }
 
-    trackingTask.setListener(listener);
+    ViewTreeObserver observer = view.getViewTreeObserver();
+    if (!observer.isAlive()) {
+      return;
+    }
+
+    SharedPreDrawListener preDrawListener = preDrawListeners.get(observer);
+    if (preDrawListener == null) {
+      preDrawListener = new SharedPreDrawListener(new WeakReference<>(observer));
+      preDrawListeners.put(observer, preDrawListener);
+      observer.addOnPreDrawListener(preDrawListener);
+    }
+
+    preDrawListener.trackingTasks.add(trackingTask);
+    trackingTask.preDrawListener = preDrawListener;
   }
 
-  @NonNull
-  private VisibilityTrackingTask startTrackingNewView(@NonNull View view) {
-    return new VisibilityTrackingTask(new WeakReference<>(view), visibilityChecker);
+  /**
+   * Stop tracking the given task, unless a new listener was set meanwhile.
+   */
+  @GuardedBy("lock")
+  private void stopTracking(@NonNull VisibilityTrackingTask trackingTask) {
+    SharedPreDrawListener preDrawListener = trackingTask.preDrawListener;
+    if (preDrawListener == null || (trackingTask.hasListener() && !trackingTask.isViewGone())) {
+      return;
+    }
+
+    trackingTask.preDrawListener = null;
+    preDrawListener.trackingTasks.remove(trackingTask);
+
+    if (preDrawListener.trackingTasks.isEmpty()) {
+      ViewTreeObserver observer = preDrawListener.observerRef.get();
+      if (observer != null) {
+        preDrawListeners.remove(observer);
+        removePreDrawListener(observer, preDrawListener);
+      }
+
+      // The group may have been merged into the observer of a window meanwhile
+      for (Reference<ViewTreeObserver> dispatchingObserverRef
+          : preDrawListener.dispatchingObserverRefs) {
+        ViewTreeObserver dispatchingObserver = dispatchingObserverRef.get();
+        if (dispatchingObserver != null && dispatchingObserver != observer) {
+          removePreDrawListener(dispatchingObserver, preDrawListener);
+        }
+      }
+    }
+  }
+
+  private static void removePreDrawListener(
+      @NonNull ViewTreeObserver observer,
+      @NonNull OnPreDrawListener preDrawListener
+  ) {
+    if (observer.isAlive()) {
+      observer.removeOnPreDrawListener(preDrawListener);
+    }
   }
 
   @VisibleForTesting
-  static class VisibilityTrackingTask implements OnPreDrawListener {
+  class SharedPreDrawListener implements OnPreDrawListener {
 
     @NonNull
-    private final Reference<View> trackedViewRef;
+    private final Reference<ViewTreeObserver> observerRef;
 
     @NonNull
-    private final VisibilityChecker visibilityChecker;
+    @GuardedBy("lock")
+    private final Set<VisibilityTrackingTask> trackingTasks = new LinkedHashSet<>();
+
+    /**
+     * Only accessed on the UI thread, as pre-draws and posted checks.
+     */
+    private long lastCheckTime = Long.MIN_VALUE;
+
+    /**
+     * Time of the posted check, or {@link Long#MAX_VALUE} if there is none.
+     */
+    private long postedCheckTime = Long.MAX_VALUE;
 
     @Nullable
-    private volatile VisibilityListener listener = null;
+    private Reference<View> postedViewRef;
 
-    VisibilityTrackingTask(@NonNull Reference<View> viewRef, @NonNull VisibilityChecker visibilityChecker) {
-      this.trackedViewRef = viewRef;
-      this.visibilityChecker = visibilityChecker;
+    /**
+     * Observers of the tracked views seen during pre-draws. Only accessed on the UI thread.
+     * <p>
+     * When a view is attached, its group is merged into the observer of the window, and the
+     * listener is then registered there. This observer is remembered while the view can still
+     * give it, so the listener can be unregistered from it even after all the views of the group
+     * are gone.
+     */
+    @NonNull
+    private final List<Reference<ViewTreeObserver>> dispatchingObserverRefs = new ArrayList<>(1);
+
+    @NonNull
+    private final Runnable postedCheck = new Runnable() {
+      @Override
+      public void run() {
+        postedCheckTime = Long.MAX_VALUE;
+        postedViewRef = null;
+        checkAll(clock.getCurrentTimeInMillis());
+      }
+    };
+
+    private SharedPreDrawListener(@NonNull Reference<ViewTreeObserver> observerRef) {
+      this.observerRef = observerRef;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+      rememberDispatchingObserver();
+
+      long now = clock.getCurrentTimeInMillis();
+      long interval = buildConfigWrapper.getVisibilityCheckIntervalInMillis();
+      long elapsed = now - lastCheckTime;
+
+      if (lastCheckTime != Long.MIN_VALUE && elapsed >= 0 && elapsed < interval) {
+        postCheck(now, interval - elapsed);
+      } else {
+        checkAll(now);
+      }
+      return true;
+    }
+
+    private void checkAll(long now) {
+      lastCheckTime = now;
+
+      // Most of the time, no view is done: nothing is allocated for them
+      List<VisibilityTrackingTask> doneTasks = null;
+      long nextViewableTime = Long.MAX_VALUE;
+      synchronized (lock) {
+        for (VisibilityTrackingTask task : trackingTasks) {
+          if (task.isDone(now)) {
+            if (doneTasks == null) {
+              doneTasks = new ArrayList<>();
+            }
+            doneTasks.add(task);
+          } else {
+            nextViewableTime = Math.min(nextViewableTime, task.getViewableTime());
+          }
+        }
+      }
 
-      setUpObserver();
+      if (nextViewableTime != Long.MAX_VALUE) {
+        postCheck(now, Math.max(0, nextViewableTime - now));
+      }
+
+      if (doneTasks == null) {
+        return;
+      }
+
+      // Listeners are triggered without holding the lock, as they may watch other views
+      for (VisibilityTrackingTask task : doneTasks) {
+        task.trigger();
+        synchronized (lock) {
+          stopTracking(task);
+        }
+      }
     }
 
-    private void setUpObserver() {
-      View view = trackedViewRef.get();
+    private void rememberDispatchingObserver() {
+      View view = getAnyTrackedView();
       if (view == null) {
         return;
       }
 
       ViewTreeObserver observer = view.getViewTreeObserver();
-      if (observer.isAlive()) {
-        observer.addOnPreDrawListener(this);
+      Iterator<Reference<ViewTreeObserver>> iterator = dispatchingObserverRefs.iterator();
+      while (iterator.hasNext()) {
+        ViewTreeObserver dispatchingObserver = iterator.next().get();
+        if (dispatchingObserver == observer) {
+          return;
+        } else if (dispatchingObserver == null) {
+          iterator.remove();
+        }
       }
+      dispatchingObserverRefs.add(new WeakReference<>(observer));
     }
 
-    void setListener(@Nullable VisibilityListener listener) {
-      this.listener = listener;
+    /**
+     * Post a check after the given delay, unless one is already posted before.
+     */
+    private void postCheck(long now, long delayInMillis) {
+      long checkTime = now + delayInMillis;
+      if (postedCheckTime <= checkTime) {
+        return;
+      }
+
+      View view = getAnyTrackedView();
+      if (view == null) {
+        return;
+      }
+
+      View postedView = postedViewRef == null ? null : postedViewRef.get();
+      if (postedView != null) {
+        postedView.removeCallbacks(postedCheck);
+      }
+
+      if (view.postDelayed(postedCheck, delayInMillis)) {
+        postedCheckTime = checkTime;
+        postedViewRef = new WeakReference<>(view);
+      } else {
+        postedCheckTime = Long.MAX_VALUE;
+        postedViewRef = null;
+      }
     }
 
-    @Override
-    public boolean onPreDraw() {
-      if (shouldTrigger()) {
-        triggerListener();
+    @Nullable
+    private View getAnyTrackedView() {
+      synchronized (lock) {
+        for (VisibilityTrackingTask task : trackingTasks) {
+          View view = task.trackedViewRef.get();
+          if (view != null) {
+            return view;
+          }
+        }
+        return null;
       }
-      return true;
     }
+  }
 
-    private boolean shouldTrigger() {
+  @VisibleForTesting
+  static class VisibilityTrackingTask {
+
+    private static final long NOT_IN_VIEW = -1;
+
+    @NonNull
+    private final Reference<View> trackedViewRef;
+
+    @NonNull
+    private final VisibilityChecker visibilityChecker;
+
+    @NonNull
+    private final AtomicReference<VisibilityListener> listener = new AtomicReference<>();
+
+    /**
+     * Guarded by the lock of the tracker, as the fields below.
+     */
+    @Nullable
+    private ViewabilityCriteria criteria;
+
+    /**
+     * Time of the first sample of the current in view period, or {@link #NOT_IN_VIEW}.
+     */
+    private long inViewSince = NOT_IN_VIEW;
+
+    /**
+     * Group checking this task, or <code>null</code> if it is not tracked.
+     */
+    @Nullable
+    private SharedPreDrawListener preDrawListener;
+
+    VisibilityTrackingTask(
+        @NonNull Reference<View> viewRef,
+        @NonNull VisibilityChecker visibilityChecker
+    ) {
+      this.trackedViewRef = viewRef;
+      this.visibilityChecker = visibilityChecker;
+    }
+
+    /**
+     * Set the listener to trigger once the given criteria are met. The in view period, if any, is
+     * restarted, as the view may now display an other ad.
+     */
+    void setListener(@NonNull ViewabilityCriteria criteria, @NonNull VisibilityListener listener) {
+      this.criteria = criteria;
+      this.inViewSince = NOT_IN_VIEW;
+      this.listener.set(listener);
+    }
+
+    private boolean hasListener() {
+      return listener.get() != null;
+    }
+
+    private boolean isViewGone() {
+      return trackedViewRef.get() == null;
+    }
+
+    /**
+     * Sample the visible area of the view, and update its in view period.
+     *
+     * @param now time of this sample
+     * @return <code>true</code> if there is nothing left to track: the view is gone, or it is
+     * viewed and its listener can be {@linkplain #trigger() triggered}
+     */
+    boolean isDone(long now) {
       View trackedView = trackedViewRef.get();
       if (trackedView == null) {
+        return true;
+      }
+
+      ViewabilityCriteria criteria = this.criteria;
+      if (criteria == null || !hasListener()
+          || !criteria.isInView(visibilityChecker.getVisibleAreaRatio(trackedView))) {
+        inViewSince = NOT_IN_VIEW;
         return false;
       }
 
-      return visibilityChecker.isVisible(trackedView);
+      if (inViewSince == NOT_IN_VIEW) {
+        inViewSince = now;
+      }
+      return now - inViewSince >= criteria.getMinDurationInMillis();
+    }
+
+    /**
+     * @return time at which the view is viewed if it stays in view, or {@link Long#MAX_VALUE} if
+     * it is not in view
+     */
+    long getViewableTime() {
+      ViewabilityCriteria criteria = this.criteria;
+      if (inViewSince == NOT_IN_VIEW || criteria == null) {
+        return Long.MAX_VALUE;
+      }
+      return inViewSince + criteria.getMinDurationInMillis();
     }
 
-    private void triggerListener() {
-      VisibilityListener listener = this.listener;
+    /**
+     * Trigger the listener once, if any.
+     */
+    void trigger() {
+      if (trackedViewRef.get() == null) {
+        return;
+      }
 
+      VisibilityListener listener = this.listener.getAndSet(null);
       if (listener != null) {
         listener.onVisible();
       }
@@ -39,8 +39,9 @@ public interface BidLifecycleListener {
    * Callback invoked when a CDB call is about to start.
    *
    * @param request Request sent to CDB
+   * @param callId ID of the CDB call. Requests merged into the same call share this ID.
    */
-  void onCdbCallStarted(@NonNull CdbRequest request);
+  void onCdbCallStarted(@NonNull CdbRequest request, @NonNull String callId);
 
   /**
    * Callback invoked when a CDB call finished successfully with a response.
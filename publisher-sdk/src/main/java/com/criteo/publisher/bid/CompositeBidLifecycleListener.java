@@ -41,9 +41,9 @@ public class CompositeBidLifecycleListener implements BidLifecycleListener {
   }
 
   @Override
-  public void onCdbCallStarted(@NonNull CdbRequest request) {
+  public void onCdbCallStarted(@NonNull CdbRequest request, @NonNull String callId) {
     for (BidLifecycleListener delegate : delegates) {
-      delegate.onCdbCallStarted(request);
+      delegate.onCdbCallStarted(request, callId);
     }
   }
 
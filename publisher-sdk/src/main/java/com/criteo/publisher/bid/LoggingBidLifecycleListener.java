@@ -37,8 +37,8 @@ public class LoggingBidLifecycleListener implements BidLifecycleListener {
   }
 
   @Override
-  public void onCdbCallStarted(@NonNull CdbRequest request) {
-    logger.debug("onCdbCallStarted: %s", request);
+  public void onCdbCallStarted(@NonNull CdbRequest request, @NonNull String callId) {
+    logger.debug("onCdbCallStarted: %s, callId=%s", request, callId);
   }
 
   @Override
@@ -19,23 +19,51 @@ package com.criteo.publisher.bid;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.Clock;
+import java.security.SecureRandom;
 import java.util.UUID;
 
 public class UniqueIdGenerator {
 
+  /**
+   * Number of random values drawn by a thread before its generator is reseeded.
+   */
+  private static final int RESEED_INTERVAL = 1 << 16;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
   @NonNull
   private final Clock clock;
 
+  /**
+   * Only used to seed the generator of each thread, so its lock is rarely taken.
+   */
+  @NonNull
+  private final SecureRandom seedGenerator;
+
+  @NonNull
+  private final ThreadLocal<RandomIdGenerator> generators = new ThreadLocal<RandomIdGenerator>() {
+    @Override
+    protected RandomIdGenerator initialValue() {
+      return new RandomIdGenerator();
+    }
+  };
+
   public UniqueIdGenerator(@NonNull Clock clock) {
     this.clock = clock;
+    this.seedGenerator = new SecureRandom();
   }
 
   /**
    * Generate a new unique ID suitable for Criteo backends
    * <p>
    * The output represents a 32 bytes unique ID formatted into hexadecimal. The 8 first (MSB) bytes
-   * represent the UNIX timestamp in seconds. The 24 following ones are random from a cryptographic
-   * random generator. This ensures keeping a very low probability of collision.
+   * represent the UNIX timestamp in seconds. The 24 following ones are random. This ensures keeping
+   * a very low probability of collision.
+   * <p>
+   * As an ID is generated for each requested slot, random values come from a fast generator
+   * confined to the calling thread, instead of the contended cryptographic one behind
+   * {@link UUID#randomUUID()}. Those generators are regularly reseeded from a cryptographic
+   * generator, so IDs stay unpredictable across devices and processes.
    * <p>
    * At SDK level, a simpler {@link UUID#randomUUID()} would be sufficient. But those ids are
    * expected to be sent to a Criteo backend and should then be (almost) unique at Criteo level and
@@ -58,7 +86,7 @@ public class UniqueIdGenerator {
   @NonNull
   public String generateId() {
     long timeInSecond = clock.getCurrentTimeInMillis() / 1000;
-    return generateId(UUID.randomUUID(), timeInSecond);
+    return generators.get().generateId(timeInSecond);
   }
 
   @NonNull
@@ -75,7 +103,21 @@ public class UniqueIdGenerator {
     // Paste in the timestamp at the 8 MSB
     msb = (timeInSecond << 32) | (msb & 0xFFFFFFFFL);
 
-    return String.format("%016x%016x", msb, lsb);
+    return toHex(msb, lsb, new char[32]);
+  }
+
+  /**
+   * Format the given 128 bits into 32 lowercase hexadecimal digits, using the given buffer.
+   */
+  @NonNull
+  private static String toHex(long msb, long lsb, @NonNull char[] buffer) {
+    for (int i = 15; i >= 0; i--) {
+      buffer[i] = HEX_DIGITS[(int) (msb & 0xF)];
+      buffer[i + 16] = HEX_DIGITS[(int) (lsb & 0xF)];
+      msb >>>= 4;
+      lsb >>>= 4;
+    }
+    return new String(buffer);
   }
 
   /**
@@ -111,4 +153,39 @@ public class UniqueIdGenerator {
     return valueWithoutDestination | byteToCopyAtDestination;
   }
 
+  /**
+   * Generator of IDs confined to a single thread.
+   * <p>
+   * Random values come from a SplitMix64 sequence: it is fast, has a good statistical quality and
+   * only needs a single long as state.
+   */
+  private class RandomIdGenerator {
+
+    private final char[] buffer = new char[32];
+
+    private long state;
+
+    private int remainingBeforeReseed;
+
+    @NonNull
+    String generateId(long timeInSecond) {
+      long msb = (timeInSecond << 32) | (nextLong() & 0xFFFFFFFFL);
+      long lsb = nextLong();
+      return toHex(msb, lsb, buffer);
+    }
+
+    private long nextLong() {
+      if (remainingBeforeReseed <= 0) {
+        state = seedGenerator.nextLong();
+        remainingBeforeReseed = RESEED_INTERVAL;
+      }
+      remainingBeforeReseed--;
+
+      long z = (state += 0x9E3779B97F4A7C15L);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+    }
+  }
+
 }
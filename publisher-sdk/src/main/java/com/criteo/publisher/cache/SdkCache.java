@@ -28,24 +28,135 @@ import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.Slot;
 import com.criteo.publisher.util.AdUnitType;
 import com.criteo.publisher.util.DeviceUtil;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Thread-safe cache of the last fetched bids of each ad unit.
+ * <p>
+ * Each ad unit owns a bounded queue of bids, holding at most {@link #getMaxBidsPerAdUnit()} bids.
+ * Queued bids are ordered by priority: highest CPM first, then the ones expiring first. So the
+ * head of the queue, given by {@link #peekAdUnit(CacheAdUnit)}, is the best bid to display.
+ * <p>
+ * Each queue is an immutable array updated by compare-and-set, so that reading, consuming or
+ * adding bids of an ad unit never blocks callers working on other ad units. Consumption is done
+ * atomically through {@link #remove(CacheAdUnit, Slot)}: among concurrent callers that peeked the
+ * same slot, only one is able to consume it.
+ */
 public class SdkCache {
 
-  private final Map<CacheAdUnit, Slot> slotMap;
+  private static final Slot[] EMPTY_QUEUE = new Slot[0];
+
+  private static final Comparator<Slot> PRIORITY_ORDER = new Comparator<Slot>() {
+    @Override
+    public int compare(Slot slot1, Slot slot2) {
+      int byCpm = Double.compare(getCpmOrZero(slot2), getCpmOrZero(slot1));
+      if (byCpm != 0) {
+        return byCpm;
+      }
+
+      long expiry1 = slot1.getExpiryTimeInMillis();
+      long expiry2 = slot2.getExpiryTimeInMillis();
+      return expiry1 < expiry2 ? -1 : (expiry1 == expiry2 ? 0 : 1);
+    }
+  };
+
+  /**
+   * Queues are created once per ad unit and never removed: they are only emptied. The number of
+   * different ad units used by a publisher is small, so this keeps all updates lock-free without
+   * leaking memory.
+   */
+  private final ConcurrentMap<CacheAdUnit, AtomicReference<Slot[]>> slotMap;
   private final DeviceUtil deviceUtil;
+  private final int maxBidsPerAdUnit;
 
   public SdkCache(@NonNull DeviceUtil deviceUtil) {
-    slotMap = new HashMap<>();
+    this(deviceUtil, 1);
+  }
+
+  public SdkCache(@NonNull DeviceUtil deviceUtil, int maxBidsPerAdUnit) {
+    if (maxBidsPerAdUnit < 1) {
+      throw new IllegalArgumentException("At least one bid per ad unit should be cached");
+    }
+
+    slotMap = new ConcurrentHashMap<>();
     this.deviceUtil = deviceUtil;
+    this.maxBidsPerAdUnit = maxBidsPerAdUnit;
   }
 
+  /**
+   * Maximum number of bids kept for a single ad unit.
+   */
+  public int getMaxBidsPerAdUnit() {
+    return maxBidsPerAdUnit;
+  }
+
+  /**
+   * Add the given slot in the queue of its ad unit.
+   * <p>
+   * A newly added slot is always kept. If the queue is full, then the bid with the lowest priority
+   * among the previous ones is dropped. A silent slot (CPM = 0 and TTL &gt; 0) means that CDB does
+   * not want to be called for this ad unit for a while: it replaces the whole queue. Then it is
+   * dropped as soon as a new bid is added.
+   *
+   * @param slot to add
+   */
   public void add(@NonNull Slot slot) {
     AdUnitType adUnitType = findAdUnitType(slot);
     CacheAdUnit key = new CacheAdUnit(new AdSize(slot.getWidth(), slot.getHeight())
         , slot.getPlacementId(), adUnitType);
-    slotMap.put(key, slot);
+    AtomicReference<Slot[]> reference = getOrCreateQueue(key);
+
+    Slot[] oldQueue;
+    Slot[] newQueue;
+    do {
+      oldQueue = reference.get();
+      newQueue = enqueue(oldQueue, slot);
+    } while (!reference.compareAndSet(oldQueue, newQueue));
+  }
+
+  @NonNull
+  private Slot[] enqueue(@NonNull Slot[] queue, @NonNull Slot slot) {
+    if (isSilent(slot)) {
+      return new Slot[]{slot};
+    }
+
+    Slot[] newQueue = new Slot[Math.min(queue.length + 1, maxBidsPerAdUnit)];
+    int size = 0;
+
+    // Previous bids are already sorted by priority: keep the best ones that still fit.
+    for (Slot queuedSlot : queue) {
+      if (size == newQueue.length - 1) {
+        break;
+      }
+      if (!isSilent(queuedSlot)) {
+        newQueue[size++] = queuedSlot;
+      }
+    }
+
+    newQueue[size++] = slot;
+    if (size < newQueue.length) {
+      newQueue = Arrays.copyOf(newQueue, size);
+    }
+
+    Arrays.sort(newQueue, PRIORITY_ORDER);
+    return newQueue;
+  }
+
+  @NonNull
+  private AtomicReference<Slot[]> getOrCreateQueue(@NonNull CacheAdUnit key) {
+    AtomicReference<Slot[]> reference = slotMap.get(key);
+    if (reference == null) {
+      AtomicReference<Slot[]> newReference = new AtomicReference<>(EMPTY_QUEUE);
+      reference = slotMap.putIfAbsent(key, newReference);
+      if (reference == null) {
+        reference = newReference;
+      }
+    }
+    return reference;
   }
 
   // FIXME: EE-608
@@ -65,7 +176,7 @@ public class SdkCache {
   }
 
   /**
-   * Get the slot corresponding to the given key.
+   * Get the slot with the highest priority corresponding to the given key.
    * <p>
    * If no slot match the given key, then <code>null</code> is returned.
    *
@@ -74,15 +185,120 @@ public class SdkCache {
    */
   @Nullable
   public Slot peekAdUnit(CacheAdUnit key) {
-    return slotMap.get(key);
+    AtomicReference<Slot[]> reference = slotMap.get(key);
+    if (reference == null) {
+      return null;
+    }
+
+    Slot[] queue = reference.get();
+    return queue.length == 0 ? null : queue[0];
   }
 
+  /**
+   * Remove all the slots corresponding to the given key.
+   *
+   * @param key of the slots to remove
+   */
   public void remove(CacheAdUnit key) {
-    slotMap.remove(key);
+    AtomicReference<Slot[]> reference = slotMap.get(key);
+    if (reference != null) {
+      reference.set(EMPTY_QUEUE);
+    }
+  }
+
+  /**
+   * Remove the given slot from the queue corresponding to the given key if it is still there.
+   * <p>
+   * Slots are compared by identity. This is the compare-and-set counterpart of
+   * {@link #peekAdUnit(CacheAdUnit)}: if another caller already removed the peeked slot in the
+   * meantime, then nothing is done and <code>false</code> is returned.
+   *
+   * @param key of the slot to remove
+   * @param expectedSlot slot that was peeked and should be removed
+   * @return <code>true</code> if the given slot was removed by this call
+   */
+  public boolean remove(@NonNull CacheAdUnit key, @NonNull Slot expectedSlot) {
+    AtomicReference<Slot[]> reference = slotMap.get(key);
+    if (reference == null) {
+      return false;
+    }
+
+    Slot[] oldQueue;
+    Slot[] newQueue;
+    do {
+      oldQueue = reference.get();
+      int index = indexOf(oldQueue, expectedSlot);
+      if (index < 0) {
+        return false;
+      }
+
+      newQueue = new Slot[oldQueue.length - 1];
+      System.arraycopy(oldQueue, 0, newQueue, 0, index);
+      System.arraycopy(oldQueue, index + 1, newQueue, index, newQueue.length - index);
+    } while (!reference.compareAndSet(oldQueue, newQueue));
+
+    return true;
+  }
+
+  /**
+   * Returns the number of additional bids that the queue of the given key may accept before being
+   * full.
+   *
+   * @param key of the queue to look at
+   * @return number of missing bids to fill the queue
+   */
+  public int getRemainingCapacity(@NonNull CacheAdUnit key) {
+    AtomicReference<Slot[]> reference = slotMap.get(key);
+    int size = reference == null ? 0 : reference.get().length;
+    return Math.max(0, maxBidsPerAdUnit - size);
+  }
+
+  /**
+   * Returns the instant (in milliseconds) at which the last bid of the queue of the given key
+   * expires.
+   * <p>
+   * If there is no bid for this key, then <code>0</code> is returned.
+   *
+   * @param key of the queue to look at
+   * @return expiry instant of the bid expiring last
+   */
+  public long getLatestExpiryTimeInMillis(@NonNull CacheAdUnit key) {
+    AtomicReference<Slot[]> reference = slotMap.get(key);
+    if (reference == null) {
+      return 0;
+    }
+
+    long latestExpiryTime = 0;
+    for (Slot slot : reference.get()) {
+      latestExpiryTime = Math.max(latestExpiryTime, slot.getExpiryTimeInMillis());
+    }
+    return latestExpiryTime;
+  }
+
+  private static int indexOf(@NonNull Slot[] queue, @NonNull Slot slot) {
+    for (int i = 0; i < queue.length; i++) {
+      if (queue[i] == slot) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isSilent(@NonNull Slot slot) {
+    return getCpmOrZero(slot) == 0 && slot.getTtl() > 0;
+  }
+
+  private static double getCpmOrZero(@NonNull Slot slot) {
+    Double cpm = slot.getCpmAsNumber();
+    return cpm == null ? 0.0 : cpm;
   }
 
   @VisibleForTesting
   int getItemCount() {
-    return slotMap.size();
+    int count = 0;
+    for (AtomicReference<Slot[]> reference : slotMap.values()) {
+      count += reference.get().length;
+    }
+    return count;
   }
 }
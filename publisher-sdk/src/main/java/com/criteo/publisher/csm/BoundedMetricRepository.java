@@ -58,6 +58,12 @@ class BoundedMetricRepository extends MetricRepository {
     return delegate.getAllStoredMetrics();
   }
 
+  @NonNull
+  @Override
+  Collection<String> getAllStoredIds() {
+    return delegate.getAllStoredIds();
+  }
+
   @Override
   int getTotalSize() {
     return delegate.getTotalSize();
@@ -67,4 +73,9 @@ class BoundedMetricRepository extends MetricRepository {
   boolean contains(@NonNull String impressionId) {
     return delegate.contains(impressionId);
   }
+
+  @Override
+  public void onApplicationStopped() {
+    delegate.onApplicationStopped();
+  }
 }
@@ -59,6 +59,35 @@ class BoundedMetricSendingQueue extends MetricSendingQueue {
     }
   }
 
+  @NonNull
+  @Override
+  List<Metric> peek(int max) {
+    synchronized (delegateLock) {
+      return delegate.peek(max);
+    }
+  }
+
+  @Override
+  void commit() {
+    synchronized (delegateLock) {
+      delegate.commit();
+    }
+  }
+
+  @Override
+  void rollback() {
+    synchronized (delegateLock) {
+      delegate.rollback();
+    }
+  }
+
+  @Override
+  int size() {
+    synchronized (delegateLock) {
+      return delegate.size();
+    }
+  }
+
   @Override
   int getTotalSize() {
     return delegate.getTotalSize();
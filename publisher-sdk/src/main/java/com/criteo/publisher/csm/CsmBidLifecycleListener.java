@@ -18,9 +18,7 @@ package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
 import com.criteo.publisher.Clock;
-import com.criteo.publisher.SafeRunnable;
 import com.criteo.publisher.bid.BidLifecycleListener;
-import com.criteo.publisher.bid.UniqueIdGenerator;
 import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequest;
@@ -28,13 +26,19 @@ import com.criteo.publisher.model.CdbRequestSlot;
 import com.criteo.publisher.model.CdbResponse;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.Slot;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Update metrics files accordingly to received events.
  * <p>
+ * Updates are not written one by one: they are batched by a {@link MetricUpdateBatcher}, so all
+ * the updates of a metric received in a short window are written at once. Timestamps are taken
+ * when events are received, so they do not depend on this delay.
+ * <p>
  * This follows specifications given by <a href="https://go.crto.in/publisher-sdk-csm">Client
  * Side Metrics</a>.
  */
@@ -50,28 +54,42 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
   private final Clock clock;
 
   @NonNull
-  private final UniqueIdGenerator uniqueIdGenerator;
+  private final Config config;
 
   @NonNull
-  private final Config config;
+  private final MetricUpdateBatcher updateBatcher;
 
   @NonNull
-  private final Executor executor;
+  private final StoredMetricRecovery storedMetricRecovery;
 
   public CsmBidLifecycleListener(
       @NonNull MetricRepository repository,
       @NonNull MetricSendingQueueProducer sendingQueueProducer,
       @NonNull Clock clock,
-      @NonNull UniqueIdGenerator uniqueIdGenerator,
       @NonNull Config config,
-      @NonNull Executor executor
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor,
+      @NonNull BuildConfigWrapper buildConfigWrapper
   ) {
     this.repository = repository;
     this.sendingQueueProducer = sendingQueueProducer;
     this.clock = clock;
-    this.uniqueIdGenerator = uniqueIdGenerator;
     this.config = config;
-    this.executor = executor;
+    this.updateBatcher = new MetricUpdateBatcher(
+        repository,
+        sendingQueueProducer,
+        executor,
+        scheduledExecutor,
+        buildConfigWrapper
+    );
+    this.storedMetricRecovery = new StoredMetricRecovery(
+        repository,
+        sendingQueueProducer,
+        clock,
+        executor,
+        scheduledExecutor,
+        buildConfigWrapper
+    );
   }
 
   /**
@@ -79,6 +97,9 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
    * the in-memory bid-cache is lost and the metrics associated to the previously cached bids will
    * never be updated again. In this case, all previously stored metrics are moved to the sending
    * queue.
+   * <p>
+   * Those metrics are listed right away, but only moved once the first bids are served, by a
+   * {@link StoredMetricRecovery}.
    */
   @Override
   public void onSdkInitialized() {
@@ -86,42 +107,35 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        sendingQueueProducer.pushAllInQueue(repository);
-      }
-    });
+    storedMetricRecovery.start();
   }
 
   /**
    * On CDB call start, each requested slot is tracked by a new metric. The metrics marks the
    * timestamp of this event and wait for further updates.
+   * <p>
+   * The ID of the call is used as request group ID. Requests merged in the same CDB call share
+   * this ID, so all the slots sent together are grouped.
    *
    * @param request Request sent to CDB
+   * @param callId ID of the CDB call
    */
   @Override
-  public void onCdbCallStarted(@NonNull CdbRequest request) {
+  public void onCdbCallStarted(@NonNull CdbRequest request, @NonNull String callId) {
     if (isCsmDisabled()) {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
+    long currentTimeInMillis = clock.getCurrentTimeInMillis();
+
+    updateByCdbRequestIds(request, new MetricUpdater() {
       @Override
-      public void runSafely() {
-        long currentTimeInMillis = clock.getCurrentTimeInMillis();
-        String requestGroupId = uniqueIdGenerator.generateId();
-
-        updateByCdbRequestIds(request, new MetricUpdater() {
-          @Override
-          public void update(@NonNull Metric.Builder builder) {
-            builder.setRequestGroupId(requestGroupId);
-            builder.setCdbCallStartTimestamp(currentTimeInMillis);
-            builder.setProfileId(request.getProfileId());
-          }
-        });
+      public void update(@NonNull Metric.Builder builder) {
+        builder.setRequestGroupId(callId);
+        builder.setCdbCallStartTimestamp(currentTimeInMillis);
+        builder.setProfileId(request.getProfileId());
       }
-    });
+    }, false);
   }
 
   /**
@@ -147,38 +161,31 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        long currentTimeInMillis = clock.getCurrentTimeInMillis();
-
-        for (CdbRequestSlot requestSlot : request.getSlots()) {
-          String impressionId = requestSlot.getImpressionId();
-          Slot responseSlot = response.getSlotByImpressionId(impressionId);
-          boolean isNoBid = responseSlot == null;
-          boolean isInvalidBid = responseSlot != null && !responseSlot.isValid();
-
-          repository.addOrUpdateById(impressionId, new MetricUpdater() {
-            @Override
-            public void update(@NonNull Metric.Builder builder) {
-              if (isNoBid) {
-                builder.setCdbCallEndTimestamp(currentTimeInMillis);
-                builder.setReadyToSend(true);
-              } else if (isInvalidBid) {
-                builder.setReadyToSend(true);
-              } else /* if isValidBid */ {
-                builder.setCdbCallEndTimestamp(currentTimeInMillis);
-                builder.setCachedBidUsed(true);
-              }
-            }
-          });
-
-          if (isNoBid || isInvalidBid) {
-            sendingQueueProducer.pushInQueue(repository, impressionId);
+    long currentTimeInMillis = clock.getCurrentTimeInMillis();
+
+    for (CdbRequestSlot requestSlot : request.getSlots()) {
+      String impressionId = requestSlot.getImpressionId();
+      Slot responseSlot = response.getSlotByImpressionId(impressionId);
+      boolean isNoBid = responseSlot == null;
+      boolean isInvalidBid = responseSlot != null && !responseSlot.isValid();
+
+      updateBatcher.update(impressionId, new MetricUpdater() {
+        @Override
+        public void update(@NonNull Metric.Builder builder) {
+          if (isNoBid) {
+            builder.setCdbCallEndTimestamp(currentTimeInMillis);
+            builder.setReadyToSend(true);
+          } else if (isInvalidBid) {
+            builder.setReadyToSend(true);
+          } else /* if isValidBid */ {
+            builder.setCdbCallEndTimestamp(currentTimeInMillis);
+            builder.setCachedBidUsed(true);
           }
         }
-      }
-    });
+      }, isNoBid || isInvalidBid);
+    }
+
+    storedMetricRecovery.onBidsServed();
   }
 
   /**
@@ -197,26 +204,18 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        // InterruptedIOException was thrown in older versions of Okio
-        // See https://github.com/square/okhttp/blob/master/docs/changelog_2x.md
-        boolean isTimeout = (exception instanceof SocketTimeoutException)
-            || (exception instanceof InterruptedIOException);
-
-        if (isTimeout) {
-          onCdbCallTimeout(request);
-        } else {
-          onCdbCallNetworkError(request);
-        }
+    // InterruptedIOException was thrown in older versions of Okio
+    // See https://github.com/square/okhttp/blob/master/docs/changelog_2x.md
+    boolean isTimeout = (exception instanceof SocketTimeoutException)
+        || (exception instanceof InterruptedIOException);
 
-        for (CdbRequestSlot slot : request.getSlots()) {
-          String impressionId = slot.getImpressionId();
-          sendingQueueProducer.pushInQueue(repository, impressionId);
-        }
-      }
-    });
+    if (isTimeout) {
+      onCdbCallTimeout(request);
+    } else {
+      onCdbCallNetworkError(request);
+    }
+
+    storedMetricRecovery.onBidsServed();
   }
 
   private void onCdbCallNetworkError(CdbRequest request) {
@@ -225,7 +224,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       public void update(@NonNull Metric.Builder builder) {
         builder.setReadyToSend(true);
       }
-    });
+    }, true);
   }
 
   private void onCdbCallTimeout(@NonNull CdbRequest request) {
@@ -235,7 +234,7 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
         builder.setCdbCallTimeout(true);
         builder.setReadyToSend(true);
       }
-    });
+    }, true);
   }
 
   /**
@@ -256,36 +255,33 @@ public class CsmBidLifecycleListener implements BidLifecycleListener {
       return;
     }
 
-    executor.execute(new SafeRunnable() {
-      @Override
-      public void runSafely() {
-        String impressionId = consumedBid.getImpressionId();
-        if (impressionId == null) {
-          return;
-        }
-
-        boolean isNotExpired = !consumedBid.isExpired(clock);
-        long currentTimeInMillis = clock.getCurrentTimeInMillis();
+    String impressionId = consumedBid.getImpressionId();
+    if (impressionId == null) {
+      return;
+    }
 
-        repository.addOrUpdateById(impressionId, new MetricUpdater() {
-          @Override
-          public void update(@NonNull Metric.Builder builder) {
-            if (isNotExpired) {
-              builder.setElapsedTimestamp(currentTimeInMillis);
-            }
+    boolean isNotExpired = !consumedBid.isExpired(clock);
+    long currentTimeInMillis = clock.getCurrentTimeInMillis();
 
-            builder.setReadyToSend(true);
-          }
-        });
+    updateBatcher.update(impressionId, new MetricUpdater() {
+      @Override
+      public void update(@NonNull Metric.Builder builder) {
+        if (isNotExpired) {
+          builder.setElapsedTimestamp(currentTimeInMillis);
+        }
 
-        sendingQueueProducer.pushInQueue(repository, impressionId);
+        builder.setReadyToSend(true);
       }
-    });
+    }, true);
   }
 
-  private void updateByCdbRequestIds(@NonNull CdbRequest request, @NonNull MetricUpdater updater) {
+  private void updateByCdbRequestIds(
+      @NonNull CdbRequest request,
+      @NonNull MetricUpdater updater,
+      boolean pushInQueue
+  ) {
     for (CdbRequestSlot requestSlot : request.getSlots()) {
-      repository.addOrUpdateById(requestSlot.getImpressionId(), updater);
+      updateBatcher.update(requestSlot.getImpressionId(), updater, pushInQueue);
     }
   }
 
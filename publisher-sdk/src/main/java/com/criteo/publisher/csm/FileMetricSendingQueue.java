@@ -0,0 +1,210 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.util.PreconditionsUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sending queue storing serialized metrics in a {@link MetricQueueFile}.
+ * <p>
+ * Metrics are serialized and parsed outside of the queue lock. A batch of metrics is peeked in one
+ * go and then committed with one header write, while rolling it back only releases it in memory.
+ * The used size is tracked by the queue file itself, so it is read without taking the lock.
+ */
+class FileMetricSendingQueue extends MetricSendingQueue {
+
+  private static final long NO_RESERVATION = -1;
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(FileMetricSendingQueue.class);
+
+  @NonNull
+  private final Object queueLock = new Object();
+
+  /**
+   * Queue file, or <code>null</code> until it is first used.
+   * <p>
+   * It is only created and used under the {@link #queueLock}. It is also volatile so {@link
+   * #getTotalSize()} can read it without the lock: once created, it never changes, and the used
+   * size is safely published by the queue file itself.
+   */
+  @Nullable
+  private volatile MetricQueueFile queueFile;
+
+  /**
+   * Index, in terms of {@link MetricQueueFile#getRemovedCount()}, of the element following the
+   * reserved batch, or {@link #NO_RESERVATION} if no batch is reserved.
+   */
+  @GuardedBy("queueLock")
+  private long reservationEnd = NO_RESERVATION;
+
+  @NonNull
+  private final MetricQueueFileFactory queueFileFactory;
+
+  @NonNull
+  private final MetricParser parser;
+
+  FileMetricSendingQueue(
+      @NonNull MetricQueueFileFactory queueFileFactory,
+      @NonNull MetricParser parser
+  ) {
+    this.queueFileFactory = queueFileFactory;
+    this.parser = parser;
+  }
+
+  @Override
+  boolean offer(@NonNull Metric metric) {
+    ByteArrayOutputStream element = new ByteArrayOutputStream();
+    try {
+      parser.write(metric, element);
+    } catch (IOException e) {
+      PreconditionsUtil.throwOrLog(e);
+      return false;
+    }
+
+    synchronized (queueLock) {
+      try {
+        getOrCreateQueueFile().add(element.toByteArray());
+        return true;
+      } catch (IOException e) {
+        PreconditionsUtil.throwOrLog(e);
+        return false;
+      }
+    }
+  }
+
+  @NonNull
+  @Override
+  List<Metric> poll(int max) {
+    if (max <= 0) {
+      return Collections.emptyList();
+    }
+
+    List<byte[]> elements;
+    synchronized (queueLock) {
+      MetricQueueFile queueFile = getOrCreateQueueFile();
+      elements = queueFile.peek(max);
+      queueFile.remove(elements.size());
+    }
+
+    return parse(elements);
+  }
+
+  @NonNull
+  @Override
+  List<Metric> peek(int max) {
+    if (max <= 0) {
+      return Collections.emptyList();
+    }
+
+    List<byte[]> elements;
+    synchronized (queueLock) {
+      if (reservationEnd != NO_RESERVATION) {
+        return Collections.emptyList();
+      }
+
+      MetricQueueFile queueFile = getOrCreateQueueFile();
+      elements = queueFile.peek(max);
+      if (elements.isEmpty()) {
+        return Collections.emptyList();
+      }
+      reservationEnd = queueFile.getRemovedCount() + elements.size();
+    }
+
+    List<Metric> metrics = parse(elements);
+    if (metrics.isEmpty()) {
+      // Only unreadable elements were reserved: they are dropped so they do not block the queue.
+      commit();
+    }
+    return metrics;
+  }
+
+  @Override
+  void commit() {
+    synchronized (queueLock) {
+      if (reservationEnd == NO_RESERVATION) {
+        return;
+      }
+
+      MetricQueueFile queueFile = getOrCreateQueueFile();
+      long remainingReservedCount = reservationEnd - queueFile.getRemovedCount();
+      queueFile.remove((int) Math.max(0, remainingReservedCount));
+      reservationEnd = NO_RESERVATION;
+    }
+  }
+
+  @Override
+  void rollback() {
+    synchronized (queueLock) {
+      reservationEnd = NO_RESERVATION;
+    }
+  }
+
+  @Override
+  int size() {
+    synchronized (queueLock) {
+      return getOrCreateQueueFile().size();
+    }
+  }
+
+  @Override
+  int getTotalSize() {
+    MetricQueueFile queueFile = this.queueFile;
+    if (queueFile == null) {
+      synchronized (queueLock) {
+        queueFile = getOrCreateQueueFile();
+      }
+    }
+    return queueFile.getUsedBytes();
+  }
+
+  @NonNull
+  private List<Metric> parse(@NonNull List<byte[]> elements) {
+    List<Metric> metrics = new ArrayList<>(elements.size());
+    for (byte[] element : elements) {
+      try {
+        metrics.add(parser.read(new ByteArrayInputStream(element)));
+      } catch (IOException e) {
+        // An unreadable element is dropped with its batch, so it does not block the queue.
+        logger.error("Error when reading CSM metric", e);
+      }
+    }
+    return metrics;
+  }
+
+  @NonNull
+  @GuardedBy("queueLock")
+  private MetricQueueFile getOrCreateQueueFile() {
+    MetricQueueFile queueFile = this.queueFile;
+    if (queueFile == null) {
+      queueFile = queueFileFactory.create();
+      this.queueFile = queueFile;
+    }
+    return queueFile;
+  }
+}
@@ -0,0 +1,827 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.csm.MetricLog.Location;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repository storing all metrics in a single {@link MetricLog}.
+ * <p>
+ * An update appends the whole new version of its metric, and a move appends a deletion tombstone,
+ * so the storage only sees sequential writes. An in-memory index gives the location of the latest
+ * version of each metric, which is also kept in memory as long as it is softly reachable. This
+ * index is rebuilt from the log at the first access to this repository.
+ * <p>
+ * The size of the live records is accounted incrementally on every write, move and compaction, so
+ * the bound checks done on each update, {@link #getTotalSize()} and {@link #contains(String)}, run
+ * in constant time without any I/O. Once the index is recovered, they do not take the log lock, so
+ * they never wait for an append or a compaction.
+ * <p>
+ * Records superseded by a newer version or by a tombstone are stale. When stale records take more
+ * space than live ones, the log is compacted.
+ * <p>
+ * In write-behind mode, an update only replaces the in-memory version of its metric, which is then
+ * strongly held until it is appended to the log. Pending versions are appended by a flush executed
+ * one window after the first pending update, or when the application is stopped. A metric becoming
+ * ready to send is appended right away. Appended records reach the file system cache as soon as
+ * they are written, so a kill of the process only loses the updates of the last window.
+ * <p>
+ * Metrics stored by previous versions of the SDK, one file per metric, are migrated into the log
+ * during the first access.
+ */
+class LogMetricRepository extends MetricRepository {
+
+  private static final String TAG = LogMetricRepository.class.getSimpleName();
+
+  private static final String LEGACY_METRIC_FILE_EXTENSION = ".csm";
+  private static final String LEGACY_BACKUP_FILE_EXTENSION = ".csm.bak";
+
+  private static final int MAX_SEGMENT_SIZE = 32 * 1024;
+
+  /**
+   * Minimal size of stale records before triggering a compaction, so small logs are not compacted
+   * too often.
+   */
+  private static final int MIN_COMPACTION_STALE_SIZE = 16 * 1024;
+
+  @NonNull
+  private final Object logLock = new Object();
+
+  @GuardedBy("logLock")
+  @NonNull
+  private final MetricLog log;
+
+  @NonNull
+  private final MetricParser parser;
+
+  @NonNull
+  private final ConcurrentMap<String, MetricEntry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Size of the records holding the latest version of the stored metrics. Only written under the
+   * log lock.
+   */
+  private volatile long liveSize = 0;
+
+  @GuardedBy("logLock")
+  private long staleSize = 0;
+
+  /**
+   * Only written under the log lock, once the index is fully rebuilt. Reads check it before taking
+   * the lock, so they never wait on log I/O after the recovery.
+   */
+  private volatile boolean isRecovered = false;
+
+  /**
+   * Size of the serialized pending versions of the metrics that are not in the log yet.
+   */
+  @NonNull
+  private final AtomicLong pendingSize = new AtomicLong(0);
+
+  @NonNull
+  private final Queue<MetricEntry> dirtyEntries = new ConcurrentLinkedQueue<>();
+
+  @NonNull
+  private final AtomicBoolean isFlushScheduled = new AtomicBoolean(false);
+
+  private final long writeBehindWindowInMillis;
+
+  /**
+   * Executor running the flushes, or <code>null</code> if updates are written through.
+   */
+  @Nullable
+  private final Executor executor;
+
+  /**
+   * Executor waking up the flushes, or <code>null</code> if updates are written through.
+   */
+  @Nullable
+  private final ScheduledExecutorService scheduledExecutor;
+
+  /**
+   * Create a repository appending each update to the log right away.
+   */
+  LogMetricRepository(@NonNull File directory, @NonNull MetricParser parser) {
+    this(new MetricLog(directory, MAX_SEGMENT_SIZE), parser, 0, null, null);
+  }
+
+  /**
+   * Create a repository appending updates to the log at most the given window after they are done.
+   * If the window is 0, updates are appended right away.
+   */
+  LogMetricRepository(
+      @NonNull File directory,
+      @NonNull MetricParser parser,
+      long writeBehindWindowInMillis,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor
+  ) {
+    this(
+        new MetricLog(directory, MAX_SEGMENT_SIZE),
+        parser,
+        writeBehindWindowInMillis,
+        executor,
+        scheduledExecutor
+    );
+  }
+
+  @VisibleForTesting
+  LogMetricRepository(
+      @NonNull MetricLog log,
+      @NonNull MetricParser parser,
+      long writeBehindWindowInMillis,
+      @Nullable Executor executor,
+      @Nullable ScheduledExecutorService scheduledExecutor
+  ) {
+    this.log = log;
+    this.parser = parser;
+    this.writeBehindWindowInMillis = writeBehindWindowInMillis;
+    this.executor = executor;
+    this.scheduledExecutor = scheduledExecutor;
+  }
+
+  @Override
+  void addOrUpdateById(@NonNull String impressionId, @NonNull MetricUpdater updater) {
+    ensureRecovered();
+
+    while (true) {
+      MetricEntry entry = getOrCreateEntry(impressionId);
+
+      synchronized (entry) {
+        if (entry.isRemoved) {
+          // The metric was moved meanwhile, a new entry is needed
+          continue;
+        }
+
+        try {
+          Metric metric = read(entry);
+          Metric.Builder builder = metric == null
+              ? Metric.builder(impressionId) : metric.toBuilder();
+          updater.update(builder);
+
+          Metric newMetric = builder.build();
+          if (isWriteBehind() && !newMetric.isReadyToSend()) {
+            writeBehind(entry, newMetric);
+          } else {
+            write(entry, newMetric);
+          }
+        } catch (IOException e) {
+          Log.d(TAG, "Error while updating metric", e);
+        } finally {
+          removeIfNotStored(entry);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Move the metric with the given ID with the given move definition.
+   * <p>
+   * A deletion tombstone is appended before offering the metric to the destination. If the
+   * destination rejects it or if there is an error, the metric is appended again. If there is an
+   * error during this rollback or a crash just before it, then this metric is lost.
+   * <p>
+   * If done the other way (deleting after inserting into destination), then there would be a
+   * potential risk of duplication of this metric. In the context of metrics, it is preferable to
+   * lose some data rather than producing duplicate ones.
+   * <p>
+   * Once moved, the metric is also removed from the in-memory index, so the index does not grow
+   * with every metric seen by the process.
+   */
+  @Override
+  void moveById(@NonNull String impressionId, @NonNull MetricMover mover) {
+    ensureRecovered();
+
+    while (true) {
+      MetricEntry entry = entries.get(impressionId);
+      if (entry == null) {
+        return;
+      }
+
+      synchronized (entry) {
+        if (entry.isRemoved) {
+          // The entry was removed meanwhile, a new one may have been created since
+          continue;
+        }
+
+        try {
+          move(entry, mover);
+        } catch (IOException e) {
+          Log.d(TAG, "Error while moving metric", e);
+        } finally {
+          removeIfNotStored(entry);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * The lock of the entry should be hold by the caller.
+   */
+  private void move(@NonNull MetricEntry entry, @NonNull MetricMover mover) throws IOException {
+    Metric metric = read(entry);
+    if (metric == null) {
+      return;
+    }
+
+    delete(entry);
+    boolean success = false;
+    try {
+      if (mover.offerToDestination(metric)) {
+        success = true;
+      }
+    } finally {
+      if (!success) {
+        write(entry, metric);
+      }
+    }
+  }
+
+  /**
+   * Remove the given entry from the index if it has no stored location and no pending version.
+   * <p>
+   * The entry is only removed if it is still the one of its metric, and it is flagged so that the
+   * operations waiting for its lock look up the index again instead of updating a detached entry.
+   * <p>
+   * The lock of the entry should be hold by the caller.
+   */
+  private void removeIfNotStored(@NonNull MetricEntry entry) {
+    if (entry.isStored()) {
+      return;
+    }
+
+    entry.isRemoved = true;
+    entries.remove(entry.impressionId, entry);
+  }
+
+  @VisibleForTesting
+  int getIndexSize() {
+    return entries.size();
+  }
+
+  /**
+   * Metrics existing when this method is called are returned in their committed version. If an
+   * update of one of them is in progress, its end is awaited.
+   */
+  @NonNull
+  @Override
+  Collection<Metric> getAllStoredMetrics() {
+    ensureRecovered();
+
+    List<MetricEntry> storedEntries = new ArrayList<>();
+    synchronized (logLock) {
+      for (MetricEntry entry : entries.values()) {
+        if (entry.isStored()) {
+          storedEntries.add(entry);
+        }
+      }
+    }
+
+    List<Metric> metrics = new ArrayList<>(storedEntries.size());
+    for (MetricEntry entry : storedEntries) {
+      synchronized (entry) {
+        try {
+          Metric metric = read(entry);
+          if (metric != null) {
+            metrics.add(metric);
+          }
+        } catch (IOException e) {
+          Log.d(TAG, "Error while reading metric", e);
+        }
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * IDs are taken from the in-memory index, so no metric is read.
+   */
+  @NonNull
+  @Override
+  Collection<String> getAllStoredIds() {
+    ensureRecovered();
+
+    List<String> impressionIds = new ArrayList<>();
+    for (MetricEntry entry : entries.values()) {
+      if (entry.isStored()) {
+        impressionIds.add(entry.impressionId);
+      }
+    }
+    return impressionIds;
+  }
+
+  /**
+   * Size of the live records in the log, plus the size of the pending metrics that are not in the
+   * log yet.
+   */
+  @Override
+  int getTotalSize() {
+    ensureRecovered();
+    return (int) (liveSize + pendingSize.get());
+  }
+
+  @Override
+  boolean contains(@NonNull String impressionId) {
+    ensureRecovered();
+
+    MetricEntry entry = entries.get(impressionId);
+    return entry != null && entry.isStored();
+  }
+
+  @Override
+  public void onApplicationStopped() {
+    if (executor == null || dirtyEntries.isEmpty()) {
+      return;
+    }
+
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        flush();
+      }
+    });
+  }
+
+  /**
+   * Append the pending versions of metrics to the log.
+   * <p>
+   * If one can not be appended, it stays pending and the flush is retried one window later.
+   */
+  @VisibleForTesting
+  void flush() {
+    MetricEntry entry;
+    while ((entry = dirtyEntries.poll()) != null) {
+      synchronized (entry) {
+        entry.isDirty = false;
+        Metric metric = entry.pendingMetric;
+        if (metric == null) {
+          continue;
+        }
+
+        try {
+          write(entry, metric);
+        } catch (IOException e) {
+          Log.d(TAG, "Error while flushing metric", e);
+          markDirty(entry);
+          scheduleFlushIfNeeded();
+          return;
+        }
+      }
+    }
+  }
+
+  private boolean isWriteBehind() {
+    return writeBehindWindowInMillis > 0 && executor != null && scheduledExecutor != null;
+  }
+
+  /**
+   * Read the latest version of the metric of the given entry.
+   * <p>
+   * The lock of the entry should be hold by the caller.
+   *
+   * @return the metric, or <code>null</code> if there is none
+   */
+  @Nullable
+  private Metric read(@NonNull MetricEntry entry) throws IOException {
+    Metric pending = entry.pendingMetric;
+    if (pending != null) {
+      return pending;
+    }
+
+    Metric inMemory = entry.metricInMemory.get();
+    if (inMemory != null) {
+      return inMemory;
+    }
+
+    InputStream payload;
+    synchronized (logLock) {
+      if (entry.location == null) {
+        return null;
+      }
+      payload = log.readPayload(entry.location);
+    }
+
+    Metric metric = parser.read(payload);
+    entry.metricInMemory = new SoftReference<>(metric);
+    return metric;
+  }
+
+  /**
+   * Append the given new version of the metric of the given entry.
+   * <p>
+   * The lock of the entry should be hold by the caller.
+   */
+  private void write(@NonNull MetricEntry entry, @NonNull Metric metric) throws IOException {
+    byte[] payload = serialize(metric);
+
+    synchronized (logLock) {
+      Location newLocation = log.append(MetricLog.TYPE_PUT, entry.impressionId, payload);
+      setLocation(entry, newLocation);
+      compactIfNeeded();
+    }
+
+    clearPending(entry);
+    entry.metricInMemory = new SoftReference<>(metric);
+  }
+
+  /**
+   * Keep in memory the given new version of the metric of the given entry, until the next flush.
+   * <p>
+   * The lock of the entry should be hold by the caller.
+   */
+  private void writeBehind(@NonNull MetricEntry entry, @NonNull Metric metric) throws IOException {
+    if (entry.location == null && entry.pendingLength == 0) {
+      // Later versions are only slightly bigger, so the size of the first one is enough for the
+      // bound of the repository.
+      entry.pendingLength = serialize(metric).length;
+      pendingSize.addAndGet(entry.pendingLength);
+    }
+
+    entry.pendingMetric = metric;
+    entry.metricInMemory = new SoftReference<>(metric);
+    markDirty(entry);
+    scheduleFlushIfNeeded();
+  }
+
+  /**
+   * The lock of the entry should be hold by the caller.
+   */
+  private void clearPending(@NonNull MetricEntry entry) {
+    entry.pendingMetric = null;
+    if (entry.pendingLength != 0) {
+      pendingSize.addAndGet(-entry.pendingLength);
+      entry.pendingLength = 0;
+    }
+  }
+
+  /**
+   * The lock of the entry should be hold by the caller.
+   */
+  private void markDirty(@NonNull MetricEntry entry) {
+    if (!entry.isDirty) {
+      entry.isDirty = true;
+      dirtyEntries.offer(entry);
+    }
+  }
+
+  private void scheduleFlushIfNeeded() {
+    if (scheduledExecutor == null || !isFlushScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      scheduledExecutor.schedule(
+          new WakeUpTask(),
+          writeBehindWindowInMillis,
+          TimeUnit.MILLISECONDS
+      );
+    } catch (RuntimeException e) {
+      // If the flush could not be scheduled, then next updates should try again
+      isFlushScheduled.set(false);
+      throw e;
+    }
+  }
+
+  @NonNull
+  private byte[] serialize(@NonNull Metric metric) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    parser.write(metric, payload);
+    return payload.toByteArray();
+  }
+
+  /**
+   * Append a deletion tombstone for the metric of the given entry.
+   * <p>
+   * The lock of the entry should be hold by the caller.
+   */
+  private void delete(@NonNull MetricEntry entry) throws IOException {
+    clearPending(entry);
+    entry.metricInMemory = new SoftReference<>(null);
+
+    synchronized (logLock) {
+      if (entry.location == null) {
+        return;
+      }
+
+      Location tombstone = log.appendDelete(entry.impressionId);
+      setLocation(entry, null);
+      staleSize += tombstone.getLength();
+      compactIfNeeded();
+    }
+  }
+
+  @GuardedBy("logLock")
+  private void setLocation(@NonNull MetricEntry entry, @Nullable Location newLocation) {
+    Location oldLocation = entry.location;
+    long newLiveSize = liveSize;
+    if (oldLocation != null) {
+      staleSize += oldLocation.getLength();
+      newLiveSize -= oldLocation.getLength();
+    }
+    if (newLocation != null) {
+      newLiveSize += newLocation.getLength();
+    }
+    entry.location = newLocation;
+    liveSize = newLiveSize;
+  }
+
+  @GuardedBy("logLock")
+  private void compactIfNeeded() {
+    if (staleSize < MIN_COMPACTION_STALE_SIZE || staleSize <= liveSize) {
+      return;
+    }
+
+    List<MetricEntry> liveEntries = new ArrayList<>();
+    List<Location> liveLocations = new ArrayList<>();
+    for (MetricEntry entry : entries.values()) {
+      if (entry.location != null) {
+        liveEntries.add(entry);
+        liveLocations.add(entry.location);
+      }
+    }
+
+    List<Location> newLocations;
+    try {
+      newLocations = log.compact(liveLocations);
+    } catch (IOException e) {
+      Log.d(TAG, "Error while compacting metrics", e);
+      return;
+    }
+
+    long newLiveSize = 0;
+    for (int i = 0; i < liveEntries.size(); i++) {
+      MetricEntry entry = liveEntries.get(i);
+      Location newLocation = newLocations.get(i);
+      entry.location = newLocation;
+      if (newLocation == null) {
+        entry.metricInMemory = new SoftReference<>(null);
+      } else {
+        newLiveSize += newLocation.getLength();
+      }
+    }
+
+    // Segments that could not be deleted still hold their stale records
+    liveSize = newLiveSize;
+    staleSize = log.getSize() - newLiveSize;
+  }
+
+  private void ensureRecovered() {
+    if (isRecovered) {
+      return;
+    }
+
+    synchronized (logLock) {
+      if (isRecovered) {
+        return;
+      }
+
+      try {
+        log.recover(new MetricLog.RecordVisitor() {
+          @Override
+          public void onRecord(
+              byte type,
+              @NonNull String impressionId,
+              @NonNull Location location
+          ) {
+            MetricEntry entry = getOrCreateEntry(impressionId);
+            if (type == MetricLog.TYPE_PUT) {
+              setLocation(entry, location);
+            } else {
+              setLocation(entry, null);
+              staleSize += location.getLength();
+              // Moved metrics are not kept in the index
+              entries.remove(impressionId);
+            }
+          }
+        });
+
+        migrateLegacyMetrics();
+      } catch (IOException e) {
+        Log.d(TAG, "Error while recovering metrics", e);
+      } finally {
+        // Published last, so readers skipping the lock see the whole recovered index
+        isRecovered = true;
+      }
+    }
+  }
+
+  /**
+   * Append the metrics stored in the legacy <code>&lt;impressionId&gt;.csm</code> files into the
+   * log, then delete those files.
+   * <p>
+   * Legacy files were written through an <code>AtomicFile</code>: if a backup file exists, then it
+   * holds the last committed version. A metric that is already known by the log was migrated
+   * before a crash, so its legacy files are only deleted.
+   */
+  @GuardedBy("logLock")
+  private void migrateLegacyMetrics() {
+    File directory = log.getDirectory();
+    String[] filenames = directory.list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(LEGACY_METRIC_FILE_EXTENSION)
+            || name.endsWith(LEGACY_BACKUP_FILE_EXTENSION);
+      }
+    });
+
+    if (filenames == null) {
+      return;
+    }
+
+    Set<String> impressionIds = new LinkedHashSet<>();
+    for (String filename : filenames) {
+      String extension = filename.endsWith(LEGACY_METRIC_FILE_EXTENSION)
+          ? LEGACY_METRIC_FILE_EXTENSION : LEGACY_BACKUP_FILE_EXTENSION;
+      impressionIds.add(filename.substring(0, filename.length() - extension.length()));
+    }
+
+    for (String impressionId : impressionIds) {
+      File baseFile = new File(directory, impressionId + LEGACY_METRIC_FILE_EXTENSION);
+      File backupFile = new File(directory, impressionId + LEGACY_BACKUP_FILE_EXTENSION);
+      File committedFile = backupFile.exists() ? backupFile : baseFile;
+
+      if (!entries.containsKey(impressionId)) {
+        try {
+          Location location = log.append(MetricLog.TYPE_PUT, impressionId,
+              reencode(readFully(committedFile)));
+          setLocation(getOrCreateEntry(impressionId), location);
+        } catch (IOException e) {
+          Log.d(TAG, "Error while migrating metric", e);
+          continue;
+        }
+      }
+
+      baseFile.delete();
+      backupFile.delete();
+    }
+  }
+
+  /**
+   * Convert the given legacy JSON metric into the current format of the {@link MetricParser}.
+   * <p>
+   * An unreadable metric is kept as is: it is handled as any other unreadable metric of the log.
+   */
+  @NonNull
+  private byte[] reencode(@NonNull byte[] legacyPayload) {
+    try {
+      Metric metric = parser.read(new ByteArrayInputStream(legacyPayload));
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      parser.write(metric, payload);
+      return payload.toByteArray();
+    } catch (IOException e) {
+      Log.d(TAG, "Error while reading legacy metric", e);
+      return legacyPayload;
+    }
+  }
+
+  @NonNull
+  private static byte[] readFully(@NonNull File file) throws IOException {
+    try (InputStream is = new FileInputStream(file)) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        bos.write(buffer, 0, read);
+      }
+      return bos.toByteArray();
+    }
+  }
+
+  /**
+   * Atomically get or create the entry of the given metric.
+   * <p>
+   * This is similar to {@link ConcurrentMap#putIfAbsent(Object, Object)} but without creating an
+   * entry when one already exists. <code>computeIfAbsent</code> is not used because it requires
+   * Android API level >= 24.
+   */
+  @NonNull
+  private MetricEntry getOrCreateEntry(@NonNull String impressionId) {
+    MetricEntry entry = entries.get(impressionId);
+    if (entry == null) {
+      MetricEntry newEntry = new MetricEntry(impressionId);
+      entry = entries.putIfAbsent(impressionId, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Only wakes up the flush and hands it off to the executor, as the scheduled executor is shared.
+   */
+  private class WakeUpTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      try {
+        executor.execute(new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            // Updates done during the flush schedule a new one
+            isFlushScheduled.set(false);
+            flush();
+          }
+        });
+      } catch (RuntimeException e) {
+        isFlushScheduled.set(false);
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * State of one metric.
+   * <p>
+   * Its own lock serializes the read-modify-write operations on its metric and guards its pending
+   * version, while its location is only written under the log lock, as compaction may change it.
+   */
+  private static final class MetricEntry {
+
+    @NonNull
+    private final String impressionId;
+
+    /**
+     * Location of the latest version of this metric, or <code>null</code> if it is not stored.
+     */
+    @Nullable
+    private volatile Location location;
+
+    @NonNull
+    private volatile SoftReference<Metric> metricInMemory = new SoftReference<>(null);
+
+    /**
+     * Latest version of this metric if it is not in the log yet, else <code>null</code>.
+     */
+    @Nullable
+    private volatile Metric pendingMetric;
+
+    /**
+     * Size accounted for the pending version while this metric has no record in the log.
+     */
+    private int pendingLength = 0;
+
+    /**
+     * Indicate if this entry is waiting in the queue of the next flush.
+     */
+    private boolean isDirty = false;
+
+    /**
+     * Indicate if this entry was removed from the index. Guarded by the lock of this entry.
+     */
+    private boolean isRemoved = false;
+
+    private MetricEntry(@NonNull String impressionId) {
+      this.impressionId = impressionId;
+    }
+
+    private boolean isStored() {
+      return location != null || pendingMetric != null;
+    }
+  }
+
+}
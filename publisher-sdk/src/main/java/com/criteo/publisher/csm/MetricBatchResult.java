@@ -0,0 +1,75 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Counters of the sending of a batch of metrics.
+ * <p>
+ * A batch is split into one request per profile, and all requests are tried. Metrics of the
+ * successful requests are removed from the sending queue while the ones of the failed requests are
+ * kept in it.
+ */
+@AutoValue
+abstract class MetricBatchResult {
+
+  static final MetricBatchResult EMPTY = create(0, 0, 0, 0, 0, 0);
+
+  @NonNull
+  static MetricBatchResult create(
+      int successfulRequestCount,
+      int failedRequestCount,
+      int sentMetricCount,
+      int failedMetricCount,
+      long maxRequestLatencyInMillis,
+      long durationInMillis
+  ) {
+    return new AutoValue_MetricBatchResult(
+        successfulRequestCount,
+        failedRequestCount,
+        sentMetricCount,
+        failedMetricCount,
+        maxRequestLatencyInMillis,
+        durationInMillis
+    );
+  }
+
+  abstract int getSuccessfulRequestCount();
+
+  abstract int getFailedRequestCount();
+
+  abstract int getSentMetricCount();
+
+  abstract int getFailedMetricCount();
+
+  /**
+   * Latency of the slowest request of the batch
+   */
+  abstract long getMaxRequestLatencyInMillis();
+
+  /**
+   * Duration of the whole batch, including the preparation of the requests
+   */
+  abstract long getDurationInMillis();
+
+  boolean isSuccess() {
+    return getFailedRequestCount() == 0;
+  }
+
+}
@@ -0,0 +1,486 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of metric records, split into numbered segment files.
+ * <p>
+ * A record is framed as <code>[body length: int][CRC32 of body: int][body]</code>, and its body is
+ * <code>[type: byte][impression ID: modified UTF-8][payload]</code>. Records are only appended at
+ * the end of the last segment, so a crash can only tear the tail of a segment. During
+ * {@link #recover(RecordVisitor)}, a torn or corrupted record is detected thanks to its length and
+ * checksum, and its segment is truncated just before it.
+ * <p>
+ * Segments are replayed in the order of their sequence number. A new segment is started when the
+ * last one would grow above the maximum segment size. {@link #compact(List)} copies the given live
+ * records into fresh segments and then deletes all the older ones.
+ * <p>
+ * This class is not thread-safe.
+ */
+class MetricLog {
+
+  private static final String TAG = MetricLog.class.getSimpleName();
+
+  static final byte TYPE_PUT = 1;
+  static final byte TYPE_DELETE = 2;
+
+  private static final String SEGMENT_FILE_EXTENSION = ".csmlog";
+
+  private static final int HEADER_SIZE = 8;
+
+  /**
+   * Body length above which a record header is considered as corrupted.
+   */
+  private static final int MAX_BODY_SIZE = 1024 * 1024;
+
+  private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+  @NonNull
+  private final File directory;
+
+  private final int maxSegmentSize;
+
+  @NonNull
+  private final List<Segment> segments = new ArrayList<>();
+
+  @NonNull
+  private final CRC32 crc32 = new CRC32();
+
+  MetricLog(@NonNull File directory, int maxSegmentSize) {
+    this.directory = directory;
+    this.maxSegmentSize = maxSegmentSize;
+  }
+
+  @NonNull
+  File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Open all the segments on disk and visit their valid records in the order they were appended.
+   * <p>
+   * All segments are registered before being read, so new records are always appended after the
+   * existing ones, even if an error interrupts the recovery.
+   *
+   * @param visitor callback receiving each valid record
+   * @throws IOException if a segment can not be read
+   */
+  void recover(@NonNull RecordVisitor visitor) throws IOException {
+    close();
+
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SEGMENT_FILE_EXTENSION);
+      }
+    });
+
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      long sequence = getSequence(file);
+      if (sequence >= 0) {
+        segments.add(new Segment(sequence, file, file.length()));
+      }
+    }
+
+    Collections.sort(segments, new Comparator<Segment>() {
+      @Override
+      public int compare(Segment first, Segment second) {
+        // Long.compare requires API level 19
+        return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+      }
+    });
+
+    for (Segment segment : segments) {
+      recoverSegment(segment, visitor);
+    }
+  }
+
+  private void recoverSegment(
+      @NonNull Segment segment,
+      @NonNull RecordVisitor visitor
+  ) throws IOException {
+    long fileLength = segment.size;
+    long offset = 0;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(segment.file)))) {
+      while (offset + HEADER_SIZE <= fileLength) {
+        int bodyLength = in.readInt();
+        int checksum = in.readInt();
+        if (bodyLength <= 0
+            || bodyLength > MAX_BODY_SIZE
+            || offset + HEADER_SIZE + bodyLength > fileLength) {
+          break;
+        }
+
+        byte[] body = new byte[bodyLength];
+        in.readFully(body);
+        if (checksum(body, 0, bodyLength) != checksum) {
+          break;
+        }
+
+        DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = bodyIn.readByte();
+        if (type != TYPE_PUT && type != TYPE_DELETE) {
+          break;
+        }
+
+        String impressionId;
+        try {
+          impressionId = bodyIn.readUTF();
+        } catch (IOException e) {
+          break;
+        }
+
+        int recordLength = HEADER_SIZE + bodyLength;
+        visitor.onRecord(type, impressionId, new Location(segment, offset, recordLength));
+        offset += recordLength;
+      }
+    }
+
+    if (offset < fileLength) {
+      Log.d(TAG, "Truncating corrupted tail of metric log segment " + segment.file.getName());
+      segment.open().setLength(offset);
+      segment.size = offset;
+    }
+  }
+
+  /**
+   * Append a new record at the end of the log.
+   *
+   * @param type {@link #TYPE_PUT} or {@link #TYPE_DELETE}
+   * @param impressionId ID of the metric this record is about
+   * @param payload serialized metric, empty for deletions
+   * @return location of the appended record
+   * @throws IOException if the record can not be written
+   */
+  @NonNull
+  Location append(
+      byte type,
+      @NonNull String impressionId,
+      @NonNull byte[] payload
+  ) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(HEADER_SIZE + 64 + payload.length);
+    DataOutputStream out = new DataOutputStream(bos);
+    out.writeInt(0); // Body length, set below
+    out.writeInt(0); // Checksum, set below
+    out.writeByte(type);
+    out.writeUTF(impressionId);
+    out.write(payload);
+
+    byte[] record = bos.toByteArray();
+    int bodyLength = record.length - HEADER_SIZE;
+    writeInt(record, 0, bodyLength);
+    writeInt(record, 4, checksum(record, HEADER_SIZE, bodyLength));
+
+    return appendRecord(record);
+  }
+
+  @NonNull
+  Location appendDelete(@NonNull String impressionId) throws IOException {
+    return append(TYPE_DELETE, impressionId, EMPTY_PAYLOAD);
+  }
+
+  /**
+   * Read the payload of the record at the given location.
+   *
+   * @param location location of a put record
+   * @return stream over the payload, fully loaded in memory
+   * @throws IOException if the record can not be read, or is corrupted
+   */
+  @NonNull
+  InputStream readPayload(@NonNull Location location) throws IOException {
+    byte[] record = readRecord(location);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    in.skipBytes(HEADER_SIZE);
+    in.readByte();
+    in.readUTF();
+    return in;
+  }
+
+  /**
+   * Total size in bytes of all the segments, including stale records.
+   */
+  long getSize() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  /**
+   * Rewrite the given live records into new segments and delete all older segments.
+   * <p>
+   * New segments are synced on disk before any old segment is deleted. Old segments are deleted
+   * from the oldest to the newest, and the deletion stops at the first failure: so, if a crash or
+   * an error happens in the middle, a deletion tombstone can not be lost while the record it
+   * deletes is still on disk. Remaining old segments are deleted during the next compaction.
+   *
+   * @param liveRecords locations of the records to keep
+   * @return new locations of the given records, in the same order. A location is
+   * <code>null</code> if its record was corrupted and is then dropped
+   * @throws IOException if the new segments can not be written. The log stays usable, and all the
+   * given locations stay valid
+   */
+  @NonNull
+  List<Location> compact(@NonNull List<Location> liveRecords) throws IOException {
+    List<Segment> oldSegments = new ArrayList<>(segments);
+    List<Segment> newSegments = new ArrayList<>();
+    segments.add(createNextSegment());
+
+    List<Location> newLocations = new ArrayList<>(liveRecords.size());
+    for (Location location : liveRecords) {
+      byte[] record;
+      try {
+        record = readRecord(location);
+      } catch (IOException e) {
+        Log.d(TAG, "Dropping unreadable metric record during compaction", e);
+        newLocations.add(null);
+        continue;
+      }
+      newLocations.add(appendRecord(record));
+    }
+
+    for (Segment segment : segments) {
+      if (!oldSegments.contains(segment)) {
+        newSegments.add(segment);
+        segment.sync();
+      }
+    }
+
+    int deletedCount = 0;
+    for (Segment segment : oldSegments) {
+      segment.close();
+      if (segment.file.exists() && !segment.file.delete()) {
+        Log.d(TAG, "Unable to delete metric log segment " + segment.file.getName());
+        break;
+      }
+      deletedCount++;
+    }
+
+    segments.clear();
+    segments.addAll(oldSegments.subList(deletedCount, oldSegments.size()));
+    segments.addAll(newSegments);
+    return newLocations;
+  }
+
+  /**
+   * Close all opened segments. The log has to be {@linkplain #recover(RecordVisitor) recovered}
+   * before being used again.
+   */
+  void close() {
+    for (Segment segment : segments) {
+      segment.close();
+    }
+    segments.clear();
+  }
+
+  @NonNull
+  private Location appendRecord(@NonNull byte[] record) throws IOException {
+    Segment segment = getWritableSegment(record.length);
+    RandomAccessFile file = segment.open();
+    long offset = segment.size;
+
+    try {
+      file.seek(offset);
+      file.write(record);
+    } catch (IOException e) {
+      // Drop the partial record, else it would be followed by the next ones and be lost with them
+      // on recovery.
+      try {
+        file.setLength(offset);
+      } catch (IOException ignored) {
+        // The partial record is overwritten by the next append anyway
+      }
+      throw e;
+    }
+
+    segment.size = offset + record.length;
+    return new Location(segment, offset, record.length);
+  }
+
+  @NonNull
+  private byte[] readRecord(@NonNull Location location) throws IOException {
+    if (!segments.contains(location.segment)) {
+      throw new IOException("Metric record is in a deleted segment");
+    }
+
+    byte[] record = new byte[location.length];
+    RandomAccessFile file = location.segment.open();
+    file.seek(location.offset);
+    file.readFully(record);
+
+    int bodyLength = readInt(record, 0);
+    int checksum = readInt(record, 4);
+    if (bodyLength != location.length - HEADER_SIZE
+        || checksum != checksum(record, HEADER_SIZE, bodyLength)) {
+      throw new IOException("Corrupted metric record");
+    }
+    return record;
+  }
+
+  @NonNull
+  private Segment getWritableSegment(int recordLength) {
+    if (!segments.isEmpty()) {
+      Segment lastSegment = segments.get(segments.size() - 1);
+      if (lastSegment.size == 0 || lastSegment.size + recordLength <= maxSegmentSize) {
+        return lastSegment;
+      }
+    }
+
+    Segment segment = createNextSegment();
+    segments.add(segment);
+    return segment;
+  }
+
+  @NonNull
+  private Segment createNextSegment() {
+    long sequence = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).sequence + 1;
+    File file = new File(directory, sequence + SEGMENT_FILE_EXTENSION);
+    return new Segment(sequence, file, 0);
+  }
+
+  private int checksum(@NonNull byte[] bytes, int offset, int length) {
+    crc32.reset();
+    crc32.update(bytes, offset, length);
+    return (int) crc32.getValue();
+  }
+
+  private static long getSequence(@NonNull File file) {
+    String name = file.getName();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_EXTENSION.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static void writeInt(@NonNull byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static int readInt(@NonNull byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) << 24
+        | (bytes[offset + 1] & 0xFF) << 16
+        | (bytes[offset + 2] & 0xFF) << 8
+        | (bytes[offset + 3] & 0xFF);
+  }
+
+  interface RecordVisitor {
+
+    void onRecord(byte type, @NonNull String impressionId, @NonNull Location location);
+  }
+
+  /**
+   * Position of a record in the log.
+   */
+  static final class Location {
+
+    @NonNull
+    private final Segment segment;
+
+    private final long offset;
+
+    private final int length;
+
+    private Location(@NonNull Segment segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Size in bytes of the whole record, including its framing.
+     */
+    int getLength() {
+      return length;
+    }
+  }
+
+  private static final class Segment {
+
+    private final long sequence;
+
+    @NonNull
+    private final File file;
+
+    private long size;
+
+    @Nullable
+    private RandomAccessFile openedFile;
+
+    private Segment(long sequence, @NonNull File file, long size) {
+      this.sequence = sequence;
+      this.file = file;
+      this.size = size;
+    }
+
+    @NonNull
+    private RandomAccessFile open() throws IOException {
+      if (openedFile == null) {
+        openedFile = new RandomAccessFile(file, "rw");
+      }
+      return openedFile;
+    }
+
+    private void sync() throws IOException {
+      if (openedFile != null) {
+        openedFile.getFD().sync();
+      }
+    }
+
+    private void close() {
+      if (openedFile != null) {
+        try {
+          openedFile.close();
+        } catch (IOException e) {
+          Log.d(TAG, "Error while closing metric log segment", e);
+        }
+        openedFile = null;
+      }
+    }
+  }
+
+}
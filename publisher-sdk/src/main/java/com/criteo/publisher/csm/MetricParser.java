@@ -17,13 +17,55 @@
 package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.criteo.publisher.util.JsonSerializer;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 
+/**
+ * Encoding of the metrics persisted by the SDK.
+ * <p>
+ * Metrics are written in a compact binary format, versioned by its first byte:
+ * <pre><code>
+ * [version: byte][flags: byte][impression ID][request group ID]?
+ * [CDB call start: varlong]?[CDB call end: zigzag varlong]?[elapsed: zigzag varlong]?
+ * [profile ID: zigzag varint]?
+ * </code></pre>
+ * Flags hold the booleans of the metric and the presence of the optional fields. IDs made of 32
+ * lowercase hexadecimal digits, like the ones of {@link com.criteo.publisher.bid.UniqueIdGenerator},
+ * are stored as their 16 raw bytes. Other timestamps are stored relatively to the CDB call start,
+ * so they usually fit in few bytes.
+ * <p>
+ * Metrics persisted by previous versions of the SDK are in JSON. As a JSON object never starts by
+ * a version byte, they are still read transparently, and are written in the binary format on their
+ * next update.
+ */
 public class MetricParser {
 
+  private static final int VERSION_1 = 1;
+
+  private static final int FLAG_CDB_CALL_TIMEOUT = 1;
+  private static final int FLAG_CACHED_BID_USED = 1 << 1;
+  private static final int FLAG_READY_TO_SEND = 1 << 2;
+  private static final int FLAG_CDB_CALL_START = 1 << 3;
+  private static final int FLAG_CDB_CALL_END = 1 << 4;
+  private static final int FLAG_ELAPSED = 1 << 5;
+  private static final int FLAG_REQUEST_GROUP_ID = 1 << 6;
+  private static final int FLAG_PROFILE_ID = 1 << 7;
+
+  private static final int ID_HEX = 0;
+  private static final int ID_STRING = 1;
+
+  private static final int HEX_ID_LENGTH = 32;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
   @NonNull
   private final JsonSerializer serializer;
 
@@ -34,6 +76,8 @@ public class MetricParser {
   /**
    * Read a metric from the given input stream
    * <p>
+   * Both the binary format and the legacy JSON one are accepted.
+   * <p>
    * If the given input is empty, or does not represent readable content, then an {@link
    * IOException} is thrown.
    * <p>
@@ -46,7 +90,18 @@ public class MetricParser {
    */
   @NonNull
   Metric read(@NonNull InputStream inputStream) throws IOException {
-    return serializer.read(Metric.class, inputStream);
+    PushbackInputStream input = new PushbackInputStream(inputStream, 1);
+    int version = input.read();
+    if (version == -1) {
+      throw new EOFException("Empty metric");
+    }
+
+    if (version != VERSION_1) {
+      input.unread(version);
+      return serializer.read(Metric.class, input);
+    }
+
+    return readBinary(new DataInputStream(input));
   }
 
   /**
@@ -62,7 +117,172 @@ public class MetricParser {
    * @throws IOException if any error occurs
    */
   void write(@NonNull Metric metric, @NonNull OutputStream outputStream) throws IOException {
-    serializer.write(metric, outputStream);
+    Long cdbCallStart = metric.getCdbCallStartTimestamp();
+    Long cdbCallEnd = metric.getCdbCallEndTimestamp();
+    Long elapsed = metric.getElapsedTimestamp();
+    String requestGroupId = metric.getRequestGroupId();
+    Integer profileId = metric.getProfileId();
+
+    int flags = 0;
+    flags |= metric.isCdbCallTimeout() ? FLAG_CDB_CALL_TIMEOUT : 0;
+    flags |= metric.isCachedBidUsed() ? FLAG_CACHED_BID_USED : 0;
+    flags |= metric.isReadyToSend() ? FLAG_READY_TO_SEND : 0;
+    flags |= cdbCallStart != null ? FLAG_CDB_CALL_START : 0;
+    flags |= cdbCallEnd != null ? FLAG_CDB_CALL_END : 0;
+    flags |= elapsed != null ? FLAG_ELAPSED : 0;
+    flags |= requestGroupId != null ? FLAG_REQUEST_GROUP_ID : 0;
+    flags |= profileId != null ? FLAG_PROFILE_ID : 0;
+
+    // Buffered, so the output receives a single write
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(buffer);
+    out.writeByte(VERSION_1);
+    out.writeByte(flags);
+    writeId(out, metric.getImpressionId());
+
+    if (requestGroupId != null) {
+      writeId(out, requestGroupId);
+    }
+
+    long base = cdbCallStart == null ? 0 : cdbCallStart;
+    if (cdbCallStart != null) {
+      writeVarLong(out, cdbCallStart);
+    }
+    if (cdbCallEnd != null) {
+      writeVarLong(out, zigZag(cdbCallEnd - base));
+    }
+    if (elapsed != null) {
+      writeVarLong(out, zigZag(elapsed - base));
+    }
+    if (profileId != null) {
+      writeVarLong(out, zigZag(profileId));
+    }
+
+    buffer.writeTo(outputStream);
+  }
+
+  @NonNull
+  @SuppressWarnings("deprecation") // Metric.builder() is dedicated to deserialization
+  private static Metric readBinary(@NonNull DataInputStream in) throws IOException {
+    int flags = in.readUnsignedByte();
+
+    Metric.Builder builder = Metric.builder()
+        .setImpressionId(readId(in))
+        .setCdbCallTimeout((flags & FLAG_CDB_CALL_TIMEOUT) != 0)
+        .setCachedBidUsed((flags & FLAG_CACHED_BID_USED) != 0)
+        .setReadyToSend((flags & FLAG_READY_TO_SEND) != 0);
+
+    if ((flags & FLAG_REQUEST_GROUP_ID) != 0) {
+      builder.setRequestGroupId(readId(in));
+    }
+
+    long base = 0;
+    if ((flags & FLAG_CDB_CALL_START) != 0) {
+      base = readVarLong(in);
+      builder.setCdbCallStartTimestamp(base);
+    }
+    if ((flags & FLAG_CDB_CALL_END) != 0) {
+      builder.setCdbCallEndTimestamp(base + unZigZag(readVarLong(in)));
+    }
+    if ((flags & FLAG_ELAPSED) != 0) {
+      builder.setElapsedTimestamp(base + unZigZag(readVarLong(in)));
+    }
+    if ((flags & FLAG_PROFILE_ID) != 0) {
+      builder.setProfileId((int) unZigZag(readVarLong(in)));
+    }
+
+    return builder.build();
+  }
+
+  private static void writeId(@NonNull DataOutputStream out, @NonNull String id)
+      throws IOException {
+    byte[] rawId = parseHexId(id);
+    if (rawId == null) {
+      out.writeByte(ID_STRING);
+      out.writeUTF(id);
+    } else {
+      out.writeByte(ID_HEX);
+      out.write(rawId);
+    }
+  }
+
+  @NonNull
+  private static String readId(@NonNull DataInputStream in) throws IOException {
+    int type = in.readUnsignedByte();
+    if (type == ID_STRING) {
+      return in.readUTF();
+    } else if (type != ID_HEX) {
+      throw new IOException("Unknown ID type: " + type);
+    }
+
+    byte[] rawId = new byte[HEX_ID_LENGTH / 2];
+    in.readFully(rawId);
+
+    char[] hexId = new char[HEX_ID_LENGTH];
+    for (int i = 0; i < rawId.length; i++) {
+      hexId[2 * i] = HEX_DIGITS[(rawId[i] >> 4) & 0xF];
+      hexId[2 * i + 1] = HEX_DIGITS[rawId[i] & 0xF];
+    }
+    return new String(hexId);
+  }
+
+  /**
+   * @return the raw bytes of the given ID, or <code>null</code> if it is not made of exactly 32
+   * lowercase hexadecimal digits, and so could not be restored as is
+   */
+  @Nullable
+  private static byte[] parseHexId(@NonNull String id) {
+    if (id.length() != HEX_ID_LENGTH) {
+      return null;
+    }
+
+    byte[] rawId = new byte[HEX_ID_LENGTH / 2];
+    for (int i = 0; i < rawId.length; i++) {
+      int high = hexDigit(id.charAt(2 * i));
+      int low = hexDigit(id.charAt(2 * i + 1));
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      rawId[i] = (byte) (high << 4 | low);
+    }
+    return rawId;
+  }
+
+  private static int hexDigit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    return -1;
+  }
+
+  private static void writeVarLong(@NonNull DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(@NonNull DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
   }
 
 }
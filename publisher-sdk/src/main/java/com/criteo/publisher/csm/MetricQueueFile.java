@@ -0,0 +1,421 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed capacity FIFO queue of byte array elements, stored in a memory-mapped ring buffer.
+ * <p>
+ * The file starts with a header of {@link #HEADER_LENGTH} bytes: <code>[magic: int][capacity:
+ * int][head: int][used bytes: int]</code>. It is followed by a data region of <code>capacity</code>
+ * bytes, where each element is stored as <code>[length: int][crc32: int][bytes]</code>, possibly
+ * wrapping around the end of the region.
+ * <p>
+ * The file is mapped in memory, so operations are plain memory accesses that the system writes
+ * back lazily: they survive the death of the process, without paying a synchronous write for each
+ * of them. Elements are written before the header referencing them, and are checked against their
+ * checksum when the queue is opened. Elements that are torn or corrupted are skipped, the others
+ * are kept. When there is not enough room for a new element, the oldest ones are evicted.
+ * <p>
+ * Lengths of the stored elements are also kept in memory, so the used size is known without any
+ * I/O, and a batch of elements is read or removed in one go.
+ * <p>
+ * This class is not thread-safe, except for {@link #getUsedBytes()}.
+ */
+class MetricQueueFile implements Closeable {
+
+  /**
+   * Identify a file of this format, in its version 1.
+   */
+  private static final int MAGIC = 0xC5A10001;
+
+  static final int HEADER_LENGTH = 16;
+
+  static final int ELEMENT_HEADER_LENGTH = 8;
+
+  @NonNull
+  private final ByteBuffer buffer;
+
+  private final int capacity;
+
+  @NonNull
+  private final ArrayDeque<Integer> elementLengths = new ArrayDeque<>();
+
+  @NonNull
+  private final CRC32 crc32 = new CRC32();
+
+  /**
+   * Position of the first element in the data region.
+   */
+  private int head;
+
+  /**
+   * Bytes used by elements in the data region.
+   */
+  private volatile int dataUsedBytes;
+
+  /**
+   * Number of elements removed or evicted since this queue was opened.
+   */
+  private long removedCount;
+
+  private MetricQueueFile(@NonNull ByteBuffer buffer, int capacity) {
+    this.buffer = buffer;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Open the queue stored in the given file, or create a new one with the given capacity if the
+   * file does not exist or is empty.
+   * <p>
+   * The capacity of an existing queue is kept, even if it differs from the given one.
+   *
+   * @throws IOException if the file is not readable or does not contain a valid queue header
+   */
+  @NonNull
+  static MetricQueueFile open(@NonNull File file, int capacity) throws IOException {
+    MappedByteBuffer buffer;
+    boolean isNew;
+
+    // Once established, the mapping does not depend on the file channel anymore.
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      isNew = randomAccessFile.length() == 0;
+      if (isNew) {
+        randomAccessFile.setLength(HEADER_LENGTH + (long) capacity);
+      }
+
+      FileChannel channel = randomAccessFile.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+
+    if (isNew) {
+      MetricQueueFile queueFile = new MetricQueueFile(buffer, capacity);
+      queueFile.writeHeader(0, 0);
+      return queueFile;
+    }
+
+    return read(buffer);
+  }
+
+  /**
+   * Create a queue only living in memory, used when no file can be used.
+   */
+  @NonNull
+  static MetricQueueFile inMemory(int capacity) {
+    return new MetricQueueFile(ByteBuffer.allocate(HEADER_LENGTH + capacity), capacity);
+  }
+
+  /**
+   * Indicate if the given file is empty or starts like a queue of this format.
+   */
+  static boolean isEmptyOrQueueFile(@NonNull File file) throws IOException {
+    if (file.length() == 0) {
+      return true;
+    }
+
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return file.length() >= HEADER_LENGTH && in.readInt() == MAGIC;
+    }
+  }
+
+  @NonNull
+  private static MetricQueueFile read(@NonNull ByteBuffer buffer) throws IOException {
+    int magic = buffer.getInt(0);
+    int capacity = buffer.getInt(4);
+    int head = buffer.getInt(8);
+    int dataUsedBytes = buffer.getInt(12);
+
+    if (magic != MAGIC
+        || capacity <= 0
+        || buffer.capacity() != HEADER_LENGTH + (long) capacity
+        || head < 0 || head >= capacity
+        || dataUsedBytes < 0 || dataUsedBytes > capacity) {
+      throw new IOException("Invalid header of CSM queue file");
+    }
+
+    MetricQueueFile queueFile = new MetricQueueFile(buffer, capacity);
+    queueFile.head = head;
+    queueFile.dataUsedBytes = dataUsedBytes;
+
+    List<byte[]> validElements = new ArrayList<>();
+    boolean isCorrupted = false;
+
+    int position = head;
+    int remaining = dataUsedBytes;
+    while (remaining > 0) {
+      int length = remaining < ELEMENT_HEADER_LENGTH ? -1 : queueFile.readDataInt(position);
+      // Checked before any addition, so a corrupted length cannot overflow
+      if (length < 0 || length > remaining - ELEMENT_HEADER_LENGTH) {
+        // The next boundaries are unknown, so the remaining elements are lost.
+        isCorrupted = true;
+        break;
+      }
+      int recordLength = ELEMENT_HEADER_LENGTH + length;
+
+      byte[] element = queueFile.readElement(position, length);
+      if (element == null) {
+        isCorrupted = true;
+      } else {
+        validElements.add(element);
+      }
+
+      position = queueFile.wrap(position + recordLength);
+      remaining -= recordLength;
+    }
+
+    if (isCorrupted) {
+      queueFile.rewrite(validElements);
+    } else {
+      for (byte[] element : validElements) {
+        queueFile.elementLengths.addLast(element.length);
+      }
+    }
+
+    return queueFile;
+  }
+
+  /**
+   * Add the given element at the end of this queue, evicting the oldest elements if there is not
+   * enough room for it.
+   *
+   * @throws IOException if the element is bigger than the capacity of this queue. In this case,
+   * the queue is not modified.
+   */
+  void add(@NonNull byte[] element) throws IOException {
+    int recordLength = ELEMENT_HEADER_LENGTH + element.length;
+    if (recordLength > capacity) {
+      throw new IOException("Element is bigger than the CSM queue capacity");
+    }
+
+    if (capacity - dataUsedBytes < recordLength) {
+      int evictedCount = 0;
+      int evictedBytes = 0;
+      Iterator<Integer> iterator = elementLengths.iterator();
+      while (capacity - dataUsedBytes + evictedBytes < recordLength) {
+        evictedBytes += ELEMENT_HEADER_LENGTH + iterator.next();
+        evictedCount++;
+      }
+
+      // Evicted elements are going to be overwritten, so they must not be referenced anymore.
+      removeFirst(evictedCount, evictedBytes);
+    }
+
+    crc32.reset();
+    crc32.update(element, 0, element.length);
+
+    int position = wrap(head + dataUsedBytes);
+    writeDataInt(position, element.length);
+    writeDataInt(wrap(position + 4), (int) crc32.getValue());
+    writeData(wrap(position + ELEMENT_HEADER_LENGTH), element, 0, element.length);
+
+    int newDataUsedBytes = dataUsedBytes + recordLength;
+    writeHeader(head, newDataUsedBytes);
+    dataUsedBytes = newDataUsedBytes;
+    elementLengths.addLast(element.length);
+  }
+
+  /**
+   * Read, without removing them, up to <code>max</code> elements from the head of this queue.
+   */
+  @NonNull
+  List<byte[]> peek(int max) {
+    int count = Math.min(max, elementLengths.size());
+    if (count <= 0) {
+      return Collections.emptyList();
+    }
+
+    List<byte[]> elements = new ArrayList<>(count);
+    Iterator<Integer> iterator = elementLengths.iterator();
+    int position = head;
+    for (int i = 0; i < count; i++) {
+      int length = iterator.next();
+      byte[] element = new byte[length];
+      readData(wrap(position + ELEMENT_HEADER_LENGTH), element, 0, length);
+      elements.add(element);
+      position = wrap(position + ELEMENT_HEADER_LENGTH + length);
+    }
+    return elements;
+  }
+
+  /**
+   * Remove up to <code>count</code> elements from the head of this queue.
+   */
+  void remove(int count) {
+    count = Math.min(count, elementLengths.size());
+    if (count <= 0) {
+      return;
+    }
+
+    int removedBytes = 0;
+    Iterator<Integer> iterator = elementLengths.iterator();
+    for (int i = 0; i < count; i++) {
+      removedBytes += ELEMENT_HEADER_LENGTH + iterator.next();
+    }
+
+    removeFirst(count, removedBytes);
+  }
+
+  /**
+   * Number of elements in this queue.
+   */
+  int size() {
+    return elementLengths.size();
+  }
+
+  /**
+   * Number of elements removed from this queue since it was opened, either explicitly or because
+   * they were evicted.
+   * <p>
+   * This lets callers know if the elements they previously peeked are still at the head.
+   */
+  long getRemovedCount() {
+    return removedCount;
+  }
+
+  /**
+   * Size in bytes used by this queue, including its header but not its free space.
+   * <p>
+   * This can be called from any thread.
+   */
+  int getUsedBytes() {
+    return HEADER_LENGTH + dataUsedBytes;
+  }
+
+  /**
+   * Write back the mapped content to the file.
+   * <p>
+   * The mapping itself is released by the garbage collector, so this queue should not be used
+   * anymore after this call.
+   */
+  @Override
+  public void close() {
+    if (buffer instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) buffer).force();
+    }
+  }
+
+  private void removeFirst(int count, int removedBytes) {
+    int newDataUsedBytes = dataUsedBytes - removedBytes;
+    int newHead = newDataUsedBytes == 0 ? 0 : wrap(head + removedBytes);
+    writeHeader(newHead, newDataUsedBytes);
+
+    head = newHead;
+    dataUsedBytes = newDataUsedBytes;
+    removedCount += count;
+    for (int i = 0; i < count; i++) {
+      elementLengths.removeFirst();
+    }
+  }
+
+  /**
+   * Replace the content of this queue by the given elements.
+   */
+  private void rewrite(@NonNull List<byte[]> elements) throws IOException {
+    head = 0;
+    dataUsedBytes = 0;
+    elementLengths.clear();
+    writeHeader(0, 0);
+
+    for (byte[] element : elements) {
+      add(element);
+    }
+  }
+
+  /**
+   * Read the element whose record starts at the given position.
+   *
+   * @return the element, or <code>null</code> if it does not match its checksum
+   */
+  @Nullable
+  private byte[] readElement(int position, int length) {
+    int checksum = readDataInt(wrap(position + 4));
+    byte[] element = new byte[length];
+    readData(wrap(position + ELEMENT_HEADER_LENGTH), element, 0, length);
+
+    crc32.reset();
+    crc32.update(element, 0, length);
+    return (int) crc32.getValue() == checksum ? element : null;
+  }
+
+  private void writeHeader(int head, int dataUsedBytes) {
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, capacity);
+    buffer.putInt(8, head);
+    buffer.putInt(12, dataUsedBytes);
+  }
+
+  private int readDataInt(int position) {
+    byte[] bytes = new byte[4];
+    readData(position, bytes, 0, 4);
+    return (bytes[0] & 0xFF) << 24
+        | (bytes[1] & 0xFF) << 16
+        | (bytes[2] & 0xFF) << 8
+        | (bytes[3] & 0xFF);
+  }
+
+  private void writeDataInt(int position, int value) {
+    byte[] bytes = new byte[] {
+        (byte) (value >>> 24),
+        (byte) (value >>> 16),
+        (byte) (value >>> 8),
+        (byte) value
+    };
+    writeData(position, bytes, 0, 4);
+  }
+
+  private void readData(int position, byte[] bytes, int offset, int length) {
+    int firstPartLength = Math.min(length, capacity - position);
+    buffer.position(HEADER_LENGTH + position);
+    buffer.get(bytes, offset, firstPartLength);
+    if (firstPartLength < length) {
+      buffer.position(HEADER_LENGTH);
+      buffer.get(bytes, offset + firstPartLength, length - firstPartLength);
+    }
+  }
+
+  private void writeData(int position, byte[] bytes, int offset, int length) {
+    int firstPartLength = Math.min(length, capacity - position);
+    buffer.position(HEADER_LENGTH + position);
+    buffer.put(bytes, offset, firstPartLength);
+    if (firstPartLength < length) {
+      buffer.position(HEADER_LENGTH);
+      buffer.put(bytes, offset + firstPartLength, length - firstPartLength);
+    }
+  }
+
+  private int wrap(int position) {
+    return position < capacity ? position : position - capacity;
+  }
+
+}
@@ -18,20 +18,18 @@ package com.criteo.publisher.csm;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.logging.Logger;
 import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.util.BuildConfigWrapper;
-import com.squareup.tape.FileObjectQueue;
-import com.squareup.tape.InMemoryObjectQueue;
-import com.squareup.tape.ObjectQueue;
-import java.io.ByteArrayInputStream;
+import com.squareup.tape.QueueFile;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
-public class MetricObjectQueueFactory {
+public class MetricQueueFileFactory {
 
   @NonNull
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -39,42 +37,31 @@ public class MetricObjectQueueFactory {
   @NonNull
   private final Context context;
 
-  @NonNull
-  private final MetricParser metricParser;
-
   @NonNull
   private final BuildConfigWrapper buildConfigWrapper;
 
-  public MetricObjectQueueFactory(
+  public MetricQueueFileFactory(
       @NonNull Context context,
-      @NonNull MetricParser metricParser,
       @NonNull BuildConfigWrapper buildConfigWrapper
   ) {
     this.context = context;
-    this.metricParser = metricParser;
     this.buildConfigWrapper = buildConfigWrapper;
   }
 
   @NonNull
-  public ObjectQueue<Metric> create() {
+  MetricQueueFile create() {
     File file = getQueueFile();
-    return createTapeObjectQueue(file);
-  }
-
-  @VisibleForTesting
-  File getQueueFile() {
-    return new File(context.getFilesDir(), buildConfigWrapper.getCsmQueueFilename());
-  }
+    int capacity = buildConfigWrapper.getMaxSizeOfCsmMetricSendingQueue();
 
-  private ObjectQueue<Metric> createTapeObjectQueue(@NonNull File file) {
     Exception exception;
     try {
-      FileObjectQueue<Metric> queue = new FileObjectQueue<>(file, new MetricConverter(metricParser));
+      List<byte[]> legacyElements = readAndDeleteLegacyQueueFile(file);
 
-      // Try to peek to be sure that the queue is not corrupted.
-      queue.peek();
-
-      return queue;
+      MetricQueueFile queueFile = MetricQueueFile.open(file, capacity);
+      for (byte[] legacyElement : legacyElements) {
+        queueFile.add(legacyElement);
+      }
+      return queueFile;
     } catch (Exception e) {
       exception = e;
     }
@@ -85,7 +72,7 @@ public class MetricObjectQueueFactory {
 
     if (isDeleted) {
       try {
-        return new FileObjectQueue<>(file, new MetricConverter(metricParser));
+        return MetricQueueFile.open(file, capacity);
       } catch (IOException e) {
         exception.addSuppressed(e);
       } finally {
@@ -95,7 +82,55 @@ public class MetricObjectQueueFactory {
     }
 
     // If this still does not work, we fallback on an in-memory solution.
-    return new InMemoryObjectQueue<>();
+    return MetricQueueFile.inMemory(capacity);
+  }
+
+  @VisibleForTesting
+  File getQueueFile() {
+    return new File(context.getFilesDir(), buildConfigWrapper.getCsmQueueFilename());
+  }
+
+  /**
+   * Previous versions of the SDK stored the queue in a Tape {@link QueueFile}. If the given file is
+   * such a queue, its elements are read and the file is deleted, so they can be moved into a new
+   * queue.
+   * <p>
+   * Empty elements are skipped: they were sometimes written by Tape, and are not readable metrics.
+   */
+  @NonNull
+  private List<byte[]> readAndDeleteLegacyQueueFile(@NonNull File file) throws IOException {
+    final List<byte[]> elements = new ArrayList<>();
+    if (!file.isFile() || MetricQueueFile.isEmptyOrQueueFile(file)) {
+      return elements;
+    }
+
+    QueueFile legacyQueueFile = new QueueFile(file);
+    try {
+      legacyQueueFile.forEach(new QueueFile.ElementReader() {
+        @Override
+        public void read(InputStream in, int length) throws IOException {
+          if (length > 0) {
+            byte[] element = new byte[length];
+            int read = 0;
+            while (read < length) {
+              int count = in.read(element, read, length - read);
+              if (count < 0) {
+                throw new IOException("Unexpected end of legacy CSM queue element");
+              }
+              read += count;
+            }
+            elements.add(element);
+          }
+        }
+      });
+    } finally {
+      legacyQueueFile.close();
+    }
+
+    if (!file.delete()) {
+      throw new IOException("Could not delete legacy CSM queue file");
+    }
+    return elements;
   }
 
   private boolean delete(@NonNull File file) {
@@ -112,32 +147,4 @@ public class MetricObjectQueueFactory {
     return file.delete();
   }
 
-  @VisibleForTesting
-  static class MetricConverter implements FileObjectQueue.Converter<Metric> {
-    @NonNull
-    private final MetricParser parser;
-
-    MetricConverter(@NonNull MetricParser parser) {
-      this.parser = parser;
-    }
-
-    @Nullable
-    @Override
-    public Metric from(@Nullable byte[] bytes) throws IOException {
-      if (bytes == null) {
-        return null;
-      }
-
-      try (ByteArrayInputStream input = new ByteArrayInputStream(bytes)) {
-        return parser.read(input);
-      }
-    }
-
-    @Override
-    public void toStream(@Nullable Metric metric, @Nullable OutputStream outputStream) throws IOException {
-      if (metric != null && outputStream != null) {
-        parser.write(metric, outputStream);
-      }
-    }
-  }
 }
@@ -17,9 +17,10 @@
 package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
+import com.criteo.publisher.util.ApplicationStoppedListener;
 import java.util.Collection;
 
-public abstract class MetricRepository {
+public abstract class MetricRepository implements ApplicationStoppedListener {
 
   /**
    * Atomically update the metric matching the given id with the given updater.
@@ -60,8 +61,18 @@ public abstract class MetricRepository {
   @NonNull
   abstract Collection<Metric> getAllStoredMetrics();
 
+  /**
+   * Returns the IDs of all stored metrics into this repository, without reading the metrics.
+   *
+   * @return IDs of all stored metrics
+   */
+  @NonNull
+  abstract Collection<String> getAllStoredIds();
+
   /**
    * Return the size in bytes of all metric elements stored in this repository.
+   * <p>
+   * This is checked before every update, so implementations should answer it without I/O.
    *
    * @return total size in bytes of stored metrics
    */
@@ -69,12 +80,24 @@ public abstract class MetricRepository {
 
   /**
    * Indicate if this repository contains a metric associated to the given ID.
+   * <p>
+   * This is checked before every update of a full repository, so implementations should answer it
+   * without I/O.
    *
    * @param impressionId ID of metric to look for
    * @return <code>true</code> if this contains a metric with that ID, else <code>false</code>
    */
   abstract boolean contains(@NonNull String impressionId);
 
+  /**
+   * Write asynchronously on disk the updates that are only kept in memory, if any, as the
+   * application may be killed while in background.
+   */
+  @Override
+  public void onApplicationStopped() {
+    // By default, updates are written right away
+  }
+
   interface MetricUpdater {
 
     void update(@NonNull Metric.Builder metricBuilder);
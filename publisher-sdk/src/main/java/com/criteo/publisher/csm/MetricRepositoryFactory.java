@@ -22,6 +22,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import com.criteo.publisher.DependencyProvider.Factory;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 @RequiresApi(api = VERSION_CODES.JELLY_BEAN_MR1)
 public class MetricRepositoryFactory implements Factory<MetricRepository> {
@@ -35,21 +38,37 @@ public class MetricRepositoryFactory implements Factory<MetricRepository> {
   @NonNull
   private final BuildConfigWrapper buildConfigWrapper;
 
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutor;
+
   public MetricRepositoryFactory(
       @NonNull Context context,
       @NonNull MetricParser metricParser,
-      @NonNull BuildConfigWrapper buildConfigWrapper
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor
   ) {
     this.context = context;
     this.metricParser = metricParser;
     this.buildConfigWrapper = buildConfigWrapper;
+    this.executor = executor;
+    this.scheduledExecutor = scheduledExecutor;
   }
 
   @NonNull
   @Override
   public MetricRepository create() {
-    MetricDirectory directory = new MetricDirectory(context, buildConfigWrapper, metricParser);
-    MetricRepository fileMetricRepository = new FileMetricRepository(directory);
-    return new BoundedMetricRepository(fileMetricRepository, buildConfigWrapper);
+    File directory = context.getDir(buildConfigWrapper.getCsmDirectoryName(), Context.MODE_PRIVATE);
+    MetricRepository logMetricRepository = new LogMetricRepository(
+        directory,
+        metricParser,
+        buildConfigWrapper.getCsmWriteBehindWindowInMillis(),
+        executor,
+        scheduledExecutor
+    );
+    return new BoundedMetricRepository(logMetricRepository, buildConfigWrapper);
   }
 }
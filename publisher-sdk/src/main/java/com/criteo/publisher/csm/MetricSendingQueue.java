@@ -45,6 +45,42 @@ public abstract class MetricSendingQueue {
   @NonNull
   abstract List<Metric> poll(int max);
 
+  /**
+   * Retrieves, without removing them, up to <code>max</code> elements from this queue, and reserves
+   * them until they are either {@linkplain #commit() committed} or {@linkplain #rollback() rolled
+   * back}.
+   * <p>
+   * Only one batch can be reserved at a time: while a batch is reserved, this returns an empty
+   * list. Reserved elements stay in this queue, so they are not lost if the process dies before the
+   * batch is committed.
+   *
+   * @param max max number of element to peek from the queue
+   * @return at most <code>max</code> first elements of the queue
+   */
+  @NonNull
+  abstract List<Metric> peek(int max);
+
+  /**
+   * Removes the batch reserved by the last {@link #peek(int)}, if any.
+   * <p>
+   * Elements of this batch that were already removed in the meantime (for instance because they
+   * were evicted) are not removed twice.
+   */
+  abstract void commit();
+
+  /**
+   * Releases the batch reserved by the last {@link #peek(int)}, if any, so its elements can be
+   * peeked again.
+   */
+  abstract void rollback();
+
+  /**
+   * Return the number of metrics stored in this queue, including the reserved ones.
+   *
+   * @return number of stored metrics
+   */
+  abstract int size();
+
   /**
    * Return the size in bytes of all metric elements stored in this queue.
    *
@@ -17,9 +17,12 @@
 package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
+import com.criteo.publisher.Clock;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.network.PubSdkApi;
 import com.criteo.publisher.util.BuildConfigWrapper;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 public class MetricSendingQueueConsumer {
@@ -36,6 +39,9 @@ public class MetricSendingQueueConsumer {
   @NonNull
   private final Config config;
 
+  @NonNull
+  private final Clock clock;
+
   @NonNull
   private final Executor executor;
 
@@ -44,12 +50,14 @@ public class MetricSendingQueueConsumer {
       @NonNull PubSdkApi api,
       @NonNull BuildConfigWrapper buildConfigWrapper,
       @NonNull Config config,
+      @NonNull Clock clock,
       @NonNull Executor executor
   ) {
     this.queue = queue;
     this.api = api;
     this.buildConfigWrapper = buildConfigWrapper;
     this.config = config;
+    this.clock = clock;
     this.executor = executor;
   }
 
@@ -57,16 +65,53 @@ public class MetricSendingQueueConsumer {
    * Send asynchronously a new batch of metrics to the CSM backend.
    * <p>
    * This is a fire and forget operation. No output is expected. Although, if an error occurs while
-   * sending the metrics to the backend, they are pushed back in the sending queue.
+   * sending the metrics to the backend, they are kept in the sending queue.
    * <p>
-   * The batch is polled from the queue (instead of peeked). Data loss is tolerated if the process
-   * is terminated while the batch is being sent to the CSM backed. This is to ensure that the same
-   * metric will never be sent to CSM backend twice.
+   * The batch is peeked from the queue and only removed once it is sent to the CSM backend. So, if
+   * the process is terminated while the batch is being sent, it is sent again on next run. While a
+   * batch is being sent, other sending tasks have nothing to send.
+   * <p>
+   * Metrics of different profiles are sent in concurrent requests. Only the metrics of the failed
+   * requests are kept in the sending queue.
    */
   public void sendMetricBatch() {
     if (config.isCsmEnabled()) {
-      executor.execute(new MetricSendingTask(queue, api, buildConfigWrapper));
+      executor.execute(createSendingTask());
+    }
+  }
+
+  /**
+   * Send synchronously, batch after batch, the metrics that are in the queue when this is called.
+   * <p>
+   * This stops after the first batch that could not be entirely sent. As for {@link
+   * #sendMetricBatch()}, metrics that are not sent are kept in the sending queue.
+   *
+   * @return counters of each sent batch
+   */
+  @NonNull
+  List<MetricBatchResult> sendAllMetricBatches() {
+    List<MetricBatchResult> results = new ArrayList<>();
+    if (!config.isCsmEnabled()) {
+      return results;
+    }
+
+    int batchSize = Math.max(1, buildConfigWrapper.getCsmBatchSize());
+    int batchCount = (queue.size() + batchSize - 1) / batchSize;
+
+    MetricSendingTask sendingTask = createSendingTask();
+    for (int i = 0; i < batchCount; i++) {
+      MetricBatchResult result = sendingTask.sendBatch();
+      results.add(result);
+      if (!result.isSuccess()) {
+        break;
+      }
     }
+    return results;
+  }
+
+  @NonNull
+  private MetricSendingTask createSendingTask() {
+    return new MetricSendingTask(queue, api, buildConfigWrapper, clock, executor);
   }
 
 }
@@ -23,23 +23,28 @@ import com.criteo.publisher.util.BuildConfigWrapper;
 public class MetricSendingQueueFactory implements Factory<MetricSendingQueue> {
 
   @NonNull
-  private final MetricObjectQueueFactory metricObjectQueueFactory;
+  private final MetricQueueFileFactory metricQueueFileFactory;
+
+  @NonNull
+  private final MetricParser metricParser;
 
   @NonNull
   private final BuildConfigWrapper buildConfigWrapper;
 
   public MetricSendingQueueFactory(
-      @NonNull MetricObjectQueueFactory metricObjectQueueFactory,
+      @NonNull MetricQueueFileFactory metricQueueFileFactory,
+      @NonNull MetricParser metricParser,
       @NonNull BuildConfigWrapper buildConfigWrapper
   ) {
-    this.metricObjectQueueFactory = metricObjectQueueFactory;
+    this.metricQueueFileFactory = metricQueueFileFactory;
+    this.metricParser = metricParser;
     this.buildConfigWrapper = buildConfigWrapper;
   }
 
   @NonNull
   @Override
   public MetricSendingQueue create() {
-    MetricSendingQueue tapeQueue = new TapeMetricSendingQueue(metricObjectQueueFactory);
-    return new BoundedMetricSendingQueue(tapeQueue, buildConfigWrapper);
+    MetricSendingQueue fileQueue = new FileMetricSendingQueue(metricQueueFileFactory, metricParser);
+    return new BoundedMetricSendingQueue(fileQueue, buildConfigWrapper);
   }
 }
@@ -17,25 +17,51 @@
 package com.criteo.publisher.csm;
 
 import androidx.annotation.NonNull;
+import java.util.Collection;
 
 public class MetricSendingQueueProducer {
 
   @NonNull
   private final MetricSendingQueue queue;
 
-  public MetricSendingQueueProducer(@NonNull MetricSendingQueue queue) {
+  @NonNull
+  private final MetricUploadScheduler uploadScheduler;
+
+  public MetricSendingQueueProducer(
+      @NonNull MetricSendingQueue queue,
+      @NonNull MetricUploadScheduler uploadScheduler
+  ) {
     this.queue = queue;
+    this.uploadScheduler = uploadScheduler;
   }
 
-  void pushAllInQueue(@NonNull MetricRepository repository) {
-    for (Metric metric : repository.getAllStoredMetrics()) {
-      pushInQueue(repository, metric.getImpressionId());
+  /**
+   * Move the metrics with the given IDs in the sending queue. IDs that are not stored anymore are
+   * ignored.
+   */
+  void pushAllInQueue(
+      @NonNull MetricRepository repository,
+      @NonNull Collection<String> impressionIds
+  ) {
+    for (String impressionId : impressionIds) {
+      moveInQueue(repository, impressionId);
     }
+
+    // The queue may also contain metrics of previous sessions
+    uploadScheduler.onMetricQueued();
   }
 
   void pushInQueue(
       @NonNull MetricRepository repository,
       @NonNull String impressionId
+  ) {
+    moveInQueue(repository, impressionId);
+    uploadScheduler.onMetricQueued();
+  }
+
+  private void moveInQueue(
+      @NonNull MetricRepository repository,
+      @NonNull String impressionId
   ) {
     repository.moveById(impressionId, new MetricMover() {
       @Override
@@ -15,35 +15,128 @@
  */
 package com.criteo.publisher.csm
 
+import com.criteo.publisher.Clock
 import com.criteo.publisher.SafeRunnable
 import com.criteo.publisher.integration.Integration
+import com.criteo.publisher.logging.LoggerFactory
 import com.criteo.publisher.network.PubSdkApi
 import com.criteo.publisher.util.BuildConfigWrapper
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
 
 internal class MetricSendingTask(
     private val queue: MetricSendingQueue,
     private val api: PubSdkApi,
-    private val buildConfigWrapper: BuildConfigWrapper
+    private val buildConfigWrapper: BuildConfigWrapper,
+    private val clock: Clock,
+    private val executor: Executor
 ) : SafeRunnable() {
 
+  private val logger = LoggerFactory.getLogger(MetricSendingTask::class.java)
+
   override fun runSafely() {
-    val metrics: Collection<Metric> = queue.poll(buildConfigWrapper.csmBatchSize)
+    sendBatch()
+  }
+
+  /**
+   * Send synchronously the next batch of metrics of the queue, with one request per profile.
+   *
+   * Requests are sent concurrently, up to [BuildConfigWrapper.getCsmMaxParallelRequests], by the
+   * calling thread and by helpers on the executor. The calling thread takes its share of the
+   * requests, so the batch does not depend on the availability of the executor. All requests are
+   * tried, even if some fail: only the metrics of the failed requests are kept in the queue.
+   */
+  fun sendBatch(): MetricBatchResult {
+    val metrics: Collection<Metric> = queue.peek(buildConfigWrapper.csmBatchSize)
     if (metrics.isEmpty()) {
-      return
+      return MetricBatchResult.EMPTY
     }
 
-    val metricsToRollback = metrics.toMutableList()
+    val start = clock.currentTimeInMillis
+    var outcomes: Collection<RequestOutcome> = emptyList()
     try {
-      val metricPerRequests = createRequests(metrics)
-      metricPerRequests.forEach {
-        api.postCsm(it.key)
-        metricsToRollback.removeAll(it.value)
-      }
+      outcomes = postAll(createRequests(metrics))
     } finally {
-      if (metricsToRollback.isNotEmpty()) {
-        rollback(metricsToRollback)
+      val failedMetrics = outcomes.filter { !it.isSuccess }.flatMap { it.metrics }
+      if (outcomes.none { it.isSuccess }) {
+        // Nothing was sent, the batch is left as is in the queue
+        queue.rollback()
+      } else {
+        queue.commit()
+        resend(failedMetrics)
       }
     }
+
+    val (successes, failures) = outcomes.partition { it.isSuccess }
+    val result = MetricBatchResult.create(
+        successes.size,
+        failures.size,
+        successes.sumBy { it.metrics.size },
+        failures.sumBy { it.metrics.size },
+        outcomes.map { it.latencyInMillis }.max() ?: 0L,
+        clock.currentTimeInMillis - start
+    )
+
+    outcomes.mapNotNull { it.error }.forEach {
+      logger.debug("Error while sending CSM request", it)
+    }
+    return result
+  }
+
+  private fun postAll(
+      requests: Map<MetricRequest, Collection<Metric>>
+  ): Collection<RequestOutcome> {
+    val pendingRequests = ConcurrentLinkedQueue(requests.entries)
+    val outcomes = ConcurrentLinkedQueue<RequestOutcome>()
+    val remainingRequests = CountDownLatch(requests.size)
+
+    val helperCount = minOf(buildConfigWrapper.csmMaxParallelRequests, requests.size) - 1
+    for (i in 0 until helperCount) {
+      try {
+        executor.execute(object : SafeRunnable() {
+          override fun runSafely() {
+            postPending(pendingRequests, outcomes, remainingRequests)
+          }
+        })
+      } catch (e: RejectedExecutionException) {
+        // Remaining requests are sent by the other workers
+        break
+      }
+    }
+
+    postPending(pendingRequests, outcomes, remainingRequests)
+
+    // Only requests being sent by helpers are awaited: helpers starting late find nothing to send
+    remainingRequests.await()
+    return outcomes
+  }
+
+  private fun postPending(
+      pendingRequests: ConcurrentLinkedQueue<Map.Entry<MetricRequest, Collection<Metric>>>,
+      outcomes: ConcurrentLinkedQueue<RequestOutcome>,
+      remainingRequests: CountDownLatch
+  ) {
+    while (true) {
+      val request = pendingRequests.poll() ?: return
+      try {
+        outcomes.add(post(request.key, request.value))
+      } finally {
+        remainingRequests.countDown()
+      }
+    }
+  }
+
+  private fun post(request: MetricRequest, metrics: Collection<Metric>): RequestOutcome {
+    val start = clock.currentTimeInMillis
+    val error = try {
+      api.postCsm(request)
+      null
+    } catch (e: Exception) {
+      e
+    }
+    return RequestOutcome(metrics, error, clock.currentTimeInMillis - start)
   }
 
   private fun createRequests(metrics: Collection<Metric>): Map<MetricRequest, Collection<Metric>> {
@@ -62,10 +155,19 @@ internal class MetricSendingTask(
     }
   }
 
-  private fun rollback(metrics: Collection<Metric>) {
+  private fun resend(metrics: Collection<Metric>) {
     metrics.forEach {
       queue.offer(it)
     }
   }
 
-}
\ No newline at end of file
+  private class RequestOutcome(
+      val metrics: Collection<Metric>,
+      val error: Exception?,
+      val latencyInMillis: Long
+  ) {
+    val isSuccess: Boolean
+      get() = error == null
+  }
+
+}
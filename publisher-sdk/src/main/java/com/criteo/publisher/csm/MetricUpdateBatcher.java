@@ -0,0 +1,216 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.NonNull;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.csm.MetricRepository.MetricUpdater;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single writer of the metric updates caused by bid lifecycle events.
+ * <p>
+ * Producers only enqueue their updates in a lock-free queue. A single drain task is executed at a
+ * time: it is scheduled a short batching window after the first update of a burst (see {@link
+ * BuildConfigWrapper#getCsmEventBatchingWindowInMillis()}), and then merges all the updates of a
+ * same metric into one write of the repository, before pushing it in the sending queue if
+ * requested. So a burst of events costs a single task of the thread pool, no thread is held while
+ * waiting for the end of the window, and each metric is written once per window.
+ * <p>
+ * Updates of a same metric are applied in the order they were enqueued.
+ */
+class MetricUpdateBatcher {
+
+  @NonNull
+  private final Queue<PendingUpdate> pendingUpdates = new ConcurrentLinkedQueue<>();
+
+  @NonNull
+  private final AtomicBoolean isDrainScheduled = new AtomicBoolean(false);
+
+  @NonNull
+  private final MetricRepository repository;
+
+  @NonNull
+  private final MetricSendingQueueProducer sendingQueueProducer;
+
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutor;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final Runnable drainTask = new SafeRunnable() {
+    @Override
+    public void runSafely() {
+      try {
+        drain();
+      } finally {
+        isDrainScheduled.set(false);
+      }
+
+      // Updates enqueued during the drain may have seen it as still scheduled
+      if (!pendingUpdates.isEmpty()) {
+        scheduleDrainIfNeeded();
+      }
+    }
+  };
+
+  MetricUpdateBatcher(
+      @NonNull MetricRepository repository,
+      @NonNull MetricSendingQueueProducer sendingQueueProducer,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor,
+      @NonNull BuildConfigWrapper buildConfigWrapper
+  ) {
+    this.repository = repository;
+    this.sendingQueueProducer = sendingQueueProducer;
+    this.executor = executor;
+    this.scheduledExecutor = scheduledExecutor;
+    this.buildConfigWrapper = buildConfigWrapper;
+  }
+
+  /**
+   * Enqueue an update of the metric with the given ID.
+   *
+   * @param impressionId ID of the metric to update
+   * @param updater update to apply on the metric
+   * @param pushInQueue if <code>true</code>, the metric is pushed in the sending queue after being
+   * updated
+   */
+  void update(@NonNull String impressionId, @NonNull MetricUpdater updater, boolean pushInQueue) {
+    pendingUpdates.offer(new PendingUpdate(impressionId, updater, pushInQueue));
+    scheduleDrainIfNeeded();
+  }
+
+  private void scheduleDrainIfNeeded() {
+    if (!isDrainScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    int batchingWindowInMillis = buildConfigWrapper.getCsmEventBatchingWindowInMillis();
+    try {
+      if (batchingWindowInMillis <= 0) {
+        executor.execute(drainTask);
+      } else {
+        scheduledExecutor.schedule(
+            new WakeUpTask(),
+            batchingWindowInMillis,
+            TimeUnit.MILLISECONDS
+        );
+      }
+    } catch (RuntimeException e) {
+      // If the drain could not be executed, then next updates should try again
+      isDrainScheduled.set(false);
+      throw e;
+    }
+  }
+
+  private void drain() {
+    Map<String, MergedUpdate> updatesById = new LinkedHashMap<>();
+    PendingUpdate pendingUpdate;
+    while ((pendingUpdate = pendingUpdates.poll()) != null) {
+      MergedUpdate mergedUpdate = updatesById.get(pendingUpdate.impressionId);
+      if (mergedUpdate == null) {
+        mergedUpdate = new MergedUpdate();
+        updatesById.put(pendingUpdate.impressionId, mergedUpdate);
+      }
+      mergedUpdate.add(pendingUpdate);
+    }
+
+    for (Map.Entry<String, MergedUpdate> entry : updatesById.entrySet()) {
+      String impressionId = entry.getKey();
+      MergedUpdate mergedUpdate = entry.getValue();
+
+      repository.addOrUpdateById(impressionId, mergedUpdate);
+      if (mergedUpdate.pushInQueue) {
+        sendingQueueProducer.pushInQueue(repository, impressionId);
+      }
+    }
+  }
+
+  /**
+   * Only wakes up the drain and hands it off to the executor, as the scheduled executor is shared.
+   */
+  private class WakeUpTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      try {
+        executor.execute(drainTask);
+      } catch (RuntimeException e) {
+        isDrainScheduled.set(false);
+        throw e;
+      }
+    }
+  }
+
+  private static class PendingUpdate {
+
+    @NonNull
+    private final String impressionId;
+
+    @NonNull
+    private final MetricUpdater updater;
+
+    private final boolean pushInQueue;
+
+    private PendingUpdate(
+        @NonNull String impressionId,
+        @NonNull MetricUpdater updater,
+        boolean pushInQueue
+    ) {
+      this.impressionId = impressionId;
+      this.updater = updater;
+      this.pushInQueue = pushInQueue;
+    }
+  }
+
+  private static class MergedUpdate implements MetricUpdater {
+
+    @NonNull
+    private final List<MetricUpdater> updaters = new ArrayList<>(2);
+
+    private boolean pushInQueue = false;
+
+    private void add(@NonNull PendingUpdate pendingUpdate) {
+      updaters.add(pendingUpdate.updater);
+      pushInQueue |= pendingUpdate.pushInQueue;
+    }
+
+    @Override
+    public void update(@NonNull Metric.Builder builder) {
+      for (MetricUpdater updater : updaters) {
+        updater.update(builder);
+      }
+    }
+  }
+
+}
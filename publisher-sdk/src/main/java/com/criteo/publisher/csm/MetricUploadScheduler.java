@@ -0,0 +1,302 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.model.Config;
+import com.criteo.publisher.util.ApplicationStoppedListener;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide when metrics of the sending queue are uploaded to the CSM backend.
+ * <p>
+ * Uploads are not tied to bid requests. They are triggered when:
+ * <ul>
+ *   <li>the queue holds at least {@link BuildConfigWrapper#getCsmUploadQueueDepth()} metrics,</li>
+ *   <li>the oldest pending metric waited for
+ *   {@link BuildConfigWrapper#getCsmUploadMaxDelayInMillis()},</li>
+ *   <li>the application goes in background, as it may be killed at any time.</li>
+ * </ul>
+ * An upload sends all the pending metrics, batch after batch. After a failed upload, the next ones
+ * are delayed by an exponential backoff. Only going in background bypasses it, as this may be the
+ * last chance to upload metrics before the application is killed.
+ * <p>
+ * The age of the oldest pending metric is tracked in memory: metrics found in the queue on startup,
+ * or left after an upload, are considered as pending since then.
+ * <p>
+ * Uploads are executed on the given executor while the delayed ones are only awaited on the
+ * scheduled executor.
+ */
+public class MetricUploadScheduler implements ApplicationStoppedListener {
+
+  private static final long NONE = -1;
+
+  /**
+   * Maximum exponent of the backoff, so it does not overflow. Backoff is capped before anyway.
+   */
+  private static final int MAX_BACKOFF_SHIFT = 20;
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(MetricUploadScheduler.class);
+
+  @NonNull
+  private final MetricSendingQueue queue;
+
+  @NonNull
+  private final MetricSendingQueueConsumer consumer;
+
+  @NonNull
+  private final Config config;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutor;
+
+  @NonNull
+  private final Object lock = new Object();
+
+  @GuardedBy("lock")
+  private boolean isInForeground = true;
+
+  @GuardedBy("lock")
+  private boolean isUploading = false;
+
+  /**
+   * Indicate that pending metrics should be uploaded as soon as possible, even during a backoff.
+   */
+  @GuardedBy("lock")
+  private boolean isFlushRequested = false;
+
+  /**
+   * Instant (in milliseconds) since which metrics are waiting in the queue, or {@link #NONE}.
+   */
+  @GuardedBy("lock")
+  private long oldestPendingTime = NONE;
+
+  @GuardedBy("lock")
+  private int consecutiveFailures = 0;
+
+  /**
+   * Instant (in milliseconds) before which no upload is attempted because of previous failures.
+   */
+  @GuardedBy("lock")
+  private long backoffEndTime = 0;
+
+  @GuardedBy("lock")
+  @Nullable
+  private ScheduledFuture<?> nextWakeUp;
+
+  @GuardedBy("lock")
+  private long nextWakeUpTime;
+
+  public MetricUploadScheduler(
+      @NonNull MetricSendingQueue queue,
+      @NonNull MetricSendingQueueConsumer consumer,
+      @NonNull Config config,
+      @NonNull Clock clock,
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor
+  ) {
+    this.queue = queue;
+    this.consumer = consumer;
+    this.config = config;
+    this.clock = clock;
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.executor = executor;
+    this.scheduledExecutor = scheduledExecutor;
+  }
+
+  /**
+   * Indicate that new metrics may have been pushed in the sending queue.
+   */
+  public void onMetricQueued() {
+    synchronized (lock) {
+      if (oldestPendingTime == NONE && queue.size() > 0) {
+        oldestPendingTime = clock.getCurrentTimeInMillis();
+      }
+      scheduleNextUpload(true);
+    }
+  }
+
+  public void onApplicationStarted() {
+    synchronized (lock) {
+      isInForeground = true;
+      scheduleNextUpload(true);
+    }
+  }
+
+  @Override
+  public void onApplicationStopped() {
+    synchronized (lock) {
+      isInForeground = false;
+      isFlushRequested = true;
+      scheduleNextUpload(true);
+    }
+  }
+
+  /**
+   * @param isTriggerAllowed if <code>false</code>, pending metrics are only uploaded once the
+   * oldest one waited for the max delay. This prevents chaining uploads when metrics cannot be
+   * drained.
+   */
+  @GuardedBy("lock")
+  private void scheduleNextUpload(boolean isTriggerAllowed) {
+    if (oldestPendingTime == NONE) {
+      isFlushRequested = false;
+      return;
+    }
+
+    if (isUploading || !isUploadEnabled()) {
+      return;
+    }
+
+    long now = clock.getCurrentTimeInMillis();
+    boolean isTriggered = isFlushRequested
+        || !isInForeground
+        || queue.size() >= buildConfigWrapper.getCsmUploadQueueDepth();
+
+    long uploadTime;
+    if (isTriggerAllowed && isTriggered) {
+      uploadTime = now;
+    } else {
+      uploadTime = oldestPendingTime + buildConfigWrapper.getCsmUploadMaxDelayInMillis();
+    }
+    if (!isFlushRequested) {
+      uploadTime = Math.max(uploadTime, backoffEndTime);
+    }
+
+    if (uploadTime <= now) {
+      cancelNextWakeUp();
+      isFlushRequested = false;
+      isUploading = true;
+      try {
+        executor.execute(new UploadTask());
+      } catch (RuntimeException e) {
+        // If the upload could not be executed, then next triggers should try again
+        isUploading = false;
+        throw e;
+      }
+      return;
+    }
+
+    if (nextWakeUp != null) {
+      if (nextWakeUpTime <= uploadTime) {
+        // The scheduled wake-up is early enough, it will look again at the state
+        return;
+      }
+      nextWakeUp.cancel(false);
+    }
+
+    nextWakeUpTime = uploadTime;
+    nextWakeUp = scheduledExecutor.schedule(
+        new WakeUpTask(),
+        uploadTime - now,
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  @GuardedBy("lock")
+  private void cancelNextWakeUp() {
+    if (nextWakeUp != null) {
+      nextWakeUp.cancel(false);
+      nextWakeUp = null;
+    }
+  }
+
+  private boolean isUploadEnabled() {
+    return config.isCsmEnabled() && !config.isKillSwitchEnabled();
+  }
+
+  private void onUploadFinished(boolean isSuccess) {
+    synchronized (lock) {
+      isUploading = false;
+      long now = clock.getCurrentTimeInMillis();
+
+      if (isSuccess) {
+        consecutiveFailures = 0;
+        backoffEndTime = 0;
+
+        // Metrics queued during the upload are not sent yet
+        oldestPendingTime = queue.size() > 0 ? now : NONE;
+      } else {
+        consecutiveFailures++;
+        backoffEndTime = now + computeBackoff(consecutiveFailures);
+
+        // The flush was attempted during this upload
+        isFlushRequested = false;
+      }
+
+      // After a success, only a flush requested during the upload triggers a new one right away
+      scheduleNextUpload(!isSuccess || isFlushRequested);
+    }
+  }
+
+  @GuardedBy("lock")
+  private long computeBackoff(int failures) {
+    long minBackoff = buildConfigWrapper.getCsmUploadMinBackoffInMillis();
+    long maxBackoff = buildConfigWrapper.getCsmUploadMaxBackoffInMillis();
+    int shift = Math.min(failures - 1, MAX_BACKOFF_SHIFT);
+    return Math.min(maxBackoff, minBackoff << shift);
+  }
+
+  private class UploadTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      boolean isSuccess = false;
+      try {
+        List<MetricBatchResult> results = consumer.sendAllMetricBatches();
+        isSuccess = results.isEmpty() || results.get(results.size() - 1).isSuccess();
+        logger.debug("Metrics uploaded: %s", results);
+      } finally {
+        onUploadFinished(isSuccess);
+      }
+    }
+  }
+
+  private class WakeUpTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      synchronized (lock) {
+        nextWakeUp = null;
+        scheduleNextUpload(true);
+      }
+    }
+  }
+
+}
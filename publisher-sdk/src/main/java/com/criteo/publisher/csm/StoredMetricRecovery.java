@@ -0,0 +1,238 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Move the metrics stored by previous sessions in the sending queue, without competing with the
+ * first bid requests of the application.
+ * <p>
+ * At startup, only the IDs of the stored metrics are listed: metrics themselves are read one by
+ * one while being moved, so they are never all in memory at once. The moves wait for the first
+ * bids to be served (see {@link #onBidsServed()}), or for a maximum delay (see {@link
+ * BuildConfigWrapper#getCsmRecoveryMaxDelayInMillis()}). They are then done by pages, each page
+ * being a separate task of the executor run at the minimum thread priority. So other tasks of the
+ * executor are interleaved between pages.
+ */
+class StoredMetricRecovery {
+
+  private final Logger logger = LoggerFactory.getLogger(StoredMetricRecovery.class);
+
+  @NonNull
+  private final Object lock = new Object();
+
+  @NonNull
+  private final MetricRepository repository;
+
+  @NonNull
+  private final MetricSendingQueueProducer sendingQueueProducer;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutor;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  /**
+   * IDs of the metrics to move, or <code>null</code> if they are not listed yet.
+   */
+  @GuardedBy("lock")
+  @Nullable
+  private List<String> impressionIds;
+
+  @GuardedBy("lock")
+  private int nextIndex = 0;
+
+  @GuardedBy("lock")
+  private int pageCount = 0;
+
+  @GuardedBy("lock")
+  private long listingDurationInMillis;
+
+  @GuardedBy("lock")
+  private long moveStartTime;
+
+  @GuardedBy("lock")
+  @Nullable
+  private ScheduledFuture<?> maxDelayWakeUp;
+
+  @GuardedBy("lock")
+  private boolean isStarted = false;
+
+  /**
+   * Written under the lock, but read without it so served bids cost nothing once it is set.
+   */
+  private volatile boolean isMoveAllowed = false;
+
+  StoredMetricRecovery(
+      @NonNull MetricRepository repository,
+      @NonNull MetricSendingQueueProducer sendingQueueProducer,
+      @NonNull Clock clock,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor,
+      @NonNull BuildConfigWrapper buildConfigWrapper
+  ) {
+    this.repository = repository;
+    this.sendingQueueProducer = sendingQueueProducer;
+    this.clock = clock;
+    this.executor = executor;
+    this.scheduledExecutor = scheduledExecutor;
+    this.buildConfigWrapper = buildConfigWrapper;
+  }
+
+  /**
+   * List asynchronously the stored metrics, to move them once allowed.
+   * <p>
+   * Only metrics stored when the listing happens are moved, so this should be called before the
+   * first bid requests, else metrics of the current session could be sent before being complete.
+   */
+  void start() {
+    executor.execute(new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        long listingStartTime = clock.getCurrentTimeInMillis();
+        List<String> storedIds = new ArrayList<>(repository.getAllStoredIds());
+
+        if (storedIds.isEmpty()) {
+          // The sending queue may still contain metrics of previous sessions
+          sendingQueueProducer.pushAllInQueue(repository, storedIds);
+          return;
+        }
+
+        synchronized (lock) {
+          impressionIds = storedIds;
+          listingDurationInMillis = clock.getCurrentTimeInMillis() - listingStartTime;
+          if (!isMoveAllowed) {
+            maxDelayWakeUp = scheduledExecutor.schedule(
+                new MaxDelayWakeUpTask(),
+                buildConfigWrapper.getCsmRecoveryMaxDelayInMillis(),
+                TimeUnit.MILLISECONDS
+            );
+          }
+          startMovesIfReady();
+        }
+      }
+    });
+  }
+
+  /**
+   * Indicate that bids were served, so the stored metrics can be moved.
+   */
+  void onBidsServed() {
+    if (isMoveAllowed) {
+      return;
+    }
+
+    synchronized (lock) {
+      isMoveAllowed = true;
+      startMovesIfReady();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void startMovesIfReady() {
+    if (impressionIds == null || !isMoveAllowed || isStarted) {
+      return;
+    }
+
+    isStarted = true;
+    moveStartTime = clock.getCurrentTimeInMillis();
+    if (maxDelayWakeUp != null) {
+      maxDelayWakeUp.cancel(false);
+      maxDelayWakeUp = null;
+    }
+    executor.execute(new PageTask());
+  }
+
+  private class PageTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      List<String> page;
+      boolean hasNextPage;
+      synchronized (lock) {
+        int endIndex = Math.min(
+            nextIndex + Math.max(1, buildConfigWrapper.getCsmRecoveryPageSize()),
+            impressionIds.size()
+        );
+        page = new ArrayList<>(impressionIds.subList(nextIndex, endIndex));
+        nextIndex = endIndex;
+        pageCount++;
+        hasNextPage = nextIndex < impressionIds.size();
+      }
+
+      Thread thread = Thread.currentThread();
+      int priority = thread.getPriority();
+      thread.setPriority(Thread.MIN_PRIORITY);
+      try {
+        sendingQueueProducer.pushAllInQueue(repository, page);
+      } finally {
+        thread.setPriority(priority);
+      }
+
+      if (hasNextPage) {
+        // Tasks submitted meanwhile are run before the next page
+        executor.execute(this);
+        return;
+      }
+
+      synchronized (lock) {
+        logger.debug(
+            "Recovered %d stored metrics: listed in %d ms, moved in %d pages during %d ms",
+            impressionIds.size(),
+            listingDurationInMillis,
+            pageCount,
+            clock.getCurrentTimeInMillis() - moveStartTime
+        );
+        impressionIds = null;
+      }
+    }
+  }
+
+  private class MaxDelayWakeUpTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      synchronized (lock) {
+        maxDelayWakeUp = null;
+        isMoveAllowed = true;
+        startMovesIfReady();
+      }
+    }
+  }
+
+}
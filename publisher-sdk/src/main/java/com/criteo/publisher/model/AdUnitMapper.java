@@ -50,7 +50,7 @@ public class AdUnitMapper {
    * <p>
    * Although, the reason may change over time and it would require a proper study.
    */
-  private static final int CHUNK_SIZE = 8;
+  public static final int CHUNK_SIZE = 8;
 
   private final AndroidUtil androidUtil;
   private final DeviceUtil deviceUtil;
@@ -102,6 +102,19 @@ public class AdUnitMapper {
     return splitIntoChunks(filterInvalidCacheAdUnits(cacheAdUnits), CHUNK_SIZE);
   }
 
+  /**
+   * Group the given internal ad units into chunks to load.
+   * <p>
+   * Chunks have the same size than the ones produced by {@link #mapToChunks(List)}.
+   *
+   * @param cacheAdUnits to group
+   * @return chunks of internal ad units
+   */
+  @NonNull
+  public List<List<CacheAdUnit>> toChunks(@NonNull List<CacheAdUnit> cacheAdUnits) {
+    return splitIntoChunks(cacheAdUnits, CHUNK_SIZE);
+  }
+
   /**
    * Transform the given {@link AdUnit} into an internal {@link CacheAdUnit} if valid
    * <p>
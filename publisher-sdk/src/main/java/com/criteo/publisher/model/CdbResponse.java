@@ -16,21 +16,16 @@
 
 package com.criteo.publisher.model;
 
-import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import java.util.ArrayList;
+import com.google.gson.annotations.JsonAdapter;
+import java.io.IOException;
 import java.util.List;
-import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+@JsonAdapter(CdbResponseTypeAdapter.Factory.class)
 public class CdbResponse {
 
-  private static final String TAG = CdbResponse.class.getSimpleName();
-  private static final String TIME_TO_NEXT_CALL = "timeToNextCall";
-  private static final String SLOTS = "slots";
-
   @NonNull
   private final List<Slot> slots;
 
@@ -44,37 +39,20 @@ public class CdbResponse {
     this.timeToNextCall = timeToNextCall;
   }
 
+  /**
+   * Decode a CDB response from an already parsed JSON object.
+   * <p>
+   * CDB responses are decoded in a streaming way through the Gson adapter of this class. This
+   * method is only a convenience over it.
+   */
   @NonNull
   public static CdbResponse fromJson(@NonNull JSONObject json) {
-    int timeToNextCall = 0;
-    List<Slot> slots = new ArrayList<>();
-
-    if (json.has(TIME_TO_NEXT_CALL)) {
-      try {
-        timeToNextCall = json.getInt(TIME_TO_NEXT_CALL);
-      } catch (JSONException ex) {
-        Log.d(TAG, "Exception while reading cdb time to next call" + ex.getMessage());
-      }
-    }
-
-    if (json.has(SLOTS)) {
-      JSONArray array = new JSONArray();
-      try {
-        array = json.getJSONArray(SLOTS);
-      } catch (JSONException ex) {
-        Log.d(TAG, "Exception while reading slots array" + ex.getMessage());
-      }
-      for (int i = 0; i < array.length(); i++) {
-        try {
-          JSONObject slotStr = array.getJSONObject(i);
-          slots.add(new Slot(slotStr));
-        } catch (Exception ex) {
-          Log.d(TAG, "Exception while reading slot from slots array" + ex.getMessage());
-        }
-      }
+    try {
+      return new CdbResponseTypeAdapter(new SlotTypeAdapter(null)).fromJson(json.toString());
+    } catch (IOException e) {
+      // JSONObject always produces a well-formed JSON object
+      throw new IllegalArgumentException(e);
     }
-
-    return new CdbResponse(slots, timeToNextCall);
   }
 
   @NonNull
@@ -0,0 +1,125 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model;
+
+import static com.criteo.publisher.model.SlotTypeAdapter.nextIntOrDefault;
+
+import androidx.annotation.NonNull;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader of CDB responses.
+ * <p>
+ * Slots are read one after the other with the {@link SlotTypeAdapter}, so the response is never
+ * materialized as a JSON tree. Values of unexpected types are skipped.
+ */
+class CdbResponseTypeAdapter extends TypeAdapter<CdbResponse> {
+
+  private static final String TIME_TO_NEXT_CALL = "timeToNextCall";
+  private static final String SLOTS = "slots";
+
+  @NonNull
+  private final TypeAdapter<Slot> slotAdapter;
+
+  CdbResponseTypeAdapter(@NonNull TypeAdapter<Slot> slotAdapter) {
+    this.slotAdapter = slotAdapter;
+  }
+
+  @Override
+  public void write(JsonWriter out, CdbResponse response) throws IOException {
+    if (response == null) {
+      out.nullValue();
+      return;
+    }
+
+    out.beginObject();
+    out.name(SLOTS).beginArray();
+    for (Slot slot : response.getSlots()) {
+      slotAdapter.write(out, slot);
+    }
+    out.endArray();
+    out.name(TIME_TO_NEXT_CALL).value(response.getTimeToNextCall());
+    out.endObject();
+  }
+
+  @Override
+  public CdbResponse read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    int timeToNextCall = 0;
+    List<Slot> slots = new ArrayList<>();
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case TIME_TO_NEXT_CALL:
+          timeToNextCall = nextIntOrDefault(in, 0);
+          break;
+        case SLOTS:
+          readSlots(in, slots);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    return new CdbResponse(slots, timeToNextCall);
+  }
+
+  private void readSlots(@NonNull JsonReader in, @NonNull List<Slot> slots) throws IOException {
+    if (in.peek() != JsonToken.BEGIN_ARRAY) {
+      in.skipValue();
+      return;
+    }
+
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.BEGIN_OBJECT) {
+        slots.add(slotAdapter.read(in));
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endArray();
+  }
+
+  static class Factory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (!CdbResponse.class.isAssignableFrom(type.getRawType())) {
+        return null;
+      }
+      return (TypeAdapter<T>) new CdbResponseTypeAdapter(gson.getAdapter(Slot.class));
+    }
+  }
+
+}
@@ -58,6 +58,7 @@ public class Config {
     private static final String AD_TAG_DATA_MACRO = "%%adTagData%%";
     private static final String AD_TAG_DATA_MODE = "<html><body style='text-align:center; margin:0px; padding:0px; horizontal-align:center;'><script>%%adTagData%%</script></body></html>";
     private static final boolean CSM_ENABLED = true;
+    private static final boolean REQUEST_COMPRESSION_ENABLED = false;
 
   }
 
@@ -154,6 +155,10 @@ public class Config {
         getOrElse(
             overrideRemoteConfig.getCsmEnabled(),
             baseRemoteConfig.getCsmEnabled()
+        ),
+        getOrElse(
+            overrideRemoteConfig.getRequestCompressionEnabled(),
+            baseRemoteConfig.getRequestCompressionEnabled()
         )
     );
   }
@@ -205,6 +210,17 @@ public class Config {
     );
   }
 
+  /**
+   * Return <code>true</code> to indicate if the bodies of CDB and CSM requests should be gzipped.
+   * Else <code>false</code> is returned.
+   */
+  public boolean isRequestCompressionEnabled() {
+    return getOrElse(
+        cachedRemoteConfig.getRequestCompressionEnabled(),
+        DefaultConfig.REQUEST_COMPRESSION_ENABLED
+    );
+  }
+
   @NonNull
   public String getDisplayUrlMacro() {
     return getOrElse(
@@ -33,7 +33,8 @@ public abstract class RemoteConfigResponse {
       @Nullable String androidAdTagUrlMode,
       @Nullable String androidAdTagDataMacro,
       @Nullable String androidAdTagDataMode,
-      @Nullable Boolean csmEnabled
+      @Nullable Boolean csmEnabled,
+      @Nullable Boolean requestCompressionEnabled
   ) {
     return new AutoValue_RemoteConfigResponse(
         killSwitch,
@@ -41,7 +42,8 @@ public abstract class RemoteConfigResponse {
         androidAdTagUrlMode,
         androidAdTagDataMacro,
         androidAdTagDataMode,
-        csmEnabled
+        csmEnabled,
+        requestCompressionEnabled
     );
   }
 
@@ -53,6 +55,7 @@ public abstract class RemoteConfigResponse {
         null,
         null,
         null,
+        null,
         null
     );
   }
@@ -65,7 +68,8 @@ public abstract class RemoteConfigResponse {
         getAndroidAdTagUrlMode(),
         getAndroidAdTagDataMacro(),
         getAndroidAdTagDataMode(),
-        getCsmEnabled()
+        getCsmEnabled(),
+        getRequestCompressionEnabled()
     );
   }
 
@@ -144,4 +148,13 @@ public abstract class RemoteConfigResponse {
   @Nullable
   public abstract Boolean getCsmEnabled();
 
+  /**
+   * Feature flag for gzipping the body of CDB and CSM requests. If set to <code>true</code>, then
+   * bodies are sent compressed. If <code>false</code>, then they are sent as plain text. If the
+   * flag is not present (i.e. equals to <code>null</code>), then the previous persisted value of
+   * this flag is taken. If there is no previous value, then a default value is taken.
+   */
+  @Nullable
+  public abstract Boolean getRequestCompressionEnabled();
+
 }
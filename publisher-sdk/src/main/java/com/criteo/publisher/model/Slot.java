@@ -22,21 +22,14 @@ import androidx.annotation.Nullable;
 import com.criteo.publisher.Clock;
 import com.criteo.publisher.model.nativeads.NativeAssets;
 import com.criteo.publisher.util.URLUtil;
-import org.json.JSONException;
+import com.google.gson.annotations.JsonAdapter;
+import java.io.IOException;
 import org.json.JSONObject;
 
+@JsonAdapter(SlotTypeAdapter.Factory.class)
 public class Slot {
 
   private static final String TAG = Slot.class.getSimpleName();
-  private static final String CPM = "cpm";
-  private static final String CURRENCY = "currency";
-  private static final String HEIGHT = "height";
-  private static final String WIDTH = "width";
-  private static final String PLACEMENT_ID = "placementId";
-  private static final String IMPRESSION_ID = "impId";
-  private static final String NATIVE = "native";
-  private static final String TTL = "ttl";
-  private static final String DISPLAY_URL = "displayUrl";
 
   private static final int SECOND_TO_MILLI = 1000;
 
@@ -54,37 +47,62 @@ public class Slot {
   private double cpmValue;
   private NativeAssets nativeAssets;
 
-  public Slot(JSONObject json) {
-    impressionId = json.optString(IMPRESSION_ID, null);
-    placementId = json.optString(PLACEMENT_ID, null);
-    if (json.has(CPM)) {
-      try {
-        cpm = json.getString(CPM);
-      } catch (JSONException e) {
-        Log.d(TAG, "Unable to parse CPM " + e.getMessage());
-        double cpmInt = json.optDouble(CPM, 0.0);
-        cpm = String.valueOf(cpmInt);
-      }
-    } else {
-      cpm = "0.0";
-    }
-    currency = json.optString(CURRENCY, null);
-    width = json.optInt(WIDTH, 0);
-    height = json.optInt(HEIGHT, 0);
-    displayUrl = json.optString(DISPLAY_URL, null);
-    ttl = json.optInt(TTL, 0);
+  /**
+   * Decode a slot from its JSON representation in a CDB response.
+   * <p>
+   * CDB responses are decoded in a streaming way through the Gson adapter of this class. This
+   * constructor is only a convenience over it for already parsed JSON objects.
+   */
+  public Slot(@NonNull JSONObject json) {
+    this(readFromJson(json));
+  }
+
+  private Slot(@NonNull Slot slot) {
+    this(
+        slot.impressionId,
+        slot.placementId,
+        slot.cpm,
+        slot.currency,
+        slot.width,
+        slot.height,
+        slot.displayUrl,
+        slot.ttl,
+        slot.nativeAssets
+    );
+  }
+
+  Slot(
+      @Nullable String impressionId,
+      @Nullable String placementId,
+      @NonNull String cpm,
+      @Nullable String currency,
+      int width,
+      int height,
+      @Nullable String displayUrl,
+      int ttl,
+      @Nullable NativeAssets nativeAssets
+  ) {
+    this.impressionId = impressionId;
+    this.placementId = placementId;
+    this.cpm = cpm;
+    this.currency = currency;
+    this.width = width;
+    this.height = height;
+    this.displayUrl = displayUrl;
+    this.ttl = ttl;
+    this.nativeAssets = nativeAssets;
     if (getCpmAsNumber() == null) {
       cpmValue = 0.0;
     }
+  }
 
-    this.nativeAssets = null;
-    if (json.has(NATIVE)) {
-      try {
-        JSONObject jsonNative = json.getJSONObject(NATIVE);
-        this.nativeAssets = NativeAssets.fromJson(jsonNative);
-      } catch (Exception ex) {
-        Log.d(TAG, "exception when parsing json" + ex.getLocalizedMessage());
-      }
+  @NonNull
+  private static Slot readFromJson(@NonNull JSONObject json) {
+    try {
+      return new SlotTypeAdapter(null).fromJson(json.toString());
+    } catch (IOException e) {
+      // JSONObject always produces a well-formed JSON object
+      throw new IllegalArgumentException(e);
     }
   }
 
@@ -156,9 +174,15 @@ public class Slot {
     return this.nativeAssets;
   }
 
+  /**
+   * Returns the instant (in milliseconds) from which this slot is expired.
+   */
+  public long getExpiryTimeInMillis() {
+    return ttl * SECOND_TO_MILLI + timeOfDownload;
+  }
+
   public boolean isExpired(@NonNull Clock clock) {
-    long expiryTimeMillis = ttl * SECOND_TO_MILLI + timeOfDownload;
-    return expiryTimeMillis <= clock.getCurrentTimeInMillis();
+    return getExpiryTimeInMillis() <= clock.getCurrentTimeInMillis();
   }
 
   @NonNull
@@ -0,0 +1,243 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.model;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.DependencyProvider;
+import com.criteo.publisher.model.nativeads.NativeAssets;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+/**
+ * Streaming reader of the slots of a CDB response.
+ * <p>
+ * Slots are decoded field by field from the {@link JsonReader} without building any intermediate
+ * JSON tree, except for the native payload that is delegated to the {@link NativeAssets} adapter.
+ * Decoding is as lenient as the former <code>JSONObject</code> based one: numbers and strings are
+ * coerced into each other, ill-typed values fallback on defaults and an invalid native payload only
+ * drops the native assets of its slot.
+ */
+class SlotTypeAdapter extends TypeAdapter<Slot> {
+
+  private static final String TAG = SlotTypeAdapter.class.getSimpleName();
+
+  private static final String CPM = "cpm";
+  private static final String CURRENCY = "currency";
+  private static final String HEIGHT = "height";
+  private static final String WIDTH = "width";
+  private static final String PLACEMENT_ID = "placementId";
+  private static final String IMPRESSION_ID = "impId";
+  private static final String NATIVE = "native";
+  private static final String TTL = "ttl";
+  private static final String DISPLAY_URL = "displayUrl";
+
+  private static final String DEFAULT_CPM = "0.0";
+
+  /**
+   * Gson used to decode native payloads. If <code>null</code>, the SDK one is lazily taken from
+   * the {@link DependencyProvider} when a native payload is met.
+   */
+  @Nullable
+  private Gson gson;
+
+  SlotTypeAdapter(@Nullable Gson gson) {
+    this.gson = gson;
+  }
+
+  @Override
+  public void write(JsonWriter out, Slot slot) throws IOException {
+    if (slot == null) {
+      out.nullValue();
+      return;
+    }
+
+    out.beginObject();
+    out.name(IMPRESSION_ID).value(slot.getImpressionId());
+    out.name(PLACEMENT_ID).value(slot.getPlacementId());
+    out.name(CPM).value(slot.getCpm());
+    out.name(CURRENCY).value(slot.getCurrency());
+    out.name(WIDTH).value(slot.getWidth());
+    out.name(HEIGHT).value(slot.getHeight());
+    out.name(TTL).value(slot.getTtl());
+    out.name(DISPLAY_URL).value(slot.getDisplayUrl());
+
+    NativeAssets nativeAssets = slot.getNativeAssets();
+    if (nativeAssets != null) {
+      out.name(NATIVE);
+      getGson().getAdapter(NativeAssets.class).write(out, nativeAssets);
+    }
+    out.endObject();
+  }
+
+  @Override
+  public Slot read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    String impressionId = null;
+    String placementId = null;
+    String cpm = DEFAULT_CPM;
+    String currency = null;
+    int width = 0;
+    int height = 0;
+    String displayUrl = null;
+    int ttl = 0;
+    NativeAssets nativeAssets = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case IMPRESSION_ID:
+          impressionId = nextStringOrNull(in);
+          break;
+        case PLACEMENT_ID:
+          placementId = nextStringOrNull(in);
+          break;
+        case CPM:
+          cpm = nextStringOrNull(in);
+          break;
+        case CURRENCY:
+          currency = nextStringOrNull(in);
+          break;
+        case WIDTH:
+          width = nextIntOrDefault(in, 0);
+          break;
+        case HEIGHT:
+          height = nextIntOrDefault(in, 0);
+          break;
+        case DISPLAY_URL:
+          displayUrl = nextStringOrNull(in);
+          break;
+        case TTL:
+          ttl = nextIntOrDefault(in, 0);
+          break;
+        case NATIVE:
+          nativeAssets = nextNativeAssetsOrNull(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    return new Slot(
+        impressionId,
+        placementId,
+        cpm == null ? DEFAULT_CPM : cpm,
+        currency,
+        width,
+        height,
+        displayUrl,
+        ttl,
+        nativeAssets
+    );
+  }
+
+  @Nullable
+  private NativeAssets nextNativeAssetsOrNull(@NonNull JsonReader in) throws IOException {
+    if (in.peek() != JsonToken.BEGIN_OBJECT) {
+      in.skipValue();
+      return null;
+    }
+
+    // The native payload is buffered so an invalid one is entirely consumed and does not corrupt
+    // the reading of the next fields and slots.
+    Gson gson = getGson();
+    JsonElement nativeJson = gson.getAdapter(JsonElement.class).read(in);
+
+    try {
+      return gson.getAdapter(NativeAssets.class).fromJsonTree(nativeJson);
+    } catch (RuntimeException e) {
+      Log.d(TAG, "Invalid native payload: " + e.getMessage());
+      return null;
+    }
+  }
+
+  @NonNull
+  private Gson getGson() {
+    if (gson == null) {
+      gson = DependencyProvider.getInstance().provideGson();
+    }
+    return gson;
+  }
+
+  /**
+   * Read the next value as a string.
+   * <p>
+   * Numbers and booleans are returned in their textual form. <code>null</code> is returned for JSON
+   * null and for any other kind of value, which is skipped.
+   */
+  @Nullable
+  static String nextStringOrNull(@NonNull JsonReader in) throws IOException {
+    switch (in.peek()) {
+      case STRING:
+      case NUMBER:
+        return in.nextString();
+      case BOOLEAN:
+        return String.valueOf(in.nextBoolean());
+      default:
+        in.skipValue();
+        return null;
+    }
+  }
+
+  /**
+   * Read the next value as an integer.
+   * <p>
+   * Numbers and numeric strings are truncated toward zero. The given default value is returned for
+   * any other kind of value, which is skipped.
+   */
+  static int nextIntOrDefault(@NonNull JsonReader in, int defaultValue) throws IOException {
+    JsonToken token = in.peek();
+    if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+      in.skipValue();
+      return defaultValue;
+    }
+
+    try {
+      return (int) in.nextDouble();
+    } catch (NumberFormatException e) {
+      // The value is kept buffered by the reader when it is not a number
+      in.skipValue();
+      return defaultValue;
+    }
+  }
+
+  static class Factory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (!Slot.class.isAssignableFrom(type.getRawType())) {
+        return null;
+      }
+      return (TypeAdapter<T>) new SlotTypeAdapter(gson);
+    }
+  }
+
+}
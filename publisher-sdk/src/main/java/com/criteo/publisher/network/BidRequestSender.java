@@ -16,21 +16,31 @@
 
 package com.criteo.publisher.network;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.bid.UniqueIdGenerator;
+import com.criteo.publisher.model.AdUnitMapper;
 import com.criteo.publisher.model.CacheAdUnit;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbRequestFactory;
+import com.criteo.publisher.model.CdbRequestSlot;
 import com.criteo.publisher.model.CdbResponse;
 import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.model.RemoteConfigRequestFactory;
 import com.criteo.publisher.model.RemoteConfigResponse;
+import com.criteo.publisher.model.Slot;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.CdbCallListener;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +49,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class BidRequestSender {
 
@@ -51,23 +62,45 @@ public class BidRequestSender {
   @NonNull
   private final PubSdkApi api;
 
+  @NonNull
+  private final UniqueIdGenerator uniqueIdGenerator;
+
   @NonNull
   private final Executor executor;
 
   @NonNull
-  @GuardedBy("lock")
+  private final ScheduledExecutorService scheduledExecutor;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  @GuardedBy("pendingTasksLock")
   private final Map<CacheAdUnit, Future<?>> pendingTasks;
   private final Object pendingTasksLock = new Object();
 
+  /**
+   * Batch still accepting new ad units to request, if any.
+   */
+  @Nullable
+  @GuardedBy("pendingTasksLock")
+  private CdbCallBatch openBatch;
+
   public BidRequestSender(
       @NonNull CdbRequestFactory cdbRequestFactory,
       @NonNull RemoteConfigRequestFactory remoteConfigRequestFactory,
       @NonNull PubSdkApi api,
-      @NonNull Executor executor) {
+      @NonNull UniqueIdGenerator uniqueIdGenerator,
+      @NonNull Executor executor,
+      @NonNull ScheduledExecutorService scheduledExecutor,
+      @NonNull BuildConfigWrapper buildConfigWrapper) {
     this.cdbRequestFactory = cdbRequestFactory;
     this.remoteConfigRequestFactory = remoteConfigRequestFactory;
     this.api = api;
+    this.uniqueIdGenerator = uniqueIdGenerator;
     this.executor = executor;
+    this.scheduledExecutor = scheduledExecutor;
+    this.buildConfigWrapper = buildConfigWrapper;
     this.pendingTasks = new ConcurrentHashMap<>();
   }
 
@@ -97,6 +130,11 @@ public class BidRequestSender {
    * (successful or not). While an ad unit is pending, it cannot be requested again. So if in given
    * ones, some are pending, they will be ignored from the request. If all given ad units are
    * pending, then no call is done and listener is not notified.
+   * <p>
+   * Ad units requested by concurrent calls during a short batching window (see {@link
+   * BuildConfigWrapper#getBidRequestBatchingWindowInMillis()}) are merged into a single CDB call of,
+   * at most, {@link AdUnitMapper#CHUNK_SIZE} slots. Each listener is still only notified about the
+   * slots it requested, but all the requests of a call are notified with the same call ID.
    *
    * @param adUnits ad units to request
    * @param listener listener to notify
@@ -105,7 +143,9 @@ public class BidRequestSender {
       @NonNull List<CacheAdUnit> adUnits,
       @NonNull CdbCallListener listener) {
     List<CacheAdUnit> requestedAdUnits = new ArrayList<>(adUnits);
-    FutureTask<Void> task;
+    int batchingWindowInMillis = buildConfigWrapper.getBidRequestBatchingWindowInMillis();
+    List<CdbCallBatch> closedBatches = new ArrayList<>(2);
+    CdbCallBatch batchToSchedule = null;
 
     synchronized (pendingTasksLock) {
       requestedAdUnits.removeAll(pendingTasks.keySet());
@@ -113,43 +153,111 @@ public class BidRequestSender {
         return;
       }
 
-      task = createCdbCallTask(requestedAdUnits, listener);
+      if (openBatch != null && !openBatch.canAccept(requestedAdUnits)) {
+        closedBatches.add(openBatch);
+        closeBatch(openBatch);
+      }
+
+      boolean isNewBatch = openBatch == null;
+      CdbCallBatch batch = isNewBatch ? new CdbCallBatch() : openBatch;
+      batch.add(requestedAdUnits, listener);
 
       for (CacheAdUnit requestedAdUnit : requestedAdUnits) {
-        pendingTasks.put(requestedAdUnit, task);
+        pendingTasks.put(requestedAdUnit, batch.task);
+      }
+
+      if (batchingWindowInMillis <= 0 || batch.isFull()) {
+        closedBatches.add(batch);
+        closeBatch(batch);
+      } else if (isNewBatch) {
+        openBatch = batch;
+        batchToSchedule = batch;
+      }
+    }
+
+    // Each batch is given a chance to be sent, so none of them keeps its ad units pending forever
+    RuntimeException executionException = null;
+    for (CdbCallBatch closedBatch : closedBatches) {
+      try {
+        execute(closedBatch);
+      } catch (RuntimeException e) {
+        executionException = e;
+      }
+    }
+
+    if (batchToSchedule != null) {
+      scheduleEndOfWindow(batchToSchedule, batchingWindowInMillis);
+    }
+
+    if (executionException != null) {
+      throw executionException;
+    }
+  }
+
+  /**
+   * Send the given batch once the batching window is over, unless it is closed before.
+   * <p>
+   * The scheduled executor only wakes up the batch: the call itself is done by the executor.
+   */
+  private void scheduleEndOfWindow(@NonNull CdbCallBatch batch, int batchingWindowInMillis) {
+    Runnable endOfWindow = new SafeRunnable() {
+      @Override
+      public void runSafely() {
+        synchronized (pendingTasksLock) {
+          if (batch.isClosed) {
+            return;
+          }
+          closeBatch(batch);
+        }
+        execute(batch);
       }
+    };
+
+    try {
+      Future<?> endOfWindowFuture = scheduledExecutor.schedule(
+          endOfWindow,
+          batchingWindowInMillis,
+          MILLISECONDS
+      );
+
+      synchronized (pendingTasksLock) {
+        batch.endOfWindow = endOfWindowFuture;
+        if (batch.isClosed) {
+          endOfWindowFuture.cancel(false);
+        }
+      }
+    } catch (RuntimeException e) {
+      synchronized (pendingTasksLock) {
+        closeBatch(batch);
+      }
+      removePendingTasksWithAdUnits(batch.getAdUnits());
+      throw e;
     }
+  }
 
+  private void execute(@NonNull CdbCallBatch batch) {
+    FutureTask<Void> task = batch.task;
     try {
       executor.execute(task);
       task = null;
     } finally {
       if (task != null) {
-        // If an exception was thrown when scheduling the task, then we remove the ad unit from the
+        // If an exception was thrown when scheduling the task, then we remove the ad units from the
         // pending tasks.
-        removePendingTasksWithAdUnits(requestedAdUnits);
+        removePendingTasksWithAdUnits(batch.getAdUnits());
       }
     }
   }
 
-  @NonNull
-  private FutureTask<Void> createCdbCallTask(
-      @NonNull List<CacheAdUnit> requestedAdUnits,
-      @NonNull CdbCallListener listener) {
-    CdbCall task = new CdbCall(requestedAdUnits, listener);
-
-    Runnable withRemovedPendingTasksAfterExecution = new Runnable() {
-      @Override
-      public void run() {
-        try {
-          task.run();
-        } finally {
-          removePendingTasksWithAdUnits(requestedAdUnits);
-        }
-      }
-    };
-
-    return new FutureTask<>(withRemovedPendingTasksAfterExecution, null);
+  @GuardedBy("pendingTasksLock")
+  private void closeBatch(@NonNull CdbCallBatch batch) {
+    if (openBatch == batch) {
+      openBatch = null;
+    }
+    batch.isClosed = true;
+    if (batch.endOfWindow != null) {
+      batch.endOfWindow.cancel(false);
+    }
   }
 
   private void removePendingTasksWithAdUnits(List<CacheAdUnit> adUnits) {
@@ -167,37 +275,201 @@ public class BidRequestSender {
         task.cancel(true);
       }
       pendingTasks.clear();
+
+      if (openBatch != null) {
+        closeBatch(openBatch);
+      }
     }
   }
 
-  private class CdbCall extends SafeRunnable {
+  /**
+   * Group of bid requests sent together in a single CDB call.
+   * <p>
+   * The batch is executed once it is closed: at the end of the batching window, or as soon as it is
+   * full.
+   */
+  private class CdbCallBatch {
 
     @NonNull
-    private final List<CacheAdUnit> requestedAdUnits;
+    @GuardedBy("pendingTasksLock")
+    private final List<CdbCallPart> parts = new ArrayList<>();
+
+    @GuardedBy("pendingTasksLock")
+    private int size = 0;
+
+    @GuardedBy("pendingTasksLock")
+    private boolean isClosed = false;
+
+    @Nullable
+    @GuardedBy("pendingTasksLock")
+    private Future<?> endOfWindow;
+
+    @NonNull
+    private final FutureTask<Void> task;
+
+    private CdbCallBatch() {
+      CdbCall call = new CdbCall(this);
+
+      Runnable withRemovedPendingTasksAfterExecution = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            call.run();
+          } finally {
+            removePendingTasksWithAdUnits(getAdUnits());
+          }
+        }
+      };
+
+      task = new FutureTask<>(withRemovedPendingTasksAfterExecution, null);
+    }
+
+    @GuardedBy("pendingTasksLock")
+    private boolean canAccept(@NonNull List<CacheAdUnit> adUnits) {
+      return size + adUnits.size() <= AdUnitMapper.CHUNK_SIZE;
+    }
+
+    @GuardedBy("pendingTasksLock")
+    private boolean isFull() {
+      return size >= AdUnitMapper.CHUNK_SIZE;
+    }
+
+    @GuardedBy("pendingTasksLock")
+    private void add(@NonNull List<CacheAdUnit> adUnits, @NonNull CdbCallListener listener) {
+      parts.add(new CdbCallPart(adUnits, listener));
+      size += adUnits.size();
+    }
+
+    @NonNull
+    private List<CacheAdUnit> getAdUnits() {
+      synchronized (pendingTasksLock) {
+        List<CacheAdUnit> adUnits = new ArrayList<>(size);
+        for (CdbCallPart part : parts) {
+          adUnits.addAll(part.adUnits);
+        }
+        return adUnits;
+      }
+    }
+
+    @NonNull
+    private List<CdbCallPart> getParts() {
+      synchronized (pendingTasksLock) {
+        return new ArrayList<>(parts);
+      }
+    }
+  }
+
+  private static class CdbCallPart {
+
+    @NonNull
+    private final List<CacheAdUnit> adUnits;
 
     @NonNull
     private final CdbCallListener listener;
 
-    private CdbCall(
-        @NonNull List<CacheAdUnit> requestedAdUnits,
-        @NonNull CdbCallListener listener) {
-      this.requestedAdUnits = requestedAdUnits;
+    private CdbCallPart(@NonNull List<CacheAdUnit> adUnits, @NonNull CdbCallListener listener) {
+      this.adUnits = adUnits;
       this.listener = listener;
     }
+  }
+
+  private class CdbCall extends SafeRunnable {
+
+    @NonNull
+    private final CdbCallBatch batch;
+
+    private CdbCall(@NonNull CdbCallBatch batch) {
+      this.batch = batch;
+    }
 
     @Override
     public void runSafely() throws ExecutionException, InterruptedException {
+      List<CdbCallPart> parts = batch.getParts();
+      List<CacheAdUnit> requestedAdUnits = new ArrayList<>();
+      for (CdbCallPart part : parts) {
+        requestedAdUnits.addAll(part.adUnits);
+      }
+
       CdbRequest cdbRequest = cdbRequestFactory.createRequest(requestedAdUnits);
       String userAgent = cdbRequestFactory.getUserAgent().get();
+      String callId = uniqueIdGenerator.generateId();
 
-      listener.onCdbRequest(cdbRequest);
+      List<CdbRequest> partRequests = splitRequest(cdbRequest, parts);
+      for (int i = 0; i < parts.size(); i++) {
+        parts.get(i).listener.onCdbRequest(partRequests.get(i), callId);
+      }
 
+      CdbResponse cdbResponse;
       try {
-        CdbResponse cdbResponse = api.loadCdb(cdbRequest, userAgent);
-        listener.onCdbResponse(cdbRequest, cdbResponse);
+        cdbResponse = api.loadCdb(cdbRequest, userAgent);
       } catch (Exception e) {
-        listener.onCdbError(cdbRequest, e);
+        for (int i = 0; i < parts.size(); i++) {
+          parts.get(i).listener.onCdbError(partRequests.get(i), e);
+        }
+        return;
+      }
+
+      for (int i = 0; i < parts.size(); i++) {
+        CdbRequest partRequest = partRequests.get(i);
+        CdbResponse partResponse = parts.size() == 1
+            ? cdbResponse : filterResponse(cdbResponse, partRequest);
+        parts.get(i).listener.onCdbResponse(partRequest, partResponse);
+      }
+    }
+
+    /**
+     * Split the given request into one request per part, holding only the slots of the part.
+     * <p>
+     * The request slots are created in the same order than the requested ad units. So the slots of
+     * each part are consecutive.
+     */
+    @NonNull
+    private List<CdbRequest> splitRequest(
+        @NonNull CdbRequest cdbRequest,
+        @NonNull List<CdbCallPart> parts
+    ) {
+      if (parts.size() == 1) {
+        return Collections.singletonList(cdbRequest);
+      }
+
+      List<CdbRequest> partRequests = new ArrayList<>(parts.size());
+      List<CdbRequestSlot> slots = cdbRequest.getSlots();
+      int from = 0;
+
+      for (CdbCallPart part : parts) {
+        int to = from + part.adUnits.size();
+        partRequests.add(CdbRequest.create(
+            cdbRequest.getPublisher(),
+            cdbRequest.getUser(),
+            cdbRequest.getSdkVersion(),
+            cdbRequest.getProfileId(),
+            cdbRequest.getGdprData(),
+            slots.subList(from, to)
+        ));
+        from = to;
+      }
+
+      return partRequests;
+    }
+
+    @NonNull
+    private CdbResponse filterResponse(
+        @NonNull CdbResponse cdbResponse,
+        @NonNull CdbRequest partRequest
+    ) {
+      Set<String> impressionIds = new HashSet<>();
+      for (CdbRequestSlot requestSlot : partRequest.getSlots()) {
+        impressionIds.add(requestSlot.getImpressionId());
       }
+
+      List<Slot> slots = new ArrayList<>();
+      for (Slot slot : cdbResponse.getSlots()) {
+        if (impressionIds.contains(slot.getImpressionId())) {
+          slots.add(slot);
+        }
+      }
+
+      return new CdbResponse(slots, cdbResponse.getTimeToNextCall());
     }
   }
 
@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Transport layer used by {@link PubSdkApi} to exchange with remote servers.
+ * <p>
+ * Each call is identified by a name (for instance <code>"cdb"</code> or <code>"csm"</code>) used to
+ * aggregate its {@linkplain #getLatencyHistograms() latency}.
+ * <p>
+ * Response bodies are returned only for successful calls (<code>200</code> and <code>204</code>),
+ * other statuses are reported through an {@link HttpResponseException}. Callers are expected to
+ * {@linkplain InputStream#close() close} the returned streams so the underlying connection can be
+ * released.
+ */
+public interface HttpTransport {
+
+  @NonNull
+  InputStream get(
+      @NonNull String callName,
+      @NonNull URL url,
+      @Nullable String userAgent
+  ) throws IOException;
+
+  /**
+   * @param compressBody if <code>true</code>, the body is sent gzipped
+   */
+  @NonNull
+  InputStream post(
+      @NonNull String callName,
+      @NonNull URL url,
+      @Nullable String userAgent,
+      @NonNull RequestBody body,
+      boolean compressBody
+  ) throws IOException;
+
+  /**
+   * Latency of the calls done so far, indexed by call name.
+   */
+  @NonNull
+  Map<String, LatencyHistogram> getLatencyHistograms();
+
+  interface RequestBody {
+
+    void writeTo(@NonNull OutputStream outputStream) throws IOException;
+  }
+}
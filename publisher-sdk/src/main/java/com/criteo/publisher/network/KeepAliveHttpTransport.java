@@ -0,0 +1,277 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import com.criteo.publisher.util.TextUtils;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Default {@link HttpTransport} based on {@link HttpURLConnection}.
+ * <p>
+ * {@link HttpURLConnection} keeps a pool of idle connections per host, but a connection only goes
+ * back to this pool when its response body was entirely consumed and closed. So this transport
+ * explicitly asks for keep-alive and drains any left-over of the response bodies (successful or
+ * not) before closing them. Connections in an unknown state (I/O error, too big left-over) are
+ * dropped instead.
+ * <p>
+ * Responses are requested gzipped and are transparently decoded. Request bodies can be gzipped on
+ * the fly while being written in the connection.
+ */
+public class KeepAliveHttpTransport implements HttpTransport {
+
+  private static final String TAG = KeepAliveHttpTransport.class.getSimpleName();
+
+  private static final String GZIP = "gzip";
+
+  /**
+   * Maximum number of bytes read from an unconsumed response body to recycle its connection. Above
+   * this, it is cheaper to open a new connection later.
+   */
+  private static final int MAX_DRAINED_BYTES = 64 * 1024;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final ConcurrentMap<String, LatencyHistogram> latencyHistograms;
+
+  public KeepAliveHttpTransport(
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull Clock clock
+  ) {
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.clock = clock;
+    this.latencyHistograms = new ConcurrentHashMap<>();
+  }
+
+  @NonNull
+  @Override
+  public InputStream get(
+      @NonNull String callName,
+      @NonNull URL url,
+      @Nullable String userAgent
+  ) throws IOException {
+    HttpURLConnection urlConnection = prepareConnection(url, userAgent, "GET");
+    return execute(callName, urlConnection, null, false);
+  }
+
+  @NonNull
+  @Override
+  public InputStream post(
+      @NonNull String callName,
+      @NonNull URL url,
+      @Nullable String userAgent,
+      @NonNull RequestBody body,
+      boolean compressBody
+  ) throws IOException {
+    HttpURLConnection urlConnection = prepareConnection(url, userAgent, "POST");
+    return execute(callName, urlConnection, body, compressBody);
+  }
+
+  @NonNull
+  @Override
+  public Map<String, LatencyHistogram> getLatencyHistograms() {
+    return Collections.unmodifiableMap(new HashMap<>(latencyHistograms));
+  }
+
+  @NonNull
+  private HttpURLConnection prepareConnection(
+      @NonNull URL url,
+      @Nullable String userAgent,
+      @NonNull String method
+  ) throws IOException {
+    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    urlConnection.setRequestMethod(method);
+    urlConnection.setReadTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
+    urlConnection.setConnectTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
+    urlConnection.setRequestProperty("Content-Type", "text/plain");
+    urlConnection.setRequestProperty("Connection", "keep-alive");
+    urlConnection.setRequestProperty("Accept-Encoding", GZIP);
+    if (!TextUtils.isEmpty(userAgent)) {
+      urlConnection.setRequestProperty("User-Agent", userAgent);
+    }
+    return urlConnection;
+  }
+
+  @NonNull
+  private InputStream execute(
+      @NonNull String callName,
+      @NonNull HttpURLConnection urlConnection,
+      @Nullable RequestBody body,
+      boolean compressBody
+  ) throws IOException {
+    long start = clock.getCurrentTimeInMillis();
+    int status;
+    try {
+      if (body != null) {
+        writeBody(urlConnection, body, compressBody);
+      }
+      status = urlConnection.getResponseCode();
+    } catch (IOException e) {
+      urlConnection.disconnect();
+      throw e;
+    }
+    getLatencyHistogram(callName).record(clock.getCurrentTimeInMillis() - start);
+
+    if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_NO_CONTENT) {
+      InputStream errorStream = urlConnection.getErrorStream();
+      if (errorStream != null) {
+        new DrainingInputStream(urlConnection, errorStream, errorStream).close();
+      }
+      throw new HttpResponseException(status);
+    }
+
+    InputStream rawStream;
+    try {
+      rawStream = urlConnection.getInputStream();
+    } catch (IOException e) {
+      urlConnection.disconnect();
+      throw e;
+    }
+
+    InputStream decodedStream = rawStream;
+    if (status != HttpURLConnection.HTTP_NO_CONTENT
+        && GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())) {
+      try {
+        decodedStream = new GZIPInputStream(rawStream);
+      } catch (IOException e) {
+        urlConnection.disconnect();
+        throw e;
+      }
+    }
+
+    return new DrainingInputStream(urlConnection, rawStream, decodedStream);
+  }
+
+  private static void writeBody(
+      @NonNull HttpURLConnection urlConnection,
+      @NonNull RequestBody body,
+      boolean compressBody
+  ) throws IOException {
+    urlConnection.setDoOutput(true);
+    if (compressBody) {
+      urlConnection.setRequestProperty("Content-Encoding", GZIP);
+
+      // Without streaming mode, the whole body is buffered by the connection to compute its length.
+      // As the compressed size is not known in advance, it is streamed in chunks instead.
+      urlConnection.setChunkedStreamingMode(0);
+    }
+
+    try (OutputStream outputStream = urlConnection.getOutputStream()) {
+      if (compressBody) {
+        GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream);
+        body.writeTo(gzipStream);
+        gzipStream.finish();
+      } else {
+        body.writeTo(outputStream);
+      }
+      outputStream.flush();
+    }
+  }
+
+  @NonNull
+  private LatencyHistogram getLatencyHistogram(@NonNull String callName) {
+    LatencyHistogram histogram = latencyHistograms.get(callName);
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      LatencyHistogram previous = latencyHistograms.putIfAbsent(callName, histogram);
+      if (previous != null) {
+        histogram = previous;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * Response stream that consumes the left-over of the response when closed, so its connection can
+   * be reused.
+   */
+  private static class DrainingInputStream extends FilterInputStream {
+
+    @NonNull
+    private final HttpURLConnection urlConnection;
+
+    @NonNull
+    private final InputStream rawStream;
+
+    private boolean isClosed = false;
+
+    DrainingInputStream(
+        @NonNull HttpURLConnection urlConnection,
+        @NonNull InputStream rawStream,
+        @NonNull InputStream decodedStream
+    ) {
+      super(decodedStream);
+      this.urlConnection = urlConnection;
+      this.rawStream = rawStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+
+      try {
+        if (!drain(rawStream)) {
+          urlConnection.disconnect();
+        }
+      } catch (IOException e) {
+        Log.d(TAG, "Unable to drain response: " + e.getMessage());
+        urlConnection.disconnect();
+        throw e;
+      } finally {
+        super.close();
+      }
+    }
+
+    /**
+     * @return <code>true</code> if the stream is entirely consumed
+     */
+    private static boolean drain(@NonNull InputStream stream) throws IOException {
+      byte[] buffer = new byte[4096];
+      int drained = 0;
+      int read;
+      while (drained <= MAX_DRAINED_BYTES && (read = stream.read(buffer)) != -1) {
+        drained += read;
+      }
+      return drained <= MAX_DRAINED_BYTES;
+    }
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of call latencies over fixed buckets.
+ * <p>
+ * The bucket <code>i</code> counts latencies lower or equal to
+ * <code>getBucketUpperBoundsInMillis()[i]</code> and greater than the previous bound. A last
+ * overflow bucket counts all latencies greater than the highest bound.
+ */
+public class LatencyHistogram {
+
+  private static final long[] UPPER_BOUNDS_IN_MILLIS = {
+      10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000
+  };
+
+  @NonNull
+  private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS_IN_MILLIS.length + 1);
+
+  void record(long latencyInMillis) {
+    long[] bounds = UPPER_BOUNDS_IN_MILLIS;
+    int bucket = 0;
+    while (bucket < bounds.length && latencyInMillis > bounds[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+  }
+
+  @NonNull
+  public long[] getBucketUpperBoundsInMillis() {
+    return UPPER_BOUNDS_IN_MILLIS.clone();
+  }
+
+  /**
+   * Returns the number of recorded latencies per bucket, the overflow bucket being the last one.
+   */
+  @NonNull
+  public long[] getBucketCounts() {
+    long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return "LatencyHistogram{" +
+        "upperBoundsInMillis=" + Arrays.toString(UPPER_BOUNDS_IN_MILLIS) +
+        ", counts=" + Arrays.toString(getBucketCounts()) +
+        '}';
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Pixel waiting to be delivered by the {@link PixelDispatcher}.
+ * <p>
+ * Only the URL and the enqueue time are fixed. Other fields are updated by the dispatcher, under
+ * its lock, after each delivery attempt.
+ */
+final class PendingPixel {
+
+  @NonNull
+  final String url;
+
+  /**
+   * Instant (in milliseconds) at which the pixel was first handed to the dispatcher.
+   */
+  final long enqueueTime;
+
+  /**
+   * Number of failed delivery attempts.
+   */
+  int attempts;
+
+  /**
+   * Instant (in milliseconds) before which the pixel is not sent again.
+   */
+  long nextAttemptTime;
+
+  /**
+   * Indicate that the pixel is being sent by the current round. This is not persisted.
+   */
+  boolean isInFlight;
+
+  PendingPixel(@NonNull String url, long enqueueTime, int attempts, long nextAttemptTime) {
+    this.url = url;
+    this.enqueueTime = enqueueTime;
+    this.attempts = attempts;
+    this.nextAttemptTime = nextAttemptTime;
+  }
+
+  /**
+   * Copy of the persisted state of this pixel, that is not updated by the dispatcher.
+   */
+  @NonNull
+  PendingPixel copy() {
+    return new PendingPixel(url, enqueueTime, attempts, nextAttemptTime);
+  }
+
+  @NonNull
+  @Override
+  public String toString() {
+    return "PendingPixel{" +
+        "url=" + url +
+        ", enqueueTime=" + enqueueTime +
+        ", attempts=" + attempts +
+        ", nextAttemptTime=" + nextAttemptTime +
+        '}';
+  }
+}
@@ -0,0 +1,710 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.SafeRunnable;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deliver tracking pixels, such as impression pixels, at least once.
+ * <p>
+ * Pixels are first stored in a {@link PixelQueueFile}, so pixels that are not delivered yet are
+ * sent again on next session if the process is killed. They are then sent in rounds:
+ * <ul>
+ *   <li>pixels of a round are grouped by host, and the pixels of a host are sent one after the
+ *   other so they reuse the same keep-alive connection,</li>
+ *   <li>hosts are served concurrently, up to
+ *   {@link BuildConfigWrapper#getPixelDispatchMaxConcurrency()},</li>
+ *   <li>a pixel failing on a network error or on a server error is sent again after an
+ *   exponential backoff, up to {@link BuildConfigWrapper#getPixelMaxAttempts()}. After a network
+ *   error, the other pixels of the same host are also delayed, without counting an attempt,</li>
+ *   <li>a pixel rejected by the server is dropped.</li>
+ * </ul>
+ * Only one round is running at a time. Pixels older than
+ * {@link BuildConfigWrapper#getPixelMaxAgeInMillis()} are dropped before each round.
+ * <p>
+ * The queue file is written on the executor, out of the lock, from a copy of the pending pixels.
+ * Only one write is running at a time, and the changes made meanwhile are coalesced into the next
+ * one.
+ * <p>
+ * Rounds, and the helpers serving their hosts, are executed on the sending executor. They block on
+ * network IO, so this executor should be dedicated and bounded to the max concurrency: the shared
+ * executor only runs the short tasks, and delayed rounds are only awaited on the scheduled
+ * executor.
+ */
+public class PixelDispatcher {
+
+  /**
+   * Maximum exponent of the backoff, so it does not overflow. Backoff is capped before anyway.
+   */
+  private static final int MAX_BACKOFF_SHIFT = 20;
+
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(PixelDispatcher.class);
+
+  @NonNull
+  private final PubSdkApi api;
+
+  @NonNull
+  private final PixelQueueFile queueFile;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @NonNull
+  private final Executor executor;
+
+  @NonNull
+  private final Executor sendingExecutor;
+
+  @NonNull
+  private final ScheduledExecutorService scheduledExecutor;
+
+  @NonNull
+  private final LatencyHistogram deliveryLatencyHistogram = new LatencyHistogram();
+
+  @NonNull
+  private final AtomicLong deliveredCount = new AtomicLong();
+
+  @NonNull
+  private final AtomicLong retriedCount = new AtomicLong();
+
+  @NonNull
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  @NonNull
+  private final Object lock = new Object();
+
+  /**
+   * Pixels not delivered yet, in enqueue order, or <code>null</code> until they are read from the
+   * queue file.
+   */
+  @GuardedBy("lock")
+  @Nullable
+  private List<PendingPixel> pendingPixels;
+
+  @GuardedBy("lock")
+  private boolean isDispatching = false;
+
+  @GuardedBy("lock")
+  @Nullable
+  private ScheduledFuture<?> nextWakeUp;
+
+  @GuardedBy("lock")
+  private long nextWakeUpTime;
+
+  /**
+   * Indicate that the pending pixels changed since the last copy taken to write the queue file.
+   */
+  @GuardedBy("lock")
+  private boolean isQueueFileDirty = false;
+
+  @GuardedBy("lock")
+  private boolean isWriteScheduled = false;
+
+  public PixelDispatcher(
+      @NonNull PubSdkApi api,
+      @NonNull PixelQueueFile queueFile,
+      @NonNull Clock clock,
+      @NonNull BuildConfigWrapper buildConfigWrapper,
+      @NonNull Executor executor,
+      @NonNull Executor sendingExecutor,
+      @NonNull ScheduledExecutorService scheduledExecutor
+  ) {
+    this.api = api;
+    this.queueFile = queueFile;
+    this.clock = clock;
+    this.buildConfigWrapper = buildConfigWrapper;
+    this.executor = executor;
+    this.sendingExecutor = sendingExecutor;
+    this.scheduledExecutor = scheduledExecutor;
+  }
+
+  /**
+   * Deliver asynchronously the given pixels.
+   * <p>
+   * Failures are not reported: pixels are retried or dropped silently.
+   */
+  public void dispatch(@NonNull Iterable<URL> pixels) {
+    List<String> urls = new ArrayList<>();
+    for (URL pixel : pixels) {
+      String url = pixel.toString();
+      if (PixelQueueFile.canStore(url)) {
+        urls.add(url);
+      } else {
+        logger.debug("Pixel too long to be stored, it is dropped: %s", pixel.getHost());
+        droppedCount.incrementAndGet();
+      }
+    }
+
+    if (!urls.isEmpty()) {
+      executor.execute(new EnqueueTask(urls, clock.getCurrentTimeInMillis()));
+    }
+  }
+
+  /**
+   * Send again the pixels that previous sessions could not deliver.
+   */
+  public void resumePendingPixels() {
+    executor.execute(new ResumeTask());
+  }
+
+  /**
+   * Histogram of the durations between the dispatch of the pixels and their delivery, retries
+   * included.
+   */
+  @NonNull
+  public LatencyHistogram getDeliveryLatencyHistogram() {
+    return deliveryLatencyHistogram;
+  }
+
+  public long getDeliveredCount() {
+    return deliveredCount.get();
+  }
+
+  /**
+   * Number of failed attempts that are retried later.
+   */
+  public long getRetriedCount() {
+    return retriedCount.get();
+  }
+
+  /**
+   * Number of pixels that are given up, because they were rejected, failed too many times or did
+   * not fit in the queue.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * Number of pixels not delivered yet, or 0 if they were not read yet from the queue file.
+   */
+  public int getPendingCount() {
+    synchronized (lock) {
+      return pendingPixels == null ? 0 : pendingPixels.size();
+    }
+  }
+
+  @GuardedBy("lock")
+  @NonNull
+  private List<PendingPixel> getOrReadPendingPixels() {
+    List<PendingPixel> pixels = pendingPixels;
+    if (pixels == null) {
+      pixels = queueFile.read();
+      pendingPixels = pixels;
+    }
+    return pixels;
+  }
+
+  private void enqueue(@NonNull List<String> urls, long enqueueTime) {
+    synchronized (lock) {
+      List<PendingPixel> pixels = getOrReadPendingPixels();
+      for (String url : urls) {
+        pixels.add(new PendingPixel(url, enqueueTime, 0, enqueueTime));
+      }
+
+      // Oldest pixels are given up first, except the ones being sent
+      int overflow = pixels.size() - buildConfigWrapper.getPixelQueueMaxCount();
+      Iterator<PendingPixel> iterator = pixels.iterator();
+      while (overflow > 0 && iterator.hasNext()) {
+        if (!iterator.next().isInFlight) {
+          iterator.remove();
+          droppedCount.incrementAndGet();
+          overflow--;
+        }
+      }
+
+      scheduleWrite();
+      scheduleNextRound();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void scheduleNextRound() {
+    List<PendingPixel> pixels = pendingPixels;
+    if (isDispatching || pixels == null) {
+      return;
+    }
+
+    long now = clock.getCurrentTimeInMillis();
+    if (dropExpiredPixels(pixels, now)) {
+      scheduleWrite();
+    }
+
+    long nextRoundTime = Long.MAX_VALUE;
+    List<PendingPixel> duePixels = new ArrayList<>();
+    for (PendingPixel pixel : pixels) {
+      if (pixel.nextAttemptTime <= now) {
+        duePixels.add(pixel);
+      } else {
+        nextRoundTime = Math.min(nextRoundTime, pixel.nextAttemptTime);
+      }
+    }
+
+    if (!duePixels.isEmpty()) {
+      cancelNextWakeUp();
+      setInFlight(duePixels, true);
+      isDispatching = true;
+      try {
+        sendingExecutor.execute(new RoundTask(duePixels));
+      } catch (RuntimeException e) {
+        // If the round could not be executed, then next triggers should try again
+        setInFlight(duePixels, false);
+        isDispatching = false;
+        throw e;
+      }
+      return;
+    }
+
+    if (nextRoundTime == Long.MAX_VALUE) {
+      cancelNextWakeUp();
+      return;
+    }
+
+    if (nextWakeUp != null) {
+      if (nextWakeUpTime <= nextRoundTime) {
+        // The scheduled wake-up is early enough, it will look again at the state
+        return;
+      }
+      nextWakeUp.cancel(false);
+    }
+
+    nextWakeUpTime = nextRoundTime;
+    nextWakeUp = scheduledExecutor.schedule(
+        new WakeUpTask(),
+        nextRoundTime - now,
+        TimeUnit.MILLISECONDS
+    );
+  }
+
+  /**
+   * Remove the pixels, not being sent, that are older than the max age.
+   *
+   * @return <code>true</code> if some pixels were removed
+   */
+  @GuardedBy("lock")
+  private boolean dropExpiredPixels(@NonNull List<PendingPixel> pixels, long now) {
+    long minEnqueueTime = now - buildConfigWrapper.getPixelMaxAgeInMillis();
+    int dropped = 0;
+    Iterator<PendingPixel> iterator = pixels.iterator();
+    while (iterator.hasNext()) {
+      PendingPixel pixel = iterator.next();
+      if (!pixel.isInFlight && pixel.enqueueTime < minEnqueueTime) {
+        iterator.remove();
+        dropped++;
+      }
+    }
+
+    if (dropped > 0) {
+      logger.debug("%d expired pixels dropped", dropped);
+      droppedCount.addAndGet(dropped);
+      return true;
+    }
+    return false;
+  }
+
+  @GuardedBy("lock")
+  private void scheduleWrite() {
+    isQueueFileDirty = true;
+    if (isWriteScheduled) {
+      // The running write will pick up this change
+      return;
+    }
+
+    isWriteScheduled = true;
+    try {
+      executor.execute(new WriteTask());
+    } catch (RuntimeException e) {
+      // If the write could not be executed, then next changes should try again
+      isWriteScheduled = false;
+      throw e;
+    }
+  }
+
+  /**
+   * Copy the pending pixels if they changed since the previous copy, or indicate that the write is
+   * over.
+   *
+   * @return copy of the pending pixels to write, or <code>null</code> if there is nothing new
+   */
+  @Nullable
+  private List<PendingPixel> takeSnapshotToWrite() {
+    synchronized (lock) {
+      List<PendingPixel> pixels = pendingPixels;
+      if (!isQueueFileDirty || pixels == null) {
+        isWriteScheduled = false;
+        return null;
+      }
+
+      isQueueFileDirty = false;
+      List<PendingPixel> snapshot = new ArrayList<>(pixels.size());
+      for (PendingPixel pixel : pixels) {
+        snapshot.add(pixel.copy());
+      }
+      return snapshot;
+    }
+  }
+
+  @GuardedBy("lock")
+  private void cancelNextWakeUp() {
+    if (nextWakeUp != null) {
+      nextWakeUp.cancel(false);
+      nextWakeUp = null;
+    }
+  }
+
+  @GuardedBy("lock")
+  private static void setInFlight(@NonNull List<PendingPixel> pixels, boolean isInFlight) {
+    for (PendingPixel pixel : pixels) {
+      pixel.isInFlight = isInFlight;
+    }
+  }
+
+  /**
+   * Send synchronously the given pixels, host after host.
+   * <p>
+   * Hosts are served concurrently by the calling thread and by helpers on the sending executor. The
+   * calling thread takes its share of the hosts, so the round does not depend on the availability
+   * of the sending executor.
+   */
+  private void sendAll(@NonNull Collection<HostBatch> batches) throws InterruptedException {
+    ConcurrentLinkedQueue<HostBatch> pendingBatches = new ConcurrentLinkedQueue<>(batches);
+    CountDownLatch remainingBatches = new CountDownLatch(batches.size());
+
+    int helperCount = Math.min(
+        buildConfigWrapper.getPixelDispatchMaxConcurrency(),
+        batches.size()
+    ) - 1;
+    for (int i = 0; i < helperCount; i++) {
+      try {
+        sendingExecutor.execute(new SafeRunnable() {
+          @Override
+          public void runSafely() {
+            sendPending(pendingBatches, remainingBatches);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // Remaining hosts are served by the other workers
+        break;
+      }
+    }
+
+    sendPending(pendingBatches, remainingBatches);
+
+    // Only hosts being served by helpers are awaited: helpers starting late find nothing to send
+    remainingBatches.await();
+  }
+
+  private void sendPending(
+      @NonNull ConcurrentLinkedQueue<HostBatch> pendingBatches,
+      @NonNull CountDownLatch remainingBatches
+  ) {
+    HostBatch batch;
+    while ((batch = pendingBatches.poll()) != null) {
+      try {
+        batch.send();
+      } catch (RuntimeException e) {
+        // Pixels without outcome are retried later
+        logger.error("Unexpected error while sending pixels", e);
+      } finally {
+        remainingBatches.countDown();
+      }
+    }
+  }
+
+  @NonNull
+  private Outcome send(@NonNull PendingPixel pixel) {
+    URL url;
+    try {
+      url = new URL(pixel.url);
+    } catch (MalformedURLException e) {
+      logger.debug("Invalid pixel dropped", e);
+      return Outcome.DROPPED;
+    }
+
+    try (InputStream ignored = api.executeRawGet(url)) {
+      // ignore response
+    } catch (HttpResponseException e) {
+      return isRetryable(e.getStatus()) ? Outcome.RETRIED : Outcome.DROPPED;
+    } catch (IOException e) {
+      return Outcome.UNREACHABLE;
+    }
+
+    deliveryLatencyHistogram.record(clock.getCurrentTimeInMillis() - pixel.enqueueTime);
+    return Outcome.DELIVERED;
+  }
+
+  private static boolean isRetryable(int status) {
+    return status >= HttpURLConnection.HTTP_INTERNAL_ERROR
+        || status == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+        || status == HTTP_TOO_MANY_REQUESTS;
+  }
+
+  private void onRoundFinished(@NonNull Collection<HostBatch> batches) {
+    synchronized (lock) {
+      isDispatching = false;
+      List<PendingPixel> pixels = getOrReadPendingPixels();
+      long now = clock.getCurrentTimeInMillis();
+      int maxAttempts = buildConfigWrapper.getPixelMaxAttempts();
+      int delivered = 0;
+      int retried = 0;
+      int dropped = 0;
+
+      for (HostBatch batch : batches) {
+        for (int i = 0; i < batch.pixels.size(); i++) {
+          PendingPixel pixel = batch.pixels.get(i);
+          Outcome outcome = batch.outcomes[i];
+          pixel.isInFlight = false;
+
+          if (outcome == Outcome.DELIVERED) {
+            pixels.remove(pixel);
+            delivered++;
+          } else if (outcome == Outcome.DROPPED) {
+            pixels.remove(pixel);
+            dropped++;
+          } else if (outcome == Outcome.DEFERRED) {
+            pixel.nextAttemptTime = now + computeBackoff(Math.max(1, pixel.attempts));
+          } else if (++pixel.attempts >= maxAttempts) {
+            // Pixels without outcome are counted as failed, so they cannot be retried forever
+            pixels.remove(pixel);
+            dropped++;
+          } else {
+            pixel.nextAttemptTime = now + computeBackoff(pixel.attempts);
+            retried++;
+          }
+        }
+      }
+
+      deliveredCount.addAndGet(delivered);
+      retriedCount.addAndGet(retried);
+      droppedCount.addAndGet(dropped);
+      logger.debug(
+          "Pixels dispatched: %d delivered, %d retried, %d dropped, %d pending",
+          delivered,
+          retried,
+          dropped,
+          pixels.size()
+      );
+
+      scheduleWrite();
+      scheduleNextRound();
+    }
+  }
+
+  private long computeBackoff(int attempts) {
+    long minBackoff = buildConfigWrapper.getPixelRetryMinBackoffInMillis();
+    long maxBackoff = buildConfigWrapper.getPixelRetryMaxBackoffInMillis();
+    int shift = Math.min(attempts - 1, MAX_BACKOFF_SHIFT);
+    return Math.min(maxBackoff, minBackoff << shift);
+  }
+
+  @NonNull
+  private Collection<HostBatch> groupByHost(@NonNull List<PendingPixel> pixels) {
+    Map<String, List<PendingPixel>> pixelsPerHost = new LinkedHashMap<>();
+    for (PendingPixel pixel : pixels) {
+      String host = getHost(pixel.url);
+      List<PendingPixel> hostPixels = pixelsPerHost.get(host);
+      if (hostPixels == null) {
+        hostPixels = new ArrayList<>();
+        pixelsPerHost.put(host, hostPixels);
+      }
+      hostPixels.add(pixel);
+    }
+
+    List<HostBatch> batches = new ArrayList<>(pixelsPerHost.size());
+    for (List<PendingPixel> hostPixels : pixelsPerHost.values()) {
+      batches.add(new HostBatch(hostPixels));
+    }
+    return batches;
+  }
+
+  @NonNull
+  private static String getHost(@NonNull String url) {
+    // Connections are pooled per scheme, host and port
+    int authorityStart = url.indexOf("://");
+    if (authorityStart < 0) {
+      return url;
+    }
+    int authorityEnd = url.indexOf('/', authorityStart + 3);
+    return authorityEnd < 0 ? url : url.substring(0, authorityEnd);
+  }
+
+  private enum Outcome {
+    DELIVERED,
+
+    /**
+     * The server answered with an error that could be temporary.
+     */
+    RETRIED,
+
+    DROPPED,
+
+    /**
+     * The host could not be reached: this counts as a failed attempt, and the next pixels of the
+     * host are deferred.
+     */
+    UNREACHABLE,
+
+    /**
+     * The pixel was not sent because its host is unreachable.
+     */
+    DEFERRED
+  }
+
+  /**
+   * Pixels of a same host, sent one after the other by a single worker.
+   */
+  private class HostBatch {
+
+    @NonNull
+    private final List<PendingPixel> pixels;
+
+    /**
+     * Outcome of each pixel, or <code>null</code> if it was not sent. It is written by the worker
+     * and read once the round is over.
+     */
+    @NonNull
+    private final Outcome[] outcomes;
+
+    private HostBatch(@NonNull List<PendingPixel> pixels) {
+      this.pixels = pixels;
+      this.outcomes = new Outcome[pixels.size()];
+    }
+
+    private void send() {
+      boolean isUnreachable = false;
+      for (int i = 0; i < pixels.size(); i++) {
+        if (isUnreachable) {
+          outcomes[i] = Outcome.DEFERRED;
+        } else {
+          outcomes[i] = PixelDispatcher.this.send(pixels.get(i));
+          isUnreachable = outcomes[i] == Outcome.UNREACHABLE;
+        }
+      }
+    }
+  }
+
+  private class EnqueueTask extends SafeRunnable {
+
+    @NonNull
+    private final List<String> urls;
+
+    private final long enqueueTime;
+
+    private EnqueueTask(@NonNull List<String> urls, long enqueueTime) {
+      this.urls = urls;
+      this.enqueueTime = enqueueTime;
+    }
+
+    @Override
+    public void runSafely() {
+      enqueue(urls, enqueueTime);
+    }
+  }
+
+  private class ResumeTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      synchronized (lock) {
+        getOrReadPendingPixels();
+        scheduleNextRound();
+      }
+    }
+  }
+
+  private class RoundTask extends SafeRunnable {
+
+    @NonNull
+    private final List<PendingPixel> pixels;
+
+    private RoundTask(@NonNull List<PendingPixel> pixels) {
+      this.pixels = pixels;
+    }
+
+    @Override
+    public void runSafely() throws InterruptedException {
+      Collection<HostBatch> batches = groupByHost(pixels);
+      try {
+        sendAll(batches);
+      } finally {
+        onRoundFinished(batches);
+      }
+    }
+  }
+
+  private class WriteTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      List<PendingPixel> snapshot;
+      while ((snapshot = takeSnapshotToWrite()) != null) {
+        try {
+          queueFile.write(snapshot);
+        } catch (RuntimeException e) {
+          synchronized (lock) {
+            isWriteScheduled = false;
+          }
+          throw e;
+        }
+      }
+    }
+  }
+
+  private class WakeUpTask extends SafeRunnable {
+
+    @Override
+    public void runSafely() {
+      synchronized (lock) {
+        nextWakeUp = null;
+        scheduleNextRound();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.logging.Logger;
+import com.criteo.publisher.logging.LoggerFactory;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File storing the pixels that are not delivered yet, so they survive the death of the process.
+ * <p>
+ * The queue is small and bounded, so the whole content is rewritten on each change. It is written
+ * in a temporary file which then replaces the previous one, so a process killed during a write
+ * leaves the previous content intact. An unreadable file is dropped, and so are the pixels older
+ * than {@link BuildConfigWrapper#getPixelMaxAgeInMillis()}.
+ */
+public class PixelQueueFile {
+
+  private static final int VERSION = 1;
+
+  /**
+   * Maximum length of the modified UTF-8 encoding of a URL, as written by {@link
+   * DataOutputStream#writeUTF(String)}.
+   */
+  private static final int MAX_ENCODED_URL_LENGTH = 65535;
+
+  @NonNull
+  private final Logger logger = LoggerFactory.getLogger(PixelQueueFile.class);
+
+  @NonNull
+  private final Context context;
+
+  @NonNull
+  private final Clock clock;
+
+  @NonNull
+  private final BuildConfigWrapper buildConfigWrapper;
+
+  @Nullable
+  private File file;
+
+  public PixelQueueFile(
+      @NonNull Context context,
+      @NonNull Clock clock,
+      @NonNull BuildConfigWrapper buildConfigWrapper
+  ) {
+    this.context = context;
+    this.clock = clock;
+    this.buildConfigWrapper = buildConfigWrapper;
+  }
+
+  /**
+   * Read the pixels stored by the previous write, possibly from a previous session.
+   *
+   * @return stored pixels in enqueue order, or an empty list if there is none or the file is not
+   * readable. Expired pixels are not returned.
+   */
+  @NonNull
+  List<PendingPixel> read() {
+    List<PendingPixel> pixels = new ArrayList<>();
+    File file = getFile();
+    long minEnqueueTime = clock.getCurrentTimeInMillis()
+        - buildConfigWrapper.getPixelMaxAgeInMillis();
+    try (DataInputStream input = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      if (input.readInt() != VERSION) {
+        throw new IOException("Unknown version of pixel queue file");
+      }
+
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        String url = input.readUTF();
+        int attempts = input.readInt();
+        long enqueueTime = input.readLong();
+        long nextAttemptTime = input.readLong();
+        if (enqueueTime >= minEnqueueTime) {
+          pixels.add(new PendingPixel(url, enqueueTime, attempts, nextAttemptTime));
+        }
+      }
+    } catch (FileNotFoundException e) {
+      // Nothing was stored
+      pixels.clear();
+    } catch (IOException e) {
+      logger.error("Error when reading pixel queue, pending pixels are dropped", e);
+      pixels.clear();
+      if (!file.delete()) {
+        logger.debug("Pixel queue file could not be deleted");
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Replace the stored pixels by the given ones.
+   * <p>
+   * If the write fails, the previous content is kept.
+   */
+  void write(@NonNull List<PendingPixel> pixels) {
+    File file = getFile();
+    if (pixels.isEmpty()) {
+      if (file.exists() && !file.delete()) {
+        logger.debug("Pixel queue file could not be deleted");
+      }
+      return;
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      FileOutputStream fileOutput = new FileOutputStream(tempFile);
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+        output.writeInt(VERSION);
+        output.writeInt(pixels.size());
+        for (PendingPixel pixel : pixels) {
+          output.writeUTF(pixel.url);
+          output.writeInt(pixel.attempts);
+          output.writeLong(pixel.enqueueTime);
+          output.writeLong(pixel.nextAttemptTime);
+        }
+        output.flush();
+        fileOutput.getFD().sync();
+      }
+
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Could not replace pixel queue file");
+      }
+    } catch (IOException e) {
+      logger.error("Error when writing pixel queue", e);
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Indicate if the given URL fits in the queue file. Longer URLs are rejected by {@link
+   * #write(List)}, and the whole write fails.
+   */
+  static boolean canStore(@NonNull String url) {
+    if (url.length() * 3 <= MAX_ENCODED_URL_LENGTH) {
+      return true;
+    }
+
+    long encodedLength = 0;
+    for (int i = 0; i < url.length(); i++) {
+      char c = url.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        encodedLength++;
+      } else if (c <= 0x07FF) {
+        encodedLength += 2;
+      } else {
+        encodedLength += 3;
+      }
+    }
+    return encodedLength <= MAX_ENCODED_URL_LENGTH;
+  }
+
+  @NonNull
+  private File getFile() {
+    File file = this.file;
+    if (file == null) {
+      file = new File(context.getFilesDir(), buildConfigWrapper.getPixelQueueFilename());
+      this.file = file;
+    }
+    return file;
+  }
+}
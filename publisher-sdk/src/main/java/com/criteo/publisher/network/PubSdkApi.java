@@ -23,22 +23,25 @@ import androidx.annotation.VisibleForTesting;
 import com.criteo.publisher.csm.MetricRequest;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.model.RemoteConfigResponse;
+import com.criteo.publisher.model.Slot;
 import com.criteo.publisher.privacy.gdpr.GdprData;
 import com.criteo.publisher.util.Base64;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.JsonSerializer;
 import com.criteo.publisher.util.StreamUtil;
 import com.criteo.publisher.util.TextUtils;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.json.JSONException;
@@ -54,27 +57,41 @@ public class PubSdkApi {
   private static final String LIMITED_AD_TRACKING = "limitedAdTracking";
   private static final String GDPR_STRING = "gdprString";
 
+  private static final String CDB_CALL = "cdb";
+  private static final String CONFIG_CALL = "config";
+  private static final String CSM_CALL = "csm";
+  private static final String APP_EVENT_CALL = "appEvent";
+  private static final String PIXEL_CALL = "pixel";
+
   @NonNull
   private final BuildConfigWrapper buildConfigWrapper;
 
   @NonNull
   private final JsonSerializer jsonSerializer;
 
+  @NonNull
+  private final HttpTransport httpTransport;
+
+  @NonNull
+  private final Config config;
+
   public PubSdkApi(
       @NonNull BuildConfigWrapper buildConfigWrapper,
-      @NonNull JsonSerializer jsonSerializer
+      @NonNull JsonSerializer jsonSerializer,
+      @NonNull HttpTransport httpTransport,
+      @NonNull Config config
   ) {
     this.buildConfigWrapper = buildConfigWrapper;
     this.jsonSerializer = jsonSerializer;
+    this.httpTransport = httpTransport;
+    this.config = config;
   }
 
   @NonNull
   public RemoteConfigResponse loadConfig(@NonNull RemoteConfigRequest request) throws IOException {
     URL url = new URL(buildConfigWrapper.getCdbUrl() + "/config/app");
-    HttpURLConnection urlConnection = prepareConnection(url, null, "POST");
-    writePayload(urlConnection, request);
 
-    try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection)) {
+    try (InputStream inputStream = post(CONFIG_CALL, url, null, request, false)) {
       return jsonSerializer.read(RemoteConfigResponse.class, inputStream);
     }
   }
@@ -82,12 +99,14 @@ public class PubSdkApi {
   @NonNull
   public CdbResponse loadCdb(@NonNull CdbRequest request, @NonNull String userAgent) throws Exception {
     URL url = new URL(buildConfigWrapper.getCdbUrl() + "/inapp/v2");
-    HttpURLConnection urlConnection = prepareConnection(url, userAgent, "POST");
-    writePayload(urlConnection, request);
 
-    try (InputStream inputStream = readResponseStreamIfSuccess(urlConnection)) {
-      JSONObject result = readJson(inputStream);
-      return CdbResponse.fromJson(result);
+    boolean compressBody = config.isRequestCompressionEnabled();
+
+    try (InputStream inputStream = post(CDB_CALL, url, userAgent, request, compressBody)) {
+      return jsonSerializer.read(CdbResponse.class, inputStream);
+    } catch (EOFException e) {
+      // CDB may answer without any content (204) when there is no bid at all
+      return new CdbResponse(Collections.<Slot>emptyList(), 0);
     }
   }
 
@@ -125,7 +144,9 @@ public class PubSdkApi {
           buildConfigWrapper.getEventUrl() + "/appevent/v1/" + senderId + "?"
               + getParamsString(
               parameters));
-      return executeGet(url, userAgent);
+      try (InputStream inputStream = httpTransport.get(APP_EVENT_CALL, url, userAgent)) {
+        return readJson(inputStream);
+      }
     } catch (IOException | JSONException e) {
       Log.d(TAG, "Unable to process request to post app event:" + e.getMessage());
       e.printStackTrace();
@@ -163,50 +184,29 @@ public class PubSdkApi {
 
   @Nullable
   public InputStream executeRawGet(URL url) throws IOException {
-    return executeRawGet(url, null);
+    return httpTransport.get(PIXEL_CALL, url, null);
   }
 
   public void postCsm(@NonNull MetricRequest request) throws IOException {
     URL url = new URL(buildConfigWrapper.getCdbUrl() + "/csm");
-    HttpURLConnection urlConnection = prepareConnection(url, null, "POST");
-    writePayload(urlConnection, request);
-    readResponseStreamIfSuccess(urlConnection).close();
-  }
-
-  @NonNull
-  private InputStream executeRawGet(URL url, @Nullable String userAgent) throws IOException {
-    HttpURLConnection urlConnection = prepareConnection(url, userAgent, "GET");
-    return readResponseStreamIfSuccess(urlConnection);
-  }
-
-  private JSONObject executeGet(URL url, @Nullable String userAgent) throws IOException, JSONException {
-    try (InputStream inputStream = executeRawGet(url, userAgent)) {
-      return readJson(inputStream);
-    }
+    boolean compressBody = config.isRequestCompressionEnabled();
+    post(CSM_CALL, url, null, request, compressBody).close();
   }
 
   @NonNull
-  private HttpURLConnection prepareConnection(@NonNull URL url,
-      @Nullable String userAgent, String method) throws IOException {
-    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-    urlConnection.setRequestMethod(method);
-    urlConnection.setReadTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
-    urlConnection.setConnectTimeout(buildConfigWrapper.getNetworkTimeoutInMillis());
-    urlConnection.setRequestProperty("Content-Type", "text/plain");
-    if (!TextUtils.isEmpty(userAgent)) {
-      urlConnection.setRequestProperty("User-Agent", userAgent);
-    }
-    return urlConnection;
-  }
-
-  @NonNull
-  private static InputStream readResponseStreamIfSuccess(@NonNull HttpURLConnection urlConnection) throws IOException {
-    int status = urlConnection.getResponseCode();
-    if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NO_CONTENT) {
-      return urlConnection.getInputStream();
-    } else {
-      throw new HttpResponseException(status);
-    }
+  private InputStream post(
+      @NonNull String callName,
+      @NonNull URL url,
+      @Nullable String userAgent,
+      @NonNull final Object request,
+      boolean compressBody
+  ) throws IOException {
+    return httpTransport.post(callName, url, userAgent, new HttpTransport.RequestBody() {
+      @Override
+      public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        jsonSerializer.write(request, outputStream);
+      }
+    }, compressBody);
   }
 
   @NonNull
@@ -218,27 +218,6 @@ public class PubSdkApi {
     return new JSONObject();
   }
 
-  private static void writePayload(
-      @NonNull HttpURLConnection urlConnection,
-      @NonNull JSONObject requestJson) throws IOException {
-    byte[] payload = requestJson.toString().getBytes(Charset.forName("UTF-8"));
-
-    urlConnection.setDoOutput(true);
-    try (OutputStream outputStream = urlConnection.getOutputStream()) {
-      outputStream.write(payload);
-      outputStream.flush();
-    }
-  }
-
-  private void writePayload(
-      @NonNull HttpURLConnection urlConnection,
-      @NonNull Object request) throws IOException {
-    urlConnection.setDoOutput(true);
-    try (OutputStream outputStream = urlConnection.getOutputStream()) {
-      jsonSerializer.write(request, outputStream);
-    }
-  }
-
   private static String getParamsString(Map<String, String> params) {
     StringBuilder queryString = new StringBuilder();
     try {
@@ -19,21 +19,34 @@ package com.criteo.publisher.util;
 import android.app.Activity;
 import android.app.Application;
 import android.os.Bundle;
+import androidx.annotation.Nullable;
 import com.criteo.publisher.AppEvents.AppEvents;
 import com.criteo.publisher.BidManager;
+import com.criteo.publisher.csm.MetricRepository;
+import com.criteo.publisher.csm.MetricUploadScheduler;
 
 public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks {
 
   private final AppEvents appEvents;
   private final BidManager bidManager;
+  private final MetricUploadScheduler metricUploadScheduler;
+  @Nullable
+  private final MetricRepository metricRepository;
   private int started;
   private int resumed;
   private boolean transitionPossible;
   private boolean created;
 
-  public AppLifecycleUtil(AppEvents appEvents, BidManager bidmanager) {
+  public AppLifecycleUtil(
+      AppEvents appEvents,
+      BidManager bidmanager,
+      MetricUploadScheduler metricUploadScheduler,
+      @Nullable MetricRepository metricRepository
+  ) {
     this.appEvents = appEvents;
     this.bidManager = bidmanager;
+    this.metricUploadScheduler = metricUploadScheduler;
+    this.metricRepository = metricRepository;
     started = 0;
     resumed = 0;
     transitionPossible = false;
@@ -50,6 +63,9 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
 
   @Override
   public void onActivityStarted(Activity activity) {
+    if (started == 0) {
+      metricUploadScheduler.onApplicationStarted();
+    }
     started += 1;
   }
 
@@ -77,6 +93,10 @@ public class AppLifecycleUtil implements Application.ActivityLifecycleCallbacks
       }
       appEvents.onApplicationStopped();
       bidManager.onApplicationStopped();
+      metricUploadScheduler.onApplicationStopped();
+      if (metricRepository != null) {
+        metricRepository.onApplicationStopped();
+      }
     }
     transitionPossible = false;
     started -= 1;
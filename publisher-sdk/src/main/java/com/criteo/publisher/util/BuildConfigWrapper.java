@@ -66,6 +66,75 @@ public class BuildConfigWrapper {
     return BuildConfig.maxSizeOfCsmMetricSendingQueue;
   }
 
+  /**
+   * Duration in milliseconds during which bid lifecycle events are accumulated before updating the
+   * stored metrics. If 0, each event is handled on its own.
+   */
+  public int getCsmEventBatchingWindowInMillis() {
+    return BuildConfig.csmEventBatchingWindowInMillis;
+  }
+
+  /**
+   * Maximum duration in milliseconds during which updates of a stored metric are only kept in
+   * memory before being written on disk. If 0, each update is written right away.
+   */
+  public int getCsmWriteBehindWindowInMillis() {
+    return BuildConfig.csmWriteBehindWindowInMillis;
+  }
+
+  /**
+   * Number of metrics of previous sessions moved in the sending queue by each task of the startup
+   * recovery.
+   */
+  public int getCsmRecoveryPageSize() {
+    return BuildConfig.csmRecoveryPageSize;
+  }
+
+  /**
+   * Maximum duration in milliseconds the startup recovery of metrics waits for the first bids to be
+   * served.
+   */
+  public int getCsmRecoveryMaxDelayInMillis() {
+    return BuildConfig.csmRecoveryMaxDelayInMillis;
+  }
+
+  /**
+   * Number of metrics waiting in the sending queue above which they are uploaded right away.
+   */
+  public int getCsmUploadQueueDepth() {
+    return BuildConfig.csmUploadQueueDepth;
+  }
+
+  /**
+   * Maximum duration in milliseconds a metric waits in the sending queue before being uploaded
+   * while the application is in foreground.
+   */
+  public int getCsmUploadMaxDelayInMillis() {
+    return BuildConfig.csmUploadMaxDelayInMillis;
+  }
+
+  /**
+   * Delay in milliseconds before retrying to upload metrics after a first failure. It is doubled
+   * after each new consecutive failure, up to {@link #getCsmUploadMaxBackoffInMillis()}.
+   */
+  public int getCsmUploadMinBackoffInMillis() {
+    return BuildConfig.csmUploadMinBackoffInMillis;
+  }
+
+  /**
+   * Maximum delay in milliseconds before retrying to upload metrics after consecutive failures.
+   */
+  public int getCsmUploadMaxBackoffInMillis() {
+    return BuildConfig.csmUploadMaxBackoffInMillis;
+  }
+
+  /**
+   * Maximum number of CSM requests sent concurrently for a batch of metrics.
+   */
+  public int getCsmMaxParallelRequests() {
+    return BuildConfig.csmMaxParallelRequests;
+  }
+
   /**
    * The relative path in application folder of the sending queue file
    */
@@ -82,6 +151,57 @@ public class BuildConfigWrapper {
     return BuildConfig.csmDirectoryName;
   }
 
+  /**
+   * The relative path in application folder of the file storing the pixels not delivered yet
+   */
+  @NonNull
+  public String getPixelQueueFilename() {
+    return BuildConfig.pixelQueueFilename;
+  }
+
+  /**
+   * Maximum number of pixels waiting to be delivered.
+   */
+  public int getPixelQueueMaxCount() {
+    return BuildConfig.pixelQueueMaxCount;
+  }
+
+  /**
+   * Maximum number of hosts to which pixels are sent concurrently.
+   */
+  public int getPixelDispatchMaxConcurrency() {
+    return BuildConfig.pixelDispatchMaxConcurrency;
+  }
+
+  /**
+   * Maximum number of attempts to deliver a pixel failing on a network or server error.
+   */
+  public int getPixelMaxAttempts() {
+    return BuildConfig.pixelMaxAttempts;
+  }
+
+  /**
+   * Delay in milliseconds before sending again a pixel after a first failure. It is doubled after
+   * each new failure of the pixel, up to {@link #getPixelRetryMaxBackoffInMillis()}.
+   */
+  public int getPixelRetryMinBackoffInMillis() {
+    return BuildConfig.pixelRetryMinBackoffInMillis;
+  }
+
+  /**
+   * Maximum delay in milliseconds before sending again a pixel after consecutive failures.
+   */
+  public int getPixelRetryMaxBackoffInMillis() {
+    return BuildConfig.pixelRetryMaxBackoffInMillis;
+  }
+
+  /**
+   * Maximum duration in milliseconds a pixel is kept since it was dispatched.
+   */
+  public int getPixelMaxAgeInMillis() {
+    return BuildConfig.pixelMaxAgeInMillis;
+  }
+
   /**
    * Duration in milliseconds for the network layer to drop a call and consider it timeouted.
    */
@@ -89,6 +209,21 @@ public class BuildConfigWrapper {
     return BuildConfig.networkTimeoutInMillis;
   }
 
+  /**
+   * Duration in milliseconds during which concurrent bid requests are merged into a single CDB
+   * call. If 0, bid requests are not batched.
+   */
+  public int getBidRequestBatchingWindowInMillis() {
+    return BuildConfig.bidRequestBatchingWindowInMillis;
+  }
+
+  /**
+   * Maximum number of bids kept in cache for a single ad unit.
+   */
+  public int getMaxCachedBidsPerAdUnit() {
+    return BuildConfig.maxCachedBidsPerAdUnit;
+  }
+
   /**
    * Included minimum level of logs to print
    * Values are from {@link android.util.Log}:
@@ -118,4 +253,42 @@ public class BuildConfigWrapper {
   public int getAdChoiceIconHeightInDp() {
     return BuildConfig.adChoiceIconHeightInDp;
   }
+
+  /**
+   * Minimum duration in milliseconds between two checks of the visibility of the native views
+   * waiting for their impression. If 0, they are checked on every frame.
+   */
+  public int getVisibilityCheckIntervalInMillis() {
+    return BuildConfig.visibilityCheckIntervalInMillis;
+  }
+
+  /**
+   * Percentage of the pixels of a native view that should be on screen for its impression to be
+   * counted.
+   */
+  public int getNativeViewabilityMinVisibleAreaPercent() {
+    return BuildConfig.nativeViewabilityMinVisibleAreaPercent;
+  }
+
+  /**
+   * Duration in milliseconds during which a native view should be continuously on screen for its
+   * impression to be counted.
+   */
+  public int getNativeViewabilityMinDurationInMillis() {
+    return BuildConfig.nativeViewabilityMinDurationInMillis;
+  }
+
+  /**
+   * Percentage of the maximum heap of the application used by the memory cache of native images.
+   */
+  public int getNativeImageCacheHeapPercent() {
+    return BuildConfig.nativeImageCacheHeapPercent;
+  }
+
+  /**
+   * Maximum number of empty native views inflated ahead by each native loader.
+   */
+  public int getNativeViewPoolSize() {
+    return BuildConfig.nativeViewPoolSize;
+  }
 }
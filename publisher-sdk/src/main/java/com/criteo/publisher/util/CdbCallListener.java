@@ -22,7 +22,13 @@ import com.criteo.publisher.model.CdbResponse;
 
 public interface CdbCallListener {
 
-  void onCdbRequest(@NonNull CdbRequest request);
+  /**
+   * Callback invoked when the request is about to be sent.
+   *
+   * @param request Request sent to CDB
+   * @param callId ID of the CDB call. Requests merged into the same call share this ID.
+   */
+  void onCdbRequest(@NonNull CdbRequest request, @NonNull String callId);
 
   void onCdbResponse(@NonNull CdbRequest request, @NonNull CdbResponse response);
 
@@ -20,19 +20,41 @@ import androidx.annotation.NonNull;
 import com.google.gson.Gson;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
 
+/**
+ * Serializer of the JSON payloads exchanged with remote servers or persisted on disk.
+ * <p>
+ * Payloads are always encoded in UTF-8. As serialization happens on every bid and metric, the
+ * char and byte buffers used to encode and decode the streams are recycled per thread instead of
+ * being allocated on each call.
+ */
 public class JsonSerializer {
 
   @NonNull
   private final Gson gson;
 
+  @NonNull
+  private final ThreadLocal<Utf8StreamWriter> writers = new ThreadLocal<Utf8StreamWriter>() {
+    @Override
+    protected Utf8StreamWriter initialValue() {
+      return new Utf8StreamWriter();
+    }
+  };
+
+  @NonNull
+  private final ThreadLocal<Utf8StreamReader> readers = new ThreadLocal<Utf8StreamReader>() {
+    @Override
+    protected Utf8StreamReader initialValue() {
+      return new Utf8StreamReader();
+    }
+  };
+
   public JsonSerializer(@NonNull Gson gson) {
     this.gson = gson;
   }
@@ -53,15 +75,21 @@ public class JsonSerializer {
       @NonNull Object object,
       @NonNull OutputStream outputStream
   ) throws IOException {
-    OutputStreamWriter writer = new OutputStreamWriter(outputStream);
+    Utf8StreamWriter writer = writers.get();
+    if (writer.isInUse()) {
+      // Reentrant call, for instance from a custom type adapter: the pooled writer is kept as is
+      writer = new Utf8StreamWriter();
+    }
 
+    writer.open(outputStream);
     try {
       gson.toJson(object, writer);
+      writer.finish();
     } catch (JsonIOException e) {
       throw new IOException(e);
+    } finally {
+      writer.release();
     }
-
-    writer.flush();
   }
 
   /**
@@ -82,13 +110,25 @@ public class JsonSerializer {
       @NonNull Class<T> expectedClass,
       @NonNull InputStream inputStream
   ) throws IOException {
-    Reader reader = new InputStreamReader(inputStream);
+    Utf8StreamReader reader = readers.get();
+    if (reader.isInUse()) {
+      // Reentrant call, for instance from a custom type adapter: the pooled reader is kept as is
+      reader = new Utf8StreamReader();
+    }
 
+    reader.open(inputStream);
     T object;
     try {
-      object = gson.fromJson(reader, expectedClass);
+      JsonReader jsonReader = gson.newJsonReader(reader);
+      object = gson.fromJson(jsonReader, expectedClass);
+
+      if (object != null && jsonReader.peek() != JsonToken.END_DOCUMENT) {
+        throw new IOException("JSON document was not fully consumed.");
+      }
     } catch (JsonParseException e) {
       throw new IOException(e);
+    } finally {
+      reader.release();
     }
 
     if (object == null) {
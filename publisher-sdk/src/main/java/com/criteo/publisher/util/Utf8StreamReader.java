@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * UTF-8 {@link Reader} over an {@link InputStream} that can be reused for many streams.
+ * <p>
+ * Contrary to an {@link java.io.InputStreamReader}, its char and byte buffers and its decoder are
+ * allocated once and then recycled through {@link #open(InputStream)} and {@link #release()}.
+ * Instances are not thread-safe and are expected to be confined to a thread.
+ * <p>
+ * Closing this reader only {@linkplain #release() releases} it: the underlying stream is never
+ * closed.
+ */
+class Utf8StreamReader extends Reader {
+
+  private static final int BUFFER_SIZE = 1024;
+
+  @NonNull
+  private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+
+  @NonNull
+  private final byte[] bytes = new byte[BUFFER_SIZE];
+
+  @NonNull
+  private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+
+  @NonNull
+  private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  @Nullable
+  private InputStream inputStream;
+
+  private boolean isEndOfInput;
+
+  private boolean isDecoderFlushed;
+
+  boolean isInUse() {
+    return inputStream != null;
+  }
+
+  void open(@NonNull InputStream inputStream) {
+    this.inputStream = inputStream;
+    isEndOfInput = false;
+    isDecoderFlushed = false;
+    decoder.reset();
+
+    // Both buffers are kept in read mode, and are initially empty
+    charBuffer.clear();
+    charBuffer.flip();
+    byteBuffer.clear();
+    byteBuffer.flip();
+  }
+
+  /**
+   * Detach from the underlying stream, so this reader can be reused.
+   */
+  void release() {
+    inputStream = null;
+  }
+
+  @Override
+  public int read(@NonNull char[] cbuf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!charBuffer.hasRemaining() && !decodeChars()) {
+      return -1;
+    }
+
+    int length = Math.min(len, charBuffer.remaining());
+    charBuffer.get(cbuf, off, length);
+    return length;
+  }
+
+  @Override
+  public void close() {
+    release();
+  }
+
+  /**
+   * Decode the next chars from the underlying stream.
+   *
+   * @return <code>false</code> if the end of the stream is reached and there is no more char
+   */
+  private boolean decodeChars() throws IOException {
+    if (isDecoderFlushed) {
+      return false;
+    }
+
+    charBuffer.clear();
+    while (true) {
+      CoderResult result = decoder.decode(byteBuffer, charBuffer, isEndOfInput);
+      if (result.isError()) {
+        result.throwException();
+      }
+
+      if (result.isOverflow() || charBuffer.position() > 0) {
+        break;
+      }
+
+      if (isEndOfInput) {
+        decoder.flush(charBuffer);
+        isDecoderFlushed = true;
+        break;
+      }
+
+      readBytes();
+    }
+    charBuffer.flip();
+    return charBuffer.hasRemaining();
+  }
+
+  private void readBytes() throws IOException {
+    InputStream inputStream = this.inputStream;
+    if (inputStream == null) {
+      throw new IOException("Reader is not opened");
+    }
+
+    // An incomplete multi-bytes character may remain and is kept for the next decoding
+    byteBuffer.compact();
+    int read = inputStream.read(bytes, byteBuffer.position(), byteBuffer.remaining());
+    if (read == -1) {
+      isEndOfInput = true;
+    } else {
+      byteBuffer.position(byteBuffer.position() + read);
+    }
+    byteBuffer.flip();
+  }
+
+}
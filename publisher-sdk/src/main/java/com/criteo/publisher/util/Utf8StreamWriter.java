@@ -0,0 +1,174 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * UTF-8 {@link Writer} over an {@link OutputStream} that can be reused for many streams.
+ * <p>
+ * Contrary to an {@link java.io.OutputStreamWriter}, its char and byte buffers and its encoder are
+ * allocated once and then recycled through {@link #open(OutputStream)} and {@link #release()}.
+ * Instances are not thread-safe and are expected to be confined to a thread.
+ * <p>
+ * Closing this writer only {@linkplain #flush() flushes} it: the underlying stream is never closed.
+ */
+class Utf8StreamWriter extends Writer {
+
+  private static final int BUFFER_SIZE = 1024;
+
+  @NonNull
+  private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+
+  @NonNull
+  private final byte[] bytes = new byte[BUFFER_SIZE * 4];
+
+  @NonNull
+  private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+
+  @NonNull
+  private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  @Nullable
+  private OutputStream outputStream;
+
+  boolean isInUse() {
+    return outputStream != null;
+  }
+
+  void open(@NonNull OutputStream outputStream) {
+    this.outputStream = outputStream;
+    encoder.reset();
+    charBuffer.clear();
+    byteBuffer.clear();
+  }
+
+  /**
+   * Encode the remaining chars, flush them into the underlying stream and detach from it.
+   */
+  void finish() throws IOException {
+    try {
+      encodeChars(true);
+      while (encoder.flush(byteBuffer).isOverflow()) {
+        writeBytes();
+      }
+      writeBytes();
+      getOutputStream().flush();
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Detach from the underlying stream without flushing it, so this writer can be reused.
+   */
+  void release() {
+    outputStream = null;
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    if (!charBuffer.hasRemaining()) {
+      encodeChars(false);
+    }
+    charBuffer.put((char) c);
+  }
+
+  @Override
+  public void write(@NonNull char[] cbuf, int off, int len) throws IOException {
+    while (len > 0) {
+      if (!charBuffer.hasRemaining()) {
+        encodeChars(false);
+      }
+      int length = Math.min(len, charBuffer.remaining());
+      charBuffer.put(cbuf, off, length);
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void write(@NonNull String str, int off, int len) throws IOException {
+    while (len > 0) {
+      if (!charBuffer.hasRemaining()) {
+        encodeChars(false);
+      }
+      int length = Math.min(len, charBuffer.remaining());
+      charBuffer.put(str, off, off + length);
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    encodeChars(false);
+    writeBytes();
+    getOutputStream().flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+
+  private void encodeChars(boolean endOfInput) throws IOException {
+    charBuffer.flip();
+    while (true) {
+      CoderResult result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+      if (result.isOverflow()) {
+        writeBytes();
+      } else if (result.isError()) {
+        result.throwException();
+      } else {
+        break;
+      }
+    }
+
+    // An incomplete surrogate pair may remain and is kept for the next encoding
+    charBuffer.compact();
+  }
+
+  private void writeBytes() throws IOException {
+    if (byteBuffer.position() > 0) {
+      getOutputStream().write(bytes, 0, byteBuffer.position());
+      byteBuffer.clear();
+    }
+  }
+
+  @NonNull
+  private OutputStream getOutputStream() throws IOException {
+    OutputStream outputStream = this.outputStream;
+    if (outputStream == null) {
+      throw new IOException("Writer is not opened");
+    }
+    return outputStream;
+  }
+
+}
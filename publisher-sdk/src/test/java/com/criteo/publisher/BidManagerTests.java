@@ -17,7 +17,15 @@
 package com.criteo.publisher;
 
 import static com.criteo.publisher.util.AdUnitType.CRITEO_BANNER;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -25,9 +33,9 @@ import android.content.res.Configuration;
 import androidx.annotation.NonNull;
 import com.criteo.publisher.bid.BidLifecycleListener;
 import com.criteo.publisher.cache.SdkCache;
-import com.criteo.publisher.csm.MetricSendingQueueConsumer;
 import com.criteo.publisher.integration.IntegrationRegistry;
 import com.criteo.publisher.interstitial.InterstitialActivityHelper;
+import com.criteo.publisher.logging.LoggerFactory;
 import com.criteo.publisher.model.AdSize;
 import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.AdUnitMapper;
@@ -37,13 +45,26 @@ import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.Slot;
 import com.criteo.publisher.network.BidRequestSender;
 import com.criteo.publisher.util.AndroidUtil;
+import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.DeviceUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -56,6 +77,7 @@ public class BidManagerTests {
   private String displayUrl = "https://www.example.com/lone?par1=abcd";
   private SdkCache sdkCache;
   private Slot testSlot;
+  private JSONObject slotJson;
 
   @Mock
   private DependencyProvider dependencyProvider;
@@ -84,7 +106,7 @@ public class BidManagerTests {
   private BidLifecycleListener bidLifecycleListener;
 
   @Mock
-  private MetricSendingQueueConsumer metricSendingQueueConsumer;
+  private ScheduledExecutorService refreshExecutor;
 
   @Mock
   private InterstitialActivityHelper interstitialActivityHelper;
@@ -109,7 +131,7 @@ public class BidManagerTests {
 
     sdkCache = mock(SdkCache.class);
 
-    JSONObject slotJson = null;
+    slotJson = null;
     try {
       slotJson = new JSONObject("{\n" +
           "            \"placementId\": \"" + adUnitId + "\",\n" +
@@ -128,7 +150,10 @@ public class BidManagerTests {
 
     testSlot = new Slot(slotJson);
     when(this.sdkCache.peekAdUnit(cAdUnit)).thenReturn(testSlot);
+    when(this.sdkCache.remove(cAdUnit, testSlot)).thenReturn(true);
 
+    when(dependencyProvider.provideLoggerFactory())
+        .thenReturn(new LoggerFactory(mock(BuildConfigWrapper.class)));
     DependencyProvider.setInstance(dependencyProvider);
   }
 
@@ -203,6 +228,208 @@ public class BidManagerTests {
     //can't compare the BidResponse.Token as it's a randomly generated UUID when inserting to token cache
   }
 
+  @Test
+  public void getBidForAdUnitAndPrefetch_GivenConcurrentCallers_ConsumeBidOnlyOnce()
+      throws Exception {
+    when(config.isKillSwitchEnabled()).thenReturn(false);
+    when(deviceUtil.getSizePortrait()).thenReturn(new AdSize(0, 0));
+    when(deviceUtil.getSizeLandscape()).thenReturn(new AdSize(0, 0));
+    sdkCache = new SdkCache(deviceUtil);
+
+    BidManager bidManager = createBidManager();
+    int nbThreads = 8;
+    int nbBids = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    AtomicInteger nbConsumedBids = new AtomicInteger();
+
+    try {
+      for (int i = 0; i < nbBids; i++) {
+        bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int j = 0; j < nbThreads; j++) {
+          futures.add(executor.submit(() -> {
+            startLatch.await();
+            if (bidManager.getBidForAdUnitAndPrefetch(adUnit) != null) {
+              nbConsumedBids.incrementAndGet();
+            }
+            return null;
+          }));
+        }
+
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertEquals(nbBids, nbConsumedBids.get());
+    verify(bidLifecycleListener, times(nbBids)).onBidConsumed(any(), any());
+  }
+
+  @Test
+  public void getBidForAdUnitAndPrefetch_GivenExpiredBestBidAndValidNextBid_EvictExpiredAndReturnNextBid()
+      throws Exception {
+    when(config.isKillSwitchEnabled()).thenReturn(false);
+    when(deviceUtil.getSizePortrait()).thenReturn(new AdSize(0, 0));
+    when(deviceUtil.getSizeLandscape()).thenReturn(new AdSize(0, 0));
+    sdkCache = new SdkCache(deviceUtil, 3);
+    CacheAdUnit cacheAdUnit = new CacheAdUnit(adSize, adUnitId, CRITEO_BANNER);
+
+    Slot expiredSlot = new Slot(new JSONObject(slotJson.toString())
+        .put("cpm", "2.00")
+        .put("ttl", 10));
+    Slot validSlot = new Slot(slotJson);
+
+    BidManager bidManager = createBidManager();
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    bidManager.setCacheAdUnits(Arrays.asList(expiredSlot, validSlot));
+    when(clock.getCurrentTimeInMillis()).thenReturn(10_000L);
+
+    Slot bid = bidManager.getBidForAdUnitAndPrefetch(adUnit);
+
+    Assert.assertSame(validSlot, bid);
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit, expiredSlot);
+    verify(bidLifecycleListener).onBidConsumed(cacheAdUnit, validSlot);
+    verify(bidRequestSender).sendBidRequest(eq(Collections.nCopies(3, cacheAdUnit)), any());
+  }
+
+  @Test
+  public void setCacheAdUnits_GivenValidBid_ScheduleRefreshShortlyBeforeExpiry() throws Exception {
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    BidManager bidManager = createBidManager();
+
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+
+    verify(refreshExecutor).schedule(any(Runnable.class), eq(3_590_000L), eq(MILLISECONDS));
+  }
+
+  @Test
+  public void setCacheAdUnits_GivenBidsExpiringClosely_ScheduleOnlyOneRefresh() throws Exception {
+    doReturn(mock(ScheduledFuture.class)).when(refreshExecutor)
+        .schedule(any(Runnable.class), anyLong(), any());
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    BidManager bidManager = createBidManager();
+
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+    when(clock.getCurrentTimeInMillis()).thenReturn(1_000L);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+
+    verify(refreshExecutor, times(1)).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void setCacheAdUnits_GivenSilentBid_DoNotScheduleRefresh() throws Exception {
+    BidManager bidManager = createBidManager();
+
+    bidManager.setCacheAdUnits(Collections.singletonList(
+        new Slot(new JSONObject(slotJson.toString()).put("cpm", "0.00"))
+    ));
+
+    verifyZeroInteractions(refreshExecutor);
+  }
+
+  @Test
+  public void refresh_GivenHotAdUnitWithExpiringBid_SendBidRequestBeforeExpiry() throws Exception {
+    when(config.isKillSwitchEnabled()).thenReturn(false);
+    givenRealCache();
+    CacheAdUnit cacheAdUnit = new CacheAdUnit(adSize, adUnitId, CRITEO_BANNER);
+    BidManager bidManager = createBidManager();
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    bidManager.getBidForAdUnitAndPrefetch(adUnit);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+    Runnable refreshTask = captureScheduledRefresh();
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(3_590_000L);
+    refreshTask.run();
+
+    verify(bidRequestSender, times(2))
+        .sendBidRequest(eq(Collections.singletonList(cacheAdUnit)), any());
+  }
+
+  @Test
+  public void refresh_GivenColdAdUnitWithExpiringBid_DoNotSendBidRequest() throws Exception {
+    when(config.isKillSwitchEnabled()).thenReturn(false);
+    givenRealCache();
+    BidManager bidManager = createBidManager();
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+    Runnable refreshTask = captureScheduledRefresh();
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(3_590_000L);
+    refreshTask.run();
+
+    verifyZeroInteractions(bidRequestSender);
+  }
+
+  @Test
+  public void refresh_GivenHotAdUnitRefreshedOnce_DoNotRefreshItAgainUntilAskedAgain()
+      throws Exception {
+    when(config.isKillSwitchEnabled()).thenReturn(false);
+    givenRealCache();
+    BidManager bidManager = createBidManager();
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    bidManager.getBidForAdUnitAndPrefetch(adUnit);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+
+    bidManager.refreshExpiringAdUnits(Long.MAX_VALUE);
+    bidManager.refreshExpiringAdUnits(Long.MAX_VALUE);
+
+    verify(bidRequestSender, times(2)).sendBidRequest(any(), any());
+  }
+
+  @Test
+  public void refresh_GivenKillSwitchEnabled_DoNotSendBidRequest() throws Exception {
+    givenRealCache();
+    BidManager bidManager = createBidManager();
+
+    bidManager.getBidForAdUnitAndPrefetch(adUnit);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+    when(config.isKillSwitchEnabled()).thenReturn(true);
+
+    bidManager.refreshExpiringAdUnits(Long.MAX_VALUE);
+
+    // Only the bid request following the demand is sent
+    verify(bidRequestSender, times(1)).sendBidRequest(any(), any());
+  }
+
+  @Test
+  public void refresh_GivenUserLevelSilentMode_DoNotSendBidRequest() throws Exception {
+    when(config.isKillSwitchEnabled()).thenReturn(false);
+    givenRealCache();
+    BidManager bidManager = createBidManager();
+
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+    bidManager.setTimeToNextCall(60);
+    bidManager.getBidForAdUnitAndPrefetch(adUnit);
+    bidManager.setCacheAdUnits(Collections.singletonList(new Slot(slotJson)));
+
+    bidManager.refreshExpiringAdUnits(Long.MAX_VALUE);
+
+    verifyZeroInteractions(bidRequestSender);
+  }
+
+  private void givenRealCache() {
+    when(deviceUtil.getSizePortrait()).thenReturn(new AdSize(0, 0));
+    when(deviceUtil.getSizeLandscape()).thenReturn(new AdSize(0, 0));
+    sdkCache = new SdkCache(deviceUtil);
+  }
+
+  @NonNull
+  private Runnable captureScheduledRefresh() {
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(refreshExecutor).schedule(captor.capture(), anyLong(), any());
+    return captor.getValue();
+  }
+
   @NonNull
   private BidManager createBidManager() {
     return new BidManager(
@@ -212,7 +439,7 @@ public class BidManagerTests {
         adUnitMapper,
         bidRequestSender,
         bidLifecycleListener,
-        metricSendingQueueConsumer
+        refreshExecutor
     );
   }
 
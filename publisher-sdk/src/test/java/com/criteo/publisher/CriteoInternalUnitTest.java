@@ -37,6 +37,7 @@ import com.criteo.publisher.model.AdUnit;
 import com.criteo.publisher.model.DeviceInfo;
 import com.criteo.publisher.model.DisplayUrlTokenValue;
 import com.criteo.publisher.model.Slot;
+import com.criteo.publisher.network.PixelDispatcher;
 import com.criteo.publisher.privacy.UserPrivacyUtil;
 import com.criteo.publisher.util.AppLifecycleUtil;
 import com.criteo.publisher.util.DeviceUtil;
@@ -91,6 +92,17 @@ public class CriteoInternalUnitTest {
     inOrder.verify(bidManager).prefetch(any());
   }
 
+  @Test
+  public void whenCreatingNewCriteo_GivenPixelDispatcher_ShouldResumePendingPixels()
+      throws Exception {
+    PixelDispatcher pixelDispatcher = mock(PixelDispatcher.class);
+    when(dependencyProvider.providePixelDispatcher()).thenReturn(pixelDispatcher);
+
+    createCriteo();
+
+    verify(pixelDispatcher).resumePendingPixels();
+  }
+
   @Test
   public void whenCreatingNewCriteo_GivenBidManagerAndAdUnits_ShouldCallPrefetchWithAdUnits()
       throws Exception {
@@ -171,6 +171,18 @@ public class DependencyProviderTest {
     provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideThreadPoolExecutor);
   }
 
+  @Test
+  public void provideScheduledExecutorService_WhenProvidedTwice_ReturnsTheSame() throws Exception {
+    provideBean_WhenProvidedTwice_ReturnsTheSame(
+        DependencyProvider::provideScheduledExecutorService
+    );
+  }
+
+  @Test
+  public void provideHttpTransport_WhenProvidedTwice_ReturnsTheSame() throws Exception {
+    provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideHttpTransport);
+  }
+
   @Test
   public void provideBuildConfigWrapper_WhenProvidedTwice_ReturnsTheSame() throws Exception {
     provideBean_WhenProvidedTwice_ReturnsTheSame(DependencyProvider::provideBuildConfigWrapper);
@@ -21,11 +21,14 @@ import android.widget.ImageView
 import com.criteo.publisher.concurrent.AsyncResources
 import com.nhaarman.mockitokotlin2.any
 import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
 import com.nhaarman.mockitokotlin2.whenever
 import com.squareup.picasso.Picasso
+import com.squareup.picasso.Picasso.Priority
 import com.squareup.picasso.RequestCreator
 import org.junit.Before
 import org.junit.Test
+import org.mockito.Answers
 import org.mockito.InjectMocks
 import org.mockito.Mock
 import org.mockito.Mockito.verify
@@ -40,10 +43,10 @@ class CriteoImageLoaderTest {
     private lateinit var requestCreatorAfterLoad: RequestCreator
 
     @Mock
-    private lateinit var requestCreatorAfterPlaceholder: RequestCreator
+    private lateinit var requestCreatorAfterPriority: RequestCreator
 
     @Mock
-    private lateinit var requestCreatorAfterFetch: RequestCreator
+    private lateinit var requestCreatorAfterPlaceholder: RequestCreator
 
     @Mock
     private lateinit var asyncResources: AsyncResources
@@ -66,28 +69,82 @@ class CriteoImageLoaderTest {
     fun loadImageInto(){
         // given
         whenever(picasso.load("http://fake_url")).thenReturn(requestCreatorAfterLoad)
-        whenever(requestCreatorAfterLoad.placeholder(placeholder)).thenReturn(requestCreatorAfterPlaceholder)
+        whenever(requestCreatorAfterLoad.priority(Priority.HIGH))
+            .thenReturn(requestCreatorAfterPriority)
+        whenever(requestCreatorAfterPriority.placeholder(placeholder))
+            .thenReturn(requestCreatorAfterPlaceholder)
 
         // when
         criteoImageLoader.loadImageInto(URL("http://fake_url"), imageView, placeholder)
 
         // then
         verify(picasso).load("http://fake_url")
-        verify(requestCreatorAfterLoad).placeholder(placeholder)
+        verify(requestCreatorAfterPriority).placeholder(placeholder)
         verify(requestCreatorAfterPlaceholder).into(eq(imageView), any())
     }
 
+    @Test
+    fun loadImageInto_GivenLaidOutView_DecodeAtViewSize(){
+        // given
+        val requestCreator = mock<RequestCreator>(defaultAnswer = Answers.RETURNS_SELF)
+        whenever(picasso.load("http://fake_url")).thenReturn(requestCreator)
+        whenever(imageView.width).thenReturn(300)
+        whenever(imageView.height).thenReturn(200)
+
+        // when
+        criteoImageLoader.loadImageInto(URL("http://fake_url"), imageView, placeholder)
+
+        // then
+        verify(requestCreator).resize(300, 200)
+        verify(requestCreator).onlyScaleDown()
+        verify(requestCreator).into(eq(imageView), any())
+    }
+
     @Test
     fun preload(){
         // given
         whenever(picasso.load("http://fake_url")).thenReturn(requestCreatorAfterLoad)
-        whenever(requestCreatorAfterLoad.placeholder(placeholder)).thenReturn(requestCreatorAfterFetch)
+        whenever(requestCreatorAfterLoad.priority(Priority.NORMAL))
+            .thenReturn(requestCreatorAfterPriority)
 
         // when
         criteoImageLoader.preload(URL("http://fake_url"))
 
         // then
         verify(picasso).load("http://fake_url")
-        verify(requestCreatorAfterLoad).fetch()
+        verify(requestCreatorAfterPriority).fetch()
+    }
+
+    @Test
+    fun preload_GivenTargetSize_DecodeAtTargetSize(){
+        // given
+        val requestCreator = mock<RequestCreator>(defaultAnswer = Answers.RETURNS_SELF)
+        whenever(picasso.load("http://fake_url")).thenReturn(requestCreator)
+
+        // when
+        criteoImageLoader.preload(URL("http://fake_url"), 300, 200, true, Priority.LOW)
+
+        // then
+        verify(requestCreator).priority(Priority.LOW)
+        verify(requestCreator).resize(300, 200)
+        verify(requestCreator).onlyScaleDown()
+        verify(requestCreator).centerCrop()
+        verify(requestCreator).fetch()
+    }
+
+    @Test
+    fun preload_GivenUncroppedTargetSize_DecodeInsideTargetSize(){
+        // given
+        val requestCreator = mock<RequestCreator>(defaultAnswer = Answers.RETURNS_SELF)
+        whenever(picasso.load("http://fake_url")).thenReturn(requestCreator)
+
+        // when
+        criteoImageLoader.preload(URL("http://fake_url"), 300, 200, false, Priority.LOW)
+
+        // then
+        verify(requestCreator).resize(300, 200)
+        verify(requestCreator).onlyScaleDown()
+        verify(requestCreator).centerInside()
+        verify(requestCreator).fetch()
     }
 }
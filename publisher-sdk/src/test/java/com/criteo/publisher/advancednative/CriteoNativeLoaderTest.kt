@@ -16,6 +16,9 @@
 
 package com.criteo.publisher.advancednative
 
+import android.content.Context
+import android.view.View
+import android.view.ViewGroup
 import com.criteo.publisher.BidManager
 import com.criteo.publisher.CriteoErrorCode
 import com.criteo.publisher.InHouse
@@ -60,6 +63,9 @@ class CriteoNativeLoaderTest {
   @MockBean
   private lateinit var integrationRegistry: IntegrationRegistry
 
+  @MockBean
+  private lateinit var adChoiceOverlay: AdChoiceOverlay
+
   @Inject
   private lateinit var imageLoaderHolder: ImageLoaderHolder
 
@@ -195,6 +201,25 @@ class CriteoNativeLoaderTest {
     }.doesNotThrowAnyException()
   }
 
+  @Test
+  fun createEmptyNativeView_GivenNoUiLooper_InflateOnDemandWithAdChoiceOverlay() {
+    val context = mock<Context>()
+    val parent = mock<ViewGroup>()
+    val view1 = mock<View>()
+    val view2 = mock<View>()
+    val overlaidView1 = mock<ViewGroup>()
+    val overlaidView2 = mock<ViewGroup>()
+    whenever(renderer.createNativeView(context, parent)).doReturn(view1, view2)
+    whenever(adChoiceOverlay.addOverlay(view1)).doReturn(overlaidView1)
+    whenever(adChoiceOverlay.addOverlay(view2)).doReturn(overlaidView2)
+
+    val nativeView1 = nativeLoader.createEmptyNativeView(context, parent)
+    val nativeView2 = nativeLoader.createEmptyNativeView(context, parent)
+
+    assertThat(nativeView1).isSameAs(overlaidView1)
+    assertThat(nativeView2).isSameAs(overlaidView2)
+  }
+
   private fun givenExceptionWhileFetchingBid() {
     bidManager.stub {
       on { getBidForAdUnitAndPrefetch(any()) } doThrow RuntimeException::class
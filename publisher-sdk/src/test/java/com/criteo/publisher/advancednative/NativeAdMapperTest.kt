@@ -101,15 +101,19 @@ class NativeAdMapperTest {
     assertThat(nativeAd.description).isEqualTo("myDescription")
     assertThat(nativeAd.price).isEqualTo("42€")
     assertThat(nativeAd.callToAction).isEqualTo("myCTA")
-    assertThat(nativeAd.productMedia).isEqualTo(CriteoMedia.create(productImageUrl))
+    assertThat(nativeAd.productMedia).isEqualTo(
+        CriteoMedia.create(productImageUrl, MediaKind.PRODUCT_IMAGE)
+    )
     assertThat(nativeAd.advertiserDomain).isEqualTo("advDomain")
     assertThat(nativeAd.advertiserDescription).isEqualTo("advDescription")
-    assertThat(nativeAd.advertiserLogoMedia).isEqualTo(CriteoMedia.create(advertiserLogoUrl))
+    assertThat(nativeAd.advertiserLogoMedia).isEqualTo(
+        CriteoMedia.create(advertiserLogoUrl, MediaKind.ADVERTISER_LOGO)
+    )
     assertThat(nativeAd.legalText).isEqualTo("longLegalText")
 
-    verify(rendererHelper).preloadMedia(productImageUrl)
-    verify(rendererHelper).preloadMedia(advertiserLogoUrl)
-    verify(rendererHelper).preloadMedia(adChoiceUrl)
+    verify(rendererHelper).preloadMedia(productImageUrl, MediaKind.PRODUCT_IMAGE)
+    verify(rendererHelper).preloadMedia(advertiserLogoUrl, MediaKind.ADVERTISER_LOGO)
+    verify(rendererHelper).preloadMedia(adChoiceUrl, MediaKind.ADCHOICE_ICON)
   }
 
   @Test
@@ -131,7 +135,7 @@ class NativeAdMapperTest {
     val nativeAd = mapper.map(assets, WeakReference(listener), mock())
 
     nativeAd.watchForImpression(view1)
-    verify(visibilityTracker).watch(eq(view1), check {
+    verify(visibilityTracker).watch(eq(view1), any(), check {
       it.onVisible()
       mockedDependenciesRule.waitForIdleState()
       it.onVisible()
@@ -139,7 +143,7 @@ class NativeAdMapperTest {
     })
 
     nativeAd.watchForImpression(view2)
-    verify(visibilityTracker).watch(eq(view2), check {
+    verify(visibilityTracker).watch(eq(view2), any(), check {
       it.onVisible()
       mockedDependenciesRule.waitForIdleState()
       it.onVisible()
@@ -0,0 +1,236 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative
+
+import android.app.Activity
+import android.app.Application
+import android.app.Application.ActivityLifecycleCallbacks
+import android.content.Context
+import android.os.MessageQueue
+import android.os.MessageQueue.IdleHandler
+import android.view.View
+import android.view.ViewGroup
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+
+class NativeViewPoolTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Mock
+  private lateinit var renderer: CriteoNativeRenderer
+
+  @Mock
+  private lateinit var context: Context
+
+  @Mock
+  private lateinit var parent: ViewGroup
+
+  private lateinit var pool: NativeViewPool
+
+  @Before
+  fun setUp() {
+    MockitoAnnotations.initMocks(this)
+
+    whenever(renderer.createNativeView(any(), anyOrNull())).doAnswer { mock<View>() }
+
+    pool = NativeViewPool(renderer, 2)
+  }
+
+  @Test
+  fun acquire_GivenEmptyPool_InflateOnDemand() {
+    val view = mock<View>()
+    whenever(renderer.createNativeView(context, parent)).doReturn(view)
+
+    val acquiredView = pool.acquire(context, parent)
+
+    assertThat(acquiredView).isSameAs(view)
+  }
+
+  @Test
+  fun acquire_GivenWarmedUpPool_ReturnPooledViewsThenInflateOnDemand() {
+    pool.acquire(context, parent)
+    val view1 = mock<View>()
+    val view2 = mock<View>()
+    val view3 = mock<View>()
+    whenever(renderer.createNativeView(context, parent)).doReturn(view1, view2, view3)
+
+    assertThat(pool.warmUpOne()).isTrue()
+    assertThat(pool.warmUpOne()).isFalse()
+    assertThat(pool.warmUpOne()).isFalse()
+
+    assertThat(pool.acquire(context, parent)).isSameAs(view1)
+    assertThat(pool.acquire(context, parent)).isSameAs(view2)
+    assertThat(pool.acquire(context, parent)).isSameAs(view3)
+    verify(renderer, times(4)).createNativeView(context, parent)
+  }
+
+  @Test
+  fun acquire_GivenPoolWarmedUpForAnotherParent_DropPooledViewsAndInflateForNewParent() {
+    pool.acquire(context, parent)
+    pool.warmUpOne()
+    val otherParent = mock<ViewGroup>()
+    val view = mock<View>()
+    whenever(renderer.createNativeView(context, otherParent)).doReturn(view)
+
+    val acquiredView = pool.acquire(context, otherParent)
+
+    assertThat(acquiredView).isSameAs(view)
+    assertThat(pool.size()).isEqualTo(0)
+  }
+
+  @Test
+  fun acquire_GivenPoolWarmedUpForAnotherContext_DropPooledViewsAndInflateForNewContext() {
+    pool.acquire(context, null)
+    pool.warmUpOne()
+    val otherContext = mock<Context>()
+    val view = mock<View>()
+    whenever(renderer.createNativeView(otherContext, null)).doReturn(view)
+
+    val acquiredView = pool.acquire(otherContext, null)
+
+    assertThat(acquiredView).isSameAs(view)
+    assertThat(pool.size()).isEqualTo(0)
+  }
+
+  @Test
+  fun acquire_GivenPoolWarmedUpForActivity_DropPooledViewsWhenActivityIsDestroyed() {
+    val application = mock<Application>()
+    val activity = givenActivity(application)
+    pool.acquire(activity, parent)
+    pool.warmUpOne()
+    pool.warmUpOne()
+
+    argumentCaptor<ActivityLifecycleCallbacks> {
+      verify(application).registerActivityLifecycleCallbacks(capture())
+
+      lastValue.onActivityDestroyed(givenActivity(application))
+      assertThat(pool.size()).isEqualTo(2)
+
+      lastValue.onActivityDestroyed(activity)
+      assertThat(pool.size()).isEqualTo(0)
+      assertThat(pool.warmUpOne()).isFalse()
+      verify(application).unregisterActivityLifecycleCallbacks(lastValue)
+    }
+  }
+
+  @Test
+  fun acquire_GivenPoolWarmedUpForActivityAndThenAnotherContext_StopTrackingActivity() {
+    val application = mock<Application>()
+    val activity = givenActivity(application)
+    pool.acquire(activity, parent)
+    pool.warmUpOne()
+    pool.acquire(activity, null)
+
+    pool.acquire(context, null)
+    pool.warmUpOne()
+
+    argumentCaptor<ActivityLifecycleCallbacks> {
+      verify(application, times(1)).registerActivityLifecycleCallbacks(capture())
+      verify(application).unregisterActivityLifecycleCallbacks(firstValue)
+
+      firstValue.onActivityDestroyed(activity)
+      assertThat(pool.size()).isEqualTo(1)
+    }
+  }
+
+  private fun givenActivity(application: Application): Activity {
+    return mock { on { getApplication() } doReturn application }
+  }
+
+  @Test
+  fun warmUpOne_GivenNoAcquisitionYet_DoNothing() {
+    assertThat(pool.warmUpOne()).isFalse()
+
+    verifyZeroInteractions(renderer)
+  }
+
+  @Test
+  fun warmUpOne_GivenDisabledPool_DoNothing() {
+    pool = NativeViewPool(renderer, 0)
+    pool.acquire(context, parent)
+
+    assertThat(pool.warmUpOne()).isFalse()
+
+    verify(renderer, times(1)).createNativeView(context, parent)
+  }
+
+  @Test
+  fun warmUpOne_GivenRendererThrowing_StopWarmingUp() {
+    pool.acquire(context, parent)
+    doThrow(IllegalStateException::class).whenever(renderer).createNativeView(context, parent)
+
+    assertThatCode {
+      pool.warmUpOne()
+    }.hasCauseInstanceOf(IllegalStateException::class.java)
+
+    assertThat(pool.size()).isEqualTo(0)
+  }
+
+  @Test
+  fun scheduleWarmUp_GivenNoQueue_DoNothing() {
+    pool.acquire(context, parent)
+
+    assertThatCode {
+      pool.scheduleWarmUp(null)
+    }.doesNotThrowAnyException()
+  }
+
+  @Test
+  fun scheduleWarmUp_GivenQueue_FillPoolOnIdleOnlyOnceAtATime() {
+    val queue = mock<MessageQueue>()
+    pool.acquire(context, parent)
+
+    pool.scheduleWarmUp(queue)
+    pool.scheduleWarmUp(queue)
+
+    argumentCaptor<IdleHandler>().apply {
+      verify(queue, times(1)).addIdleHandler(capture())
+
+      assertThat(firstValue.queueIdle()).isTrue()
+      assertThat(firstValue.queueIdle()).isFalse()
+    }
+    assertThat(pool.size()).isEqualTo(2)
+
+    pool.acquire(context, parent)
+    pool.scheduleWarmUp(queue)
+
+    verify(queue, times(2)).addIdleHandler(any())
+  }
+
+  @Test
+  fun scheduleWarmUp_GivenFullPool_DoNothing() {
+    val queue = mock<MessageQueue>()
+    pool.acquire(context, parent)
+    pool.warmUpOne()
+    pool.warmUpOne()
+
+    pool.scheduleWarmUp(queue)
+
+    verifyZeroInteractions(queue)
+  }
+
+}
@@ -20,6 +20,7 @@ import android.graphics.drawable.Drawable
 import android.widget.ImageView
 import com.criteo.publisher.concurrent.DirectMockRunOnUiThreadExecutor
 import com.nhaarman.mockitokotlin2.*
+import com.squareup.picasso.Picasso.Priority
 import org.assertj.core.api.Assertions.assertThatCode
 import org.junit.Before
 import org.junit.Test
@@ -42,29 +43,65 @@ class RendererHelperTest {
     helper = RendererHelper(ImageLoaderHolder(imageLoader), uiExecutor)
   }
 
+  @Mock
+  private lateinit var criteoImageLoader: CriteoImageLoader
+
   @Test
   fun preloadMedia_GivenImageLoader_DelegateToIt() {
     val url = URI.create("http://image.url").toURL()
 
-    helper.preloadMedia(url)
+    helper.preloadMedia(url, MediaKind.PRODUCT_IMAGE)
 
     verify(imageLoader).preload(url)
   }
 
+  @Test
+  fun preloadMedia_GivenCriteoImageLoaderAndNoRenderedMedia_PreloadAtOriginalSize() {
+    helper = RendererHelper(ImageLoaderHolder(criteoImageLoader), uiExecutor)
+    val url = URI.create("http://image.url").toURL()
+
+    helper.preloadMedia(url, MediaKind.PRODUCT_IMAGE)
+    helper.preloadMedia(url, MediaKind.ADCHOICE_ICON)
+
+    verify(criteoImageLoader).preload(url, Priority.NORMAL)
+    verify(criteoImageLoader).preload(url, Priority.LOW)
+  }
+
+  @Test
+  fun preloadMedia_GivenCriteoImageLoaderAndRenderedMediaOfSameKind_PreloadAtSizeOfItsView() {
+    helper = RendererHelper(ImageLoaderHolder(criteoImageLoader), uiExecutor)
+    val renderedUrl = URI.create("http://rendered.url").toURL()
+    val url = URI.create("http://image.url").toURL()
+    val imageView = mock<ImageView> {
+      on { width } doReturn 300
+      on { height } doReturn 200
+    }
+    val mediaView = mock<CriteoMediaView> {
+      on { getImageView() } doReturn imageView
+    }
+
+    helper.setMediaInView(CriteoMedia.create(renderedUrl, MediaKind.PRODUCT_IMAGE), mediaView)
+    helper.preloadMedia(url, MediaKind.PRODUCT_IMAGE)
+    helper.preloadMedia(url, MediaKind.ADVERTISER_LOGO)
+
+    verify(criteoImageLoader).preload(eq(url), eq(300), eq(200), any(), eq(Priority.NORMAL))
+    verify(criteoImageLoader).preload(url, Priority.NORMAL)
+  }
+
   @Test
   fun preloadMedia_GivenImageLoaderThrowing_CatchTheException() {
     val url = URI.create("http://image.url").toURL()
     doThrow(Exception::class).whenever(imageLoader).preload(any())
 
     assertThatCode {
-      helper.preloadMedia(url)
+      helper.preloadMedia(url, MediaKind.PRODUCT_IMAGE)
     }.doesNotThrowAnyException()
   }
 
   @Test
   fun setMediaInView_GivenImageLoader_DelegateToIt() {
     val url = URI.create("http://image.url").toURL()
-    val media = CriteoMedia.create(url)
+    val media = CriteoMedia.create(url, MediaKind.PRODUCT_IMAGE)
 
     doAnswer {
       uiExecutor.expectIsRunningInExecutor()
@@ -86,9 +123,14 @@ class RendererHelperTest {
   @Test
   fun setMediaInView_GivenImageLoaderThrowing_CatchTheException() {
     doThrow(Exception::class).whenever(imageLoader).loadImageInto(any(), any(), any())
+    val media = CriteoMedia.create(URI.create("http://image.url").toURL(), MediaKind.PRODUCT_IMAGE)
+    val mediaView = mock<CriteoMediaView>() {
+      on { getImageView() } doReturn mock<ImageView>()
+      on { getPlaceholder() } doReturn mock<Drawable>()
+    }
 
     assertThatCode {
-      helper.setMediaInView(mock(), mock())
+      helper.setMediaInView(media, mediaView)
     }.doesNotThrowAnyException()
   }
 
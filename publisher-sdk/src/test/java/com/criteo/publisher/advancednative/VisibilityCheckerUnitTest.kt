@@ -16,8 +16,10 @@
 
 package com.criteo.publisher.advancednative
 
+import android.graphics.Rect
 import android.view.View
 import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doAnswer
 import com.nhaarman.mockitokotlin2.doReturn
 import com.nhaarman.mockitokotlin2.stub
 import org.assertj.core.api.Assertions.assertThat
@@ -97,13 +99,67 @@ class VisibilityCheckerUnitTest {
         assertThat(visible).isTrue()
     }
 
-    private fun givenVisibleView() {
+    @Test
+    fun isVisible_GivenViewInNotVisibleWindow_ReturnFalse() {
+        givenVisibleView()
+        view.stub {
+            on { windowVisibility } doReturn View.GONE
+        }
+
+        val visible = checker.isVisible(view)
+
+        assertThat(visible).isFalse()
+    }
+
+    @Test
+    fun getVisibleAreaRatio_GivenNotVisibleView_ReturnZero() {
+        givenVisibleView()
+        view.stub {
+            on { isShown } doReturn false
+        }
+
+        val ratio = checker.getVisibleAreaRatio(view)
+
+        assertThat(ratio).isZero()
+    }
+
+    @Test
+    fun getVisibleAreaRatio_GivenEntirelyVisibleView_ReturnOne() {
+        givenVisibleView(width = 300, height = 250)
+
+        val ratio = checker.getVisibleAreaRatio(view)
+
+        assertThat(ratio).isEqualTo(1f)
+    }
+
+    @Test
+    fun getVisibleAreaRatio_GivenPartiallyClippedView_ReturnRatioOfVisibleArea() {
+        givenVisibleView(width = 300, height = 250, visibleWidth = 150, visibleHeight = 200)
+
+        val ratio = checker.getVisibleAreaRatio(view)
+
+        assertThat(ratio).isEqualTo(0.4f)
+    }
+
+    private fun givenVisibleView(
+        width: Int = 1,
+        height: Int = 1,
+        visibleWidth: Int = width,
+        visibleHeight: Int = height
+    ) {
         view.stub {
             on { isShown } doReturn true
-            on { width } doReturn 1
-            on { height } doReturn 1
-            on { getGlobalVisibleRect(any()) } doReturn true
+            on { this.width } doReturn width
+            on { this.height } doReturn height
+            on { getGlobalVisibleRect(any()) } doAnswer {
+                val rect: Rect = it.getArgument(0)
+                rect.left = 10
+                rect.top = 20
+                rect.right = 10 + visibleWidth
+                rect.bottom = 20 + visibleHeight
+                true
+            }
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,302 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.advancednative
+
+import android.view.View
+import android.view.ViewTreeObserver
+import android.view.ViewTreeObserver.OnPreDrawListener
+import com.criteo.publisher.Clock
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.argumentCaptor
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+
+class VisibilityTrackerUnitTest {
+
+    @Mock
+    private lateinit var visibilityChecker: VisibilityChecker
+
+    @Mock
+    private lateinit var clock: Clock
+
+    @Mock
+    private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+    private lateinit var observer: ViewTreeObserver
+
+    private lateinit var tracker: VisibilityTracker
+
+    private val immediately = ViewabilityCriteria.create(0, 0)
+
+    private val mrcDisplay = ViewabilityCriteria.create(50, 1000)
+
+    @Before
+    fun setUp() {
+        MockitoAnnotations.initMocks(this)
+
+        observer = mock {
+            on { isAlive } doReturn true
+        }
+
+        whenever(buildConfigWrapper.visibilityCheckIntervalInMillis).thenReturn(100)
+
+        tracker = VisibilityTracker(visibilityChecker, clock, buildConfigWrapper)
+    }
+
+    @Test
+    fun watch_GivenViewsSharingSameObserver_RegisterOnlyOnePreDrawListener() {
+        tracker.watch(givenView(), immediately, mock())
+        tracker.watch(givenView(), immediately, mock())
+        tracker.watch(givenView(), immediately, mock())
+
+        verify(observer).addOnPreDrawListener(any())
+    }
+
+    @Test
+    fun watch_GivenNotAliveObserver_DoNotRegisterPreDrawListener() {
+        whenever(observer.isAlive).thenReturn(false)
+
+        tracker.watch(givenView(), immediately, mock())
+
+        verify(observer, never()).addOnPreDrawListener(any())
+    }
+
+    @Test
+    fun onPreDraw_GivenVisibleAndNotVisibleViews_TriggerOnlyVisibleOnes() {
+        val visibleView = givenView(isVisible = true)
+        val notVisibleView = givenView(isVisible = false)
+        val listener1 = mock<VisibilityListener>()
+        val listener2 = mock<VisibilityListener>()
+
+        tracker.watch(visibleView, immediately, listener1)
+        tracker.watch(notVisibleView, immediately, listener2)
+        capturePreDrawListener().onPreDraw()
+
+        verify(listener1).onVisible()
+        verify(listener2, never()).onVisible()
+    }
+
+    @Test
+    fun onPreDraw_GivenTriggeredViews_DetachThemAndUnregisterOnceEmpty() {
+        val view1 = givenView(isVisible = true)
+        val view2 = givenView(isVisible = false)
+        val listener1 = mock<VisibilityListener>()
+        val listener2 = mock<VisibilityListener>()
+
+        tracker.watch(view1, immediately, listener1)
+        tracker.watch(view2, immediately, listener2)
+        val preDrawListener = capturePreDrawListener()
+
+        whenever(clock.currentTimeInMillis).thenReturn(0)
+        preDrawListener.onPreDraw()
+        verify(observer, never()).removeOnPreDrawListener(any())
+
+        whenever(visibilityChecker.getVisibleAreaRatio(view2)).thenReturn(1f)
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        preDrawListener.onPreDraw()
+
+        verify(listener1).onVisible()
+        verify(listener2).onVisible()
+        verify(observer).removeOnPreDrawListener(preDrawListener)
+    }
+
+    @Test
+    fun onPreDraw_GivenGroupMergedIntoWindowObserver_UnregisterFromWindowObserverOnceEmpty() {
+        val view = givenView(isVisible = false)
+        val listener = mock<VisibilityListener>()
+
+        tracker.watch(view, immediately, listener)
+        val preDrawListener = capturePreDrawListener()
+
+        // The view is attached: its floating observer is merged into the one of the window
+        val windowObserver = mock<ViewTreeObserver> {
+            on { isAlive } doReturn true
+        }
+        whenever(view.viewTreeObserver).thenReturn(windowObserver)
+        whenever(clock.currentTimeInMillis).thenReturn(0)
+        preDrawListener.onPreDraw()
+
+        // The view does not give the window observer anymore, as if it was detached
+        whenever(view.viewTreeObserver).thenReturn(mock())
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f)
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        preDrawListener.onPreDraw()
+
+        verify(listener).onVisible()
+        verify(windowObserver).removeOnPreDrawListener(preDrawListener)
+    }
+
+    @Test
+    fun watch_GivenAlreadyTriggeredView_TrackItAgain() {
+        val view = givenView(isVisible = true)
+        val listener1 = mock<VisibilityListener>()
+        val listener2 = mock<VisibilityListener>()
+
+        tracker.watch(view, immediately, listener1)
+        capturePreDrawListener().onPreDraw()
+
+        tracker.watch(view, immediately, listener2)
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        capturePreDrawListener(times = 2).onPreDraw()
+
+        verify(listener1).onVisible()
+        verify(listener2).onVisible()
+    }
+
+    @Test
+    fun onPreDraw_GivenPreDrawsWithinInterval_SkipThemAndPostOneLastCheck() {
+        val view = givenView(isVisible = false)
+        val listener = mock<VisibilityListener>()
+
+        tracker.watch(view, immediately, listener)
+        val preDrawListener = capturePreDrawListener()
+
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        preDrawListener.onPreDraw()
+
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f)
+        whenever(clock.currentTimeInMillis).thenReturn(1030)
+        preDrawListener.onPreDraw()
+        whenever(clock.currentTimeInMillis).thenReturn(1060)
+        preDrawListener.onPreDraw()
+
+        verify(listener, never()).onVisible()
+
+        val lastCheck = argumentCaptor<Runnable>()
+        verify(view).postDelayed(lastCheck.capture(), eq(70L))
+
+        whenever(clock.currentTimeInMillis).thenReturn(1100)
+        lastCheck.firstValue.run()
+
+        verify(listener).onVisible()
+    }
+
+    @Test
+    fun onPreDraw_GivenViewInView_TriggerListenerOnlyAfterMinDuration() {
+        val view = givenView()
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(0.6f)
+        val listener = mock<VisibilityListener>()
+
+        tracker.watch(view, mrcDisplay, listener)
+        val preDrawListener = capturePreDrawListener()
+
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        preDrawListener.onPreDraw()
+        whenever(clock.currentTimeInMillis).thenReturn(1950)
+        preDrawListener.onPreDraw()
+
+        verify(listener, never()).onVisible()
+
+        whenever(clock.currentTimeInMillis).thenReturn(2050)
+        preDrawListener.onPreDraw()
+
+        verify(listener).onVisible()
+    }
+
+    @Test
+    fun onPreDraw_GivenViewBelowMinVisibleArea_DoNotTriggerListener() {
+        val view = givenView()
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(0.4f)
+        val listener = mock<VisibilityListener>()
+
+        tracker.watch(view, mrcDisplay, listener)
+        val preDrawListener = capturePreDrawListener()
+
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        preDrawListener.onPreDraw()
+        whenever(clock.currentTimeInMillis).thenReturn(5000)
+        preDrawListener.onPreDraw()
+
+        verify(listener, never()).onVisible()
+    }
+
+    @Test
+    fun onPreDraw_GivenInterruptedInViewPeriod_RestartIt() {
+        val view = givenView()
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f)
+        val listener = mock<VisibilityListener>()
+
+        tracker.watch(view, mrcDisplay, listener)
+        val preDrawListener = capturePreDrawListener()
+
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        preDrawListener.onPreDraw()
+
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(0.2f)
+        whenever(clock.currentTimeInMillis).thenReturn(1500)
+        preDrawListener.onPreDraw()
+
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f)
+        whenever(clock.currentTimeInMillis).thenReturn(1600)
+        preDrawListener.onPreDraw()
+        whenever(clock.currentTimeInMillis).thenReturn(2100)
+        preDrawListener.onPreDraw()
+
+        verify(listener, never()).onVisible()
+
+        whenever(clock.currentTimeInMillis).thenReturn(2600)
+        preDrawListener.onPreDraw()
+
+        verify(listener).onVisible()
+    }
+
+    @Test
+    fun onPreDraw_GivenViewInViewAndNoMoreFrame_PostCheckAtEndOfMinDuration() {
+        val view = givenView()
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(1f)
+        val listener = mock<VisibilityListener>()
+
+        tracker.watch(view, mrcDisplay, listener)
+
+        whenever(clock.currentTimeInMillis).thenReturn(1000)
+        capturePreDrawListener().onPreDraw()
+
+        val check = argumentCaptor<Runnable>()
+        verify(view).postDelayed(check.capture(), eq(1000L))
+
+        whenever(clock.currentTimeInMillis).thenReturn(2000)
+        check.firstValue.run()
+
+        verify(listener).onVisible()
+    }
+
+    private fun capturePreDrawListener(times: Int = 1): OnPreDrawListener {
+        val captor = argumentCaptor<OnPreDrawListener>()
+        verify(observer, times(times)).addOnPreDrawListener(captor.capture())
+        return captor.lastValue
+    }
+
+    private fun givenView(isVisible: Boolean = false): View {
+        val view = mock<View> {
+            on { viewTreeObserver } doReturn observer
+            on { postDelayed(any(), any()) } doReturn true
+        }
+        whenever(visibilityChecker.getVisibleAreaRatio(view)).thenReturn(if (isVisible) 1f else 0f)
+        return view
+    }
+
+}
@@ -17,15 +17,12 @@
 package com.criteo.publisher.advancednative
 
 import android.view.View
-import android.view.ViewTreeObserver
 import com.criteo.publisher.advancednative.VisibilityTracker.VisibilityTrackingTask
-import com.nhaarman.mockitokotlin2.doReturn
 import com.nhaarman.mockitokotlin2.mock
 import com.nhaarman.mockitokotlin2.whenever
-import org.assertj.core.api.Assertions.assertThatCode
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
 import org.junit.Test
-import org.mockito.Answers
 import org.mockito.Mock
 import org.mockito.Mockito.*
 import org.mockito.MockitoAnnotations
@@ -39,75 +36,103 @@ class VisibilityTrackingTaskTest {
     @Mock
     private lateinit var visibilityChecker: VisibilityChecker
 
+    private val immediately = ViewabilityCriteria.create(0, 0)
+
     @Before
     fun setUp() {
         MockitoAnnotations.initMocks(this)
 
-        whenever(viewRef.get()).thenReturn(mock(defaultAnswer = Answers.RETURNS_DEEP_STUBS))
+        whenever(viewRef.get()).thenReturn(mock())
     }
 
     @Test
-    fun new_GivenEmptyReference_DoNotThrow() {
+    fun isDone_GivenEmptyReference_ReturnTrue() {
+        val task = createTask()
+        task.setListener(immediately, mock())
         whenever(viewRef.get()).thenReturn(null)
 
-        assertThatCode {
-            createTask()
-        }.doesNotThrowAnyException()
+        val isDone = task.isDone(0)
+
+        assertThat(isDone).isTrue()
     }
 
     @Test
-    fun new_GivenNotEmptyReferenceAndAliveObserver_SetupPreDrawListener() {
-        val viewTreeObserver = givenViewTreeObserver(true)
+    fun isDone_GivenListenerAndNotVisibleView_ReturnFalse() {
+        whenever(visibilityChecker.getVisibleAreaRatio(viewRef.get()!!)).thenReturn(0f)
 
         val task = createTask()
+        task.setListener(immediately, mock())
 
-        verify(viewTreeObserver).addOnPreDrawListener(task)
+        val isDone = task.isDone(0)
+
+        assertThat(isDone).isFalse()
     }
 
     @Test
-    fun new_GivenNotEmptyReferenceAndNotAliveObserver_DoNotSetupPreDrawListener() {
-        val viewTreeObserver = givenViewTreeObserver(false)
+    fun isDone_GivenNoListenerAndVisibleView_ReturnFalse() {
+        whenever(visibilityChecker.getVisibleAreaRatio(viewRef.get()!!)).thenReturn(1f)
 
         val task = createTask()
 
-        verify(viewTreeObserver, never()).addOnPreDrawListener(task)
+        val isDone = task.isDone(0)
+
+        assertThat(isDone).isFalse()
     }
 
     @Test
-    fun onPreDraw_GivenListenerAndEmptyReference_DoesNothing() {
-        val listener = mock(VisibilityListener::class.java)
+    fun isDone_GivenListenerAndVisibleView_ReturnTrue() {
+        whenever(visibilityChecker.getVisibleAreaRatio(viewRef.get()!!)).thenReturn(1f)
 
         val task = createTask()
-        whenever(viewRef.get()).thenReturn(null)
+        task.setListener(immediately, mock())
 
-        task.onPreDraw()
+        val isDone = task.isDone(0)
 
-        verify(listener, never()).onVisible()
+        assertThat(isDone).isTrue()
     }
 
     @Test
-    fun onPreDraw_GivenListenerAndReferenceAndVisibilityDetected_NotifyListener() {
+    fun isDone_GivenViewInViewForLessThanMinDuration_ReturnFalseUntilMinDurationElapsed() {
+        whenever(visibilityChecker.getVisibleAreaRatio(viewRef.get()!!)).thenReturn(0.5f)
+
+        val task = createTask()
+        task.setListener(ViewabilityCriteria.create(50, 1000), mock())
+
+        assertThat(task.isDone(100)).isFalse()
+        assertThat(task.viewableTime).isEqualTo(1100)
+        assertThat(task.isDone(1099)).isFalse()
+        assertThat(task.isDone(1100)).isTrue()
+    }
+
+    @Test
+    fun trigger_GivenListenerAndEmptyReference_DoesNothing() {
         val listener = mock<VisibilityListener>()
-        whenever(visibilityChecker.isVisible(viewRef.get()!!)).thenReturn(true)
 
         val task = createTask()
-        task.setListener(listener)
-        task.onPreDraw()
+        task.setListener(immediately, listener)
+        whenever(viewRef.get()).thenReturn(null)
 
-        verify(listener).onVisible()
+        task.trigger()
+
+        verify(listener, never()).onVisible()
     }
 
-    private fun givenViewTreeObserver(isAlive: Boolean): ViewTreeObserver {
-        val viewTreeObserver = mock<ViewTreeObserver> {
-            on { isAlive() } doReturn isAlive
-        }
+    @Test
+    fun trigger_GivenListenerCalledTwice_NotifyListenerOnce() {
+        val listener = mock<VisibilityListener>()
+
+        val task = createTask()
+        task.setListener(immediately, listener)
 
-        whenever(viewRef.get()!!.viewTreeObserver).thenReturn(viewTreeObserver)
-        return viewTreeObserver
+        task.trigger()
+        task.trigger()
+
+        verify(listener).onVisible()
+        assertThat(task.isDone(0)).isFalse()
     }
 
     private fun createTask(): VisibilityTrackingTask {
         return VisibilityTrackingTask(viewRef, visibilityChecker)
     }
 
-}
\ No newline at end of file
+}
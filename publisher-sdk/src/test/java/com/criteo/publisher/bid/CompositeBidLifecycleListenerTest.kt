@@ -61,10 +61,10 @@ class CompositeBidLifecycleListenerTest {
   fun onCdbCallStarted_GivenDelegates_DelegateToThem() {
     val request = mock<CdbRequest>()
 
-    listener.onCdbCallStarted(request)
+    listener.onCdbCallStarted(request, "myCallId")
 
-    verify(listener1).onCdbCallStarted(request)
-    verify(listener2).onCdbCallStarted(request)
+    verify(listener1).onCdbCallStarted(request, "myCallId")
+    verify(listener2).onCdbCallStarted(request, "myCallId")
   }
 
   @Test
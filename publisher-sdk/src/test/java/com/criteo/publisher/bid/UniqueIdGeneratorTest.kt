@@ -16,11 +16,15 @@
 
 package com.criteo.publisher.bid
 
+import com.criteo.publisher.Clock
 import com.criteo.publisher.EpochClock
+import com.nhaarman.mockitokotlin2.doReturn
 import com.nhaarman.mockitokotlin2.mock
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Test
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
 
 class UniqueIdGeneratorTest {
 
@@ -54,4 +58,55 @@ class UniqueIdGeneratorTest {
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  fun generateId_GivenClock_ReturnTimestampFollowedByRandomHexDigits() {
+    val clock = mock<Clock> {
+      on { currentTimeInMillis } doReturn 1234567890_123L
+    }
+
+    val generator = UniqueIdGenerator(clock)
+    val id1 = generator.generateId()
+    val id2 = generator.generateId()
+
+    assertThat(id1).matches("499602d2[0-9a-f]{24}")
+    assertThat(id2).matches("499602d2[0-9a-f]{24}")
+    assertThat(id1).isNotEqualTo(id2)
+  }
+
+  @Test
+  fun generateId_GivenMoreIdsThanBetweenTwoReseeds_AllAreUnique() {
+    val expectedSize = 200_000
+
+    val generator = UniqueIdGenerator(EpochClock())
+
+    val ids = (0 until expectedSize)
+        .map { generator.generateId() }
+        .toSet()
+
+    assertThat(ids).hasSize(expectedSize)
+  }
+
+  @Test
+  fun generateId_GivenManyThreads_AllAreUnique() {
+    val threadCount = 8
+    val idsPerThread = 10_000
+
+    val generator = UniqueIdGenerator(EpochClock())
+    val executor = Executors.newFixedThreadPool(threadCount)
+
+    try {
+      val tasks = (0 until threadCount).map {
+        Callable { (0 until idsPerThread).map { generator.generateId() } }
+      }
+
+      val ids = executor.invokeAll(tasks)
+          .flatMap { it.get() }
+          .toSet()
+
+      assertThat(ids).hasSize(threadCount * idsPerThread)
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+}
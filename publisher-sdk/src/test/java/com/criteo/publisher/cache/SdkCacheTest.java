@@ -20,6 +20,7 @@ import static com.criteo.publisher.util.AdUnitType.CRITEO_BANNER;
 import static com.criteo.publisher.util.AdUnitType.CRITEO_CUSTOM_NATIVE;
 import static com.criteo.publisher.util.AdUnitType.CRITEO_INTERSTITIAL;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
@@ -324,6 +325,181 @@ public class SdkCacheTest {
     assertThat(slot).isNull();
   }
 
+  @Test
+  public void removeWithSlot_GivenPeekedSlot_RemoveIt() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    Slot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot);
+    boolean isRemoved = cache.remove(key, slot);
+
+    assertThat(isRemoved).isTrue();
+    assertThat(cache.peekAdUnit(key)).isNull();
+    assertThat(cache.getItemCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void removeWithSlot_GivenAlreadyRemovedSlot_ReturnFalse() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    Slot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot);
+    cache.remove(key, slot);
+    boolean isRemoved = cache.remove(key, slot);
+
+    assertThat(isRemoved).isFalse();
+  }
+
+  @Test
+  public void removeWithSlot_GivenReplacedSlot_ReturnFalseAndKeepNewSlot() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    Slot oldSlot = givenNativeSlot(size, "myAdUnit");
+    Slot newSlot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(oldSlot);
+    cache.add(newSlot);
+    boolean isRemoved = cache.remove(key, oldSlot);
+
+    assertThat(isRemoved).isFalse();
+    assertThat(cache.peekAdUnit(key)).isSameAs(newSlot);
+  }
+
+  @Test
+  public void removeWithSlot_GivenUnknownAdUnit_ReturnFalse() throws Exception {
+    AdSize size = new AdSize(1, 2);
+    Slot slot = givenNativeSlot(size, "myAdUnit");
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    boolean isRemoved = cache.remove(key, slot);
+
+    assertThat(isRemoved).isFalse();
+  }
+
+  @Test
+  public void new_GivenNoBidPerAdUnit_ThrowException() throws Exception {
+    assertThatCode(() -> new SdkCache(deviceUtil, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void add_GivenSeveralSlotsForSameAdUnit_PeekTheOneWithHighestCpmFirst() throws Exception {
+    cache = new SdkCache(deviceUtil, 3);
+    AdSize size = new AdSize(1, 2);
+    Slot slot1 = givenNativeSlot(size, "myAdUnit", 1.0, 60, 1000);
+    Slot slot2 = givenNativeSlot(size, "myAdUnit", 3.0, 60, 1000);
+    Slot slot3 = givenNativeSlot(size, "myAdUnit", 2.0, 60, 1000);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot1);
+    cache.add(slot2);
+    cache.add(slot3);
+
+    assertThat(cache.getItemCount()).isEqualTo(3);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot2);
+    cache.remove(key, slot2);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot3);
+    cache.remove(key, slot3);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot1);
+    cache.remove(key, slot1);
+    assertThat(cache.peekAdUnit(key)).isNull();
+  }
+
+  @Test
+  public void add_GivenSlotsWithSameCpm_PeekTheOneExpiringFirst() throws Exception {
+    cache = new SdkCache(deviceUtil, 2);
+    AdSize size = new AdSize(1, 2);
+    Slot lateSlot = givenNativeSlot(size, "myAdUnit", 1.0, 60, 2000);
+    Slot earlySlot = givenNativeSlot(size, "myAdUnit", 1.0, 60, 1000);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(lateSlot);
+    cache.add(earlySlot);
+
+    assertThat(cache.peekAdUnit(key)).isSameAs(earlySlot);
+  }
+
+  @Test
+  public void add_GivenFullQueue_DropPreviousSlotWithLowestPriorityAndKeepNewOne() throws Exception {
+    cache = new SdkCache(deviceUtil, 2);
+    AdSize size = new AdSize(1, 2);
+    Slot highSlot = givenNativeSlot(size, "myAdUnit", 3.0, 60, 1000);
+    Slot lowSlot = givenNativeSlot(size, "myAdUnit", 2.0, 60, 1000);
+    Slot newSlot = givenNativeSlot(size, "myAdUnit", 1.0, 60, 1000);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(highSlot);
+    cache.add(lowSlot);
+    cache.add(newSlot);
+
+    assertThat(cache.getItemCount()).isEqualTo(2);
+    assertThat(cache.remove(key, lowSlot)).isFalse();
+    assertThat(cache.peekAdUnit(key)).isSameAs(highSlot);
+    cache.remove(key, highSlot);
+    assertThat(cache.peekAdUnit(key)).isSameAs(newSlot);
+  }
+
+  @Test
+  public void add_GivenSilentSlot_ReplaceAllPreviousSlots() throws Exception {
+    cache = new SdkCache(deviceUtil, 3);
+    AdSize size = new AdSize(1, 2);
+    Slot slot1 = givenNativeSlot(size, "myAdUnit", 1.0, 60, 1000);
+    Slot slot2 = givenNativeSlot(size, "myAdUnit", 2.0, 60, 1000);
+    Slot silentSlot = givenNativeSlot(size, "myAdUnit", 0.0, 60, 1000);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot1);
+    cache.add(slot2);
+    cache.add(silentSlot);
+
+    assertThat(cache.getItemCount()).isEqualTo(1);
+    assertThat(cache.peekAdUnit(key)).isSameAs(silentSlot);
+  }
+
+  @Test
+  public void add_GivenSilentSlotThenNewBid_DropSilentSlot() throws Exception {
+    cache = new SdkCache(deviceUtil, 3);
+    AdSize size = new AdSize(1, 2);
+    Slot silentSlot = givenNativeSlot(size, "myAdUnit", 0.0, 60, 1000);
+    Slot slot = givenNativeSlot(size, "myAdUnit", 1.0, 60, 1000);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(silentSlot);
+    cache.add(slot);
+
+    assertThat(cache.getItemCount()).isEqualTo(1);
+    assertThat(cache.peekAdUnit(key)).isSameAs(slot);
+  }
+
+  @Test
+  public void getRemainingCapacity_GivenUnknownAdUnit_ReturnMaxBidsPerAdUnit() throws Exception {
+    cache = new SdkCache(deviceUtil, 3);
+    CacheAdUnit key = new CacheAdUnit(new AdSize(1, 2), "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    assertThat(cache.getRemainingCapacity(key)).isEqualTo(3);
+  }
+
+  @Test
+  public void getRemainingCapacity_GivenAddedAndRemovedSlots_ReturnMissingBids() throws Exception {
+    cache = new SdkCache(deviceUtil, 3);
+    AdSize size = new AdSize(1, 2);
+    Slot slot1 = givenNativeSlot(size, "myAdUnit", 1.0, 60, 1000);
+    Slot slot2 = givenNativeSlot(size, "myAdUnit", 2.0, 60, 1000);
+    CacheAdUnit key = new CacheAdUnit(size, "myAdUnit", CRITEO_CUSTOM_NATIVE);
+
+    cache.add(slot1);
+    cache.add(slot2);
+    assertThat(cache.getRemainingCapacity(key)).isEqualTo(1);
+
+    cache.remove(key, slot2);
+    assertThat(cache.getRemainingCapacity(key)).isEqualTo(2);
+
+    cache.remove(key);
+    assertThat(cache.getRemainingCapacity(key)).isEqualTo(3);
+  }
+
   private static Slot givenNativeSlot(AdSize size, String placementId) {
     Slot slot = mock(Slot.class);
     when(slot.isNative()).thenReturn(true);
@@ -333,4 +509,19 @@ public class SdkCacheTest {
 
     return slot;
   }
+
+  private static Slot givenNativeSlot(
+      AdSize size,
+      String placementId,
+      double cpm,
+      int ttl,
+      long expiryTimeInMillis
+  ) {
+    Slot slot = givenNativeSlot(size, placementId);
+    when(slot.getCpmAsNumber()).thenReturn(cpm);
+    when(slot.getTtl()).thenReturn(ttl);
+    when(slot.getExpiryTimeInMillis()).thenReturn(expiryTimeInMillis);
+
+    return slot;
+  }
 }
@@ -55,6 +55,17 @@ class BoundedMetricRepositoryTest {
     assertThat(metrics).containsExactly(metric)
   }
 
+  @Test
+  fun getAllStoredIds_GivenDelegate_DelegateToIt() {
+    delegate.stub {
+      on { allStoredIds } doReturn listOf("id")
+    }
+
+    val impressionIds = repository.allStoredIds
+
+    assertThat(impressionIds).containsExactly("id")
+  }
+
   @Test
   fun moveById_GivenDelegate_DelegateToIt() {
     val mover = mock<MetricMover>()
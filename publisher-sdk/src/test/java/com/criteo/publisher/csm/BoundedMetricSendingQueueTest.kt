@@ -57,6 +57,44 @@ class BoundedMetricSendingQueueTest {
     assertThat(metrics).containsExactly(metric)
   }
 
+  @Test
+  fun peek_GivenDelegate_DelegateToIt() {
+    val metric = mock<Metric>()
+
+    delegate.stub {
+      on { peek(42) } doReturn listOf(metric)
+    }
+
+    val metrics = queue.peek(42)
+
+    assertThat(metrics).containsExactly(metric)
+  }
+
+  @Test
+  fun commit_GivenDelegate_DelegateToIt() {
+    queue.commit()
+
+    verify(delegate).commit()
+  }
+
+  @Test
+  fun rollback_GivenDelegate_DelegateToIt() {
+    queue.rollback()
+
+    verify(delegate).rollback()
+  }
+
+  @Test
+  fun size_GivenDelegate_DelegateToIt() {
+    delegate.stub {
+      on { size() } doReturn 42
+    }
+
+    val size = queue.size()
+
+    assertThat(size).isEqualTo(42)
+  }
+
   @Test
   fun getTotalSize_GivenDelegate_DelegateToIt() {
     delegate.stub {
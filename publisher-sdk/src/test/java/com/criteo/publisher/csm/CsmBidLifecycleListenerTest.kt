@@ -17,9 +17,9 @@
 package com.criteo.publisher.csm
 
 import com.criteo.publisher.Clock
-import com.criteo.publisher.bid.UniqueIdGenerator
 import com.criteo.publisher.model.*
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.BuildConfigWrapper
 import com.nhaarman.mockitokotlin2.*
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
@@ -30,6 +30,7 @@ import java.io.IOException
 import java.io.InterruptedIOException
 import java.net.SocketTimeoutException
 import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
 
 class CsmBidLifecycleListenerTest {
 
@@ -43,10 +44,13 @@ class CsmBidLifecycleListenerTest {
   private lateinit var clock: Clock
 
   @Mock
-  private lateinit var uniqueIdGenerator: UniqueIdGenerator
+  private lateinit var config: Config
 
   @Mock
-  private lateinit var config: Config
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var scheduledExecutor: ScheduledExecutorService
 
   private lateinit var executor: Executor
 
@@ -66,9 +70,10 @@ class CsmBidLifecycleListenerTest {
         repository,
         sendingQueueProducer,
         clock,
-        uniqueIdGenerator,
         config,
-        executor
+        executor,
+        scheduledExecutor,
+        buildConfigWrapper
     )
   }
 
@@ -82,17 +87,28 @@ class CsmBidLifecycleListenerTest {
   }
 
   @Test
-  fun onSdkInitialized_PushAllMetricsInQueue() {
+  fun onSdkInitialized_GivenStoredMetrics_PushThemInQueueOnceBidsAreServed() {
+    repository.stub {
+      on { allStoredIds } doReturn listOf("id1", "id2")
+    }
+    buildConfigWrapper.stub {
+      on { csmRecoveryPageSize } doReturn 10
+    }
+
     listener.onSdkInitialized()
 
-    verify(sendingQueueProducer).pushAllInQueue(repository)
+    verify(sendingQueueProducer, never()).pushAllInQueue(any(), any())
+
+    listener.onCdbCallFailed(givenCdbRequestWithSlots(), IOException())
+
+    verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id1", "id2"))
   }
 
   @Test
   fun onCdbCallStarted_GivenDeactivatedFeature_DoNothing() {
     givenDeactivatedFeature()
 
-    listener.onCdbCallStarted(mock())
+    listener.onCdbCallStarted(mock(), "myRequestId")
 
     verifyFeatureIsDeactivated()
   }
@@ -107,11 +123,7 @@ class CsmBidLifecycleListenerTest {
       on { currentTimeInMillis } doReturn 42
     }
 
-    uniqueIdGenerator.stub {
-      on { generateId() } doReturn "myRequestId"
-    }
-
-    listener.onCdbCallStarted(request)
+    listener.onCdbCallStarted(request, "myRequestId")
 
     assertRepositoryIsUpdatedByIds("id1", "id2") {
       verify(it).setCdbCallStartTimestamp(42)
@@ -313,6 +325,47 @@ class CsmBidLifecycleListenerTest {
     verify(sendingQueueProducer).pushInQueue(repository, "id")
   }
 
+  @Test
+  fun onCdbCallFinished_GivenStartedCallNotWrittenYet_UpdateEachMetricOnce() {
+    val pendingTasks = mutableListOf<Runnable>()
+    listener = CsmBidLifecycleListener(
+        repository,
+        sendingQueueProducer,
+        clock,
+        config,
+        Executor { pendingTasks.add(it) },
+        scheduledExecutor,
+        buildConfigWrapper
+    )
+
+    val request = givenCdbRequestWithSlots("id1", "id2")
+    val response = mock<CdbResponse>() {
+      on { getSlotByImpressionId(any()) } doReturn null
+    }
+
+    clock.stub {
+      on { currentTimeInMillis }.doReturn(42, 1337)
+    }
+
+    listener.onCdbCallStarted(request, "myRequestId")
+    listener.onCdbCallFinished(request, response)
+
+    assertThat(pendingTasks).hasSize(1)
+    verifyZeroInteractions(repository)
+
+    pendingTasks.single().run()
+
+    assertRepositoryIsUpdatedByIds("id1", "id2") {
+      verify(it).setRequestGroupId("myRequestId")
+      verify(it).setCdbCallStartTimestamp(42)
+      verify(it).setCdbCallEndTimestamp(1337)
+      verify(it).setReadyToSend(true)
+    }
+
+    verify(sendingQueueProducer).pushInQueue(repository, "id1")
+    verify(sendingQueueProducer).pushInQueue(repository, "id2")
+  }
+
   @Test
   fun onBidConsumed_GivenBidWithoutImpressionId_DoNothing() {
     val adUnit = CacheAdUnit(AdSize(1, 2), "myAdUnit", CRITEO_BANNER)
@@ -409,7 +462,6 @@ class CsmBidLifecycleListenerTest {
   private fun verifyFeatureIsDeactivated() {
     verifyZeroInteractions(repository)
     verifyZeroInteractions(clock)
-    verifyZeroInteractions(uniqueIdGenerator)
     verifyZeroInteractions(sendingQueueProducer)
   }
 
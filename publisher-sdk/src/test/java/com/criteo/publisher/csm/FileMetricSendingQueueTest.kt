@@ -0,0 +1,403 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.criteo.publisher.mock.SpyBean
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+import java.io.File
+import java.io.IOException
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executors
+import javax.inject.Inject
+
+class FileMetricSendingQueueTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  @SpyBean
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Inject
+  private lateinit var metricParser: MetricParser
+
+  @Mock
+  private lateinit var queueFileFactory: MetricQueueFileFactory
+
+  private lateinit var file: File
+
+  private lateinit var queue: FileMetricSendingQueue
+
+  @Before
+  fun setUp() {
+    MockitoAnnotations.initMocks(this)
+
+    file = File(tempFolder.root, "queue")
+    givenNewQueue()
+  }
+
+  @Test
+  fun getTotalSize_GivenNewQueue_ReturnHeaderSize() {
+    val size = queue.totalSize
+
+    assertThat(size).isEqualTo(MetricQueueFile.HEADER_LENGTH)
+  }
+
+  @Test
+  fun getTotalSize_AfterFewOperations_ReturnSizeGreaterThanEstimation() {
+    val estimatedSizePerMetric = 20
+
+    (0 until 1000).forEach {
+      queue.offer(mockMetric(it))
+    }
+
+    queue.poll(1000)
+
+    (0 until 200).forEach {
+      queue.offer(mockMetric(it))
+    }
+
+    // Since the queue is persistent, we should still find the metrics that were previously saved
+    givenNewQueue()
+
+    val size = queue.totalSize
+
+    assertThat(size).isGreaterThan(estimatedSizePerMetric * 200)
+  }
+
+  @Test
+  fun getTotalSize_AfterOperations_DoNotOpenQueueAgain() {
+    queue.offer(mockMetric())
+    queue.poll(1)
+    queue.totalSize
+    queue.totalSize
+
+    verify(queueFileFactory, times(1)).create()
+  }
+
+  @Test
+  fun size_GivenReservedAndPolledMetrics_CountRemainingOnes() {
+    queue.offer(mockMetric(1))
+    queue.offer(mockMetric(2))
+    queue.offer(mockMetric(3))
+
+    queue.poll(1)
+    queue.peek(1)
+
+    assertThat(queue.size()).isEqualTo(2)
+  }
+
+  @Test
+  fun offer_GivenSerializationError_ReturnFalse() {
+    givenDeactivatedPreconditionUtils()
+    val parser = spy(metricParser)
+    doThrow(IOException::class).whenever(parser).write(any(), any())
+    queue = FileMetricSendingQueue(queueFileFactory, parser)
+
+    val isOffered = queue.offer(mockMetric())
+
+    assertThat(isOffered).isFalse()
+    assertThat(queue.poll(1)).isEmpty()
+  }
+
+  @Test
+  fun offer_GivenErrorWhileAddingMetric_ReturnFalse() {
+    givenDeactivatedPreconditionUtils()
+    val queueFile = mock<MetricQueueFile> {
+      on { add(any()) } doThrow IOException::class
+    }
+    doReturn(queueFile).whenever(queueFileFactory).create()
+    queue = FileMetricSendingQueue(queueFileFactory, metricParser)
+
+    val isOffered = queue.offer(mockMetric())
+
+    assertThat(isOffered).isFalse()
+  }
+
+  @Test
+  fun poll_AfterAnOfferOperation_ReturnOfferedMetric() {
+    val metric = mockMetric()
+
+    queue.offer(metric)
+    val metrics = queue.poll(1)
+
+    assertThat(metrics).containsExactly(metric)
+  }
+
+  @Test
+  fun poll_GivenEmptyQueue_ReturnEmptyList() {
+    val metrics = queue.poll(10)
+
+    assertThat(metrics).isEmpty()
+  }
+
+  @Test
+  fun poll_GivenZeroMaxElement_ReturnEmptyList() {
+    val metrics = queue.poll(0)
+
+    assertThat(metrics).isEmpty()
+    verifyZeroInteractions(queueFileFactory)
+  }
+
+  @Test
+  fun poll_GivenQueueWithEnoughCapacity_ReturnListWithFullSize() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+    val metric3 = mockMetric(3)
+
+    queue.offer(metric1)
+    queue.offer(metric2)
+    queue.offer(metric3)
+
+    assertThat(queue.poll(2)).containsExactly(metric1, metric2)
+    assertThat(queue.poll(2)).containsExactly(metric3)
+    assertThat(queue.totalSize).isEqualTo(MetricQueueFile.HEADER_LENGTH)
+  }
+
+  @Test
+  fun poll_GivenQueueRecreated_ReturnPreviouslyOfferedMetrics() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+
+    queue.offer(metric1)
+    queue.offer(metric2)
+
+    givenNewQueue()
+
+    val metrics = queue.poll(2)
+
+    assertThat(metrics).containsExactly(metric1, metric2)
+  }
+
+  @Test
+  fun poll_GivenUnreadableElements_DropThemAndReturnOthers() {
+    val metric1 = Metric.builder("id1").build()
+    val metric2 = Metric.builder("id2").build()
+    val queueFile = MetricQueueFile.open(file, 1024)
+    doReturn(queueFile).whenever(queueFileFactory).create()
+
+    queue.offer(metric1)
+    queueFile.add(ByteArray(42))
+    queueFile.add(ByteArray(0))
+    queue.offer(metric2)
+
+    val metrics = queue.poll(4)
+
+    assertThat(metrics).containsExactly(metric1, metric2)
+    assertThat(queue.poll(4)).isEmpty()
+  }
+
+  @Test
+  fun peek_GivenOfferedMetrics_ReturnThemWithoutRemovingThem() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+    queue.offer(metric1)
+    queue.offer(metric2)
+
+    val metrics = queue.peek(1)
+
+    assertThat(metrics).containsExactly(metric1)
+    assertThat(queue.poll(2)).containsExactly(metric1, metric2)
+  }
+
+  @Test
+  fun peek_GivenReservedBatch_ReturnEmptyList() {
+    queue.offer(mockMetric(1))
+    queue.offer(mockMetric(2))
+
+    queue.peek(1)
+    val metrics = queue.peek(1)
+
+    assertThat(metrics).isEmpty()
+  }
+
+  @Test
+  fun peek_GivenEmptyQueue_DoNotReserveAnything() {
+    val metric = mockMetric()
+
+    queue.peek(1)
+    queue.offer(metric)
+
+    assertThat(queue.peek(1)).containsExactly(metric)
+  }
+
+  @Test
+  fun peek_GivenOnlyUnreadableElements_DropThem() {
+    val queueFile = MetricQueueFile.open(file, 1024)
+    doReturn(queueFile).whenever(queueFileFactory).create()
+    val metric = mockMetric()
+
+    queueFile.add(ByteArray(42))
+    queue.offer(metric)
+
+    assertThat(queue.peek(1)).isEmpty()
+    assertThat(queue.peek(1)).containsExactly(metric)
+  }
+
+  @Test
+  fun commit_GivenReservedBatch_RemoveIt() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+    val metric3 = mockMetric(3)
+    queue.offer(metric1)
+    queue.offer(metric2)
+    queue.offer(metric3)
+
+    queue.peek(2)
+    queue.commit()
+
+    assertThat(queue.peek(10)).containsExactly(metric3)
+  }
+
+  @Test
+  fun commit_GivenMetricsOfferedDuringReservation_RemoveOnlyReservedOnes() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+    queue.offer(metric1)
+
+    queue.peek(10)
+    queue.offer(metric2)
+    queue.commit()
+
+    assertThat(queue.peek(10)).containsExactly(metric2)
+  }
+
+  @Test
+  fun commit_GivenReservedMetricsPolledDuringReservation_DoNotRemoveThemTwice() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+    val metric3 = mockMetric(3)
+    queue.offer(metric1)
+    queue.offer(metric2)
+    queue.offer(metric3)
+
+    queue.peek(2)
+    queue.poll(1)
+    queue.commit()
+
+    assertThat(queue.peek(10)).containsExactly(metric3)
+  }
+
+  @Test
+  fun commit_GivenNoReservation_DoNothing() {
+    val metric = mockMetric()
+    queue.offer(metric)
+
+    queue.commit()
+
+    assertThat(queue.peek(10)).containsExactly(metric)
+  }
+
+  @Test
+  fun rollback_GivenReservedBatch_KeepItForNextPeek() {
+    val metric1 = mockMetric(1)
+    val metric2 = mockMetric(2)
+    queue.offer(metric1)
+    queue.offer(metric2)
+
+    queue.peek(1)
+    queue.rollback()
+
+    assertThat(queue.peek(10)).containsExactly(metric1, metric2)
+  }
+
+  @Test
+  fun peek_GivenQueueRecreatedBeforeCommit_ReturnReservedMetricsAgain() {
+    val metric = mockMetric()
+    queue.offer(metric)
+
+    queue.peek(1)
+    givenNewQueue()
+
+    assertThat(queue.peek(1)).containsExactly(metric)
+  }
+
+  @Test
+  fun poll_GivenManyWorkersInParallel_ShouldNotProduceDuplicate() {
+    for (id in 0 until 2000) {
+      val metric = mockMetric(id)
+      queue.offer(metric)
+    }
+
+    val polledMetric = Collections.newSetFromMap(ConcurrentHashMap<Metric, Boolean>())
+
+    val nbWorkers = 10
+    val executor = Executors.newFixedThreadPool(nbWorkers)
+    val allAreReadyToWork = CyclicBarrier(nbWorkers)
+    val allAreDone = CountDownLatch(nbWorkers)
+
+    for (i in 0 until nbWorkers) {
+      executor.execute {
+        allAreReadyToWork.await()
+        val metrics = queue.poll(100)
+        polledMetric.addAll(metrics)
+        allAreDone.countDown()
+      }
+    }
+
+    allAreDone.await()
+
+    assertThat(polledMetric).hasSize(100 * nbWorkers)
+  }
+
+  @Test
+  fun offer_GivenInMemoryQueue_PollOfferedMetrics() {
+    doReturn(MetricQueueFile.inMemory(1024)).whenever(queueFileFactory).create()
+    queue = FileMetricSendingQueue(queueFileFactory, metricParser)
+    val metric = mockMetric()
+
+    queue.offer(metric)
+
+    assertThat(queue.poll(1)).containsExactly(metric)
+  }
+
+  private fun givenNewQueue() {
+    doAnswer { MetricQueueFile.open(file, 1024 * 1024) }.whenever(queueFileFactory).create()
+    queue = FileMetricSendingQueue(queueFileFactory, metricParser)
+  }
+
+  private fun givenDeactivatedPreconditionUtils() {
+    buildConfigWrapper.stub {
+      on { preconditionThrowsOnException() } doReturn false
+    }
+  }
+
+  private fun mockMetric(id: Int = 1): Metric {
+    return Metric.builder("id$id")
+        .setCdbCallStartTimestamp(42L)
+        .setCdbCallEndTimestamp(1337L)
+        .setElapsedTimestamp(1024L)
+        .build()
+  }
+}
@@ -0,0 +1,369 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.mock.MockedDependenciesRule
+import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+
+class LogMetricRepositoryUnitTest {
+
+  @Rule
+  @JvmField
+  val mockedDependenciesRule = MockedDependenciesRule()
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  @Inject
+  private lateinit var parser: MetricParser
+
+  private lateinit var directory: File
+
+  private lateinit var repository: LogMetricRepository
+
+  @Before
+  fun setUp() {
+    directory = tempFolder.newFolder()
+    givenNewRepository()
+  }
+
+  @Test
+  fun moveById_GivenUnknownMetric_DoNotCallMover() {
+    val mover = mock<MetricMover>()
+
+    repository.moveById("id", mover)
+
+    verifyZeroInteractions(mover)
+    assertThat(repository.contains("id")).isFalse()
+  }
+
+  @Test
+  fun moveById_GivenSuccessfulMoveThenRestart_MetricIsNotRecovered() {
+    repository.addOrUpdateById("id1") { it.setCdbCallStartTimestamp(1L) }
+    repository.addOrUpdateById("id2") { it.setCdbCallStartTimestamp(2L) }
+
+    repository.moveById("id1") { true }
+    givenNewRepository()
+
+    assertThat(repository.contains("id1")).isFalse()
+    assertThat(repository.allStoredMetrics).containsExactly(
+        Metric.builder("id2").setCdbCallStartTimestamp(2L).build()
+    )
+  }
+
+  @Test
+  fun moveById_GivenRejectedMoveThenRestart_MetricIsRecovered() {
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+
+    repository.moveById("id") { false }
+    givenNewRepository()
+
+    assertThat(repository.allStoredMetrics).containsExactly(
+        Metric.builder("id").setCdbCallStartTimestamp(1L).build()
+    )
+  }
+
+  @Test
+  fun moveById_GivenMoverThrowing_RollbackMetric() {
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+
+    try {
+      repository.moveById("id") { throw IllegalStateException() }
+    } catch (ignored: IllegalStateException) {
+    }
+
+    assertThat(repository.contains("id")).isTrue()
+  }
+
+  @Test
+  fun moveById_GivenSuccessfulMoves_RemoveMetricsFromIndex() {
+    repository.addOrUpdateById("id1") { it.setCdbCallStartTimestamp(1L) }
+    repository.addOrUpdateById("id2") { it.setCdbCallStartTimestamp(2L) }
+
+    repository.moveById("id1") { true }
+    repository.moveById("id2") { false }
+
+    assertThat(repository.indexSize).isEqualTo(1)
+    assertThat(repository.allStoredIds).containsExactly("id2")
+
+    givenNewRepository()
+
+    assertThat(repository.allStoredIds).containsExactly("id2")
+    assertThat(repository.indexSize).isEqualTo(1)
+  }
+
+  @Test
+  fun addOrUpdateById_GivenMovedMetric_StoreItAgain() {
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+    repository.moveById("id") { true }
+
+    repository.addOrUpdateById("id") { it.setCdbCallEndTimestamp(2L) }
+
+    assertThat(repository.contains("id")).isTrue()
+    assertThat(repository.allStoredMetrics).containsExactly(
+        Metric.builder("id").setCdbCallEndTimestamp(2L).build()
+    )
+  }
+
+  @Test
+  fun addOrUpdateById_GivenTornLastUpdateAfterCrash_RecoverPreviousVersion() {
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+    repository.addOrUpdateById("id") { it.setCdbCallEndTimestamp(2L) }
+
+    val segmentFile = directory.listFiles()!!.single()
+    RandomAccessFile(segmentFile, "rw").use { it.setLength(segmentFile.length() - 1) }
+    givenNewRepository()
+
+    assertThat(repository.allStoredMetrics).containsExactly(
+        Metric.builder("id").setCdbCallStartTimestamp(1L).build()
+    )
+  }
+
+  @Test
+  fun addOrUpdateById_GivenManyUpdates_CompactLogAndKeepLatestVersions() {
+    for (i in 1L..2000L) {
+      repository.addOrUpdateById("id${i % 10}") { it.setCdbCallStartTimestamp(i) }
+    }
+    repository.moveById("id0") { true }
+
+    val sizeOnDisk = directory.listFiles()!!.map { it.length() }.sum()
+    assertThat(sizeOnDisk).isLessThan(100 * 1024L)
+
+    givenNewRepository()
+
+    assertThat(repository.allStoredMetrics).containsExactlyInAnyOrderElementsOf((1..9).map {
+      Metric.builder("id$it").setCdbCallStartTimestamp(1990L + it).build()
+    })
+  }
+
+  @Test
+  fun getTotalSize_GivenStaleVersions_OnlyCountLiveMetrics() {
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+    val sizeOfOneMetric = repository.totalSize
+
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(2L) }
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(3L) }
+
+    assertThat(repository.totalSize).isEqualTo(sizeOfOneMetric)
+
+    repository.moveById("id") { true }
+
+    assertThat(repository.totalSize).isZero()
+  }
+
+  @Test
+  fun getTotalSize_GivenRestart_RebuildSameSize() {
+    for (i in 1..10) {
+      repository.addOrUpdateById("id$i") { it.setCdbCallStartTimestamp(i.toLong()) }
+    }
+    repository.addOrUpdateById("id1") { it.setCdbCallEndTimestamp(42L) }
+    repository.moveById("id2") { true }
+    val sizeBeforeRestart = repository.totalSize
+
+    givenNewRepository()
+
+    assertThat(repository.totalSize).isEqualTo(sizeBeforeRestart)
+    assertThat(repository.contains("id1")).isTrue()
+    assertThat(repository.contains("id2")).isFalse()
+  }
+
+  @Test
+  fun getTotalSize_AfterCompactions_OnlyCountLatestVersions() {
+    for (i in 1L..2000L) {
+      repository.addOrUpdateById("id${i % 10}") { it.setCdbCallStartTimestamp(i) }
+    }
+
+    val freshRepository = LogMetricRepository(tempFolder.newFolder(), parser)
+    for (i in 1991L..2000L) {
+      freshRepository.addOrUpdateById("id${i % 10}") { it.setCdbCallStartTimestamp(i) }
+    }
+
+    assertThat(repository.totalSize).isEqualTo(freshRepository.totalSize)
+  }
+
+  @Test
+  fun getTotalSize_GivenAppendInProgress_DoNotWaitForIt() {
+    val log = spy(MetricLog(directory, 32 * 1024))
+    repository = LogMetricRepository(log, parser, 0, null, null)
+    repository.addOrUpdateById("id1") { it.setCdbCallStartTimestamp(1L) }
+    val sizeBeforeAppend = repository.totalSize
+
+    val isAppending = CountDownLatch(1)
+    val endOfAppend = CountDownLatch(1)
+    doAnswer {
+      isAppending.countDown()
+      endOfAppend.await()
+      it.callRealMethod()
+    }.whenever(log).append(any(), any(), any())
+
+    val writer = Executors.newSingleThreadExecutor()
+    val reader = Executors.newSingleThreadExecutor()
+    try {
+      writer.execute {
+        repository.addOrUpdateById("id2") { it.setCdbCallStartTimestamp(2L) }
+      }
+      assertThat(isAppending.await(1, TimeUnit.SECONDS)).isTrue()
+
+      val sizeDuringAppend = reader.submit<Int> { repository.totalSize }
+      val containsDuringAppend = reader.submit<Boolean> { repository.contains("id1") }
+
+      assertThat(sizeDuringAppend.get(1, TimeUnit.SECONDS)).isEqualTo(sizeBeforeAppend)
+      assertThat(containsDuringAppend.get(1, TimeUnit.SECONDS)).isTrue()
+    } finally {
+      endOfAppend.countDown()
+      writer.shutdown()
+      reader.shutdown()
+    }
+  }
+
+  @Test
+  fun getAllStoredIds_GivenRestart_ListStoredAndPendingMetricsWithoutReadingThem() {
+    repository.addOrUpdateById("id1") { it.setCdbCallStartTimestamp(1L) }
+    repository.addOrUpdateById("id2") { it.setCdbCallStartTimestamp(2L) }
+    repository.moveById("id2") { true }
+    givenNewWriteBehindRepository(mock())
+    repository.addOrUpdateById("id3") { it.setCdbCallStartTimestamp(3L) }
+
+    // Corrupt the payload of the stored metric: it should not be read
+    val segmentFile = directory.listFiles()!!.single()
+    RandomAccessFile(segmentFile, "rw").use {
+      it.seek(20)
+      it.write(0xFF)
+    }
+
+    assertThat(repository.allStoredIds).containsExactlyInAnyOrder("id1", "id3")
+  }
+
+  @Test
+  fun getAllStoredMetrics_GivenLegacyMetricFiles_MigrateThemIntoLog() {
+    val metric1 = Metric.builder("id1").setCdbCallStartTimestamp(1L).build()
+    val metric2 = Metric.builder("id2").setCdbCallStartTimestamp(2L).build()
+    val legacyFile1 = File(directory, "id1.csm")
+    val legacyFile2 = File(directory, "id2.csm")
+    val legacyBackupFile2 = File(directory, "id2.csm.bak")
+    legacyFile1.writeText("""{"impressionId": "id1", "cdbCallStartTimestamp": 1}""")
+    legacyFile2.writeText("{ interrupted")
+    legacyBackupFile2.writeText("""{"impressionId": "id2", "cdbCallStartTimestamp": 2}""")
+
+    givenNewRepository()
+
+    assertThat(repository.allStoredMetrics).containsExactlyInAnyOrder(metric1, metric2)
+    assertThat(legacyFile1).doesNotExist()
+    assertThat(legacyFile2).doesNotExist()
+    assertThat(legacyBackupFile2).doesNotExist()
+
+    givenNewRepository()
+
+    assertThat(repository.allStoredMetrics).containsExactlyInAnyOrder(metric1, metric2)
+  }
+
+  @Test
+  fun addOrUpdateById_GivenWriteBehind_KeepUpdatesInMemoryUntilFlush() {
+    val scheduledExecutor = mock<ScheduledExecutorService>()
+    givenNewWriteBehindRepository(scheduledExecutor)
+
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+    repository.addOrUpdateById("id") { it.setCdbCallEndTimestamp(2L) }
+
+    val metric = Metric.builder("id")
+        .setCdbCallStartTimestamp(1L)
+        .setCdbCallEndTimestamp(2L)
+        .build()
+    assertThat(repository.contains("id")).isTrue()
+    assertThat(repository.allStoredMetrics).containsExactly(metric)
+    assertThat(repository.totalSize).isPositive()
+    assertThat(LogMetricRepository(directory, parser).allStoredMetrics).isEmpty()
+
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutor).schedule(capture(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+      firstValue.run()
+    }
+
+    assertThat(LogMetricRepository(directory, parser).allStoredMetrics).containsExactly(metric)
+  }
+
+  @Test
+  fun addOrUpdateById_GivenWriteBehindAndReadyToSendMetric_WriteItRightAway() {
+    val scheduledExecutor = mock<ScheduledExecutorService>()
+    givenNewWriteBehindRepository(scheduledExecutor)
+
+    repository.addOrUpdateById("id") { it.setReadyToSend(true) }
+
+    verifyZeroInteractions(scheduledExecutor)
+    assertThat(LogMetricRepository(directory, parser).allStoredMetrics).containsExactly(
+        Metric.builder("id").setReadyToSend(true).build()
+    )
+  }
+
+  @Test
+  fun onApplicationStopped_GivenWriteBehind_FlushPendingUpdates() {
+    givenNewWriteBehindRepository(mock())
+
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+    repository.onApplicationStopped()
+
+    assertThat(LogMetricRepository(directory, parser).allStoredMetrics).containsExactly(
+        Metric.builder("id").setCdbCallStartTimestamp(1L).build()
+    )
+  }
+
+  @Test
+  fun moveById_GivenWriteBehindAndPendingMetric_MoveItWithoutWritingIt() {
+    givenNewWriteBehindRepository(mock())
+    val mover = mock<MetricMover> {
+      on { offerToDestination(any()) } doReturn true
+    }
+
+    repository.addOrUpdateById("id") { it.setCdbCallStartTimestamp(1L) }
+    repository.moveById("id", mover)
+    repository.flush()
+
+    verify(mover).offerToDestination(Metric.builder("id").setCdbCallStartTimestamp(1L).build())
+    assertThat(repository.contains("id")).isFalse()
+    assertThat(repository.totalSize).isZero()
+    assertThat(directory.listFiles()!!.map { it.length() }.sum()).isZero()
+  }
+
+  private fun givenNewRepository() {
+    repository = LogMetricRepository(directory, parser)
+  }
+
+  private fun givenNewWriteBehindRepository(scheduledExecutor: ScheduledExecutorService) {
+    repository = LogMetricRepository(
+        directory,
+        parser,
+        1000L,
+        Executor { it.run() },
+        scheduledExecutor
+    )
+  }
+
+}
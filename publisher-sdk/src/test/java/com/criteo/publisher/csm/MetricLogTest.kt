@@ -0,0 +1,223 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.csm.MetricLog.Location
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+
+class MetricLogTest {
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  private lateinit var directory: File
+
+  private lateinit var log: MetricLog
+
+  @Before
+  fun setUp() {
+    directory = tempFolder.newFolder()
+    log = givenNewLog()
+  }
+
+  @Test
+  fun recover_GivenEmptyDirectory_VisitNothing() {
+    assertThat(recoverRecords()).isEmpty()
+    assertThat(log.size).isZero()
+  }
+
+  @Test
+  fun recover_GivenAppendedRecords_VisitThemInOrder() {
+    val put1 = log.append(MetricLog.TYPE_PUT, "id1", "payload1".toByteArray())
+    val put2 = log.append(MetricLog.TYPE_PUT, "id2", "payload2".toByteArray())
+    val delete1 = log.appendDelete("id1")
+
+    log = givenNewLog()
+    val records = recoverRecords()
+
+    assertThat(records.map { Triple(it.type, it.impressionId, it.length) }).containsExactly(
+        Triple(MetricLog.TYPE_PUT, "id1", put1.length),
+        Triple(MetricLog.TYPE_PUT, "id2", put2.length),
+        Triple(MetricLog.TYPE_DELETE, "id1", delete1.length)
+    )
+    assertThat(log.size).isEqualTo((put1.length + put2.length + delete1.length).toLong())
+  }
+
+  @Test
+  fun readPayload_GivenAppendedRecord_ReturnItsPayload() {
+    log.append(MetricLog.TYPE_PUT, "id1", "payload1".toByteArray())
+    val location = log.append(MetricLog.TYPE_PUT, "id2", "payload2".toByteArray())
+
+    assertThat(log.readPayload(location)).hasContent("payload2")
+  }
+
+  @Test
+  fun readPayload_GivenRecoveredRecord_ReturnItsPayload() {
+    log.append(MetricLog.TYPE_PUT, "id", "payload".toByteArray())
+
+    log = givenNewLog()
+    val location = recoverRecords().single().location
+
+    assertThat(log.readPayload(location)).hasContent("payload")
+  }
+
+  @Test
+  fun recover_GivenTornLastRecord_TruncateItAndKeepPreviousRecords() {
+    val put1 = log.append(MetricLog.TYPE_PUT, "id1", "payload1".toByteArray())
+    log.append(MetricLog.TYPE_PUT, "id2", "payload2".toByteArray())
+    val segmentFile = directory.listFiles()!!.single()
+    RandomAccessFile(segmentFile, "rw").use { it.setLength(segmentFile.length() - 3) }
+
+    log = givenNewLog()
+    val records = recoverRecords()
+
+    assertThat(records.map { it.impressionId }).containsExactly("id1")
+    assertThat(segmentFile.length()).isEqualTo(put1.length.toLong())
+
+    log.append(MetricLog.TYPE_PUT, "id3", "payload3".toByteArray())
+    log = givenNewLog()
+
+    assertThat(recoverImpressionIds()).containsExactly("id1", "id3")
+  }
+
+  @Test
+  fun recover_GivenCorruptedRecord_TruncateItAndFollowingRecords() {
+    val put1 = log.append(MetricLog.TYPE_PUT, "id1", "payload1".toByteArray())
+    log.append(MetricLog.TYPE_PUT, "id2", "payload2".toByteArray())
+    log.append(MetricLog.TYPE_PUT, "id3", "payload3".toByteArray())
+    val segmentFile = directory.listFiles()!!.single()
+    RandomAccessFile(segmentFile, "rw").use {
+      it.seek(put1.length + 12L)
+      it.write('X'.toInt())
+    }
+
+    log = givenNewLog()
+    val records = recoverRecords()
+
+    assertThat(records.map { it.impressionId }).containsExactly("id1")
+    assertThat(segmentFile.length()).isEqualTo(put1.length.toLong())
+  }
+
+  @Test
+  fun readPayload_GivenCorruptedRecord_ThrowIOException() {
+    val location = log.append(MetricLog.TYPE_PUT, "id", "payload".toByteArray())
+    val segmentFile = directory.listFiles()!!.single()
+    RandomAccessFile(segmentFile, "rw").use {
+      it.seek(location.length - 1L)
+      it.write('X'.toInt())
+    }
+
+    assertThatCode {
+      log.readPayload(location)
+    }.isInstanceOf(IOException::class.java)
+  }
+
+  @Test
+  fun append_GivenFullSegment_StartANewOne() {
+    log = givenNewLog(maxSegmentSize = 64)
+    recoverRecords()
+
+    for (i in 0 until 10) {
+      log.append(MetricLog.TYPE_PUT, "id$i", "payload$i".toByteArray())
+    }
+
+    assertThat(directory.listFiles()!!.size).isGreaterThan(1)
+    assertThat(directory.listFiles()!!).allSatisfy {
+      assertThat(it.length()).isLessThanOrEqualTo(64)
+    }
+
+    log = givenNewLog(maxSegmentSize = 64)
+
+    assertThat(recoverImpressionIds())
+        .containsExactlyElementsOf((0 until 10).map { "id$it" })
+  }
+
+  @Test
+  fun compact_GivenLiveRecords_RewriteThemAndDeleteOldSegments() {
+    log = givenNewLog(maxSegmentSize = 64)
+    recoverRecords()
+
+    val liveLocations = mutableListOf<Location>()
+    for (i in 0 until 10) {
+      log.append(MetricLog.TYPE_PUT, "id$i", "stale$i".toByteArray())
+      if (i % 3 == 0) {
+        liveLocations += log.append(MetricLog.TYPE_PUT, "id$i", "live$i".toByteArray())
+      } else {
+        log.appendDelete("id$i")
+      }
+    }
+    val oldSegmentFiles = directory.listFiles()!!.toList()
+
+    val newLocations = log.compact(liveLocations)
+
+    assertThat(oldSegmentFiles).noneMatch { it.exists() }
+    assertThat(newLocations.map { log.readPayload(it).reader().readText() })
+        .containsExactly("live0", "live3", "live6", "live9")
+    assertThat(log.size).isEqualTo(newLocations.sumBy { it.length }.toLong())
+    assertThatCode {
+      log.readPayload(liveLocations[0])
+    }.isInstanceOf(IOException::class.java)
+
+    log = givenNewLog(maxSegmentSize = 64)
+
+    assertThat(recoverRecords()).allMatch { it.type == MetricLog.TYPE_PUT }
+    assertThat(recoverImpressionIds()).containsExactly("id0", "id3", "id6", "id9")
+  }
+
+  @Test
+  fun compact_ThenAppend_AppendAfterCompactedRecords() {
+    val location = log.append(MetricLog.TYPE_PUT, "id1", "payload1".toByteArray())
+    log.appendDelete("id2")
+
+    log.compact(listOf(location))
+    log.append(MetricLog.TYPE_PUT, "id3", "payload3".toByteArray())
+    log = givenNewLog()
+
+    assertThat(recoverImpressionIds()).containsExactly("id1", "id3")
+  }
+
+  private fun givenNewLog(maxSegmentSize: Int = 1024): MetricLog {
+    return MetricLog(directory, maxSegmentSize)
+  }
+
+  private fun recoverRecords(): List<Record> {
+    val records = mutableListOf<Record>()
+    log.recover { type, impressionId, location ->
+      records += Record(type, impressionId, location, location.length)
+    }
+    return records
+  }
+
+  private fun recoverImpressionIds() = recoverRecords().map { it.impressionId }
+
+  private data class Record(
+      val type: Byte,
+      val impressionId: String,
+      val location: Location,
+      val length: Int
+  )
+
+}
@@ -66,13 +66,13 @@ class MetricParserTest {
   }
 
   @Test
-  fun read_GivenJsonFromWrite_ReturnEqualMetric() {
+  fun read_GivenBinaryFromWrite_ReturnEqualMetric() {
     val expectedMetric = Metric.builder("impId")
         .setCdbCallStartTimestamp(42L)
         .build()
 
-    val json = parser.writeIntoString(expectedMetric)
-    val readMetric = parser.read(json.toInputStream())
+    val bytes = parser.writeIntoBytes(expectedMetric)
+    val readMetric = parser.read(bytes.inputStream())
 
     assertThat(readMetric).isEqualTo(expectedMetric)
   }
@@ -87,43 +87,110 @@ class MetricParserTest {
   }
 
   @Test
-  fun write_GivenObjectFullySet_ReturnJson() {
-    val metric = Metric.builder("impId")
+  fun read_GivenLegacyJsonOfObjectFullySet_ReturnEqualMetric() {
+    val json = """{
+      "cdbCallStartTimestamp": 42,
+      "cdbCallEndTimestamp": 1337,
+      "cdbCallTimeout": true,
+      "cachedBidUsed": true,
+      "elapsedTimestamp": 2,
+      "impressionId": "impId",
+      "requestGroupId": "requestId",
+      "profileId": 235,
+      "readyToSend": true
+    }""".trimIndent()
+
+    val metric = parser.read(json.toInputStream())
+
+    assertThat(metric).isEqualTo(Metric.builder("impId")
         .setCdbCallStartTimestamp(42L)
         .setCdbCallEndTimestamp(1337L)
         .setCdbCallTimeout(true)
         .setCachedBidUsed(true)
         .setElapsedTimestamp(2L)
         .setRequestGroupId("requestId")
+        .setProfileId(235)
+        .setReadyToSend(true)
+        .build())
+  }
+
+  @Test
+  fun read_GivenBinaryFromWriteOfObjectFullySet_ReturnEqualMetric() {
+    val metric = Metric.builder("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c")
+        .setCdbCallStartTimestamp(1594800000000L)
+        .setCdbCallEndTimestamp(1594800000120L)
+        .setCdbCallTimeout(true)
+        .setCachedBidUsed(true)
+        .setElapsedTimestamp(1594799999000L)
+        .setRequestGroupId("requestId")
+        .setProfileId(-1)
         .setReadyToSend(true)
         .build()
 
-    val json = parser.writeIntoString(metric)
+    val readMetric = parser.read(parser.writeIntoBytes(metric).inputStream())
 
-    assertThat(json).isEqualToIgnoringWhitespace("""{
-      "cdbCallStartTimestamp": 42,
-      "cdbCallEndTimestamp": 1337,
-      "cdbCallTimeout": true,
-      "cachedBidUsed": true,
-      "elapsedTimestamp": 2,
-      "impressionId": "impId",
-      "requestGroupId": "requestId",
-      "readyToSend": true
-    }""".trimIndent())
+    assertThat(readMetric).isEqualTo(metric)
   }
 
   @Test
-  fun write_GivenEmptyObject_ReturnEmptyJson() {
+  fun read_GivenBinaryFromWriteOfEmptyObject_ReturnEqualMetric() {
     val metric = Metric.builder("impId").build()
 
-    val json = parser.writeIntoString(metric)
+    val readMetric = parser.read(parser.writeIntoBytes(metric).inputStream())
 
-    assertThat(json).isEqualToIgnoringWhitespace("""{
-      "cdbCallTimeout": false,
-      "cachedBidUsed": false,
-      "impressionId": "impId",
-      "readyToSend": false
-    }""".trimIndent())
+    assertThat(readMetric).isEqualTo(metric)
+  }
+
+  @Test
+  fun read_GivenBinaryWithTimestampsButNoStart_ReturnEqualMetric() {
+    val metric = Metric.builder("impId")
+        .setCdbCallEndTimestamp(1594800000120L)
+        .setElapsedTimestamp(Long.MAX_VALUE)
+        .build()
+
+    val readMetric = parser.read(parser.writeIntoBytes(metric).inputStream())
+
+    assertThat(readMetric).isEqualTo(metric)
+  }
+
+  @Test
+  fun read_GivenIdsNotInLowercaseHex_ReturnThemAsIs() {
+    val metric = Metric.builder("5F0E3C2A9B1D4E7F8A6C0B2D4E6F8A1C")
+        .setRequestGroupId("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1z")
+        .build()
+
+    val readMetric = parser.read(parser.writeIntoBytes(metric).inputStream())
+
+    assertThat(readMetric).isEqualTo(metric)
+  }
+
+  @Test
+  fun read_GivenTruncatedBinary_ThrowEOF() {
+    val metric = Metric.builder("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c")
+        .setCdbCallStartTimestamp(1594800000000L)
+        .build()
+    val bytes = parser.writeIntoBytes(metric)
+
+    assertThatCode {
+      parser.read(bytes.copyOf(bytes.size - 1).inputStream())
+    }.isInstanceOf(EOFException::class.java)
+  }
+
+  @Test
+  fun write_GivenHexIdsAndCloseTimestamps_WriteThemCompactly() {
+    val metric = Metric.builder("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1c")
+        .setRequestGroupId("5f0e3c2a9b1d4e7f8a6c0b2d4e6f8a1d")
+        .setProfileId(235)
+        .setCdbCallStartTimestamp(1594800000000L)
+        .setCdbCallEndTimestamp(1594800000120L)
+        .setElapsedTimestamp(1594800004200L)
+        .setReadyToSend(true)
+        .build()
+
+    val bytes = parser.writeIntoBytes(metric)
+
+    // version + flags + 2 * (type + 16 bytes) + 6 bytes + 2 bytes + 2 bytes + 2 bytes
+    assertThat(bytes).hasSize(2 + 2 * 17 + 6 + 2 + 2 + 2)
   }
 
   @Test
@@ -155,10 +222,10 @@ class MetricParserTest {
     return ByteArrayInputStream(toByteArray(Charsets.UTF_8))
   }
 
-  private fun MetricParser.writeIntoString(metric: Metric): String {
+  private fun MetricParser.writeIntoBytes(metric: Metric): ByteArray {
     with(ByteArrayOutputStream()) {
-      this@writeIntoString.write(metric, this)
-      return String(toByteArray(), Charsets.UTF_8)
+      this@writeIntoBytes.write(metric, this)
+      return toByteArray()
     }
   }
 
@@ -0,0 +1,249 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+
+class MetricQueueFileTest {
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  private lateinit var file: File
+
+  private lateinit var queueFile: MetricQueueFile
+
+  @Before
+  fun setUp() {
+    file = File(tempFolder.root, "queue")
+    queueFile = MetricQueueFile.open(file, 64)
+  }
+
+  @Test
+  fun open_GivenNewFile_CreateEmptyQueueWithFixedLength() {
+    assertThat(queueFile.size()).isZero()
+    assertThat(queueFile.usedBytes).isEqualTo(MetricQueueFile.HEADER_LENGTH)
+    assertThat(file).hasSize(MetricQueueFile.HEADER_LENGTH + 64L)
+    assertThat(MetricQueueFile.isEmptyOrQueueFile(file)).isTrue()
+  }
+
+  @Test
+  fun peek_GivenAddedElements_ReturnThemInOrderWithoutRemovingThem() {
+    queueFile.add("first".toByteArray())
+    queueFile.add("second".toByteArray())
+    queueFile.add("third".toByteArray())
+
+    assertThat(queueFile.peek(2).map { String(it) }).containsExactly("first", "second")
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first", "second", "third")
+    assertThat(queueFile.size()).isEqualTo(3)
+  }
+
+  @Test
+  fun remove_GivenCount_RemoveElementsFromHead() {
+    queueFile.add("first".toByteArray())
+    queueFile.add("second".toByteArray())
+    queueFile.add("third".toByteArray())
+
+    queueFile.remove(2)
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("third")
+    assertThat(queueFile.usedBytes).isEqualTo(MetricQueueFile.HEADER_LENGTH + 8 + 5)
+  }
+
+  @Test
+  fun getUsedBytes_GivenElements_CountThemWithTheirLength() {
+    queueFile.add(ByteArray(10))
+    queueFile.add(ByteArray(0))
+
+    assertThat(queueFile.usedBytes).isEqualTo(MetricQueueFile.HEADER_LENGTH + 8 + 10 + 8)
+  }
+
+  @Test
+  fun add_GivenElementsWrappingAroundTheEnd_ReadThemBack() {
+    queueFile.add("element0".toByteArray())
+    for (i in 1 until 20) {
+      queueFile.add("element$i".toByteArray())
+      assertThat(queueFile.peek(1).map { String(it) }).containsExactly("element${i - 1}")
+      queueFile.remove(1)
+    }
+
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(2).map { String(it) }).containsExactly("element19")
+  }
+
+  @Test
+  fun add_GivenNotEnoughRoom_EvictOldestElements() {
+    queueFile.add(ByteArray(20) { 1 })
+    queueFile.add(ByteArray(20) { 2 })
+    queueFile.add(ByteArray(20) { 3 })
+
+    assertThat(queueFile.size()).isEqualTo(2)
+    assertThat(queueFile.peek(2).map { it[0] }).containsExactly(2, 3)
+
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(2).map { it[0] }).containsExactly(2, 3)
+  }
+
+  @Test
+  fun add_GivenElementBiggerThanCapacity_ThrowAndKeepQueue() {
+    queueFile.add("first".toByteArray())
+
+    assertThatCode {
+      queueFile.add(ByteArray(57))
+    }.isInstanceOf(IOException::class.java)
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first")
+  }
+
+  @Test
+  fun open_GivenExistingQueue_RestoreElementsAndSize() {
+    queueFile.add("first".toByteArray())
+    queueFile.add("second".toByteArray())
+    queueFile.remove(1)
+    val usedBytes = queueFile.usedBytes
+
+    queueFile = reopen()
+
+    assertThat(queueFile.usedBytes).isEqualTo(usedBytes)
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("second")
+  }
+
+  @Test
+  fun open_GivenDataWrittenButNotItsHeader_IgnoreIt() {
+    queueFile.add("first".toByteArray())
+    val header = ByteArray(MetricQueueFile.HEADER_LENGTH)
+    RandomAccessFile(file, "r").use { it.readFully(header) }
+
+    queueFile.add("second".toByteArray())
+    RandomAccessFile(file, "rw").use { it.write(header) }
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first")
+  }
+
+  @Test
+  fun open_GivenCorruptedElement_SkipItAndKeepOthers() {
+    queueFile.add("first".toByteArray())
+    queueFile.add("second".toByteArray())
+    queueFile.add("third".toByteArray())
+    RandomAccessFile(file, "rw").use {
+      it.seek(MetricQueueFile.HEADER_LENGTH + 13L + 8)
+      it.write("X".toByteArray())
+    }
+
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first", "third")
+    assertThat(queueFile.usedBytes).isEqualTo(MetricQueueFile.HEADER_LENGTH + 13 + 13)
+
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first", "third")
+  }
+
+  @Test
+  fun open_GivenCorruptedElementLength_KeepPreviousElements() {
+    queueFile.add("first".toByteArray())
+    queueFile.add("second".toByteArray())
+    queueFile.add("third".toByteArray())
+    RandomAccessFile(file, "rw").use {
+      it.seek(MetricQueueFile.HEADER_LENGTH + 13L)
+      it.writeInt(1000)
+    }
+
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first")
+  }
+
+  @Test
+  fun open_GivenCorruptedElementLengthNearMaxInt_KeepPreviousElements() {
+    queueFile.add("first".toByteArray())
+    queueFile.add("second".toByteArray())
+    RandomAccessFile(file, "rw").use {
+      it.seek(MetricQueueFile.HEADER_LENGTH + 13L)
+      it.writeInt(0x7FFFFFFC)
+    }
+
+    queueFile = reopen()
+
+    assertThat(queueFile.peek(10).map { String(it) }).containsExactly("first")
+  }
+
+  @Test
+  fun getRemovedCount_GivenRemovedAndEvictedElements_CountThem() {
+    queueFile.add(ByteArray(20))
+    queueFile.add(ByteArray(20))
+    queueFile.remove(1)
+    queueFile.add(ByteArray(20))
+    queueFile.add(ByteArray(20))
+
+    assertThat(queueFile.removedCount).isEqualTo(2)
+    assertThat(queueFile.size()).isEqualTo(2)
+  }
+
+  @Test
+  fun open_GivenCorruptedHeader_ThrowIOException() {
+    queueFile.add("first".toByteArray())
+    RandomAccessFile(file, "rw").use {
+      it.seek(12)
+      it.writeInt(1000)
+    }
+
+    assertThatCode {
+      reopen()
+    }.isInstanceOf(IOException::class.java)
+  }
+
+  @Test
+  fun isEmptyOrQueueFile_GivenOtherContent_ReturnFalse() {
+    val otherFile = tempFolder.newFile()
+    otherFile.writeBytes(ByteArray(32) { 42 })
+
+    assertThat(MetricQueueFile.isEmptyOrQueueFile(otherFile)).isFalse()
+  }
+
+  @Test
+  fun inMemory_GivenOperations_BehaveLikeFileQueue() {
+    queueFile = MetricQueueFile.inMemory(64)
+
+    queueFile.add(ByteArray(20) { 1 })
+    queueFile.add(ByteArray(20) { 2 })
+    queueFile.add(ByteArray(20) { 3 })
+    queueFile.remove(1)
+
+    assertThat(queueFile.peek(10).map { it[0] }).containsExactly(3)
+    assertThat(queueFile.usedBytes).isEqualTo(MetricQueueFile.HEADER_LENGTH + 28)
+  }
+
+  private fun reopen(): MetricQueueFile {
+    queueFile.close()
+    return MetricQueueFile.open(file, 64)
+  }
+
+}
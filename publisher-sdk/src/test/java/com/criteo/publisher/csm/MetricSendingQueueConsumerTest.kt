@@ -16,6 +16,7 @@
 
 package com.criteo.publisher.csm
 
+import com.criteo.publisher.Clock
 import com.criteo.publisher.concurrent.DirectMockExecutor
 import com.criteo.publisher.integration.Integration.FALLBACK
 import com.criteo.publisher.mock.MockedDependenciesRule
@@ -24,12 +25,17 @@ import com.criteo.publisher.model.Config
 import com.criteo.publisher.network.PubSdkApi
 import com.criteo.publisher.util.BuildConfigWrapper
 import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
 import org.mockito.Mock
 import org.mockito.MockitoAnnotations
 import java.io.IOException
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class MetricSendingQueueConsumerTest {
 
@@ -49,6 +55,9 @@ class MetricSendingQueueConsumerTest {
   @SpyBean
   private lateinit var config: Config
 
+  @Mock
+  private lateinit var clock: Clock
+
   private val executor = DirectMockExecutor()
 
   private lateinit var consumer: MetricSendingQueueConsumer
@@ -66,6 +75,7 @@ class MetricSendingQueueConsumerTest {
         api,
         buildConfigWrapper,
         config,
+        clock,
         executor
     )
   }
@@ -98,12 +108,12 @@ class MetricSendingQueueConsumerTest {
   }
 
   @Test
-  fun sendMetricBatch_GivenSomeMetricsAndIOException_RollbackMetrics() {
+  fun sendMetricBatch_GivenSomeMetricsAndIOException_RollbackBatch() {
     val metric1 = Metric.builder("id1").build()
     val metric2 = Metric.builder("id2").build()
 
     queue.stub {
-      on { poll(any()) } doReturn listOf(metric1, metric2)
+      on { peek(any()) } doReturn listOf(metric1, metric2)
     }
 
     api.stub {
@@ -112,8 +122,9 @@ class MetricSendingQueueConsumerTest {
 
     consumer.sendMetricBatch()
 
-    verify(queue).offer(metric1)
-    verify(queue).offer(metric2)
+    verify(queue).rollback()
+    verify(queue, never()).commit()
+    verify(queue, never()).offer(any())
   }
 
   @Test
@@ -123,7 +134,7 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf()
+      on { peek(42) } doReturn listOf()
     }
 
     consumer.sendMetricBatch()
@@ -142,7 +153,7 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf(metric1, metric2)
+      on { peek(42) } doReturn listOf(metric1, metric2)
     }
 
     val expectedRequest = MetricRequest.create(
@@ -154,6 +165,9 @@ class MetricSendingQueueConsumerTest {
     consumer.sendMetricBatch()
 
     verify(api).postCsm(expectedRequest)
+    verify(queue).commit()
+    verify(queue, never()).rollback()
+    verify(queue, never()).offer(any())
   }
 
   @Test
@@ -169,19 +183,43 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf(metric1, metric2, metric3, metric4)
+      on { peek(42) } doReturn listOf(metric1, metric2, metric3, metric4)
     }
 
     doNothing().doThrow(IOException::class.java).whenever(api).postCsm(any())
 
     consumer.sendMetricBatch()
 
+    verify(queue).commit()
     verify(queue, never()).offer(metric1)
     verify(queue).offer(metric2)
     verify(queue, never()).offer(metric3)
     verify(queue).offer(metric4)
   }
 
+  @Test
+  fun sendMetricBatch_GivenFirstProfileFailing_StillSendOtherProfilesAndResendOnlyFailedOnes() {
+    val metric1 = Metric.builder("id1").setProfileId(1337).build()
+    val metric2 = Metric.builder("id2").build()
+    val metric3 = Metric.builder("id3").setProfileId(1337).build()
+    val metric4 = Metric.builder("id4").build()
+
+    queue.stub {
+      on { peek(any()) } doReturn listOf(metric1, metric2, metric3, metric4)
+    }
+
+    doThrow(IOException::class).doNothing().whenever(api).postCsm(any())
+
+    consumer.sendMetricBatch()
+
+    verify(api, times(2)).postCsm(any())
+    verify(queue).commit()
+    verify(queue).offer(metric1)
+    verify(queue, never()).offer(metric2)
+    verify(queue).offer(metric3)
+    verify(queue, never()).offer(metric4)
+  }
+
   @Test
   fun sendMetricBatch_GivenOneProfileIdSentButExceptionAfter_RollbackOnlyRemainingMetrics() {
     val metric1 = Metric.builder("id1").build()
@@ -195,7 +233,7 @@ class MetricSendingQueueConsumerTest {
     }
 
     queue.stub {
-      on { poll(42) } doReturn listOf(metric1, metric2, metric3, metric4)
+      on { peek(42) } doReturn listOf(metric1, metric2, metric3, metric4)
     }
 
     val expectedRequest1 = MetricRequest.create(
@@ -220,7 +258,7 @@ class MetricSendingQueueConsumerTest {
   @Test
   fun sendMetricBatch_GivenExecutor_CallApiInExecutor() {
     queue.stub {
-      on { poll(any()) } doReturn listOf(Metric.builder("id1").build())
+      on { peek(any()) } doReturn listOf(Metric.builder("id1").build())
     }
 
     doAnswer {
@@ -233,4 +271,139 @@ class MetricSendingQueueConsumerTest {
     executor.verifyExpectations()
   }
 
-}
\ No newline at end of file
+  @Test
+  fun sendAllMetricBatches_GivenDeactivatedFeature_DoNothing() {
+    config.stub {
+      on { isCsmEnabled } doReturn false
+    }
+
+    consumer.sendAllMetricBatches()
+
+    verifyZeroInteractions(queue)
+    verifyZeroInteractions(api)
+  }
+
+  @Test
+  fun sendAllMetricBatches_GivenManyMetrics_SendThemBatchAfterBatch() {
+    buildConfigWrapper.stub {
+      on { csmBatchSize } doReturn 2
+    }
+
+    queue.stub {
+      on { size() } doReturn 5
+      on { peek(2) }.doReturn(
+          listOf(Metric.builder("id1").build(), Metric.builder("id2").build()),
+          listOf(Metric.builder("id3").build(), Metric.builder("id4").build()),
+          listOf(Metric.builder("id5").build())
+      )
+    }
+
+    consumer.sendAllMetricBatches()
+
+    verify(api, times(3)).postCsm(any())
+    verify(queue, times(3)).commit()
+  }
+
+  @Test
+  fun sendAllMetricBatches_GivenFailingBatch_StopAndReturnItsCounters() {
+    buildConfigWrapper.stub {
+      on { csmBatchSize } doReturn 2
+    }
+
+    queue.stub {
+      on { size() } doReturn 4
+      on { peek(2) } doReturn listOf(Metric.builder("id1").build())
+    }
+
+    api.stub {
+      on { postCsm(any()) } doThrow IOException::class
+    }
+
+    val results = consumer.sendAllMetricBatches()
+
+    assertThat(results).hasSize(1)
+    assertThat(results[0].isSuccess).isFalse()
+    assertThat(results[0].failedMetricCount).isEqualTo(1)
+    verify(api, times(1)).postCsm(any())
+    verify(queue).rollback()
+  }
+
+  @Test
+  fun sendAllMetricBatches_GivenOneProfileFailing_ReturnCountersOfBatch() {
+    val metric1 = Metric.builder("id1").setProfileId(1).build()
+    val metric2 = Metric.builder("id2").setProfileId(2).build()
+    val metric3 = Metric.builder("id3").setProfileId(2).build()
+
+    queue.stub {
+      on { size() } doReturn 3
+      on { peek(any()) } doReturn listOf(metric1, metric2, metric3)
+    }
+
+    clock.stub {
+      on { currentTimeInMillis }.doReturn(0, 10, 30, 50, 55, 60)
+    }
+
+    doThrow(IOException::class).doNothing().whenever(api).postCsm(any())
+
+    val results = consumer.sendAllMetricBatches()
+
+    assertThat(results).hasSize(1)
+    with(results[0]) {
+      assertThat(successfulRequestCount).isEqualTo(1)
+      assertThat(failedRequestCount).isEqualTo(1)
+      assertThat(sentMetricCount).isEqualTo(2)
+      assertThat(failedMetricCount).isEqualTo(1)
+      assertThat(maxRequestLatencyInMillis).isEqualTo(20)
+      assertThat(durationInMillis).isEqualTo(60)
+    }
+  }
+
+  @Test
+  fun sendAllMetricBatches_GivenManyProfiles_SendThemConcurrentlyUpToLimit() {
+    val profileCount = 4
+    val maxParallelRequests = 2
+
+    buildConfigWrapper.stub {
+      on { csmMaxParallelRequests } doReturn maxParallelRequests
+    }
+
+    queue.stub {
+      on { size() } doReturn profileCount
+      on { peek(any()) } doReturn (1..profileCount).map {
+        Metric.builder("id$it").setProfileId(it).build()
+      }
+    }
+
+    val runningRequests = AtomicInteger()
+    val maxRunningRequests = AtomicInteger()
+    val allParallelRequestsStarted = CyclicBarrier(maxParallelRequests)
+    doAnswer {
+      maxRunningRequests.accumulateAndGet(runningRequests.incrementAndGet()) { a, b -> maxOf(a, b) }
+      allParallelRequestsStarted.await(1, TimeUnit.SECONDS)
+      runningRequests.decrementAndGet()
+    }.whenever(api).postCsm(any())
+
+    val threadPool = Executors.newFixedThreadPool(profileCount)
+    try {
+      consumer = MetricSendingQueueConsumer(
+          queue,
+          api,
+          buildConfigWrapper,
+          config,
+          clock,
+          threadPool
+      )
+
+      val results = consumer.sendAllMetricBatches()
+
+      assertThat(results).hasSize(1)
+      assertThat(results[0].successfulRequestCount).isEqualTo(profileCount)
+      assertThat(maxRunningRequests.get()).isEqualTo(maxParallelRequests)
+      verify(queue).commit()
+      verify(queue, never()).offer(any())
+    } finally {
+      threadPool.shutdownNow()
+    }
+  }
+
+}
@@ -31,13 +31,16 @@ class MetricSendingQueueProducerTest {
   @Mock
   private lateinit var queue: MetricSendingQueue
 
+  @Mock
+  private lateinit var uploadScheduler: MetricUploadScheduler
+
   private lateinit var producer: MetricSendingQueueProducer
 
   @Before
   fun setUp() {
     MockitoAnnotations.initMocks(this)
 
-    producer = MetricSendingQueueProducer(queue)
+    producer = MetricSendingQueueProducer(queue, uploadScheduler)
   }
 
   @Test
@@ -52,9 +55,33 @@ class MetricSendingQueueProducerTest {
 
     givenMetricInRepository(metric1, metric2)
 
-    producer.pushAllInQueue(repository)
+    producer.pushAllInQueue(repository, listOf("id1", "id2"))
 
     assertOnlyThoseMetricsAreMoved(metric1, metric2)
+    verify(uploadScheduler).onMetricQueued()
+  }
+
+  @Test
+  fun pushAllInQueue_GivenNoMetric_NotifyScheduler() {
+    givenMetricInRepository()
+
+    producer.pushAllInQueue(repository, listOf())
+
+    verify(uploadScheduler).onMetricQueued()
+  }
+
+  @Test
+  fun pushAllInQueue_GivenSomeIds_MoveOnlyMetricsMatchingIdsAndNotifySchedulerOnce() {
+    val shouldNotBeSent = Metric.builder("id1").build()
+    val shouldBeSent1 = Metric.builder("id2").build()
+    val shouldBeSent2 = Metric.builder("id3").build()
+
+    givenMetricInRepository(shouldNotBeSent, shouldBeSent1, shouldBeSent2)
+
+    producer.pushAllInQueue(repository, listOf("id2", "id3", "unknown"))
+
+    assertOnlyThoseMetricsAreMoved(shouldBeSent1, shouldBeSent2)
+    verify(uploadScheduler, times(1)).onMetricQueued()
   }
 
   @Test
@@ -67,6 +94,7 @@ class MetricSendingQueueProducerTest {
     producer.pushInQueue(repository, "id2")
 
     assertOnlyThoseMetricsAreMoved(shouldBeSent)
+    verify(uploadScheduler).onMetricQueued()
   }
 
   private fun givenMetricInRepository(vararg metrics: Metric) {
@@ -0,0 +1,197 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.csm.MetricRepository.MetricUpdater
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatCode
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class MetricUpdateBatcherTest {
+
+  @Mock
+  private lateinit var repository: MetricRepository
+
+  @Mock
+  private lateinit var sendingQueueProducer: MetricSendingQueueProducer
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private val pendingTasks = mutableListOf<Runnable>()
+
+  @Mock
+  private lateinit var executor: Executor
+
+  private val scheduledTasks = mutableListOf<Runnable>()
+
+  @Mock
+  private lateinit var scheduledExecutor: ScheduledExecutorService
+
+  private lateinit var batcher: MetricUpdateBatcher
+
+  @Before
+  fun setUp() {
+    MockitoAnnotations.initMocks(this)
+
+    doAnswer {
+      pendingTasks.add(it.getArgument(0))
+    }.whenever(executor).execute(any())
+
+    doAnswer {
+      scheduledTasks.add(it.getArgument(0))
+      null
+    }.whenever(scheduledExecutor).schedule(any<Runnable>(), any(), any())
+
+    batcher = MetricUpdateBatcher(
+        repository,
+        sendingQueueProducer,
+        executor,
+        scheduledExecutor,
+        buildConfigWrapper
+    )
+  }
+
+  @Test
+  fun update_GivenManyUpdates_ExecuteASingleDrain() {
+    batcher.update("id1", mock(), false)
+    batcher.update("id2", mock(), false)
+    batcher.update("id1", mock(), true)
+
+    assertThat(pendingTasks).hasSize(1)
+    verifyZeroInteractions(repository)
+  }
+
+  @Test
+  fun update_GivenUpdatesOfSameMetric_ApplyThemInOrderInASingleWrite() {
+    val updater1 = mock<MetricUpdater>()
+    val updater2 = mock<MetricUpdater>()
+    val updater3 = mock<MetricUpdater>()
+
+    batcher.update("id1", updater1, false)
+    batcher.update("id2", updater2, false)
+    batcher.update("id1", updater3, true)
+    runPendingTasks()
+
+    val builder = mock<Metric.Builder>()
+    argumentCaptor<MetricUpdater> {
+      verify(repository).addOrUpdateById(eq("id1"), capture())
+      firstValue.update(builder)
+    }
+
+    inOrder(updater1, updater3) {
+      verify(updater1).update(builder)
+      verify(updater3).update(builder)
+    }
+    verify(updater2, never()).update(builder)
+    verify(repository).addOrUpdateById(eq("id2"), any())
+    verify(sendingQueueProducer).pushInQueue(repository, "id1")
+    verifyNoMoreInteractions(sendingQueueProducer)
+  }
+
+  @Test
+  fun update_GivenBatchingWindow_ScheduleDrainAtEndOfWindowWithoutHoldingExecutor() {
+    buildConfigWrapper.stub {
+      on { csmEventBatchingWindowInMillis } doReturn 50
+    }
+
+    batcher.update("id1", mock(), false)
+    batcher.update("id2", mock(), false)
+
+    verify(scheduledExecutor).schedule(any<Runnable>(), eq(50L), eq(TimeUnit.MILLISECONDS))
+    assertThat(scheduledTasks).hasSize(1)
+    assertThat(pendingTasks).isEmpty()
+
+    scheduledTasks.single().run()
+    runPendingTasks()
+
+    verify(repository).addOrUpdateById(eq("id1"), any())
+    verify(repository).addOrUpdateById(eq("id2"), any())
+  }
+
+  @Test
+  fun update_GivenBatchingWindowAndDrainCouldNotBeExecuted_ScheduleOnNextUpdate() {
+    buildConfigWrapper.stub {
+      on { csmEventBatchingWindowInMillis } doReturn 50
+    }
+    doThrow(RejectedExecutionException::class)
+        .doAnswer { pendingTasks.add(it.getArgument(0)) }
+        .whenever(executor).execute(any())
+
+    batcher.update("id1", mock(), false)
+    assertThatCode {
+      scheduledTasks.removeAt(0).run()
+    }.hasRootCauseInstanceOf(RejectedExecutionException::class.java)
+
+    batcher.update("id2", mock(), false)
+    scheduledTasks.removeAt(0).run()
+    runPendingTasks()
+
+    argumentCaptor<String> {
+      verify(repository, times(2)).addOrUpdateById(capture(), any())
+      assertThat(allValues).containsExactly("id1", "id2")
+    }
+  }
+
+  @Test
+  fun update_GivenUpdateDuringDrain_ExecuteAnotherDrain() {
+    doAnswer {
+      batcher.update("id2", mock(), false)
+    }.whenever(repository).addOrUpdateById(eq("id1"), any())
+
+    batcher.update("id1", mock(), false)
+    runPendingTasks()
+
+    verify(executor, times(2)).execute(any())
+    verify(repository).addOrUpdateById(eq("id2"), any())
+  }
+
+  @Test
+  fun update_GivenDrainCouldNotBeExecuted_ThrowAndExecuteOnNextUpdate() {
+    doThrow(RejectedExecutionException::class)
+        .doAnswer { pendingTasks.add(it.getArgument(0)) }
+        .whenever(executor).execute(any())
+
+    assertThatCode {
+      batcher.update("id1", mock(), false)
+    }.isInstanceOf(RejectedExecutionException::class.java)
+
+    batcher.update("id2", mock(), false)
+    runPendingTasks()
+
+    argumentCaptor<String> {
+      verify(repository, times(2)).addOrUpdateById(capture(), any())
+      assertThat(allValues).containsExactly("id1", "id2")
+    }
+  }
+
+  private fun runPendingTasks() {
+    while (pendingTasks.isNotEmpty()) {
+      pendingTasks.removeAt(0).run()
+    }
+  }
+
+}
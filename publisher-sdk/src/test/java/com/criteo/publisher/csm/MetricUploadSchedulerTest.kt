@@ -0,0 +1,323 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.model.Config
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.*
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class MetricUploadSchedulerTest {
+
+  @Mock
+  private lateinit var queue: MetricSendingQueue
+
+  @Mock
+  private lateinit var consumer: MetricSendingQueueConsumer
+
+  @Mock
+  private lateinit var config: Config
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var scheduledExecutor: ScheduledExecutorService
+
+  @Mock
+  private lateinit var scheduledFuture: ScheduledFuture<*>
+
+  private val executor = Executor { it.run() }
+
+  private var now = 0L
+
+  private lateinit var scheduler: MetricUploadScheduler
+
+  @Before
+  fun setUp() {
+    MockitoAnnotations.initMocks(this)
+
+    config.stub {
+      on { isCsmEnabled } doReturn true
+      on { isKillSwitchEnabled } doReturn false
+    }
+
+    clock.stub {
+      on { currentTimeInMillis } doAnswer { now }
+    }
+
+    buildConfigWrapper.stub {
+      on { csmUploadQueueDepth } doReturn 10
+      on { csmUploadMaxDelayInMillis } doReturn 1000
+      on { csmUploadMinBackoffInMillis } doReturn 100
+      on { csmUploadMaxBackoffInMillis } doReturn 300
+    }
+
+    doReturn(scheduledFuture).whenever(scheduledExecutor).schedule(any(), any(), any())
+    doReturn(listOf<MetricBatchResult>()).whenever(consumer).sendAllMetricBatches()
+
+    scheduler = MetricUploadScheduler(
+        queue,
+        consumer,
+        config,
+        clock,
+        buildConfigWrapper,
+        executor,
+        scheduledExecutor
+    )
+  }
+
+  @Test
+  fun onMetricQueued_GivenEmptyQueue_DoNothing() {
+    givenQueueSize(0)
+
+    scheduler.onMetricQueued()
+
+    verifyZeroInteractions(consumer)
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun onMetricQueued_GivenFewMetricsInForeground_WaitMaxDelayBeforeUploading() {
+    givenQueueSize(1)
+    now = 42
+
+    scheduler.onMetricQueued()
+
+    verifyZeroInteractions(consumer)
+    verify(scheduledExecutor).schedule(any(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun onMetricQueued_GivenPendingWakeUp_DoNotScheduleAnotherOne() {
+    givenQueueSize(1)
+    scheduler.onMetricQueued()
+
+    givenQueueSize(2)
+    now = 500
+    scheduler.onMetricQueued()
+
+    verifyZeroInteractions(consumer)
+    verify(scheduledExecutor, times(1)).schedule(any(), any(), any())
+  }
+
+  @Test
+  fun onMetricQueued_GivenMaxDelayElapsed_UploadOnWakeUp() {
+    givenQueueSize(1)
+    scheduler.onMetricQueued()
+
+    now = 1000
+    runScheduledWakeUp()
+
+    verify(consumer).sendAllMetricBatches()
+  }
+
+  @Test
+  fun onMetricQueued_GivenQueueDepthReached_UploadRightAway() {
+    givenQueueSize(10)
+    doAnswer {
+      givenQueueSize(0)
+      listOf(SUCCESSFUL_BATCH)
+    }.whenever(consumer).sendAllMetricBatches()
+
+    scheduler.onMetricQueued()
+
+    verify(consumer).sendAllMetricBatches()
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun onMetricQueued_GivenCsmDisabled_DoNothing() {
+    config.stub {
+      on { isCsmEnabled } doReturn false
+    }
+    givenQueueSize(10)
+
+    scheduler.onMetricQueued()
+
+    verifyZeroInteractions(consumer)
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun onMetricQueued_GivenKillSwitchEngaged_DoNothing() {
+    config.stub {
+      on { isKillSwitchEnabled } doReturn true
+    }
+    givenQueueSize(10)
+
+    scheduler.onMetricQueued()
+
+    verifyZeroInteractions(consumer)
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun onApplicationStopped_GivenPendingMetrics_UploadRightAway() {
+    givenQueueSize(1)
+    scheduler.onMetricQueued()
+
+    scheduler.onApplicationStopped()
+
+    verify(consumer).sendAllMetricBatches()
+    verify(scheduledFuture).cancel(false)
+  }
+
+  @Test
+  fun onApplicationStopped_GivenNoPendingMetric_DoNothing() {
+    givenQueueSize(0)
+
+    scheduler.onApplicationStopped()
+
+    verifyZeroInteractions(consumer)
+  }
+
+  @Test
+  fun onMetricQueued_GivenApplicationInBackground_UploadRightAway() {
+    scheduler.onApplicationStopped()
+    givenQueueSize(1)
+
+    scheduler.onMetricQueued()
+
+    verify(consumer).sendAllMetricBatches()
+  }
+
+  @Test
+  fun onApplicationStarted_GivenPendingMetrics_WaitMaxDelayAgain() {
+    scheduler.onApplicationStopped()
+    scheduler.onApplicationStarted()
+    givenQueueSize(1)
+
+    scheduler.onMetricQueued()
+
+    verifyZeroInteractions(consumer)
+    verify(scheduledExecutor).schedule(any(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  @Test
+  fun onMetricQueued_GivenPreviousUploadFailed_WaitBackoffBeforeUploading() {
+    givenFailingUploads()
+    givenQueueSize(10)
+
+    scheduler.onMetricQueued()
+    verify(consumer, times(1)).sendAllMetricBatches()
+
+    now = 10
+    scheduler.onMetricQueued()
+
+    verify(consumer, times(1)).sendAllMetricBatches()
+    verify(scheduledExecutor, times(1)).schedule(any(), eq(100L), eq(TimeUnit.MILLISECONDS))
+    verifyNoMoreInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun onMetricQueued_GivenConsecutiveFailures_DoubleBackoffUpToMax() {
+    givenFailingUploads()
+    givenQueueSize(10)
+
+    scheduler.onMetricQueued()
+    verify(scheduledExecutor).schedule(any(), eq(100L), eq(TimeUnit.MILLISECONDS))
+
+    now = 100
+    runScheduledWakeUp()
+    verify(scheduledExecutor).schedule(any(), eq(200L), eq(TimeUnit.MILLISECONDS))
+
+    now = 300
+    runScheduledWakeUp()
+    verify(scheduledExecutor).schedule(any(), eq(300L), eq(TimeUnit.MILLISECONDS))
+
+    verify(consumer, times(3)).sendAllMetricBatches()
+  }
+
+  @Test
+  fun onApplicationStopped_GivenBackoff_UploadAnyway() {
+    givenFailingUploads()
+    givenQueueSize(10)
+    scheduler.onMetricQueued()
+
+    scheduler.onApplicationStopped()
+
+    verify(consumer, times(2)).sendAllMetricBatches()
+  }
+
+  @Test
+  fun onMetricQueued_GivenSuccessfulUploadAfterFailure_ResetBackoff() {
+    doReturn(listOf(FAILED_BATCH), listOf(SUCCESSFUL_BATCH))
+        .whenever(consumer).sendAllMetricBatches()
+    givenQueueSize(10)
+    scheduler.onMetricQueued()
+
+    now = 100
+    givenQueueSize(0)
+    runScheduledWakeUp()
+    verify(consumer, times(1)).sendAllMetricBatches()
+
+    givenQueueSize(10)
+    scheduler.onMetricQueued()
+
+    verify(consumer, times(2)).sendAllMetricBatches()
+  }
+
+  @Test
+  fun onMetricQueued_GivenMetricsLeftAfterUpload_WaitMaxDelayFromUploadEnd() {
+    givenQueueSize(10)
+    doAnswer {
+      now = 50
+      givenQueueSize(1)
+      listOf(SUCCESSFUL_BATCH)
+    }.whenever(consumer).sendAllMetricBatches()
+
+    scheduler.onMetricQueued()
+
+    verify(consumer, times(1)).sendAllMetricBatches()
+    verify(scheduledExecutor).schedule(any(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+  }
+
+  private fun givenQueueSize(size: Int) {
+    queue.stub {
+      on { size() } doReturn size
+    }
+  }
+
+  private fun givenFailingUploads() {
+    doReturn(listOf(SUCCESSFUL_BATCH, FAILED_BATCH)).whenever(consumer).sendAllMetricBatches()
+  }
+
+  private fun runScheduledWakeUp() {
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutor, atLeastOnce()).schedule(capture(), any(), any())
+      lastValue.run()
+    }
+  }
+
+  private companion object {
+    val SUCCESSFUL_BATCH: MetricBatchResult = MetricBatchResult.create(1, 0, 2, 0, 10, 10)
+    val FAILED_BATCH: MetricBatchResult = MetricBatchResult.create(1, 1, 2, 1, 10, 10)
+  }
+
+}
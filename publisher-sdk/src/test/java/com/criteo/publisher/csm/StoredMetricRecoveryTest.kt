@@ -0,0 +1,195 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.criteo.publisher.csm
+
+import com.criteo.publisher.Clock
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+import java.util.LinkedList
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+class StoredMetricRecoveryTest {
+
+  @Mock
+  private lateinit var repository: MetricRepository
+
+  @Mock
+  private lateinit var sendingQueueProducer: MetricSendingQueueProducer
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var scheduledExecutor: ScheduledExecutorService
+
+  @Mock
+  private lateinit var scheduledFuture: ScheduledFuture<*>
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  private val pendingTasks = LinkedList<Runnable>()
+
+  private lateinit var recovery: StoredMetricRecovery
+
+  @Before
+  fun setUp() {
+    MockitoAnnotations.initMocks(this)
+
+    buildConfigWrapper.stub {
+      on { csmRecoveryPageSize } doReturn 2
+      on { csmRecoveryMaxDelayInMillis } doReturn 1000
+    }
+
+    doReturn(scheduledFuture).whenever(scheduledExecutor).schedule(any(), any(), any())
+
+    recovery = StoredMetricRecovery(
+        repository,
+        sendingQueueProducer,
+        clock,
+        Executor { pendingTasks.add(it) },
+        scheduledExecutor,
+        buildConfigWrapper
+    )
+  }
+
+  @Test
+  fun start_GivenNoStoredMetric_OnlyNotifyProducer() {
+    givenStoredIds()
+
+    recovery.start()
+    runPendingTasks()
+
+    verify(sendingQueueProducer).pushAllInQueue(repository, listOf())
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun start_GivenStoredMetrics_WaitForBidsThenMoveThemByPages() {
+    givenStoredIds("id1", "id2", "id3", "id4", "id5")
+
+    recovery.start()
+    runPendingTasks()
+
+    verify(sendingQueueProducer, never()).pushAllInQueue(any(), any())
+    verify(scheduledExecutor).schedule(any(), eq(1000L), eq(TimeUnit.MILLISECONDS))
+
+    recovery.onBidsServed()
+    verify(scheduledFuture).cancel(false)
+
+    runPendingTasks()
+
+    inOrder(sendingQueueProducer) {
+      verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id1", "id2"))
+      verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id3", "id4"))
+      verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id5"))
+      verifyNoMoreInteractions()
+    }
+  }
+
+  @Test
+  fun start_GivenTaskSubmittedDuringRecovery_RunItBetweenPages() {
+    givenStoredIds("id1", "id2", "id3")
+    val otherTask = mock<Runnable>()
+
+    recovery.start()
+    recovery.onBidsServed()
+    runPendingTasks(1)
+    pendingTasks.add(otherTask)
+
+    runPendingTasks(1)
+
+    verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id1", "id2"))
+    verifyZeroInteractions(otherTask)
+
+    runPendingTasks(1)
+
+    verify(otherTask).run()
+    verify(sendingQueueProducer, never()).pushAllInQueue(repository, listOf("id3"))
+
+    runPendingTasks()
+
+    verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id3"))
+  }
+
+  @Test
+  fun start_GivenBidsNeverServed_MoveMetricsAfterMaxDelay() {
+    givenStoredIds("id1")
+
+    recovery.start()
+    runPendingTasks()
+
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutor).schedule(capture(), any(), any())
+      firstValue.run()
+    }
+    runPendingTasks()
+
+    verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id1"))
+  }
+
+  @Test
+  fun start_GivenBidsServedBeforeListing_MoveMetricsRightAfterListing() {
+    givenStoredIds("id1")
+
+    recovery.onBidsServed()
+    recovery.start()
+    runPendingTasks()
+
+    verify(sendingQueueProducer).pushAllInQueue(repository, listOf("id1"))
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun start_GivenStoredMetrics_MoveThemAtMinPriority() {
+    givenStoredIds("id1")
+    var priorityDuringMove = -1
+    doAnswer {
+      priorityDuringMove = Thread.currentThread().priority
+    }.whenever(sendingQueueProducer).pushAllInQueue(any(), any())
+    val priorityBefore = Thread.currentThread().priority
+
+    recovery.onBidsServed()
+    recovery.start()
+    runPendingTasks()
+
+    assertThat(priorityDuringMove).isEqualTo(Thread.MIN_PRIORITY)
+    assertThat(Thread.currentThread().priority).isEqualTo(priorityBefore)
+  }
+
+  private fun givenStoredIds(vararg impressionIds: String) {
+    repository.stub {
+      on { allStoredIds } doReturn impressionIds.toList()
+    }
+  }
+
+  private fun runPendingTasks(limit: Int = Int.MAX_VALUE) {
+    var count = 0
+    while (count < limit && pendingTasks.isNotEmpty()) {
+      pendingTasks.poll()!!.run()
+      count++
+    }
+  }
+
+}
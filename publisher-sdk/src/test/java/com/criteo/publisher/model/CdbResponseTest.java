@@ -23,6 +23,11 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.criteo.publisher.DependencyProvider;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -104,6 +109,63 @@ public class CdbResponseTest {
     assertThat(cdbResponse.getSlots()).isEmpty();
   }
 
+  @Test
+  public void read_GivenLenientlyTypedValues_CoerceThemOrFallbackOnDefaults() throws Exception {
+    String json = "{\n"
+        + "  \"timeToNextCall\": \"30\",\n"
+        + "  \"slots\": [\n"
+        + "    {\n"
+        + "      \"placementId\": \"adUnit\",\n"
+        + "      \"cpm\": 1.5,\n"
+        + "      \"currency\": null,\n"
+        + "      \"width\": \"320\",\n"
+        + "      \"height\": 50.7,\n"
+        + "      \"ttl\": \"xyz\",\n"
+        + "      \"displayUrl\": {\"not\": \"a string\"},\n"
+        + "      \"unknown\": [1, 2, 3]\n"
+        + "    },\n"
+        + "    42,\n"
+        + "    null\n"
+        + "  ]\n"
+        + "}";
+
+    CdbResponse cdbResponse = readFromString(json);
+
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(30);
+    assertThat(cdbResponse.getSlots()).hasSize(1);
+
+    Slot slot = cdbResponse.getSlots().get(0);
+    assertThat(slot.getPlacementId()).isEqualTo("adUnit");
+    assertThat(slot.getCpm()).isEqualTo("1.5");
+    assertThat(slot.getCpmAsNumber()).isEqualTo(1.5);
+    assertThat(slot.getCurrency()).isNull();
+    assertThat(slot.getWidth()).isEqualTo(320);
+    assertThat(slot.getHeight()).isEqualTo(50);
+    assertThat(slot.getTtl()).isZero();
+    assertThat(slot.getDisplayUrl()).isNull();
+  }
+
+  @Test
+  public void read_GivenSlotWithoutCpm_DefaultToZeroCpm() throws Exception {
+    CdbResponse cdbResponse = readFromString("{\"slots\":[{\"placementId\":\"adUnit\"}]}");
+
+    assertThat(cdbResponse.getSlots()).hasSize(1);
+    assertThat(cdbResponse.getSlots().get(0).getCpm()).isEqualTo("0.0");
+  }
+
+  @Test
+  public void readAfterWrite_GivenResponse_ReturnSameResponse() throws Exception {
+    CdbResponse expected = CdbResponse.fromJson(this.cdbResponse);
+    JsonSerializer jsonSerializer = DependencyProvider.getInstance().provideJsonSerializer();
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    jsonSerializer.write(expected, output);
+    CdbResponse cdbResponse = readFromString(output.toString("UTF-8"));
+
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(expected.getTimeToNextCall());
+    assertThat(cdbResponse.getSlots()).containsExactlyElementsOf(expected.getSlots());
+  }
+
   @Test
   public void getSlotByImpressionId_GivenEmptySlots_ReturnNull() throws Exception {
     CdbResponse cdbResponse = new CdbResponse(emptyList(), 0);
@@ -141,4 +203,9 @@ public class CdbResponseTest {
     assertThat(cdbResponse.getSlotByImpressionId("id")).isEqualTo(slot3);
   }
 
+  private static CdbResponse readFromString(String json) throws IOException {
+    JsonSerializer jsonSerializer = DependencyProvider.getInstance().provideJsonSerializer();
+    return jsonSerializer.read(CdbResponse.class, new ByteArrayInputStream(json.getBytes()));
+  }
+
 }
@@ -188,6 +188,16 @@ public class ConfigTest {
     refreshConfig_assertItIsUnchanged(newConfig, Config::isCsmEnabled);
   }
 
+  @Test
+  public void refreshConfig_GivenMissingRequestCompressionEnabled_ItIsUnchanged() throws Exception {
+    givenNewConfig();
+
+    RemoteConfigResponse newConfig = givenFullNewPayload(config);
+    when(newConfig.getRequestCompressionEnabled()).thenReturn(null);
+
+    refreshConfig_assertItIsUnchanged(newConfig, Config::isRequestCompressionEnabled);
+  }
+
   private <T> void refreshConfig_assertItIsUnchanged(RemoteConfigResponse newConfig,
       Function<Config, T> projection) {
     T previousValue = projection.apply(config);
@@ -210,7 +220,8 @@ public class ConfigTest {
         null,
         "dataMacro",
         "dataMode",
-        false
+        false,
+        true
     );
 
     doAnswer(answerVoid((RemoteConfigResponse ignored, OutputStream outputStream) -> {
@@ -250,6 +261,7 @@ public class ConfigTest {
     String adTagDataMacro = config.getAdTagDataMacro();
     String adTagDataMode = config.getAdTagDataMode();
     boolean csmEnabled = config.isCsmEnabled();
+    boolean requestCompressionEnabled = config.isRequestCompressionEnabled();
 
     RemoteConfigResponse newConfig = givenFullNewPayload(config);
 
@@ -261,6 +273,7 @@ public class ConfigTest {
     assertEquals("new_" + adTagDataMacro, config.getAdTagDataMacro());
     assertEquals("new_" + adTagDataMode, config.getAdTagDataMode());
     assertEquals(!config.isCsmEnabled(), csmEnabled);
+    assertEquals(!config.isRequestCompressionEnabled(), requestCompressionEnabled);
   }
 
   private void givenNewConfig() {
@@ -275,6 +288,8 @@ public class ConfigTest {
     when(response.getAndroidAdTagDataMacro()).thenReturn("new_" + config.getAdTagDataMacro());
     when(response.getAndroidAdTagDataMode()).thenReturn("new_" + config.getAdTagDataMode());
     when(response.getCsmEnabled()).thenReturn(!config.isCsmEnabled());
+    when(response.getRequestCompressionEnabled())
+        .thenReturn(!config.isRequestCompressionEnabled());
     return response;
   }
 
@@ -295,6 +310,7 @@ public class ConfigTest {
         "<html><body style='text-align:center; margin:0px; padding:0px; horizontal-align:center;'><script>%%adTagData%%</script></body></html>",
         config.getAdTagDataMode());
     assertTrue(config.isCsmEnabled());
+    assertFalse(config.isRequestCompressionEnabled());
   }
 
 }
\ No newline at end of file
@@ -72,7 +72,8 @@ class RemoteConfigResponseTest {
       "AndroidAdTagUrlMode": "<html />",
       "AndroidAdTagDataMacro": "%%macroData%%",
       "AndroidAdTagDataMode": "<body />",
-      "csmEnabled": true
+      "csmEnabled": true,
+      "requestCompressionEnabled": true
     }""".trimIndent()
 
     val response = readFromString(json)
@@ -83,6 +84,7 @@ class RemoteConfigResponseTest {
     assertThat(response.androidAdTagDataMacro).isEqualTo("%%macroData%%")
     assertThat(response.androidAdTagDataMode).isEqualTo("<body />")
     assertThat(response.csmEnabled).isTrue()
+    assertThat(response.requestCompressionEnabled).isTrue()
   }
 
   @Test
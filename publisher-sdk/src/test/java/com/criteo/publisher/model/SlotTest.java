@@ -27,7 +27,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.criteo.publisher.Clock;
+import com.criteo.publisher.DependencyProvider;
 import com.criteo.publisher.model.nativeads.NativeAssets;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.ByteArrayInputStream;
 import java.util.List;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -194,7 +197,13 @@ public class SlotTest {
     JSONObject cdbSlot = cdbResponse.getJSONArray("slots").getJSONObject(0);
     Slot slot = new Slot(cdbSlot);
 
-    assertEquals(NativeAssets.fromJson(new JSONObject(nativeJson)), slot.getNativeAssets());
+    JsonSerializer jsonSerializer = DependencyProvider.getInstance().provideJsonSerializer();
+    NativeAssets expectedAssets = jsonSerializer.read(
+        NativeAssets.class,
+        new ByteArrayInputStream(nativeJson.getBytes())
+    );
+
+    assertEquals(expectedAssets, slot.getNativeAssets());
     assertTrue(slot.isNative());
     assertTrue(slot.isValid());
   }
@@ -16,9 +16,11 @@
 
 package com.criteo.publisher.network
 
+import com.criteo.publisher.bid.UniqueIdGenerator
 import com.criteo.publisher.concurrent.DirectMockExecutor
 import com.criteo.publisher.model.*
 import com.criteo.publisher.util.AdUnitType.CRITEO_BANNER
+import com.criteo.publisher.util.BuildConfigWrapper
 import com.criteo.publisher.util.CdbCallListener
 import com.criteo.publisher.util.CompletableFuture.completedFuture
 import com.nhaarman.mockitokotlin2.*
@@ -43,6 +45,15 @@ class BidRequestSenderTest {
     @Mock
     private lateinit var api: PubSdkApi
 
+    @Mock
+    private lateinit var uniqueIdGenerator: UniqueIdGenerator
+
+    @Mock
+    private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+    @Mock
+    private lateinit var scheduledExecutor: ScheduledExecutorService
+
     private var executor = Executor(Runnable::run)
 
     private lateinit var sender: BidRequestSender
@@ -54,6 +65,7 @@ class BidRequestSenderTest {
         MockitoAnnotations.initMocks(this)
 
         whenever(cdbRequestFactory.userAgent).doReturn(completedFuture(""))
+        whenever(uniqueIdGenerator.generateId()).doReturn("callId1", "callId2")
 
         givenNewSender()
     }
@@ -63,7 +75,10 @@ class BidRequestSenderTest {
                 cdbRequestFactory,
                 remoteConfigRequestFactory,
                 api,
-                executor
+                uniqueIdGenerator,
+                executor,
+                scheduledExecutor,
+                buildConfigWrapper
         )
     }
 
@@ -125,7 +140,7 @@ class BidRequestSenderTest {
         sender.sendBidRequest(adUnits, listener)
 
         val inOrder = inOrder(listener)
-        inOrder.verify(listener).onCdbRequest(request)
+        inOrder.verify(listener).onCdbRequest(request, "callId1")
         inOrder.verify(listener).onCdbResponse(request, response)
         inOrder.verifyNoMoreInteractions()
     }
@@ -149,7 +164,7 @@ class BidRequestSenderTest {
         sender.sendBidRequest(adUnits, listener)
 
         val inOrder = inOrder(listener)
-        inOrder.verify(listener).onCdbRequest(request)
+        inOrder.verify(listener).onCdbRequest(request, "callId1")
         inOrder.verify(listener).onCdbError(request, exception)
         inOrder.verifyNoMoreInteractions()
     }
@@ -260,6 +275,154 @@ class BidRequestSenderTest {
         assertThat(sender.pendingTaskAdUnits).isEmpty()
     }
 
+    @Test
+    fun sendBidRequest_GivenBatchingWindowAndConcurrentRequests_SendOneCallAndNotifyEachListenerWithItsSlots() {
+        val tasks = mutableListOf<Runnable>()
+        executor = Executor { tasks.add(it) }
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(10)
+        val endsOfWindow = givenScheduledEndsOfWindow()
+        givenNewSender()
+
+        val adUnit1 = createAdUnit()
+        val adUnit2 = createAdUnit()
+        val listener1: CdbCallListener = mock()
+        val listener2: CdbCallListener = mock()
+        val requestSlot1 = CdbRequestSlot.create("impId1", adUnit1.placementId, CRITEO_BANNER, adUnit1.size)
+        val requestSlot2 = CdbRequestSlot.create("impId2", adUnit2.placementId, CRITEO_BANNER, adUnit2.size)
+        val request = createRequest(listOf(requestSlot1, requestSlot2))
+        val responseSlot1: Slot = mock { on { impressionId } doReturn "impId1" }
+        val responseSlot2: Slot = mock { on { impressionId } doReturn "impId2" }
+
+        whenever(cdbRequestFactory.createRequest(listOf(adUnit1, adUnit2))).doReturn(request)
+        whenever(api.loadCdb(any(), any())).doReturn(CdbResponse(listOf(responseSlot1, responseSlot2), 42))
+
+        sender.sendBidRequest(listOf(adUnit1), listener1)
+        sender.sendBidRequest(listOf(adUnit2), listener2)
+        endsOfWindow.forEach { it.run() }
+        tasks.forEach { it.run() }
+
+        assertThat(tasks).hasSize(1)
+        verify(api).loadCdb(eq(request), any())
+
+        argumentCaptor<CdbRequest> {
+            verify(listener1).onCdbRequest(capture(), eq("callId1"))
+            assertThat(lastValue.slots).containsExactly(requestSlot1)
+        }
+        argumentCaptor<CdbResponse> {
+            verify(listener1).onCdbResponse(any(), capture())
+            assertThat(lastValue.slots).containsExactly(responseSlot1)
+            assertThat(lastValue.timeToNextCall).isEqualTo(42)
+        }
+
+        argumentCaptor<CdbRequest> {
+            verify(listener2).onCdbRequest(capture(), eq("callId1"))
+            assertThat(lastValue.slots).containsExactly(requestSlot2)
+        }
+        argumentCaptor<CdbResponse> {
+            verify(listener2).onCdbResponse(any(), capture())
+            assertThat(lastValue.slots).containsExactly(responseSlot2)
+        }
+
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenBatchingWindow_WaitEndOfWindowWithoutHoldingExecutor() {
+        val tasks = mutableListOf<Runnable>()
+        executor = Executor { tasks.add(it) }
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(10)
+        val endsOfWindow = givenScheduledEndsOfWindow()
+        givenNewSender()
+
+        sender.sendBidRequest(listOf(createAdUnit()), mock())
+        sender.sendBidRequest(listOf(createAdUnit()), mock())
+
+        assertThat(tasks).isEmpty()
+        assertThat(endsOfWindow).hasSize(1)
+        verify(scheduledExecutor).schedule(any<Runnable>(), eq(10L), eq(TimeUnit.MILLISECONDS))
+
+        endsOfWindow.single().run()
+
+        assertThat(tasks).hasSize(1)
+    }
+
+    @Test
+    fun sendBidRequest_GivenBatchingWindowAndRejectedScheduling_TaskIsCleaned() {
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(10)
+        whenever(scheduledExecutor.schedule(any<Runnable>(), any(), any()))
+            .doThrow(RejectedExecutionException())
+
+        assertThatCode {
+            sender.sendBidRequest(listOf(createAdUnit()), mock())
+        }.isInstanceOf(RejectedExecutionException::class.java)
+
+        assertThat(sender.pendingTaskAdUnits).isEmpty()
+    }
+
+    @Test
+    fun sendBidRequest_GivenBatchingWindowAndMoreAdUnitsThanChunkSize_SendSeveralCalls() {
+        val tasks = mutableListOf<Runnable>()
+        executor = Executor { tasks.add(it) }
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(10)
+        val endsOfWindow = givenScheduledEndsOfWindow()
+        givenNewSender()
+
+        val firstAdUnits = List(AdUnitMapper.CHUNK_SIZE - 1) { createAdUnit() }
+        val secondAdUnits = List(2) { createAdUnit() }
+
+        sender.sendBidRequest(firstAdUnits, mock())
+        sender.sendBidRequest(secondAdUnits, mock())
+        endsOfWindow.forEach { it.run() }
+        tasks.forEach { it.run() }
+
+        assertThat(tasks).hasSize(2)
+        verify(cdbRequestFactory).createRequest(firstAdUnits)
+        verify(cdbRequestFactory).createRequest(secondAdUnits)
+    }
+
+    @Test
+    fun sendBidRequest_GivenBatchingWindowAndFullBatch_SendItWithoutWaitingTheWindow() {
+        executor = Executors.newSingleThreadExecutor()
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(60_000)
+        givenNewSender()
+
+        val isCalled = CountDownLatch(1)
+        whenever(cdbRequestFactory.createRequest(any())).doAnswer {
+            val adUnits: List<CacheAdUnit> = it.getArgument(0)
+            createRequest(adUnits.map { adUnit ->
+                CdbRequestSlot.create(adUnit.placementId, adUnit.placementId, CRITEO_BANNER, adUnit.size)
+            })
+        }
+        doAnswer {
+            isCalled.countDown()
+            null
+        }.whenever(api).loadCdb(anyOrNull(), anyOrNull())
+
+        sender.sendBidRequest(List(AdUnitMapper.CHUNK_SIZE - 1) { createAdUnit() }, mock())
+        sender.sendBidRequest(listOf(createAdUnit()), mock())
+
+        assertThat(isCalled.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+
+    @Test
+    fun sendBidRequest_GivenBatchingWindowAndPendingAdUnitInOpenBatch_IgnoreIt() {
+        val tasks = mutableListOf<Runnable>()
+        executor = Executor { tasks.add(it) }
+        whenever(buildConfigWrapper.bidRequestBatchingWindowInMillis).doReturn(10)
+        val endsOfWindow = givenScheduledEndsOfWindow()
+        givenNewSender()
+
+        val adUnit = createAdUnit()
+        val otherAdUnit = createAdUnit()
+
+        sender.sendBidRequest(listOf(adUnit), mock())
+        sender.sendBidRequest(listOf(adUnit, otherAdUnit), mock())
+        endsOfWindow.forEach { it.run() }
+        tasks.forEach { it.run() }
+
+        verify(cdbRequestFactory).createRequest(listOf(adUnit, otherAdUnit))
+    }
+
     @Test
     fun cancelAllPendingTasks_GivenNoTask_DoNothing() {
         assertThatCode {
@@ -296,6 +459,19 @@ class BidRequestSenderTest {
         assertThat(bothCallsAreInterrupted.await(1, TimeUnit.SECONDS)).isTrue()
     }
 
+    private fun givenScheduledEndsOfWindow(): List<Runnable> {
+        val endsOfWindow = mutableListOf<Runnable>()
+        whenever(scheduledExecutor.schedule(any<Runnable>(), any(), any())).doAnswer {
+            endsOfWindow.add(it.getArgument(0))
+            mock<ScheduledFuture<*>>()
+        }
+        return endsOfWindow
+    }
+
+    private fun createRequest(slots: List<CdbRequestSlot>): CdbRequest {
+        return CdbRequest.create(mock(), mock(), "1.2.3", 456, null, slots)
+    }
+
     private fun createAdUnit(): CacheAdUnit {
         val id = "id" + adUnitId.incrementAndGet()
         return CacheAdUnit(AdSize(1, 2), id, CRITEO_BANNER)
@@ -0,0 +1,207 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.Mockito.when;
+
+import com.criteo.publisher.Clock;
+import com.criteo.publisher.util.BuildConfigWrapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class KeepAliveHttpTransportTest {
+
+  @Rule
+  public MockWebServer mockWebServer = new MockWebServer();
+
+  @Mock
+  private BuildConfigWrapper buildConfigWrapper;
+
+  @Mock
+  private Clock clock;
+
+  private URL serverUrl;
+
+  private KeepAliveHttpTransport transport;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    when(buildConfigWrapper.getNetworkTimeoutInMillis()).thenReturn(5000);
+
+    serverUrl = new URL("http://localhost:" + mockWebServer.getPort());
+
+    transport = new KeepAliveHttpTransport(buildConfigWrapper, clock);
+  }
+
+  @Test
+  public void get_GivenSuccessiveCalls_ReuseConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("first"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+
+    try (InputStream response = transport.get("call", serverUrl, null)) {
+      assertThat(response).hasContent("first");
+    }
+    try (InputStream response = transport.get("call", serverUrl, null)) {
+      assertThat(response).hasContent("second");
+    }
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_GivenUnreadBodyThenNewCall_DrainBodyAndReuseConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("ignored body"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+
+    transport.get("call", serverUrl, null).close();
+
+    try (InputStream response = transport.get("call", serverUrl, null)) {
+      assertThat(response).hasContent("second");
+    }
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_GivenHttpErrorThenNewCall_ThrowAndReuseConnection() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(500).setBody("error body"));
+    mockWebServer.enqueue(new MockResponse().setBody("second"));
+
+    assertThatCode(() -> transport.get("call", serverUrl, null))
+        .isInstanceOf(HttpResponseException.class);
+
+    try (InputStream response = transport.get("call", serverUrl, null)) {
+      assertThat(response).hasContent("second");
+    }
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+    assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_GivenGzippedResponse_DecodeIt() throws Exception {
+    Buffer gzippedBody = new Buffer();
+    try (GzipSink sink = new GzipSink(gzippedBody)) {
+      Okio.buffer(sink).writeUtf8("decoded body").close();
+    }
+
+    mockWebServer.enqueue(new MockResponse()
+        .setHeader("Content-Encoding", "gzip")
+        .setBody(gzippedBody));
+
+    try (InputStream response = transport.get("call", serverUrl, "myUserAgent")) {
+      assertThat(response).hasContent("decoded body");
+    }
+
+    RecordedRequest request = mockWebServer.takeRequest();
+    assertThat(request.getMethod()).isEqualTo("GET");
+    assertThat(request.getHeader("Accept-Encoding")).isEqualTo("gzip");
+    assertThat(request.getHeader("User-Agent")).isEqualTo("myUserAgent");
+  }
+
+  @Test
+  public void get_GivenNoContent_ReturnEmptyStream() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    try (InputStream response = transport.get("call", serverUrl, null)) {
+      assertThat(response).hasContent("");
+    }
+  }
+
+  @Test
+  public void post_GivenUncompressedBody_SendItAsIs() throws Exception {
+    mockWebServer.enqueue(new MockResponse());
+
+    transport.post("call", serverUrl, null, outputStream -> {
+      outputStream.write("payload".getBytes(StandardCharsets.UTF_8));
+    }, false).close();
+
+    RecordedRequest request = mockWebServer.takeRequest();
+    assertThat(request.getMethod()).isEqualTo("POST");
+    assertThat(request.getHeader("Content-Type")).isEqualTo("text/plain");
+    assertThat(request.getHeader("Content-Encoding")).isNull();
+    assertThat(request.getBody().readUtf8()).isEqualTo("payload");
+  }
+
+  @Test
+  public void post_GivenCompressedBody_SendItGzipped() throws Exception {
+    mockWebServer.enqueue(new MockResponse());
+
+    transport.post("call", serverUrl, null, outputStream -> {
+      outputStream.write("payload".getBytes(StandardCharsets.UTF_8));
+    }, true).close();
+
+    RecordedRequest request = mockWebServer.takeRequest();
+    assertThat(request.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(new GZIPInputStream(request.getBody().inputStream())).hasContent("payload");
+  }
+
+  @Test
+  public void getLatencyHistograms_GivenCalls_RecordLatencyPerCallName() throws Exception {
+    when(clock.getCurrentTimeInMillis()).thenReturn(0L, 20L, 100L, 400L, 1000L, 1030L);
+
+    mockWebServer.enqueue(new MockResponse());
+    mockWebServer.enqueue(new MockResponse().setResponseCode(400));
+    mockWebServer.enqueue(new MockResponse());
+
+    transport.get("cdb", serverUrl, null).close();
+    assertThatCode(() -> transport.get("cdb", serverUrl, null))
+        .isInstanceOf(HttpResponseException.class);
+    transport.get("csm", serverUrl, null).close();
+
+    Map<String, LatencyHistogram> histograms = transport.getLatencyHistograms();
+
+    assertThat(histograms).containsOnlyKeys("cdb", "csm");
+    assertThat(histograms.get("cdb").getCount()).isEqualTo(2);
+    assertThat(histograms.get("cdb").getBucketCounts())
+        .containsExactly(0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0);
+    assertThat(histograms.get("csm").getBucketCounts())
+        .containsExactly(0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0);
+  }
+
+  @Test
+  public void get_GivenConnectionError_ThrowIOExceptionAndRecordNoLatency() throws Exception {
+    mockWebServer.shutdown();
+
+    assertThatCode(() -> transport.get("call", serverUrl, null))
+        .isInstanceOf(IOException.class);
+
+    assertThat(transport.getLatencyHistograms()).isEmpty();
+  }
+
+}
@@ -0,0 +1,397 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import android.content.Context
+import com.criteo.publisher.Clock
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.Mock
+import org.mockito.MockitoAnnotations
+import java.io.IOException
+import java.io.InputStream
+import java.net.URL
+import java.util.concurrent.Executor
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class PixelDispatcherTest {
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  @Mock
+  private lateinit var api: PubSdkApi
+
+  @Mock
+  private lateinit var context: Context
+
+  @Mock
+  private lateinit var clock: Clock
+
+  @Mock
+  private lateinit var buildConfigWrapper: BuildConfigWrapper
+
+  @Mock
+  private lateinit var scheduledExecutor: ScheduledExecutorService
+
+  @Mock
+  private lateinit var scheduledFuture: ScheduledFuture<*>
+
+  private var executedTasks = 0
+
+  private val executor = Executor {
+    executedTasks++
+    it.run()
+  }
+
+  private var sendingTasks = 0
+
+  private val sendingExecutor = Executor {
+    sendingTasks++
+    it.run()
+  }
+
+  private var now = 0L
+
+  private lateinit var dispatcher: PixelDispatcher
+
+  @Before
+  fun setUp() {
+    MockitoAnnotations.initMocks(this)
+
+    context.stub {
+      on { filesDir } doReturn tempFolder.root
+    }
+
+    clock.stub {
+      on { currentTimeInMillis } doAnswer { now }
+    }
+
+    buildConfigWrapper.stub {
+      on { pixelQueueFilename } doReturn "pixel_queue"
+      on { pixelQueueMaxCount } doReturn 10
+      on { pixelDispatchMaxConcurrency } doReturn 2
+      on { pixelMaxAttempts } doReturn 3
+      on { pixelRetryMinBackoffInMillis } doReturn 100
+      on { pixelRetryMaxBackoffInMillis } doReturn 150
+      on { pixelMaxAgeInMillis } doReturn 1000
+    }
+
+    doReturn(scheduledFuture).whenever(scheduledExecutor).schedule(any(), any(), any())
+
+    dispatcher = createDispatcher()
+  }
+
+  @Test
+  fun dispatch_GivenPixels_SendThemAndCloseStreams() {
+    val stream = mock<InputStream>()
+    whenever(api.executeRawGet(any())).thenReturn(stream)
+
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_B1))
+
+    verify(api).executeRawGet(PIXEL_A1)
+    verify(api).executeRawGet(PIXEL_B1)
+    verify(stream, times(2)).close()
+    assertThat(dispatcher.deliveredCount).isEqualTo(2)
+    assertThat(dispatcher.pendingCount).isZero()
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun dispatch_GivenNoPixel_DoNothing() {
+    dispatcher.dispatch(listOf())
+
+    assertThat(executedTasks).isZero()
+    assertThat(sendingTasks).isZero()
+    verifyZeroInteractions(api)
+  }
+
+  @Test
+  fun dispatch_GivenPixelsOfSameHost_SendThemInOrderWithoutHelper() {
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_A2))
+
+    inOrder(api) {
+      verify(api).executeRawGet(PIXEL_A1)
+      verify(api).executeRawGet(PIXEL_A2)
+    }
+
+    // One task to enqueue pixels and one write of the queue before and after sending them
+    assertThat(executedTasks).isEqualTo(3)
+    assertThat(sendingTasks).isEqualTo(1)
+  }
+
+  @Test
+  fun dispatch_GivenPixelsOfSeveralHosts_ServeHostsConcurrently() {
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_B1))
+
+    // Network IO is only done on the sending executor: the round and a helper for the other host
+    assertThat(executedTasks).isEqualTo(3)
+    assertThat(sendingTasks).isEqualTo(2)
+  }
+
+  @Test
+  fun dispatch_GivenSingleConcurrentHost_ServeHostsOneAfterTheOther() {
+    buildConfigWrapper.stub {
+      on { pixelDispatchMaxConcurrency } doReturn 1
+    }
+
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_B1))
+
+    verify(api).executeRawGet(PIXEL_A1)
+    verify(api).executeRawGet(PIXEL_B1)
+    assertThat(executedTasks).isEqualTo(3)
+    assertThat(sendingTasks).isEqualTo(1)
+  }
+
+  @Test
+  fun dispatch_GivenServerError_RetryAfterBackoffAndRecordDeliveryLatency() {
+    doThrow(HttpResponseException(503))
+        .doAnswer { now += 30; null }
+        .whenever(api).executeRawGet(PIXEL_A1)
+
+    now = 10
+    dispatcher.dispatch(listOf(PIXEL_A1))
+
+    verify(scheduledExecutor).schedule(any(), eq(100L), eq(TimeUnit.MILLISECONDS))
+    assertThat(dispatcher.retriedCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isEqualTo(1)
+
+    now = 110
+    runScheduledWakeUp()
+
+    verify(api, times(2)).executeRawGet(PIXEL_A1)
+    assertThat(dispatcher.deliveredCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isZero()
+    assertThat(dispatcher.deliveryLatencyHistogram.bucketCounts[4]).isEqualTo(1)
+  }
+
+  @Test
+  fun dispatch_GivenConsecutiveFailures_DoubleBackoffUpToMaxAndDropAfterMaxAttempts() {
+    doThrow(HttpResponseException(500)).whenever(api).executeRawGet(any())
+
+    dispatcher.dispatch(listOf(PIXEL_A1))
+    now = 100
+    runScheduledWakeUp()
+
+    verify(scheduledExecutor).schedule(any(), eq(100L), eq(TimeUnit.MILLISECONDS))
+    verify(scheduledExecutor).schedule(any(), eq(150L), eq(TimeUnit.MILLISECONDS))
+
+    now = 250
+    runScheduledWakeUp()
+
+    verify(api, times(3)).executeRawGet(PIXEL_A1)
+    assertThat(dispatcher.retriedCount).isEqualTo(2)
+    assertThat(dispatcher.droppedCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isZero()
+  }
+
+  @Test
+  fun dispatch_GivenClientError_DropPixelWithoutRetry() {
+    doThrow(HttpResponseException(404)).whenever(api).executeRawGet(any())
+
+    dispatcher.dispatch(listOf(PIXEL_A1))
+
+    assertThat(dispatcher.droppedCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isZero()
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  @Test
+  fun dispatch_GivenNetworkErrorOnHost_DeferOtherPixelsOfHostOnly() {
+    doThrow(IOException::class).whenever(api).executeRawGet(PIXEL_A1)
+
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_A2, PIXEL_B1))
+
+    verify(api).executeRawGet(PIXEL_A1)
+    verify(api, never()).executeRawGet(PIXEL_A2)
+    verify(api).executeRawGet(PIXEL_B1)
+    assertThat(dispatcher.retriedCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isEqualTo(2)
+
+    // Deferred pixel did not count an attempt, so it is not dropped with the failing one
+    doThrow(IOException::class).whenever(api).executeRawGet(PIXEL_A2)
+    now = 100
+    runScheduledWakeUp()
+    now = 250
+    runScheduledWakeUp()
+
+    assertThat(dispatcher.droppedCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isEqualTo(1)
+  }
+
+  @Test
+  fun dispatch_GivenFullQueue_DropOldestPixels() {
+    buildConfigWrapper.stub {
+      on { pixelQueueMaxCount } doReturn 2
+    }
+
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_A2, PIXEL_B1))
+
+    verify(api, never()).executeRawGet(PIXEL_A1)
+    verify(api).executeRawGet(PIXEL_A2)
+    verify(api).executeRawGet(PIXEL_B1)
+    assertThat(dispatcher.droppedCount).isEqualTo(1)
+  }
+
+  @Test
+  fun dispatch_GivenTooLongPixel_DropItAndSendOthers() {
+    val tooLongPixel = URL("https://a.pixel/" + "a".repeat(65536))
+
+    dispatcher.dispatch(listOf(tooLongPixel, PIXEL_B1))
+
+    verify(api, never()).executeRawGet(tooLongPixel)
+    verify(api).executeRawGet(PIXEL_B1)
+    assertThat(dispatcher.droppedCount).isEqualTo(1)
+    assertThat(dispatcher.deliveredCount).isEqualTo(1)
+  }
+
+  @Test
+  fun dispatch_GivenPixelExpiredDuringBackoff_DropItBeforeNextRound() {
+    doThrow(HttpResponseException(503)).whenever(api).executeRawGet(PIXEL_A1)
+
+    dispatcher.dispatch(listOf(PIXEL_A1))
+
+    now = 1001
+    runScheduledWakeUp()
+
+    verify(api, times(1)).executeRawGet(PIXEL_A1)
+    assertThat(dispatcher.droppedCount).isEqualTo(1)
+    assertThat(dispatcher.pendingCount).isZero()
+    assertThat(createDispatcher().apply { resumePendingPixels() }.pendingCount).isZero()
+  }
+
+  @Test
+  fun dispatch_GivenChangesDuringWrite_WriteOutOfLockAndCoalesceNextChanges() {
+    val pendingTasks = mutableListOf<Runnable>()
+    val queueFile = spy(PixelQueueFile(context, clock, buildConfigWrapper))
+    val pendingTasksExecutor = Executor { pendingTasks.add(it) }
+    val dispatcher = PixelDispatcher(
+        api,
+        queueFile,
+        clock,
+        buildConfigWrapper,
+        pendingTasksExecutor,
+        pendingTasksExecutor,
+        scheduledExecutor
+    )
+
+    val pendingCountDuringWrite = AtomicInteger(-1)
+    doAnswer {
+      val reader = Thread { pendingCountDuringWrite.set(dispatcher.pendingCount) }
+      reader.start()
+      reader.join(1000)
+      it.callRealMethod()
+    }.whenever(queueFile).write(any())
+
+    dispatcher.dispatch(listOf(PIXEL_A1))
+    dispatcher.dispatch(listOf(PIXEL_A2))
+    dispatcher.dispatch(listOf(PIXEL_B1))
+
+    // Two enqueues are run before the write, and the last one is run after it
+    pendingTasks.removeAt(0).run()
+    pendingTasks.removeAt(0).run()
+    val writeTask = pendingTasks.removeAt(1)
+    writeTask.run()
+
+    verify(queueFile, times(1)).write(argThat { size == 2 })
+    assertThat(pendingCountDuringWrite.get()).isEqualTo(2)
+
+    pendingTasks.removeAt(0).run()
+    clearInvocations(queueFile)
+    while (pendingTasks.isNotEmpty()) {
+      pendingTasks.removeAt(0).run()
+    }
+
+    verify(queueFile, atLeastOnce()).write(any())
+    assertThat(queueFile.read()).isEmpty()
+  }
+
+  @Test
+  fun resumePendingPixels_GivenPixelsNotDeliveredByPreviousSession_SendThem() {
+    doThrow(IOException::class).whenever(api).executeRawGet(any())
+    dispatcher.dispatch(listOf(PIXEL_A1, PIXEL_B1))
+
+    doReturn(null).whenever(api).executeRawGet(any())
+    clearInvocations(api)
+    now = 1000
+    val newDispatcher = createDispatcher()
+    newDispatcher.resumePendingPixels()
+
+    verify(api).executeRawGet(PIXEL_A1)
+    verify(api).executeRawGet(PIXEL_B1)
+    assertThat(newDispatcher.deliveredCount).isEqualTo(2)
+    assertThat(createDispatcher().apply { resumePendingPixels() }.pendingCount).isZero()
+  }
+
+  @Test
+  fun resumePendingPixels_GivenPixelsInBackoff_WaitForTheirNextAttempt() {
+    doThrow(IOException::class).whenever(api).executeRawGet(any())
+    dispatcher.dispatch(listOf(PIXEL_A1))
+    clearInvocations(api, scheduledExecutor)
+
+    now = 40
+    val newDispatcher = createDispatcher()
+    newDispatcher.resumePendingPixels()
+
+    verifyZeroInteractions(api)
+    verify(scheduledExecutor).schedule(any(), eq(60L), eq(TimeUnit.MILLISECONDS))
+    assertThat(newDispatcher.pendingCount).isEqualTo(1)
+  }
+
+  @Test
+  fun resumePendingPixels_GivenNothingStored_DoNothing() {
+    dispatcher.resumePendingPixels()
+
+    verifyZeroInteractions(api)
+    verifyZeroInteractions(scheduledExecutor)
+  }
+
+  private fun createDispatcher(): PixelDispatcher {
+    return PixelDispatcher(
+        api,
+        PixelQueueFile(context, clock, buildConfigWrapper),
+        clock,
+        buildConfigWrapper,
+        executor,
+        sendingExecutor,
+        scheduledExecutor
+    )
+  }
+
+  private fun runScheduledWakeUp() {
+    argumentCaptor<Runnable> {
+      verify(scheduledExecutor, atLeastOnce()).schedule(capture(), any(), any())
+      lastValue.run()
+    }
+  }
+
+  private companion object {
+    val PIXEL_A1 = URL("https://a.pixel/1")
+    val PIXEL_A2 = URL("https://a.pixel/2")
+    val PIXEL_B1 = URL("https://b.pixel/1")
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *    Copyright 2020 Criteo
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.criteo.publisher.network
+
+import android.content.Context
+import com.criteo.publisher.Clock
+import com.criteo.publisher.util.BuildConfigWrapper
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.mock
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class PixelQueueFileTest {
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  private lateinit var file: File
+
+  private var now = 0L
+
+  private lateinit var queueFile: PixelQueueFile
+
+  @Before
+  fun setUp() {
+    file = File(tempFolder.root, "pixel_queue")
+
+    val context = mock<Context> {
+      on { filesDir } doReturn tempFolder.root
+    }
+    val clock = mock<Clock> {
+      on { currentTimeInMillis } doAnswer { now }
+    }
+    val buildConfigWrapper = mock<BuildConfigWrapper> {
+      on { pixelQueueFilename } doReturn "pixel_queue"
+      on { pixelMaxAgeInMillis } doReturn 1000
+    }
+
+    queueFile = PixelQueueFile(context, clock, buildConfigWrapper)
+  }
+
+  @Test
+  fun read_GivenNoFile_ReturnEmptyList() {
+    assertThat(queueFile.read()).isEmpty()
+  }
+
+  @Test
+  fun read_GivenWrittenPixels_ReturnThemInOrder() {
+    queueFile.write(listOf(
+        PendingPixel("https://a.pixel/1", 1, 0, 1),
+        PendingPixel("https://b.pixel/1", 2, 3, 42)
+    ))
+
+    val pixels = queueFile.read()
+
+    assertThat(pixels).hasSize(2)
+    assertThat(pixels[0].url).isEqualTo("https://a.pixel/1")
+    assertThat(pixels[1].url).isEqualTo("https://b.pixel/1")
+    assertThat(pixels[1].enqueueTime).isEqualTo(2)
+    assertThat(pixels[1].attempts).isEqualTo(3)
+    assertThat(pixels[1].nextAttemptTime).isEqualTo(42)
+    assertThat(pixels[1].isInFlight).isFalse()
+  }
+
+  @Test
+  fun read_GivenExpiredPixels_SkipThem() {
+    queueFile.write(listOf(
+        PendingPixel("https://a.pixel/1", 1, 0, 1),
+        PendingPixel("https://b.pixel/1", 2, 0, 2)
+    ))
+
+    now = 1002
+
+    val pixels = queueFile.read()
+
+    assertThat(pixels).hasSize(1)
+    assertThat(pixels[0].url).isEqualTo("https://b.pixel/1")
+  }
+
+  @Test
+  fun canStore_GivenUrlsAroundMaxEncodedLength_AcceptOnlyTheOnesThatFit() {
+    assertThat(PixelQueueFile.canStore("a".repeat(65535))).isTrue()
+    assertThat(PixelQueueFile.canStore("a".repeat(65536))).isFalse()
+    assertThat(PixelQueueFile.canStore("é".repeat(32767))).isTrue()
+    assertThat(PixelQueueFile.canStore("é".repeat(32768))).isFalse()
+  }
+
+  @Test
+  fun write_GivenNoPixel_DeleteFile() {
+    queueFile.write(listOf(PendingPixel("https://a.pixel/1", 1, 0, 1)))
+    queueFile.write(listOf())
+
+    assertThat(file).doesNotExist()
+    assertThat(queueFile.read()).isEmpty()
+  }
+
+  @Test
+  fun read_GivenCorruptedFile_DropItAndReturnEmptyList() {
+    queueFile.write(listOf(PendingPixel("https://a.pixel/1", 1, 0, 1)))
+    file.writeBytes(file.readBytes().copyOf(10))
+
+    assertThat(queueFile.read()).isEmpty()
+    assertThat(file).doesNotExist()
+  }
+
+}
@@ -31,10 +31,12 @@ import com.criteo.publisher.mock.MockedDependenciesRule;
 import com.criteo.publisher.mock.SpyBean;
 import com.criteo.publisher.model.CdbRequest;
 import com.criteo.publisher.model.CdbResponse;
+import com.criteo.publisher.model.Config;
 import com.criteo.publisher.model.RemoteConfigRequest;
 import com.criteo.publisher.privacy.gdpr.GdprData;
 import com.criteo.publisher.util.BuildConfigWrapper;
 import com.criteo.publisher.util.JsonSerializer;
+import com.criteo.publisher.util.StreamUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -42,6 +44,7 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
@@ -67,9 +70,15 @@ public class PubSdkApiTest {
   @Mock
   private GdprData gdprData;
 
+  @Mock
+  private Config config;
+
   @SpyBean
   private JsonSerializer serializer;
 
+  @SpyBean
+  private HttpTransport httpTransport;
+
   private PubSdkApi api;
 
   @Before
@@ -86,7 +95,7 @@ public class PubSdkApiTest {
     when(gdprData.version()).thenReturn(1);
     when(gdprData.toJSONObject()).thenCallRealMethod();
 
-    api = new PubSdkApi(buildConfigWrapper, serializer);
+    api = new PubSdkApi(buildConfigWrapper, serializer, httpTransport, config);
   }
 
   @Test
@@ -107,6 +116,23 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void postCsm_GivenRequestCompressionEnabled_SendGzippedBody() throws Exception {
+    MetricRequest request = mock(MetricRequest.class);
+    String json = "{\"expectedJson\": 42}";
+
+    givenSerializerWriting(request, json);
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.postCsm(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(webRequest)).isEqualTo(json);
+  }
+
   @Test
   public void postCsm_GivenConnectionError_ThrowIOException() throws Exception {
     MetricRequest request = mock(MetricRequest.class);
@@ -211,6 +237,54 @@ public class PubSdkApiTest {
     assertThat(webRequest.getBody().snapshot().utf8()).isEqualTo(json);
   }
 
+  @Test
+  public void loadCdb_GivenRequestCompressionEnabled_SendGzippedBody() throws Exception {
+    String json = "{\"payload\":\"my awesome payload\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getPath()).isEqualTo("/inapp/v2");
+    assertThat(webRequest.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(webRequest)).isEqualTo(json);
+  }
+
+  @Test
+  public void loadCdb_GivenRequestCompressionDisabled_SendPlainBody() throws Exception {
+    String json = "{\"payload\":\"my awesome payload\"}";
+    CdbRequest cdbRequest = mock(CdbRequest.class);
+
+    givenSerializerWriting(cdbRequest, json);
+    when(config.isRequestCompressionEnabled()).thenReturn(false);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(204));
+
+    api.loadCdb(cdbRequest, "");
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isNull();
+    assertThat(webRequest.getBody().readUtf8()).isEqualTo(json);
+  }
+
+  @Test
+  public void loadConfig_GivenRequestCompressionEnabled_SendPlainBody() throws Exception {
+    RemoteConfigRequest request = RemoteConfigRequest.create("myCpId", "myAppId", "myVersion", 456);
+    when(config.isRequestCompressionEnabled()).thenReturn(true);
+
+    mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+    api.loadConfig(request);
+
+    RecordedRequest webRequest = mockWebServer.takeRequest();
+    assertThat(webRequest.getHeader("Content-Encoding")).isNull();
+  }
+
   @Test
   public void loadCdb_GivenBids_ReturnResponseWithBids() throws Exception {
     CdbRequest cdbRequest = givenEmptyCdbRequest();
@@ -281,6 +355,53 @@ public class PubSdkApiTest {
     assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(300);
   }
 
+  @Test
+  public void loadCdb_GivenInvalidNativePayloadInOneSlot_ReturnOtherSlotsUntouched() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    String json = "{\n"
+        + "  \"slots\" : [\n"
+        + "    {\n"
+        + "      \"placementId\": \"adunit_1\",\n"
+        + "      \"cpm\" : \"1.00\",\n"
+        + "      \"ttl\" : 10,\n"
+        + "      \"native\" : { \"products\": [], \"unknown\": [1, {\"a\": 2}] }\n"
+        + "    },\n"
+        + "    {\n"
+        + "      \"placementId\": \"adunit_2\",\n"
+        + "      \"cpm\" : \"2.00\",\n"
+        + "      \"displayUrl\" : \"https://url.fr\",\n"
+        + "      \"ttl\" : 20\n"
+        + "    }\n"
+        + "  ],\n"
+        + "  \"timeToNextCall\": 42\n"
+        + "}";
+
+    mockWebServer.enqueue(new MockResponse().setBody(json));
+
+    CdbResponse cdbResponse = api.loadCdb(cdbRequest, "");
+
+    assertThat(cdbResponse.getSlots()).hasSize(2);
+    assertThat(cdbResponse.getTimeToNextCall()).isEqualTo(42);
+
+    assertThat(cdbResponse.getSlots().get(0).getPlacementId()).isEqualTo("adunit_1");
+    assertThat(cdbResponse.getSlots().get(0).getNativeAssets()).isNull();
+    assertThat(cdbResponse.getSlots().get(0).isValid()).isFalse();
+
+    assertThat(cdbResponse.getSlots().get(1).getPlacementId()).isEqualTo("adunit_2");
+    assertThat(cdbResponse.getSlots().get(1).getTtl()).isEqualTo(20);
+    assertThat(cdbResponse.getSlots().get(1).isValid()).isTrue();
+  }
+
+  @Test
+  public void loadCdb_GivenMalformedJson_ThrowIOException() throws Exception {
+    CdbRequest cdbRequest = givenEmptyCdbRequest();
+
+    mockWebServer.enqueue(new MockResponse().setBody("{\"slots\": [{\"cpm\": "));
+
+    assertThatCode(() -> api.loadCdb(cdbRequest, "")).isInstanceOf(IOException.class);
+  }
+
   @Test
   public void loadCdb_GivenNoBid_ReturnEmptyResponse() throws Exception {
     CdbRequest cdbRequest = givenEmptyCdbRequest();
@@ -391,6 +512,12 @@ public class PubSdkApiTest {
     })).when(serializer).write(eq(expected), any());
   }
 
+  private static String gunzip(RecordedRequest request) throws IOException {
+    try (InputStream input = new GZIPInputStream(request.getBody().inputStream())) {
+      return StreamUtil.readStream(input);
+    }
+  }
+
   private void givenConnectionError() throws IOException {
     mockWebServer.shutdown();
   }
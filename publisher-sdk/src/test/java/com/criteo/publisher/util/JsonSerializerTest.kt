@@ -18,9 +18,13 @@ package com.criteo.publisher.util
 
 import com.criteo.publisher.mock.MockedDependenciesRule
 import com.nhaarman.mockitokotlin2.*
+import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatCode
 import org.junit.Rule
 import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
 import java.io.IOException
 import java.io.OutputStream
 import javax.inject.Inject
@@ -69,6 +73,67 @@ class JsonSerializerTest {
     verify(stream, never()).close()
   }
 
+  @Test
+  fun write_GivenNonAsciiValue_WriteItInUtf8() {
+    val value = Dummy("é€\uD83D\uDE00")
+
+    val json = ByteArrayOutputStream().use {
+      serializer.write(value, it)
+      it.toByteArray()
+    }
+
+    assertThat(json).isEqualTo("{\"dummy\":\"é€\uD83D\uDE00\"}".toByteArray(Charsets.UTF_8))
+  }
+
+  @Test
+  fun writeThenRead_GivenLargeNonAsciiValues_ReturnEqualValues() {
+    // Bigger than internal buffers so multi-bytes chars are split between two chunks
+    val values = (1..3).map { i -> Dummy("a€\uD83D\uDE00".repeat(i * 1000)) }
+
+    values.forEach { value ->
+      val json = ByteArrayOutputStream().use {
+        serializer.write(value, it)
+        it.toByteArray()
+      }
+
+      val readValue = ByteArrayInputStream(json).use {
+        serializer.read(Dummy::class.java, it)
+      }
+
+      assertThat(readValue).isEqualTo(value)
+    }
+  }
+
+  @Test
+  fun read_GivenEmptyStream_ThrowEofException() {
+    assertThatCode {
+      serializer.read(Dummy::class.java, ByteArrayInputStream(ByteArray(0)))
+    }.isInstanceOf(EOFException::class.java)
+  }
+
+  @Test
+  fun read_GivenTrailingContent_ThrowIoException() {
+    val stream = ByteArrayInputStream("{\"dummy\":\"\"} garbage".toByteArray())
+
+    assertThatCode {
+      serializer.read(Dummy::class.java, stream)
+    }.isInstanceOf(IOException::class.java)
+  }
+
+  @Test
+  fun read_GivenPreviousInvalidStream_ReadNextStreamNormally() {
+    assertThatCode {
+      serializer.read(Dummy::class.java, ByteArrayInputStream("{\"dummy\":".toByteArray()))
+    }.isInstanceOf(IOException::class.java)
+
+    val readValue = serializer.read(
+        Dummy::class.java,
+        ByteArrayInputStream("{\"dummy\":\"ok\"}".toByteArray())
+    )
+
+    assertThat(readValue).isEqualTo(Dummy("ok"))
+  }
+
   private data class Dummy(private val dummy: String = "")
 
 }
\ No newline at end of file
@@ -17,10 +17,11 @@
 package com.criteo.publisher;
 
 import com.criteo.publisher.model.nativeads.NativeAssets;
+import com.criteo.publisher.util.JsonSerializer;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.regex.Pattern;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 public class StubConstants {
 
@@ -85,9 +86,10 @@ public class StubConstants {
       + "}";
 
   static {
-    try {
-      STUB_NATIVE_ASSETS = NativeAssets.fromJson(new JSONObject(STUB_NATIVE_JSON));
-    } catch (JSONException | IOException e) {
+    JsonSerializer jsonSerializer = DependencyProvider.getInstance().provideJsonSerializer();
+    try (InputStream input = new ByteArrayInputStream(STUB_NATIVE_JSON.getBytes())) {
+      STUB_NATIVE_ASSETS = jsonSerializer.read(NativeAssets.class, input);
+    } catch (IOException e) {
       throw new IllegalStateException(e);
     }
   }